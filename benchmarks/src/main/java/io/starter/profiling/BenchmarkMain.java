@@ -0,0 +1,51 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.profiling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Runs the benchmarks with the GC profiler attached, so that every result
+ * is reported with its allocation rate per operation and the collections
+ * it caused.
+ * <p>
+ * Takes the usual JMH command line, for instance
+ * <code>java -jar benchmarks.jar Lookup -p rows=100000</code>.
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		List<String> argv = new ArrayList<String>(Arrays.asList(args));
+		boolean gc = false;
+		for (int i = 0; i < argv.size() - 1; i++) {
+			if ("-prof".equals(argv.get(i)) && argv.get(i + 1).startsWith("gc"))
+				gc = true;
+		}
+		if (!gc) {
+			argv.add("-prof");
+			argv.add("gc");
+		}
+		org.openjdk.jmh.Main.main(argv.toArray(new String[argv.size()]));
+	}
+}
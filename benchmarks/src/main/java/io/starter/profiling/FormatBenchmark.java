@@ -0,0 +1,69 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.profiling;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.starter.OpenXLS.CellHandle;
+import io.starter.OpenXLS.WorkBookHandle;
+
+/** Measures CellHandle.getFormattedStringVal over cells in each of the
+ * {@link SyntheticWorkbooks#PATTERNS}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FormatBenchmark {
+	@Param({ "1000" })
+	public int rows;
+
+	private CellHandle[] cells;
+
+	@Setup
+	public void generate() {
+		WorkBookHandle book = SyntheticWorkbooks.formatted(rows);
+		cells = SyntheticWorkbooks.sheet(book).getCells();
+	}
+
+	@Benchmark
+	public void formattedStringVal(Blackhole bh) {
+		for (CellHandle cell : cells)
+			bh.consume(cell.getFormattedStringVal());
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.profiling;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.starter.OpenXLS.CellHandle;
+import io.starter.OpenXLS.FormulaHandle;
+import io.starter.OpenXLS.WorkBookHandle;
+import io.starter.OpenXLS.WorkSheetHandle;
+
+/** Measures calcVlookup and calcSumif over a large range.
+ * <p>
+ * The <code>*AfterEdit</code> variants change a value in the looked up
+ * range before each calculation, so cached range state is rebuilt every
+ * time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LookupBenchmark {
+	@Param({ "10000", "100000" })
+	public int rows;
+
+	private FormulaHandle exact, sorted, sumif;
+	private CellHandle edited;
+	private int value;
+
+	@Setup
+	public void generate() throws Exception {
+		WorkBookHandle book = SyntheticWorkbooks.lookupTable(rows);
+		WorkSheetHandle sheet = SyntheticWorkbooks.sheet(book);
+		String keys = "$A$1:$A$" + rows, table = "$A$1:$B$" + rows;
+		// look for keys near the end of the table, the worst case for a scan
+		exact = sheet.add("=VLOOKUP(" + (rows - 2) + "," + table + ",2,FALSE)",
+				0, 3).getFormulaHandle();
+		sorted = sheet.add("=VLOOKUP(" + (rows - 2.5) + "," + table + ",2,TRUE)",
+				1, 3).getFormulaHandle();
+		sumif = sheet.add("=SUMIF(" + keys + ",\">" + (rows / 2) + "\",$B$1:$B$"
+				+ rows + ")", 2, 3).getFormulaHandle();
+		// the value found by the exact lookup, and summed by SUMIF
+		edited = sheet.getCell(rows - 2, 1);
+	}
+
+	@Benchmark
+	public Object vlookupExact() {
+		return exact.calculate();
+	}
+
+	@Benchmark
+	public Object vlookupSorted() {
+		return sorted.calculate();
+	}
+
+	@Benchmark
+	public Object sumif() {
+		return sumif.calculate();
+	}
+
+	@Benchmark
+	public Object vlookupExactAfterEdit() {
+		edited.setVal(++value % 1000);
+		return exact.calculate();
+	}
+
+	@Benchmark
+	public Object sumifAfterEdit() {
+		edited.setVal(++value % 1000);
+		return sumif.calculate();
+	}
+}
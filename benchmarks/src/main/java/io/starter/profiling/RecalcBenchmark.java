@@ -0,0 +1,85 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.profiling;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.starter.OpenXLS.CellHandle;
+import io.starter.OpenXLS.FormulaHandle;
+import io.starter.OpenXLS.WorkBookHandle;
+import io.starter.OpenXLS.WorkSheetHandle;
+
+/** Measures Formula.calculate over a chain of dependent formulas.
+ * <p>
+ * <code>chain</code> changes the head of the chain and recalculates its
+ * tail, which has to revisit every formula in between;
+ * <code>recalcAll</code> marks every formula dirty and recalculates the
+ * workbook.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xss16m")
+public class RecalcBenchmark {
+	@Param({ "100", "1000" })
+	public int length;
+
+	private WorkBookHandle book;
+	private CellHandle head;
+	private FormulaHandle tail;
+	private int value;
+
+	@Setup
+	public void generate() throws Exception {
+		book = SyntheticWorkbooks.chain(length);
+		WorkSheetHandle sheet = SyntheticWorkbooks.sheet(book);
+		head = sheet.getCell(0, 0);
+		tail = sheet.getCell(length - 1, 0).getFormulaHandle();
+		tail.calculate();
+	}
+
+	@Benchmark
+	public Object chain() {
+		head.setVal(++value);
+		return tail.calculate();
+	}
+
+	@Benchmark
+	public void recalcAll() {
+		book.calculateFormulas();
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.profiling;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.starter.OpenXLS.WorkBookHandle;
+
+/** Measures saving a loaded workbook: <code>xls</code> is streamed by
+ * ByteStreamer.writeOut and <code>xlsx</code> by the OOXMLWriter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SaveBenchmark {
+	@Param({ "xls", "xlsx" })
+	public String format;
+
+	@Param({ "10000", "100000" })
+	public int rows;
+
+	@Param({ "10" })
+	public int cols;
+
+	private WorkBookHandle book;
+	private int target;
+
+	@Setup
+	public void generate() {
+		book = SyntheticWorkbooks.create(rows, cols);
+		target = SyntheticWorkbooks.format(format);
+	}
+
+	@Benchmark
+	public long save() throws Exception {
+		SyntheticWorkbooks.CountingOutputStream out = new SyntheticWorkbooks.CountingOutputStream();
+		book.write(out, target);
+		return out.count;
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.profiling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import io.starter.OpenXLS.CellHandle;
+import io.starter.OpenXLS.WorkBookHandle;
+import io.starter.OpenXLS.WorkSheetHandle;
+
+/** Generates the workbooks the benchmarks run against.
+ * <p>
+ * Every generator is deterministic, so results taken from different builds
+ * measure the same data.
+ */
+public final class SyntheticWorkbooks {
+
+	/** the number formats applied by {@link #create(int, int)}, one per
+	 * formatted column */
+	static final String[] PATTERNS = { "0", "#,##0.00", "0.00%",
+			"$#,##0.00_);($#,##0.00)", "m/d/yyyy", "0.00E+00", "@" };
+
+	private SyntheticWorkbooks() {
+	}
+
+	/** Creates a single sheet workbook of mixed data.
+	 * <p>
+	 * Each row holds a repeating label, a unique label, an integer, a date
+	 * and numbers up to the requested column count, followed by a formula
+	 * over the row's numbers.
+	 * @param rows the number of rows
+	 * @param cols the number of columns, at least 6
+	 */
+	public static WorkBookHandle create(int rows, int cols) {
+		if (cols < 6)
+			throw new IllegalArgumentException("at least 6 columns needed");
+		WorkBookHandle wb = new WorkBookHandle();
+		WorkSheetHandle sheet = sheet(wb);
+		Calendar cal = new GregorianCalendar(2020, Calendar.JANUARY, 1);
+		Object[][] block = new Object[rows][];
+		for (int r = 0; r < rows; r++) {
+			Object[] row = new Object[cols];
+			row[0] = "Category " + (r % 50);
+			row[1] = "Item " + r;
+			row[2] = Integer.valueOf(r);
+			cal.set(2020, Calendar.JANUARY, 1 + (r % 3650));
+			row[3] = cal.getTime();
+			for (int c = 4; c < cols - 1; c++)
+				row[c] = Double.valueOf(r * 1.5 + c);
+			row[cols - 1] = "=C" + (r + 1) + "*E" + (r + 1) + "+"
+					+ (cols > 6 ? "F" + (r + 1) : "1");
+			block[r] = row;
+		}
+		sheet.addRows(block, 0, 0, null);
+		return wb;
+	}
+
+	/** Creates a workbook whose column A is a chain of formulas, each adding
+	 * one to the cell above, so that recalculating the last cell visits
+	 * every other.
+	 * @param length the number of cells in the chain
+	 */
+	public static WorkBookHandle chain(int length) {
+		WorkBookHandle wb = new WorkBookHandle();
+		WorkSheetHandle sheet = sheet(wb);
+		sheet.add(Integer.valueOf(1), 0, 0);
+		for (int r = 1; r < length; r++)
+			sheet.add("=A" + r + "+1", r, 0);
+		return wb;
+	}
+
+	/** Creates a lookup table of ascending integer keys in column A and
+	 * values in column B.
+	 * @param rows the number of rows in the table
+	 */
+	public static WorkBookHandle lookupTable(int rows) {
+		WorkBookHandle wb = new WorkBookHandle();
+		WorkSheetHandle sheet = sheet(wb);
+		double[] keys = new double[rows], values = new double[rows];
+		for (int r = 0; r < rows; r++) {
+			keys[r] = r;
+			values[r] = (r * 7919) % 1000;
+		}
+		int fmt = wb.getWorkBook().getDefaultIxfe();
+		sheet.setColumn(0, 0, keys, fmt);
+		sheet.setColumn(1, 0, values, fmt);
+		return wb;
+	}
+
+	/** Creates a sheet of numbers and dates, each column in one of the
+	 * {@link #PATTERNS}.
+	 * @param rows the number of rows
+	 */
+	public static WorkBookHandle formatted(int rows) {
+		WorkBookHandle wb = new WorkBookHandle();
+		WorkSheetHandle sheet = sheet(wb);
+		for (int c = 0; c < PATTERNS.length; c++) {
+			for (int r = 0; r < rows; r++) {
+				CellHandle cell = sheet.add(Double.valueOf(40000 + r * 1.25 + c
+						/ 8.0), r, c);
+				cell.setFormatPattern(PATTERNS[c]);
+			}
+		}
+		return wb;
+	}
+
+	/** Gets the first sheet of a workbook. */
+	static WorkSheetHandle sheet(WorkBookHandle wb) {
+		try {
+			return wb.getWorkSheet(0);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Maps a benchmark parameter of <code>xls</code> or <code>xlsx</code>
+	 * to a {@link WorkBookHandle} format constant.
+	 */
+	public static int format(String name) {
+		if ("xls".equalsIgnoreCase(name))
+			return WorkBookHandle.FORMAT_XLS;
+		if ("xlsx".equalsIgnoreCase(name))
+			return WorkBookHandle.FORMAT_XLSX;
+		throw new IllegalArgumentException("unknown format: " + name);
+	}
+
+	/** Saves a workbook into a byte array. */
+	public static byte[] toBytes(WorkBookHandle wb, int format)
+			throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		wb.write(out, format);
+		return out.toByteArray();
+	}
+
+	/** An output stream which counts and discards what is written to it. */
+	static final class CountingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
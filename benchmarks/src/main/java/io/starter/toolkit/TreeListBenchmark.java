@@ -0,0 +1,107 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.toolkit;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Reproduces the relative figures in the {@link XLSOptimizedTreeList}
+ * documentation against ArrayList and LinkedList.
+ * <p>
+ * Lives in the toolkit package as the list is package private. The
+ * insertions and removals are paired so the list keeps its size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TreeListBenchmark {
+	@Param({ "TreeList", "ArrayList", "LinkedList" })
+	public String impl;
+
+	@Param({ "10000" })
+	public int size;
+
+	private List<Object> list;
+	private int next;
+
+	@Setup
+	public void fill() {
+		if ("TreeList".equals(impl))
+			list = new XLSOptimizedTreeList();
+		else if ("ArrayList".equals(impl))
+			list = new ArrayList<Object>();
+		else
+			list = new LinkedList<Object>();
+		for (int i = 0; i < size; i++)
+			list.add(Integer.valueOf(i));
+	}
+
+	/** a spread of indexes which does not favour either end of the list */
+	private int index() {
+		next = (next + 7919) % size;
+		return next;
+	}
+
+	@Benchmark
+	public Object get() {
+		return list.get(index());
+	}
+
+	@Benchmark
+	public Object addRemoveLast() {
+		list.add(Integer.valueOf(next));
+		return list.remove(list.size() - 1);
+	}
+
+	@Benchmark
+	public Object insertRemove() {
+		int i = index();
+		list.add(i, Integer.valueOf(i));
+		return list.remove(i);
+	}
+
+	@Benchmark
+	public void iterate(Blackhole bh) {
+		for (Iterator<Object> it = list.iterator(); it.hasNext();)
+			bh.consume(it.next());
+	}
+}
@@ -0,0 +1,376 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import io.starter.formats.XLS.BiffRec;
+import io.starter.formats.XLS.Boundsheet;
+import io.starter.formats.XLS.CellNotFoundException;
+import io.starter.formats.XLS.Mulblank;
+import io.starter.formats.XLS.XLSConstants;
+import io.starter.formats.XLS.XLSRecord;
+
+/**
+ * Walks the populated cells of a WorkSheet without creating a CellHandle for
+ * each one.
+ * <p>
+ * A CellCursor is a reusable view onto one cell at a time: {@link #next()}
+ * moves it to the next populated cell and the getters then read that cell's
+ * record directly. Cells are visited in row major order by default, or in
+ * column major order, optionally limited to a rectangular area. Each cell
+ * covered by a MULBLANK record is visited separately.
+ * <p>
+ * Since no state is kept besides the current position, a cursor should not be
+ * used across changes to the cells of the sheet; call {@link #reset()} to
+ * start again after editing. Use {@link #getCellHandle()} where the full
+ * CellHandle API is needed for the current cell.
+ * 
+ * <pre>
+ * CellCursor cur = sheet.getCellCursor();
+ * while (cur.next()) {
+ * 	if (cur.getCellType() == Cell.TYPE_DOUBLE)
+ * 		total += cur.getDouble();
+ * }
+ * </pre>
+ * 
+ * @see WorkSheetHandle#getCellCursor()
+ */
+public class CellCursor implements Cell {
+
+	private final WorkSheetHandle wsh;
+	private final Boundsheet sheet;
+	private final boolean columnMajor;
+	private final int firstRow, firstCol, lastRow, lastCol;
+
+	// the cells of the current row or column
+	private BiffRec[] line = new BiffRec[32];
+	private int lineLength, linePos, lineIndex;
+
+	// a MULBLANK whose columns are being visited in row major order
+	private Mulblank mulblank;
+	private int mulblankCol, mulblankLast;
+
+	private XLSRecord cell;
+	private int row, col;
+
+	/**
+	 * Creates a cursor over an area of a sheet.
+	 * 
+	 * @param sheet
+	 *            the sheet to walk
+	 * @param columnMajor
+	 *            whether to visit cells column by column instead of row by
+	 *            row
+	 * @param firstRow
+	 *            the zero-based first row of the area
+	 * @param firstCol
+	 *            the zero-based first column of the area
+	 * @param lastRow
+	 *            the zero-based last row of the area, inclusive
+	 * @param lastCol
+	 *            the zero-based last column of the area, inclusive
+	 */
+	CellCursor(WorkSheetHandle sheet, boolean columnMajor, int firstRow, int firstCol, int lastRow, int lastCol) {
+		this.wsh = sheet;
+		this.sheet = sheet.getMysheet();
+		this.columnMajor = columnMajor;
+		this.firstRow = Math.max(firstRow, 0);
+		this.firstCol = Math.max(firstCol, 0);
+		this.lastRow = lastRow;
+		this.lastCol = lastCol;
+		reset();
+	}
+
+	/**
+	 * Moves the cursor back to before the first cell.
+	 */
+	public void reset() {
+		lineLength = 0;
+		linePos = 0;
+		lineIndex = (columnMajor ? firstCol : firstRow) - 1;
+		mulblank = null;
+		cell = null;
+		row = -1;
+		col = -1;
+	}
+
+	/**
+	 * Moves the cursor to the next populated cell.
+	 * 
+	 * @return false if there are no more cells
+	 */
+	public boolean next() {
+		for (;;) {
+			if (mulblank != null) {
+				if (mulblankCol <= mulblankLast) {
+					cell = mulblank;
+					col = mulblankCol++;
+					mulblank.setCurrentCell((short) col);
+					return true;
+				}
+				mulblank = null;
+			}
+
+			while (linePos < lineLength) {
+				XLSRecord rec = (XLSRecord) line[linePos];
+				line[linePos++] = null;
+				if (columnMajor) {
+					int r = rec.getRowNumber();
+					if (r < firstRow)
+						continue;
+					if (r > lastRow) {
+						clearLine();
+						break;
+					}
+					if (rec.getOpcode() == XLSConstants.MULBLANK) {
+						Mulblank m = (Mulblank) rec;
+						if (lineIndex < m.getColFirst() || lineIndex > m.getColLast())
+							continue;
+						m.setCurrentCell((short) lineIndex);
+					}
+					cell = rec;
+					row = r;
+					col = lineIndex;
+					return true;
+				}
+
+				if (rec.getOpcode() == XLSConstants.MULBLANK) {
+					Mulblank m = (Mulblank) rec;
+					mulblankCol = Math.max(m.getColFirst(), firstCol);
+					mulblankLast = Math.min(m.getColLast(), lastCol);
+					if (mulblankCol <= mulblankLast) {
+						mulblank = m;
+						row = lineIndex;
+						break;
+					}
+					continue;
+				}
+				int c = rec.getColNumber();
+				if (c < firstCol)
+					continue;
+				if (c > lastCol) {
+					clearLine();
+					break;
+				}
+				cell = rec;
+				row = lineIndex;
+				col = c;
+				return true;
+			}
+			if (mulblank != null)
+				continue;
+
+			if (!nextLine()) {
+				cell = null;
+				return false;
+			}
+		}
+	}
+
+	/** loads the next populated row or column within the area */
+	private boolean nextLine() {
+		int last = columnMajor ? lastCol : lastRow;
+		if (lineIndex >= last)
+			return false;
+		int next = columnMajor ? sheet.getNextColWithCells(lineIndex + 1)
+				: sheet.getNextRowWithCells(lineIndex + 1);
+		if (next < 0 || next > last) {
+			lineIndex = last;
+			return false;
+		}
+		lineIndex = next;
+		lineLength = fill(next);
+		if (lineLength > line.length) {
+			line = new BiffRec[Integer.highestOneBit(lineLength) << 1];
+			lineLength = fill(next);
+		}
+		linePos = 0;
+		return true;
+	}
+
+	private int fill(int index) {
+		return columnMajor ? sheet.getCellsByCol(index, line) : sheet.getCellsByRow(index, line);
+	}
+
+	private void clearLine() {
+		while (linePos < lineLength)
+			line[linePos++] = null;
+	}
+
+	/** throws if the cursor is not on a cell */
+	private XLSRecord current() {
+		if (cell == null)
+			throw new IllegalStateException("cursor is not positioned on a cell");
+		return cell;
+	}
+
+	/** Gets the zero-based row index of the current cell. */
+	public int getRowNum() {
+		current();
+		return row;
+	}
+
+	/** Gets the zero-based column index of the current cell. */
+	public int getColNum() {
+		current();
+		return col;
+	}
+
+	/** Gets the address of the current cell, for example "B3". */
+	public String getCellAddress() {
+		return ExcelTools.formatLocation(new int[] { getRowNum(), col });
+	}
+
+	public String getWorkSheetName() {
+		return sheet.getSheetName();
+	}
+
+	/**
+	 * Gets the type of the current cell.
+	 * 
+	 * @return one of the <code>Cell.TYPE_</code> constants
+	 */
+	public int getCellType() {
+		return current().getCellType();
+	}
+
+	/** Returns whether the current cell is blank. */
+	public boolean isBlank() {
+		return current().isBlank;
+	}
+
+	/** Returns whether the current cell is a formula. */
+	public boolean isFormula() {
+		return current().isFormula();
+	}
+
+	public boolean isDate() {
+		XLSRecord rec = current();
+		if (rec.myxf == null || rec.isString || rec.isBoolean || rec.isBlank)
+			return false;
+		return rec.myxf.isDatePattern();
+	}
+
+	/**
+	 * Gets the value of the current cell.
+	 * 
+	 * @see CellHandle#getVal()
+	 */
+	public Object getVal() {
+		return FormulaHandle.sanitizeValue(current().getInternalVal());
+	}
+
+	/**
+	 * Gets the value of the current cell as a double.
+	 * 
+	 * @see CellHandle#getDoubleVal()
+	 */
+	public double getDouble() {
+		return current().getDblVal();
+	}
+
+	/**
+	 * Gets the value of the current cell as an int.
+	 * 
+	 * @see CellHandle#getIntVal()
+	 */
+	public int getInt() {
+		return current().getIntVal();
+	}
+
+	/**
+	 * Gets the value of the current cell as a boolean.
+	 * 
+	 * @see CellHandle#getBooleanVal()
+	 */
+	public boolean getBoolean() {
+		return current().getBooleanVal();
+	}
+
+	/**
+	 * Gets the value of the current cell as a String.
+	 * 
+	 * @see CellHandle#getStringVal()
+	 */
+	public String getString() {
+		return current().getStringVal();
+	}
+
+	/** Gets the ID of the current cell's format. */
+	public int getFormatId() {
+		return current().getIxfe();
+	}
+
+	/**
+	 * Gets the value of the current cell with its number format applied.
+	 * 
+	 * @see CellHandle#getFormattedStringVal()
+	 */
+	public String getFormattedStringVal() {
+		return appendFormattedStringVal(new StringBuilder()).toString();
+	}
+
+	/**
+	 * Appends the value of the current cell with its number format applied.
+	 * 
+	 * @return the buffer
+	 */
+	public StringBuilder appendFormattedStringVal(StringBuilder out) {
+		return sheet.getWorkBook().getFormatRenderer(current().myxf).format(this, out);
+	}
+
+	/** the date system of the workbook, for date formatting */
+	DateConverter.DateFormat getDateFormat() {
+		return sheet.getWorkBook().getDateFormat();
+	}
+
+	/**
+	 * Gets the underlying record of the current cell. <br>
+	 * for internal API use only
+	 */
+	public BiffRec getCell() {
+		return current();
+	}
+
+	/**
+	 * Gets a CellHandle for the current cell.
+	 * <p>
+	 * A new handle is created on each call unless CellHandle caching is enabled
+	 * on the WorkSheetHandle.
+	 */
+	public CellHandle getCellHandle() {
+		current();
+		try {
+			return wsh.getCell(row, col, wsh.getUseCache());
+		} catch (CellNotFoundException e) {
+			// the sheet was changed under the cursor
+			throw new IllegalStateException(e.toString());
+		}
+	}
+
+	@Override
+	public String toString() {
+		if (cell == null)
+			return "CellCursor:" + wsh.getSheetName();
+		return "CellCursor:" + wsh.getSheetName() + "!" + getCellAddress();
+	}
+}
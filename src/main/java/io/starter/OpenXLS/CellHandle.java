@@ -89,6 +89,7 @@ import io.starter.formats.XLS.charts.Ai;
 import io.starter.formats.XLS.formulas.Ptg;
 import io.starter.formats.XLS.formulas.PtgRef;
 import io.starter.formats.cellformat.CellFormatFactory;
+import io.starter.formats.cellformat.CellFormatRenderer;
 import io.starter.toolkit.Logger;
 import io.starter.toolkit.StringTool;
 
@@ -1252,8 +1253,30 @@ public class CellHandle implements Cell, Serializable, Handle, Comparable<CellHa
 	 *         type and, if present, the number format pattern
 	 */
 	public String getFormattedStringVal() {
+		return getFormatRenderer().format(this);
+	}
+
+	/**
+	 * Appends the value of the cell with the number format applied to the
+	 * given buffer. This gives the same result as
+	 * {@link #getFormattedStringVal()} but allows a buffer to be reused when
+	 * formatting many cells.
+	 * 
+	 * @param out
+	 *            the buffer to append to
+	 * @return the buffer
+	 */
+	public StringBuilder appendFormattedStringVal(StringBuilder out) {
+		return getFormatRenderer().format(this, out);
+	}
+
+	/** gets the workbook's compiled renderer for this cell's number format */
+	private CellFormatRenderer getFormatRenderer() {
 		FormatHandle myfmt = this.getFormatHandle();
-		return CellFormatFactory.fromPatternString(myfmt.getFormatPattern()).format(this);
+		Xf xf = myfmt.getXf();
+		if (xf != null && xf.getWorkBook() != null)
+			return xf.getWorkBook().getFormatRenderer(xf);
+		return CellFormatFactory.compile(myfmt.getFormatPattern());
 	}
 
 	/**
@@ -1271,11 +1294,10 @@ public class CellHandle implements Cell, Serializable, Handle, Comparable<CellHa
 	 *         type and, if present, the number format pattern
 	 */
 	public String getFormattedStringVal(boolean formatForXML) {
-		FormatHandle myfmt = this.getFormatHandle();
 		String val = this.getVal().toString();
 		if (formatForXML)
 			val = io.starter.formats.XLS.OOXMLAdapter.stripNonAscii(val).toString();
-		return CellFormatFactory.fromPatternString(myfmt.getFormatPattern()).format(val);
+		return getFormatRenderer().format(val);
 	}
 
 	/**
@@ -1570,14 +1592,12 @@ public class CellHandle implements Cell, Serializable, Handle, Comparable<CellHa
 		if (sh == null) {
 			return null;
 		}
-		ConditionalFormatHandle[] cfs = sh.getConditionalFormatHandles();
-		ArrayList<ConditionalFormatHandle> cfhandles = new ArrayList<ConditionalFormatHandle>();
-		for (int i = 0; i < cfs.length; i++) {
-			if (cfs[i].contains(this))
-				cfhandles.add(cfs[i]);
-		}
-		ConditionalFormatHandle[] c = new ConditionalFormatHandle[cfhandles.size()];
-		return (ConditionalFormatHandle[]) cfhandles.toArray(c);
+		int[] rc = this.getIntLocation();
+		List<Condfmt> cfmts = sh.getMysheet().getConditionalFormats(rc[0], rc[1]);
+		ConditionalFormatHandle[] c = new ConditionalFormatHandle[cfmts.size()];
+		for (int i = 0; i < c.length; i++)
+			c[i] = new ConditionalFormatHandle(cfmts.get(i), sh);
+		return c;
 	}
 
 	/**
@@ -1839,6 +1859,8 @@ public class CellHandle implements Cell, Serializable, Handle, Comparable<CellHa
 	public void setVal(Object obj) throws CellTypeMismatchException {
 		if (this.wbh.getFormulaCalculationMode() != WorkBook.CALCULATE_EXPLICIT)
 			this.clearAffectedCells(); // blow out cache
+		else
+			this.invalidateLookupIndexes(); // lookups read values, not the cache
 
 		if (obj instanceof java.sql.Date) {
 			this.setVal((java.sql.Date) obj, null);
@@ -1892,6 +1914,7 @@ public class CellHandle implements Cell, Serializable, Handle, Comparable<CellHa
 					changeCellType(" "); // avoid potential issues with string
 											// values beginning with "="
 				mycell.setStringVal(s);
+				this.invalidateLookupIndexes();
 			}
 		} catch (Exception e) {
 			throw new CellTypeMismatchException(e.toString());
@@ -1918,6 +1941,7 @@ public class CellHandle implements Cell, Serializable, Handle, Comparable<CellHa
 					changeCellType(" "); // avoid potential issues with string
 											// values beginning with "="
 				((Labelsst) mycell).setStringVal(us);
+				this.invalidateLookupIndexes();
 			}
 		} catch (Exception e) {
 			throw new CellTypeMismatchException(e.toString());
@@ -2685,6 +2709,15 @@ public class CellHandle implements Cell, Serializable, Handle, Comparable<CellHa
 		rt.clearAffectedFormulaCells(this);
 	}
 
+	/**
+	 * Drops the lookup indexes over ranges containing this cell. Unlike the
+	 * formula cache these must be dropped whatever the calculation mode as
+	 * VLOOKUP and MATCH read the indexed values rather than the cells.
+	 */
+	protected void invalidateLookupIndexes() {
+		this.wbh.getWorkBook().getRefTracker().invalidateLookupIndexes(mycell);
+	}
+
 	/**
 	 * Calculates and returns all formulas on the same sheet that reference this
 	 * CellHandle. <br>
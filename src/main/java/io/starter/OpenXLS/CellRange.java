@@ -52,6 +52,7 @@ import io.starter.formats.XLS.Condfmt;
 import io.starter.formats.XLS.FormulaNotFoundException;
 import io.starter.formats.XLS.Mergedcells;
 import io.starter.formats.XLS.Name;
+import io.starter.formats.XLS.RangeSorter;
 import io.starter.formats.XLS.RowNotFoundException;
 import io.starter.formats.XLS.WorkSheetNotFoundException;
 import io.starter.formats.XLS.XLSConstants;
@@ -373,6 +374,34 @@ public class CellRange implements Serializable {
 		return lastcellrow - firstcellrow + 1;
 	}
 
+	/**
+	 * Gets the zero-based index of the first row in the range.
+	 */
+	public int getFirstRow() {
+		return firstcellrow - 1;
+	}
+
+	/**
+	 * Gets the zero-based index of the last row in the range.
+	 */
+	public int getLastRow() {
+		return lastcellrow - 1;
+	}
+
+	/**
+	 * Gets the zero-based index of the first column in the range.
+	 */
+	public int getFirstCol() {
+		return firstcellcol;
+	}
+
+	/**
+	 * Gets the zero-based index of the last column in the range.
+	 */
+	public int getLastCol() {
+		return lastcellcol;
+	}
+
 	/**
 	 * Returns an array of the row numbers referenced by this CellRange
 	 * 
@@ -1049,6 +1078,44 @@ public class CellRange implements Serializable {
 		this.sort(columnName, cp, ascending);
 	}
 
+	/**
+	 * Sorts the rows of this range on the values of one or more of its columns.
+	 * 
+	 * Values are ordered as Excel orders them: numbers before text before
+	 * booleans before errors, with text compared regardless of case, and blank
+	 * cells last in either direction. Rows with equal keys keep their order.
+	 * 
+	 * Unlike sort(String, boolean) this moves the cell records in place and
+	 * creates no blanks, so it is suited to large ranges.
+	 * 
+	 * @param columns
+	 *            the 0 based key columns, most significant first
+	 * @param ascending
+	 *            the direction of each key column
+	 */
+	public void sortRows(int[] columns, boolean[] ascending) {
+		RangeSorter.sortRows(this.getSheet().getBoundsheet(), getFirstRow(), getFirstCol(), getLastRow(),
+				getLastCol(), columns, ascending);
+		if (cells != null)
+			isDirty = true;
+	}
+
+	/**
+	 * Sorts the columns of this range on the values of one or more of its rows,
+	 * using the same ordering as sortRows(int[], boolean[]).
+	 * 
+	 * @param rows
+	 *            the 0 based key rows, most significant first
+	 * @param ascending
+	 *            the direction of each key row
+	 */
+	public void sortColumns(int[] rows, boolean[] ascending) {
+		RangeSorter.sortCols(this.getSheet().getBoundsheet(), getFirstRow(), getFirstCol(), getLastRow(),
+				getLastCol(), rows, ascending);
+		if (cells != null)
+			isDirty = true;
+	}
+
 	public static String xmlResponsePre = "<CellRange>";
 	public static String xmlResponsePost = "</CellRange>";
 
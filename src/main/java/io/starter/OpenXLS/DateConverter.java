@@ -479,6 +479,9 @@ public class DateConverter {
 			if (null != book) {
 				format = book.getDateFormat();
 			} 
+		} else if (cell instanceof CellCursor) {
+			value = ((CellCursor) cell).getDouble();
+			format = ((CellCursor) cell).getDateFormat();
 		} else {
 			value = Double.parseDouble( cell.getVal().toString() );
 		}
@@ -2766,9 +2766,10 @@ public class FormatHandle implements Handle, FormatConstants {
 	 * @param xf
 	 */
 	private void updateXf(Xf xf) {
-		if (!myxf.toString().equals(xf.toString())) {
+		if (!myxf.matches(xf)) {
+			Xf match = wkbook.getMatchingXf(xf); // existing xf with the same formatting, if any
 			if (myxf.getUseCount() <= 1 && xfe > 15) { // used only by one cell, OK to modify 
-				if (writeImmediate || wkbook.getFormatCache().get(xf.toString()) == null) {
+				if (writeImmediate || match == null) {
 					// myxf hasn't been used yet; modify bytes and re-init ***
 					byte[] xfbytes = xf.getBytes();
 					myxf.setData(xfbytes);
@@ -2781,7 +2782,7 @@ public class FormatHandle implements Handle, FormatConstants {
 				} else {
 				    	if (myxf.getUseCount()>0) 
 				    	    myxf.decUseCoount();	// flag original xf that 1 less record is referencing it
-					myxf = (Xf) wkbook.getFormatCache().get(xf.toString());
+					myxf = match;
 					xfe = myxf.getIdx(); // update the pointer
 					if (xfe == -1) // hasn't been added to wb yet - should this ever happen???
 					    myxf = duplicateXf(xf); // create a duplicate and leave original
@@ -2791,10 +2792,10 @@ public class FormatHandle implements Handle, FormatConstants {
 			} else { // cannot modify original - either find matching or create new
 			    	if (myxf.getUseCount()>0) 
 			    	    myxf.decUseCoount();	// flag original xf that 1 less record is referencing it
-				if (wkbook.getFormatCache().get(xf.toString()) == null) { // doesn't exist yet
+				if (match == null) { // doesn't exist yet
 					myxf = duplicateXf(xf); // create a duplicate and leave original
 				} else {
-					myxf = (Xf) (wkbook.getFormatCache().get(xf.toString()));
+					myxf = match;
 					xfe = myxf.getIdx(); // update the pointer
 					if (xfe == -1) // hasn't been added to the record store yet 	// - should ever happen???
 					    myxf = duplicateXf(xf); // create a duplicate and leave original
@@ -0,0 +1,360 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import io.starter.toolkit.Logger;
+
+/**
+ * Writes the cells of a WorkSheet as CSV, tab separated text, JSON lines or
+ * an HTML table.
+ * <p>
+ * The exporter walks only the populated cells, in row order, with a
+ * {@link CellCursor}, and writes each row to the destination as soon as it is
+ * complete, so memory use does not grow with the size of the sheet. Each line
+ * of output is one sheet row, starting from the first row and column of the
+ * exported area; empty rows become empty lines and every line is padded to the
+ * last populated column so that fields line up.
+ * <p>
+ * Values are written raw by default: numbers in full precision, booleans and
+ * text as they are, formulas as their calculated value. With
+ * {@link #setFormatted(boolean)} each cell is written as displayed, with its
+ * number format applied through the workbook's cached format renderers.
+ * <ul>
+ * <li>{@link #CSV} and {@link #TSV} lines end in CR LF; fields containing the
+ * separator, a quote or a line break are quoted as described in RFC 4180.
+ * <li>{@link #JSON_LINES} writes each row as a JSON array, with blank cells
+ * as <code>null</code> and raw values typed.
+ * <li>{@link #HTML} writes a <code>table</code> element with a
+ * <code>tr</code> per row and a <code>td</code> per cell.
+ * </ul>
+ * 
+ * <pre>
+ * Writer out = new FileWriter(&quot;sheet.csv&quot;);
+ * new SheetExporter(sheet, SheetExporter.CSV).write(out);
+ * out.close();
+ * </pre>
+ * 
+ * @see WorkSheetHandle#export(Writer, int)
+ */
+public class SheetExporter {
+	/** Comma separated values. */
+	public static final int CSV = 0;
+	/** Tab separated values. */
+	public static final int TSV = 1;
+	/** One JSON array per row. */
+	public static final int JSON_LINES = 2;
+	/** An HTML table. */
+	public static final int HTML = 3;
+
+	private final WorkSheetHandle sheet;
+	private final int format;
+	private boolean formatted = false;
+	private int firstRow = 0, firstCol = 0;
+	private int lastRow = Integer.MAX_VALUE, lastCol = Integer.MAX_VALUE;
+
+	// reused for the formatted text of each cell
+	private final StringBuilder text = new StringBuilder(64);
+
+	/**
+	 * Creates an exporter of a whole sheet.
+	 * 
+	 * @param sheet
+	 *            the sheet to export
+	 * @param format
+	 *            one of CSV, TSV, JSON_LINES or HTML
+	 */
+	public SheetExporter(WorkSheetHandle sheet, int format) {
+		if (format < CSV || format > HTML)
+			throw new IllegalArgumentException("unknown export format: " + format);
+		this.sheet = sheet;
+		this.format = format;
+	}
+
+	/**
+	 * Sets whether cells are written with their number formats applied, as
+	 * displayed, rather than as raw values. The default is raw values.
+	 */
+	public void setFormatted(boolean formatted) {
+		this.formatted = formatted;
+	}
+
+	/** Returns whether cells are written with their number formats applied. */
+	public boolean isFormatted() {
+		return formatted;
+	}
+
+	/**
+	 * Limits the export to an area of the sheet. The first line and field of
+	 * the output are those of the first row and column of the area.
+	 * 
+	 * @param firstRow
+	 *            the zero-based first row of the area
+	 * @param firstCol
+	 *            the zero-based first column of the area
+	 * @param lastRow
+	 *            the zero-based last row of the area, inclusive
+	 * @param lastCol
+	 *            the zero-based last column of the area, inclusive
+	 */
+	public void setArea(int firstRow, int firstCol, int lastRow, int lastCol) {
+		if (firstRow < 0 || firstCol < 0 || lastRow < firstRow || lastCol < firstCol)
+			throw new IllegalArgumentException("invalid area");
+		this.firstRow = firstRow;
+		this.firstCol = firstCol;
+		this.lastRow = lastRow;
+		this.lastCol = lastCol;
+	}
+
+	/**
+	 * Writes the sheet to a byte stream encoded as UTF-8. The stream is
+	 * flushed but not closed.
+	 */
+	public void write(OutputStream out) throws IOException {
+		Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 65536);
+		write(w);
+	}
+
+	/**
+	 * Writes the sheet to a character stream, one row at a time. The stream is
+	 * flushed but not closed.
+	 */
+	public void write(Writer out) throws IOException {
+		CellCursor cur = sheet.getCellCursor(firstRow, firstCol, lastRow, lastCol, false);
+		// the record of the widest column may overstate it, never understate
+		int endCol = Math.min(lastCol, sheet.getMysheet().getRealMaxCol()) + 1;
+		StringBuilder line = new StringBuilder(256);
+
+		if (format == HTML)
+			out.write("<table>\n");
+		int row = firstRow - 1, col = firstCol;
+		while (cur.next()) {
+			int r = cur.getRowNum();
+			if (r != row) {
+				if (row >= firstRow)
+					endLine(line, col, endCol);
+				for (int empty = Math.max(row + 1, firstRow); empty < r; empty++) {
+					startLine(line);
+					endLine(line, firstCol, endCol);
+					if (line.length() > 8192) {
+						out.append(line);
+						line.setLength(0);
+					}
+				}
+				out.append(line);
+				line.setLength(0);
+				startLine(line);
+				row = r;
+				col = firstCol;
+			}
+			int c = cur.getColNum();
+			for (; col < c; col++)
+				appendBlank(line, col);
+			appendCell(line, cur, c);
+			col = c + 1;
+		}
+		if (row >= firstRow)
+			endLine(line, col, endCol);
+		out.append(line);
+		if (format == HTML)
+			out.write("</table>\n");
+		out.flush();
+	}
+
+	private void startLine(StringBuilder line) {
+		if (format == JSON_LINES)
+			line.append('[');
+		else if (format == HTML)
+			line.append("<tr>");
+	}
+
+	/** pads the line to the last column and terminates it */
+	private void endLine(StringBuilder line, int col, int endCol) {
+		for (; col < endCol; col++)
+			appendBlank(line, col);
+		switch (format) {
+		case JSON_LINES:
+			line.append("]\n");
+			break;
+		case HTML:
+			line.append("</tr>\n");
+			break;
+		default:
+			line.append("\r\n");
+		}
+	}
+
+	/** appends the separator which precedes the field of a column */
+	private void appendSeparator(StringBuilder line, int col) {
+		if (col == firstCol)
+			return;
+		if (format == CSV || format == JSON_LINES)
+			line.append(',');
+		else if (format == TSV)
+			line.append('\t');
+	}
+
+	private void appendBlank(StringBuilder line, int col) {
+		appendSeparator(line, col);
+		if (format == JSON_LINES)
+			line.append("null");
+		else if (format == HTML)
+			line.append("<td></td>");
+	}
+
+	private void appendCell(StringBuilder line, CellCursor cur, int col) {
+		if (cur.isBlank()) {
+			appendBlank(line, col);
+			return;
+		}
+		appendSeparator(line, col);
+		if (format == HTML)
+			line.append("<td>");
+		if (formatted && cur.getCellType() != Cell.TYPE_BOOLEAN) {
+			text.setLength(0);
+			try {
+				cur.appendFormattedStringVal(text);
+			} catch (Exception e) {
+				Logger.logWarn("SheetExporter: error formatting " + cur.getCellAddress() + ":" + e.toString());
+				text.setLength(0);
+				text.append(cur.getVal());
+			}
+			appendText(line, text);
+		} else {
+			Object val = cur.getVal();
+			if (val instanceof Number)
+				appendNumber(line, ((Number) val).doubleValue());
+			else if (val instanceof Boolean)
+				line.append(format == JSON_LINES ? val.toString() : val.toString().toUpperCase());
+			else if (val == null)
+				line.append(format == JSON_LINES ? "null" : "");
+			else
+				appendText(line, val.toString());
+		}
+		if (format == HTML)
+			line.append("</td>");
+	}
+
+	private void appendNumber(StringBuilder line, double d) {
+		if (Double.isNaN(d) || Double.isInfinite(d))
+			line.append(format == JSON_LINES ? "null" : "");
+		else if (d == Math.rint(d) && Math.abs(d) < 1e15)
+			line.append((long) d);
+		else
+			line.append(d);
+	}
+
+	private void appendText(StringBuilder line, CharSequence s) {
+		switch (format) {
+		case JSON_LINES:
+			appendJSONString(line, s);
+			break;
+		case HTML:
+			appendHTML(line, s);
+			break;
+		default:
+			appendDelimited(line, s, format == TSV ? '\t' : ',');
+		}
+	}
+
+	/** quotes a field if it contains the separator, a quote or a line break */
+	private static void appendDelimited(StringBuilder line, CharSequence s, char separator) {
+		boolean quote = false;
+		for (int i = 0; i < s.length() && !quote; i++) {
+			char ch = s.charAt(i);
+			quote = ch == separator || ch == '"' || ch == '\r' || ch == '\n';
+		}
+		if (!quote) {
+			line.append(s);
+			return;
+		}
+		line.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if (ch == '"')
+				line.append('"');
+			line.append(ch);
+		}
+		line.append('"');
+	}
+
+	private static void appendJSONString(StringBuilder line, CharSequence s) {
+		line.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			switch (ch) {
+			case '"':
+				line.append("\\\"");
+				break;
+			case '\\':
+				line.append("\\\\");
+				break;
+			case '\n':
+				line.append("\\n");
+				break;
+			case '\r':
+				line.append("\\r");
+				break;
+			case '\t':
+				line.append("\\t");
+				break;
+			default:
+				if (ch < 0x20) {
+					line.append("\\u00");
+					line.append(Character.forDigit(ch >> 4, 16));
+					line.append(Character.forDigit(ch & 0xF, 16));
+				} else
+					line.append(ch);
+			}
+		}
+		line.append('"');
+	}
+
+	private static void appendHTML(StringBuilder line, CharSequence s) {
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			switch (ch) {
+			case '&':
+				line.append("&amp;");
+				break;
+			case '<':
+				line.append("&lt;");
+				break;
+			case '>':
+				line.append("&gt;");
+				break;
+			case '"':
+				line.append("&quot;");
+				break;
+			default:
+				line.append(ch);
+			}
+		}
+	}
+}
@@ -49,6 +49,7 @@ import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
+import java.util.UUID;
 import java.util.Vector;
 
 import io.starter.formats.LEO.BlockByteReader;
@@ -70,6 +71,7 @@ import io.starter.formats.XLS.Mergedcells;
 import io.starter.formats.XLS.Mulblank;
 import io.starter.formats.XLS.Name;
 import io.starter.formats.XLS.OOXMLAdapter;
+import io.starter.formats.XLS.OOXMLPackage;
 import io.starter.formats.XLS.OOXMLReader;
 import io.starter.formats.XLS.OOXMLWriter;
 import io.starter.formats.XLS.PivotCache;
@@ -81,6 +83,7 @@ import io.starter.formats.XLS.XLSConstants;
 import io.starter.formats.XLS.Xf;
 import io.starter.formats.XLS.charts.Chart;
 import io.starter.formats.XLS.charts.OOXMLChart;
+import io.starter.toolkit.ByteTools;
 import io.starter.toolkit.JFileWriter;
 import io.starter.toolkit.Logger;
 import io.starter.toolkit.ProgressListener;
@@ -421,6 +424,63 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook, Handle {
 		return mybook.getCalcMode();
 	}
 
+	/**
+	 * Set whether recalculation runs on multiple threads.
+	 * 
+	 * When enabled, {@link #recalc()} and {@link #calculateFormulas()} split the
+	 * formulas to be calculated into levels which depend only on earlier levels,
+	 * and calculate the formulas within each level concurrently on the common
+	 * ForkJoinPool. Formulas using volatile functions such as INDIRECT or OFFSET
+	 * are still calculated one at a time.
+	 * 
+	 * Disabled by default.
+	 * 
+	 * @param parallel
+	 *            whether to calculate independent formulas concurrently
+	 */
+	public void setParallelCalculation(boolean parallel) {
+		mybook.setParallelCalc(parallel);
+	}
+
+	/**
+	 * Get whether recalculation runs on multiple threads.
+	 * 
+	 * @see #setParallelCalculation(boolean)
+	 */
+	public boolean getParallelCalculation() {
+		return mybook.getParallelCalc();
+	}
+
+	/**
+	 * Set whether XLS output is prepared on multiple threads.
+	 * 
+	 * When enabled, writing a workbook with more than one worksheet assembles
+	 * the records of each worksheet and encodes them into a separate buffer
+	 * concurrently on the common ForkJoinPool. Only the calculation of dirty
+	 * formulas and the stream offsets are still computed one at a time. The
+	 * output is identical to a single threaded write, but every worksheet is
+	 * held in memory in its encoded form until it is written.
+	 * 
+	 * Workbooks containing charts are always written on a single thread.
+	 * 
+	 * Disabled by default.
+	 * 
+	 * @param parallel
+	 *            whether to prepare worksheets concurrently
+	 */
+	public void setParallelWrite(boolean parallel) {
+		mybook.setParallelWrite(parallel);
+	}
+
+	/**
+	 * Get whether XLS output is prepared on multiple threads.
+	 * 
+	 * @see #setParallelWrite(boolean)
+	 */
+	public boolean getParallelWrite() {
+		return mybook.getParallelWrite();
+	}
+
 	/**
 	 * set the workbook to protected mode
 	 * 
@@ -1114,6 +1174,19 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook, Handle {
 		this.initFromStream(inx);
 	}
 
+	/**
+	 * constructor which takes a ByteBuffer containing the bytes of a valid XLS
+	 * or XLSX file, such as a direct or memory-mapped buffer. The bytes from
+	 * the buffer's position to its limit are read in place, so the buffer
+	 * must not be modified while the workbook is in use.
+	 * 
+	 * @param ByteBuffer
+	 *            contains the valid XLS or XLSX bytes for reading
+	 */
+	public WorkBookHandle(ByteBuffer buf) {
+		this.initFromBuffer(buf);
+	}
+
 	/**
 	 * Initialization of this workbook handle from a leoFile;
 	 * 
@@ -1135,15 +1208,23 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook, Handle {
 	}
 
 	/**
-	 * Initialize this workbook from a stream, unfortunately our byte backer
-	 * requires a file, so create a tempfile and init from that
+	 * Initialize this workbook from a stream. XLS and XLSX streams are read
+	 * into memory and parsed from there; anything else, such as CSV, is
+	 * copied to a tempfile and handled by initFromFile
 	 * 
 	 */
 	protected void initFromStream(InputStream input) {
 		try {
+			byte[] b = ByteTools.readFully(input);
+			input.close();
+			ByteBuffer bbf = ByteBuffer.wrap(b);
+			if (OOXMLPackage.isZip(bbf) || LEOFile.checkIsLEO(b, b.length)) {
+				this.initFromBuffer(bbf);
+				return;
+			}
 			File target = TempFileManager.createTempFile("WBP", ".tmp");
 
-			JFileWriter.writeToFile(input, target);
+			JFileWriter.writeToFile(new ByteArrayInputStream(b), target);
 			this.initFromFile(target.getAbsoluteFile());
 			if (this.myLEOFile != null)// it would be if XLSX or XLSM ...
 										// 20090323 KSC
@@ -1183,13 +1264,7 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook, Handle {
 		// check first bytes to see if this is a zipfile (OOXML)
 		if ((char) barray[0] == 'P' && (char) barray[1] == 'K') {
 			try {
-				// added "." fixes Baxter Open Bug [BugTracker 2909]
-				File ftmp = TempFileManager.createTempFile("WBP", ".tmp");
-				FileOutputStream fous = new FileOutputStream(ftmp);
-				fous.write(barray);
-				fous.flush();
-				fous.close();
-				this.initFromFile(ftmp);
+				this.initFromBuffer(ByteBuffer.wrap(barray));
 				return;
 			} catch (Exception e) {
 				Logger.logErr("Could not parse XLSX from bytes."
@@ -1197,9 +1272,31 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook, Handle {
 				return;
 			}
 		}
+		this.initFromBuffer(ByteBuffer.wrap(barray));
+	}
 
-		ByteBuffer bbf = ByteBuffer.wrap(barray);
+	/**
+	 * Initialize this workbook from the bytes of an XLS or XLSX file held in
+	 * a heap, direct or mapped buffer, without copying them to a file
+	 * 
+	 * @param buf
+	 */
+	private void initFromBuffer(ByteBuffer buf) {
+		ByteBuffer bbf = buf.slice();
 		bbf.order(ByteOrder.LITTLE_ENDIAN);
+		if (OOXMLPackage.isZip(bbf)) {
+			// named like a tempfile so that its pass-through parts are kept
+			// for writing, as there is no source file to re-read them from
+			this.name = "WBP" + UUID.randomUUID() + ".tmp";
+			try {
+				this.initXLSX(OOXMLPackage.open(bbf, this.name), this.name);
+			} catch (IOException e) {
+				throw new WorkBookException(
+						"WorkBookHandle OOXML Read failed: " + e.toString(),
+						WorkBookException.UNSPECIFIED_INIT_ERROR, e);
+			}
+			return;
+		}
 		myLEOFile = new LEOFile(bbf);
 		if (myLEOFile.hasWorkBook()) {
 			try {
@@ -1291,6 +1388,19 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook, Handle {
 	 * initialize from an XLSX/OOXML workbook.
 	 */
 	private boolean initXLSX(String fname) {
+		try {
+			return this.initXLSX(OOXMLPackage.open(new File(fname)), fname);
+		} catch (IOException e) {
+			throw new WorkBookException(
+					"WorkBookHandle OOXML Read failed: " + e.toString(),
+					WorkBookException.UNSPECIFIED_INIT_ERROR, e);
+		}
+	}
+
+	/**
+	 * initialize from an open XLSX/OOXML package, which is closed when done.
+	 */
+	private boolean initXLSX(OOXMLPackage zip, String fname) {
 		// do before parseNBind so can set myfactory & fname
 		// set state vars for this workbookhandle
 		this.initWorkBookFactory();
@@ -1308,7 +1418,7 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook, Handle {
 			bk.removeAllWorkSheets();
 			myfactory.setDebugLevel(this.DEBUGLEVEL);
 			bk.DEBUGLEVEL = this.DEBUGLEVEL;
-			oe.parseNBind(bk, fname);
+			oe.parseNBind(bk, zip, fname);
 			this.sheethandles = bk.sheethandles;
 			this.mybook = bk.mybook;
 		} catch (Exception e) {
@@ -1817,6 +1927,13 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook, Handle {
 	 * forcing calculation to occur at a certain time. In the case of functions such
 	 * as NOW() whose value is volatile the formula will still be recalculated every
 	 * time it is queried.
+	 * <p>
+	 * Formulas are calculated in dependency order using the workbook's
+	 * {@link io.starter.formats.XLS.DependencyGraph}, so only the formulas
+	 * affected by changes since the last recalc are calculated. Every formula
+	 * is calculated on the first recalc, after rows or columns have been
+	 * inserted or removed, and while the calculation mode is
+	 * CALCULATE_EXPLICIT.
 	 * 
 	 * @throws FunctionNotSupportedException
 	 *             if an unsupported function is used by any formula in the workbook
@@ -1826,18 +1943,10 @@ public class WorkBookHandle extends DocumentHandle implements WorkBook, Handle {
 		int calcmode = mybook.getCalcMode();
 		mybook.setCalcMode(CALCULATE_AUTO); // ensure referenced functions are
 											// calcualted as necesary!
-		Formula[] formulas = mybook.getFormulas();
-		for (int idx = 0; idx < formulas.length; idx++) {
-			try {
-				formulas[idx].clearCachedValue();
-				formulas[idx].calculate();
-			} catch (FunctionNotSupportedException fe) {
-				Logger.logErr("WorkBookHandle.recalc:  Error calculating Formula "
-						+ fe.toString());
-			}
-		}
-		// KSC: Clear out lookup caches!
+		// KSC: Clear out lookup caches! before calculating, as values may
+		// have been set without invalidating them
 		this.getWorkBook().getRefTracker().clearLookupCaches();
+		mybook.getRefTracker().getDependencyGraph().recalculate(mybook);
 		mybook.setCalcMode(calcmode); // reset
 	}
 
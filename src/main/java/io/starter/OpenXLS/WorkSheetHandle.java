@@ -29,8 +29,13 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -116,8 +121,10 @@ public class WorkSheetHandle implements Handle {
 	WorkBookHandle wbh;
 	private int DEBUGLEVEL = 0;
 	private Hashtable<String, Integer> dateFormats = new Hashtable<String, Integer>();
-	private boolean cache = true; // 20080917 KSC: set var for caching, default to true [BugTracker 1862]
-	// public Map cellhandles = new HashMap();
+	private boolean cache = false; // 20080917 KSC: set var for caching [BugTracker 1862]
+	// CellHandles handed out by getCell(row, col, true), keyed by cellKey
+	private HashMap<Long, CellHandleRef> cellhandles;
+	private ReferenceQueue<CellHandle> staleHandles;
 
 	public void addChart(byte[] serialchart, String name, short[] coords) {
 		mysheet.addChart(serialchart, name, coords);
@@ -922,11 +929,29 @@ public class WorkSheetHandle implements Handle {
 	 * contents are lost. The euro symbol will be converted to a question mark. If
 	 * cells display formulas instead of formula values, the formulas are saved as
 	 * text.
+	 * 
+	 * @see #export(Writer, int)
 	 */
 	public void writeAsTabbedText(OutputStream dest) throws IOException {
 		this.mysheet.writeAsTabbedText(dest);
 	}
 
+	/**
+	 * Writes the populated cells of this sheet, as raw values, to a character
+	 * stream in one of the SheetExporter formats. Use a SheetExporter directly
+	 * to write formatted values or only part of the sheet. The stream is
+	 * flushed but not closed.
+	 * 
+	 * @param out
+	 *            the destination
+	 * @param format
+	 *            SheetExporter.CSV, TSV, JSON_LINES or HTML
+	 * @see SheetExporter
+	 */
+	public void export(Writer out, int format) throws IOException {
+		new SheetExporter(this, format).write(out);
+	}
+
 	/**
 	 * Constructor which takes a WorkBook and sheetname as parameters.
 	 * 
@@ -956,6 +981,68 @@ public class WorkSheetHandle implements Handle {
 		return cache;
 	}
 
+	/**
+	 * Sets whether methods which honor the cache setting, such as CellRange,
+	 * reuse CellHandles for cells already handed out.
+	 * <p>
+	 * Cached handles are held weakly and are only reused while they still
+	 * refer to the record at their address. Defaults to the value of the
+	 * system property "io.starter.OpenXLS.cacheCellHandles", or false.
+	 * 
+	 * @param cache
+	 *            whether to cache CellHandles
+	 */
+	public void setUseCache(boolean cache) {
+		this.cache = cache;
+		if (!cache) {
+			cellhandles = null;
+			staleHandles = null;
+		}
+	}
+
+	/**
+	 * Returns a cursor over all populated cells of this sheet in row major
+	 * order.
+	 * <p>
+	 * Walking a sheet with a cursor avoids creating a CellHandle for each cell
+	 * and is the preferred way to read large sheets.
+	 * 
+	 * @see CellCursor
+	 */
+	public CellCursor getCellCursor() {
+		return getCellCursor(false);
+	}
+
+	/**
+	 * Returns a cursor over all populated cells of this sheet.
+	 * 
+	 * @param columnMajor
+	 *            whether to visit cells column by column instead of row by row
+	 * @see CellCursor
+	 */
+	public CellCursor getCellCursor(boolean columnMajor) {
+		return new CellCursor(this, columnMajor, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns a cursor over the populated cells within an area of this sheet.
+	 * 
+	 * @param firstRow
+	 *            the zero-based first row of the area
+	 * @param firstCol
+	 *            the zero-based first column of the area
+	 * @param lastRow
+	 *            the zero-based last row of the area, inclusive
+	 * @param lastCol
+	 *            the zero-based last column of the area, inclusive
+	 * @param columnMajor
+	 *            whether to visit cells column by column instead of row by row
+	 * @see CellCursor
+	 */
+	public CellCursor getCellCursor(int firstRow, int firstCol, int lastRow, int lastCol, boolean columnMajor) {
+		return new CellCursor(this, columnMajor, firstRow, firstCol, lastRow, lastCol);
+	}
+
 	/**
 	 * Set the Object value of the Cell at the given address.
 	 * 
@@ -1695,6 +1782,53 @@ public class WorkSheetHandle implements Handle {
 		this.mysheet.insertImage(im);
 	}
 
+	/**
+	 * Inserts empty rows and shifts the following rows down. References,
+	 * images and charts below the insertion point are moved once for the whole
+	 * block, which is much faster than calling {@link #insertRow(int)}
+	 * repeatedly.
+	 * 
+	 * @param first
+	 *            the zero-based index of the first row to insert
+	 * @param count
+	 *            the number of rows to insert
+	 * @throws IllegalArgumentException
+	 *             if cells would be pushed past the last row of the sheet
+	 */
+	public void insertRows(int first, int count) {
+		if (first < 0)
+			throw new IllegalArgumentException("row index must be zero or greater");
+		if (count < 1)
+			throw new IllegalArgumentException("count must be at least one");
+		mysheet.insertRows(first, count);
+
+		// Handle Image Movement
+		ImageHandle[] images = mysheet.getImages();
+		if (images != null) {
+			for (int i = 0; i < images.length; i++) {
+				ImageHandle ih = images[i];
+				int row = ih.getRow();
+				// only move images whose top is >= first
+				if (row >= first) {
+					short h = ih.getHeight();
+					ih.setRow(row + count);
+					ih.setHeight(h);
+				}
+			}
+		}
+		// also shift charts down
+		List<?> charts = this.mysheet.getCharts();
+		for (int i = 0; i < charts.size(); i++) {
+			Chart c = (Chart) charts.get(i);
+			int row = c.getRow0();
+			if (row >= first) {
+				int h = c.getHeight();
+				c.setRow(row + count);
+				c.setHeight(h);
+			}
+		}
+	}
+
 	/**
 	 * Inserts empty columns and shifts the following columns to the right. This
 	 * method is used to shift existing columns right to make room for a new column.
@@ -1935,6 +2069,106 @@ public class WorkSheetHandle implements Handle {
 		}
 	}
 
+	/**
+	 * Adds a block of values to this WorkSheet in one pass, one array of values
+	 * per row.
+	 * 
+	 * Values are converted as by {@link #add(Object, int, int, int)}, but the
+	 * new cells are created without CellHandles, the rows and column formats
+	 * are looked up once, and formulas depending on the block are cleared once
+	 * rather than per cell. This is the fastest way to populate large sheets.
+	 * 
+	 * @param rows
+	 *            the rows of values; <code>null</code> values leave the cell
+	 *            untouched
+	 * @param firstRow
+	 *            the zero-based row of the first row of values
+	 * @param firstCol
+	 *            the zero-based column of the first value in each row
+	 * @param formatIds
+	 *            the format ID of each column of the block, or
+	 *            <code>null</code> to use the default format
+	 * @return the number of rows added
+	 */
+	public int addRows(Object[][] rows, int firstRow, int firstCol, int[] formatIds) {
+		return mysheet.addRowValues(Arrays.asList(rows).iterator(), firstRow, firstCol, formatIds);
+	}
+
+	/**
+	 * Adds rows of values from an iterator to this WorkSheet in one pass.
+	 * 
+	 * Rows are consumed one at a time, so the values need not all be held in
+	 * memory at once.
+	 * 
+	 * @param rows
+	 *            the rows of values; <code>null</code> values leave the cell
+	 *            untouched
+	 * @param firstRow
+	 *            the zero-based row of the first row of values
+	 * @param firstCol
+	 *            the zero-based column of the first value in each row
+	 * @param formatIds
+	 *            the format ID of each column of the block, or
+	 *            <code>null</code> to use the default format
+	 * @return the number of rows added
+	 * @see #addRows(Object[][], int, int, int[])
+	 */
+	public int addRows(Iterator<Object[]> rows, int firstRow, int firstCol, int[] formatIds) {
+		return mysheet.addRowValues(rows, firstRow, firstCol, formatIds);
+	}
+
+	/**
+	 * Adds rows of values below the last row of this WorkSheet, starting in
+	 * column A.
+	 * 
+	 * @param rows
+	 *            the rows of values; <code>null</code> values leave the cell
+	 *            untouched
+	 * @param formatIds
+	 *            the format ID of each column, or <code>null</code> to use the
+	 *            default format
+	 * @return the number of rows added
+	 * @see #addRows(Object[][], int, int, int[])
+	 */
+	public int appendRows(Object[][] rows, int[] formatIds) {
+		return addRows(rows, getLastRow(), 0, formatIds);
+	}
+
+	/**
+	 * Sets the numbers down a column of this WorkSheet in one pass.
+	 * 
+	 * @param col
+	 *            the zero-based column
+	 * @param firstRow
+	 *            the zero-based row of the first number
+	 * @param values
+	 *            the numbers to add
+	 * @param formatId
+	 *            the format ID of the cells, or -1 for the default format
+	 * @see #addRows(Object[][], int, int, int[])
+	 */
+	public void setColumn(int col, int firstRow, double[] values, int formatId) {
+		mysheet.addColumnValues(values, firstRow, col, formatId);
+	}
+
+	/**
+	 * Sets the values down a column of this WorkSheet in one pass.
+	 * 
+	 * @param col
+	 *            the zero-based column
+	 * @param firstRow
+	 *            the zero-based row of the first value
+	 * @param values
+	 *            the values to add; <code>null</code> values leave the cell
+	 *            untouched
+	 * @param formatId
+	 *            the format ID of the cells, or -1 for the default format
+	 * @see #addRows(Object[][], int, int, int[])
+	 */
+	public void setColumn(int col, int firstRow, Object[] values, int formatId) {
+		mysheet.addColumnValues(values, firstRow, col, formatId);
+	}
+
 	/**
 	 * Toggle fast cell add mode.
 	 * 
@@ -2414,25 +2648,64 @@ public class WorkSheetHandle implements Handle {
 	 *                address.
 	 */
 	public CellHandle getCell(int row, int col, boolean cache) throws CellNotFoundException {
-		CellHandle ret = null;
-		if (cache) {
-			int[] rc = { row, col };
-			String address = ExcelTools.formatLocation(rc);
-			// ret = (CellHandle)cellhandles.get(address);
-			if (ret != null) // caching!
-				return ret;
-			else {
-				ret = new CellHandle(this.mysheet.getCell(row, col), this.wbh);
-				ret.setWorkSheetHandle(this);
-				// cellhandles.put(address,ret);
+		BiffRec rec = this.mysheet.getCell(row, col);
+		if (cache)
+			return getCachedCell(row, col, rec);
+		CellHandle ret = new CellHandle(rec, this.wbh);
+		ret.setWorkSheetHandle(this);
+		return ret;
+	}
+
+	/**
+	 * returns the cached CellHandle for the cell if it still refers to the
+	 * record at that address, otherwise caches a new one
+	 */
+	private CellHandle getCachedCell(int row, int col, BiffRec rec) {
+		if (cellhandles == null) {
+			cellhandles = new HashMap<Long, CellHandleRef>();
+			staleHandles = new ReferenceQueue<CellHandle>();
+		}
+		expungeStaleHandles();
+		Long key = Long.valueOf(cellKey(row, col));
+		CellHandleRef ref = cellhandles.get(key);
+		if (ref != null) {
+			CellHandle ret = ref.get();
+			// handles whose cell was replaced, moved or removed are not reused
+			if (ret != null && ret.getCell() == rec && ret.getRowNum() == row && ret.getColNum() == col)
 				return ret;
-			}
 		}
-		ret = new CellHandle(this.mysheet.getCell(row, col), this.wbh);
+		if (rec.getOpcode() == XLSConstants.MULBLANK)
+			((Mulblank) rec).setCurrentCell((short) col);
+		CellHandle ret = new CellHandle(rec, this.wbh);
 		ret.setWorkSheetHandle(this);
+		cellhandles.put(key, new CellHandleRef(key, ret, staleHandles));
 		return ret;
 	}
 
+	/** drops cache entries whose CellHandle has been collected */
+	private void expungeStaleHandles() {
+		Reference<? extends CellHandle> ref;
+		while ((ref = staleHandles.poll()) != null) {
+			Long key = ((CellHandleRef) ref).key;
+			if (cellhandles.get(key) == ref)
+				cellhandles.remove(key);
+		}
+	}
+
+	private static long cellKey(int row, int col) {
+		return ((long) row << 16) | col;
+	}
+
+	/** weak reference to a cached CellHandle remembering its cache key */
+	private static final class CellHandleRef extends WeakReference<CellHandle> {
+		final Long key;
+
+		CellHandleRef(Long key, CellHandle handle, ReferenceQueue<CellHandle> queue) {
+			super(handle, queue);
+			this.key = key;
+		}
+	}
+
 	/**
 	 * Move a cell on this WorkSheet.
 	 * 
@@ -3165,21 +3438,31 @@ public class WorkSheetHandle implements Handle {
 			Object[] data = new Object[vals.length];
 			for (int t = 0; t < vals.length; t++) {
 				vals[t] = StringTool.strip(vals[t], '"');
-				try {
-					int i = Integer.parseInt(vals[t]);
-					data[t] = Integer.valueOf(i);
-
-					double d = Double.parseDouble(vals[t]);
-					data[t] = new Double(d);
-
-				} catch (NumberFormatException ax) {
-					// it's a string!
+				// integers are added as numbers, anything else as a string
+				if (isCSVInteger(vals[t]))
+					data[t] = new Double(Integer.parseInt(vals[t]));
+				else
 					data[t] = vals[t];
-				}
 			}
 
 			insertRow(rws++, data, true);
 		}
 	}
 
+	/** whether a field parses as an int, checked without throwing */
+	private static boolean isCSVInteger(String s) {
+		int len = s.length();
+		int i = (len > 0 && (s.charAt(0) == '-' || s.charAt(0) == '+')) ? 1 : 0;
+		if (i == len || len - i > 10)
+			return false;
+		long v = 0;
+		for (; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9')
+				return false;
+			v = v * 10 + (c - '0');
+		}
+		return s.charAt(0) == '-' ? -v >= Integer.MIN_VALUE : v <= Integer.MAX_VALUE;
+	}
+
 }
\ No newline at end of file
@@ -67,6 +67,55 @@ public class BlockByteReader implements Serializable{
 		this.length = len;
 	}
 
+	/** the file read from when the stream has no block objects */
+	private transient ByteBuffer file;
+	/** the file offset of each 512 byte sector of the stream */
+	private int[] sectors;
+
+	/** Reads a big block stream directly from the file without creating
+	 * blocks for its sectors.
+	 * 
+	 * @param data the bytes of the file
+	 * @param offsets the file offset of each sector of the stream, in order
+	 * @param len the length of the stream
+	 */
+	public BlockByteReader(ByteBuffer data, int[] offsets, int len) {
+		this.file = data.duplicate();
+		this.sectors = offsets;
+		this.length = len;
+	}
+
+	/** gets the number of blocks in the stream */
+	private int getBlockCount() {
+		if (sectors != null)
+			return sectors.length;
+		return blockmap.size();
+	}
+
+	/** gets the file offset of a block of the stream */
+	private int getBlockPos(int idx) {
+		if (sectors != null)
+			return sectors[idx];
+		return ((Block) blockmap.get(idx)).getOriginalPos();
+	}
+
+	/** reads a range of bytes from a block of the stream */
+	private byte[] getBlockBytes(int idx, int start, int end) {
+		if (sectors == null)
+			return ((Block) blockmap.get(idx)).getBytes(start, end);
+		if (end > BIGBLOCK.SIZE)
+			throw new RuntimeException("WARNING: BlockByteReader.getBlockBytes(): read position > block size:" + end);
+		byte[] ret = new byte[end - start];
+		int pos = sectors[idx] + start;
+		// the last sector of an out-of-spec file may be short
+		int len = Math.min(ret.length, file.limit() - pos);
+		if (len > 0) {
+			file.position(pos);
+			file.get(ret, 0, len);
+		}
+		return ret;
+	}
+
 	public boolean isReadOnly() {
 		return ro;
 	}
@@ -85,24 +134,21 @@ public class BlockByteReader implements Serializable{
     		int block = startpos / SIZE;
 			int check = startpos % SIZE;
 			// handle EOF that falls right on boundary
-			if(((check + 4) > SIZE) && (blockmap.size()-1==block)){
+			if(((check + 4) > SIZE) && (getBlockCount()-1==block)){
 				// Last EOF falls within 4 bytes of 512 boundary... junkrec
 				byte[] junk = {0x0,0x0,0x0,0x0};
 				return junk;
 	    	}else if ((check + 4) > SIZE) { // SPANNER!
-				Block bx = (Block) this.blockmap.get(block);
 				int l1 = ((SIZE * (block + 1)) - startpos);
 				int s2 = startpos % SIZE;
-				byte[] b1 = bx.getBytes(s2, s2 + l1);
-				bx = (Block) this.blockmap.get(block + 1);
+				byte[] b1 = getBlockBytes(block, s2, s2 + l1);
 				l1 = 4 - l1;
-				byte[] b2 = bx.getBytes(0, l1);
+				byte[] b2 = getBlockBytes(block + 1, 0, l1);
 				return ByteTools.append(b2, b1);
 			}
     	
-			Block bx = (Block) this.blockmap.get(block);
 			startpos -= (block * SIZE);
-			return bx.getBytes(startpos, startpos + 4);
+			return getBlockBytes(block, startpos, startpos + 4);
 	    }catch(RuntimeException e) {
 	    	throw new WorkBookException("Smallblock based workbooks are unsupported in OpenXLS: see http://extentech.com/uimodules/docs/docs_detail.jsp?showall=true&meme_id=195", WorkBookException.SMALLBLOCK_FILE);
 	    }
@@ -173,18 +219,8 @@ public class BlockByteReader implements Serializable{
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		for(int t=0;t<numblocks;t++){
 			try { // inlining byte read
-				Block b1 = (Block)this.blockmap.get(pos[blkdef++]);
-				out.write(b1.getBytes(pos[blkdef++], pos[blkdef++]));
-				if (false)
-					Logger.logInfo(
-						"INFO: BBR.getRecBytes() "
-							+ rec.getClass().getName()
-							+ " ACCESSING DATA for block:"
-							+ b1.getBlockIndex()
-							+ ":"
-							+ pos[0]
-							+ "-"
-							+ pos[1]);
+				int b1 = pos[blkdef++];
+				out.write(getBlockBytes(b1, pos[blkdef++], pos[blkdef++]));
 			} catch (Exception a) {
 				Logger.logWarn(
 					"ERROR: BBR.getRecBytes streaming " + rec.toString() + " bytes for block failed: " + a);
@@ -302,16 +338,16 @@ public class BlockByteReader implements Serializable{
 		
 		int offset = 0;
 		int fidx = 0;
-		Block block = null;
-		Block prev;
+		int block = -1;
+		int prev;
 		for (int sidx = 0; sidx < smap.length; sidx += 3) {
 			prev = block;
-			block = (Block) this.blockmap.get( smap[sidx] );
+			block = this.getBlockPos( smap[sidx] );
 			
-			if (prev == null || block.getOriginalPos() + smap[sidx+1] !=
-					prev.getOriginalPos() + smap[sidx-1] ) {
+			if (prev == -1 || block + smap[sidx+1] !=
+					prev + smap[sidx-1] ) {
 				fmap[fidx++] = offset;
-				fmap[fidx++] = block.getOriginalPos() + smap[sidx+1];
+				fmap[fidx++] = block + smap[sidx+1];
 			}
 			
 			offset += smap[sidx+2] - smap[sidx+1];
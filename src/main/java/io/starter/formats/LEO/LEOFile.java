@@ -48,10 +48,9 @@ import java.util.Vector;
 import io.starter.formats.XLS.WorkBookException;
 import io.starter.toolkit.ByteTools;
 import io.starter.toolkit.CompatibleVector;
-import io.starter.toolkit.JFileWriter;
+import io.starter.toolkit.Instrumentation;
 import io.starter.toolkit.Logger;
 import io.starter.toolkit.ResourceLoader;
-import io.starter.toolkit.TempFileManager;
 
 /** LEOFile is an archive format compatible with other popular archive formats such as OLE.
     
@@ -91,7 +90,7 @@ public class LEOFile implements Serializable {
 	public final static boolean	DEBUG						= false;
 	public int					DEBUGLEVEL					= 0;
 	public static int			actualOutput				= 0;
-	private List				bigBlocks;
+	private SectorList			bigBlocks;
 	private boolean				readok						= false;
 	private LEOHeader			header						= null;
 	private StorageTable		directories;
@@ -124,13 +123,8 @@ public class LEOFile implements Serializable {
 			directories.close();
 			directories = null;
 		}
-		if (bigBlocks != null) {
-			for (int i = 0; i < bigBlocks.size(); i++) {
-				BlockImpl b = (BlockImpl) bigBlocks.get(i);
-				b.close();
-			}
-			bigBlocks.clear();
-		}
+		if (bigBlocks != null)
+			bigBlocks.close();
 		bigBlocks = null;
 		// FAT= null;
 	}
@@ -251,16 +245,22 @@ public class LEOFile implements Serializable {
 	 * We should add some exception handling in here!
 	 */
 	public void initWrapper(ByteBuffer bytebuff) {
-		int[] FAT = this.init(bytebuff);
-		if (FAT != null) {
-			directories.initDirectories(bigBlocks, FAT);
-			// KSC: TESTING: XLS-97
-			if (DEBUG || DEBUGLEVEL > 200)
-				directories.DEBUG();
-			FAT = null;
-			readok = true;
-		} else
-			readok = false;
+		Instrumentation.Phase phase = Instrumentation.start("leo.init");
+		try {
+			Instrumentation.count("leo.bytesRead", bytebuff.limit());
+			int[] FAT = this.init(bytebuff);
+			if (FAT != null) {
+				directories.initDirectories(bigBlocks, FAT);
+				// KSC: TESTING: XLS-97
+				if (DEBUG || DEBUGLEVEL > 200)
+					directories.DEBUG();
+				FAT = null;
+				readok = true;
+			} else
+				readok = false;
+		} finally {
+			phase.end();
+		}
 	}
 
 	public void clearAfterInit() {
@@ -337,20 +337,15 @@ public class LEOFile implements Serializable {
 	}
 
 	/**
-	 * Create a LEOFile from an input stream.  Unfortunately because of our byte backer
-	 * we need to write to a temporary file in order to do this
+	 * Create a LEOFile from an input stream.  The stream is read into memory
+	 * and the blocks are backed by the resulting buffer.
 	 * 
 	 * @param stream
 	 */
 	public LEOFile(InputStream stream) throws IOException {
-		File target = TempFileManager.createTempFile("ExtenXLS_temp", ".leo");
-		JFileWriter.writeToFile(stream, target);
-
-		this.fileName = target.getAbsolutePath();
-		fb = LEOFile.readFile(target);
-		this.initWrapper(fb.getBuffer());
-		target.deleteOnExit();
-		target.delete();
+		ByteBuffer bbf = ByteBuffer.wrap(ByteTools.readFully(stream));
+		bbf.order(ByteOrder.LITTLE_ENDIAN);
+		this.initWrapper(bbf);
 	}
 
 	public LEOFile(File fx) {
@@ -1030,7 +1025,6 @@ public class LEOFile implements Serializable {
 	/** read LEO file information from header.
 	*/
 	public synchronized int[] init(ByteBuffer bbuf) {
-		int pos = 0;
 		CompatibleVector FATSectors = new CompatibleVector(); // one or more
 																// sectors which
 																// hold the FAT
@@ -1040,35 +1034,22 @@ public class LEOFile implements Serializable {
 																// indexes into
 																// the sectors)
 
-		bigBlocks = new ArrayList();
+		// the BIGBLOCKS (512 byte chunks of file) are only created as they
+		// are used; storages read through the FAT chain against bbuf
 		int len = bbuf.limit() / BIGBLOCK.SIZE;
-		// get ALL BIGBLOCKS (512 byte chunks of file)
 		if (DEBUG)
 			Logger.logInfo("\nINIT: Total Number of bigblocks:  " + len);
-		for (int i = 0; i < len; i++) {
-			BIGBLOCK bbd = new BIGBLOCK();
-			bbd.init(bbuf, i, pos);
-			pos += BIGBLOCK.SIZE;
-			this.bigBlocks.add(bbd);
-		}
 
 		// Encrypted workbooks can have random overages.
 		// not ideal, but store this value in LEO and get from the
 		// storage if its named 'EncryptedPackage'
 		int encryptionStorageOverageLen = (bbuf.limit() % BIGBLOCK.SIZE);
-		if (encryptionStorageOverageLen > 0) {
-			int filepos = len * BIGBLOCK.SIZE;
-			if (this.encryptedXLSX) {
-				bbuf.position(filepos);
-				encryptionStorageOverage = new byte[encryptionStorageOverageLen];
-				bbuf.get(encryptionStorageOverage, 0, encryptionStorageOverage.length);
-			} else {
-				BIGBLOCK bbd = new BIGBLOCK();
-				bbd.init(bbuf, len, pos); // filepos);
-				pos += encryptionStorageOverageLen;
-				this.bigBlocks.add(bbd);
-			}
+		if (encryptionStorageOverageLen > 0 && this.encryptedXLSX) {
+			bbuf.position(len * BIGBLOCK.SIZE);
+			encryptionStorageOverage = new byte[encryptionStorageOverageLen];
+			bbuf.get(encryptionStorageOverage, 0, encryptionStorageOverage.length);
 		}
+		bigBlocks = new SectorList(bbuf, !this.encryptedXLSX);
 
 		/***** Read in the file header */
 		// header holds directory start sector and
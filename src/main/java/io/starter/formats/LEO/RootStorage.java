@@ -54,6 +54,7 @@ public class RootStorage extends io.starter.formats.LEO.Storage
     */
     public void setBytes(byte[] b) {
         Block[] bs = BlockFactory.getBlocksFromByteArray(b, Block.BIG);
+        chain = null;
         if (super.myblocks != null) {
             myblocks.clear();
             lastblock = null;
@@ -0,0 +1,131 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.LEO;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.BitSet;
+
+/** The 512 byte sectors of a compound file, paged in on demand.
+ * <p>
+ * A BIGBLOCK is only created the first time its sector is requested, so a
+ * large file does not cost one block object per sector up front. Storages
+ * read through the FAT chain directly against the shared buffer and ask for
+ * block objects only when they are written or modified.
+ * <p>
+ * Sector <code>i</code> of this list starts at file offset
+ * <code>i * BIGBLOCK.SIZE</code>; index 0 is the file header. A trailing
+ * partial sector, if any, is included as a final short block.
+ */
+class SectorList extends AbstractList {
+	private final ByteBuffer data;
+	private final int size;
+	private Block[] blocks;
+	/** sectors claimed by a storage whose blocks have not been created yet */
+	private final BitSet claimed = new BitSet();
+
+	/**
+	 * @param data the file bytes
+	 * @param includeOverage whether a trailing partial sector is a block
+	 */
+	SectorList(ByteBuffer data, boolean includeOverage) {
+		this.data = data;
+		int len = data.limit() / BIGBLOCK.SIZE;
+		if (includeOverage && (data.limit() % BIGBLOCK.SIZE) > 0)
+			len++;
+		this.size = len;
+		this.blocks = new Block[len];
+	}
+
+	public Object get(int idx) {
+		if (idx < 0 || idx >= size)
+			throw new IndexOutOfBoundsException("Sector: " + idx + ", Size: " + size);
+		Block b = blocks[idx];
+		if (b == null) {
+			BIGBLOCK bbd = new BIGBLOCK();
+			bbd.init(data, idx, idx * BIGBLOCK.SIZE);
+			blocks[idx] = bbd;
+			b = bbd;
+		}
+		return b;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** gets the block for a sector only if it has already been created */
+	Block peek(int idx) {
+		if (idx < 0 || idx >= size)
+			return null;
+		return blocks[idx];
+	}
+
+	/** whether the sector belongs to the FAT or DIFAT */
+	boolean isSpecial(int idx) {
+		Block b = peek(idx);
+		return b != null && b.getIsSpecialBlock();
+	}
+
+	/** whether the sector has been assigned to a storage */
+	boolean isInitialized(int idx) {
+		if (claimed.get(idx))
+			return true;
+		Block b = peek(idx);
+		return b != null && b.getInitialized();
+	}
+
+	/** marks the sector as assigned to a storage without creating its block */
+	void claim(int idx) {
+		claimed.set(idx);
+	}
+
+	/** gets the file offset of a sector */
+	int getFileOffset(int idx) {
+		return idx * BIGBLOCK.SIZE;
+	}
+
+	/** gets the buffer the sectors are read from */
+	ByteBuffer getData() {
+		return data;
+	}
+
+	/** Drops the references to the blocks created so far.
+	 * <p>
+	 * Blocks held by storages are unaffected and sectors not yet paged in
+	 * remain readable.
+	 */
+	public void clear() {
+		blocks = new Block[size];
+	}
+
+	/** closes the blocks created so far */
+	void close() {
+		for (int i = 0; i < size; i++) {
+			if (blocks[i] != null)
+				((BlockImpl) blocks[i]).close();
+		}
+		blocks = new Block[size];
+		claimed.clear();
+	}
+}
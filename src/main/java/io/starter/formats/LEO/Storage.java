@@ -111,6 +111,10 @@ public class Storage extends BlockByteReader {
 	private boolean isSpecial = false;
 	
 	protected List myblocks;
+	/** sectors of a storage whose blocks have not been created yet */
+	int[] chain;
+	private int chainLen;
+	private transient SectorList sectors;
 	private int startBlock=0;
 	private int SIZE = -1;
 	private int blockType = -1;
@@ -120,6 +124,7 @@ public class Storage extends BlockByteReader {
 	Block lastblock = null;	
 	
    public void setBlocks(Block[] blks) {
+        chain = null;
         myblocks = new ArrayList(); 
         for(int t=0;t<blks.length;t++)
             this.addBlock(blks[t]);
@@ -130,15 +135,80 @@ public class Storage extends BlockByteReader {
 	 * @return
 	 */
 	public BlockByteReader getBlockReader() {
+		if (chain != null) {
+			// read straight from the file through the sector chain
+			int[] offsets = new int[chainLen];
+			for (int i = 0; i < chainLen; i++)
+				offsets[i] = sectors.getFileOffset(chain[i]);
+			return new BlockByteReader(sectors.getData(), offsets,
+					this.getActualFileSize());
+		}
 		BlockByteReader ret =
 			new BlockByteReader(myblocks, this.getActualFileSize());
 		return ret;
 	}
 
 	public List getBlockVect() {
+		return blocks();
+	}
+
+	/** gets the blocks of this storage, creating them from its sector chain
+	 * if they have not been created yet
+	 */
+	private List blocks() {
+		if (chain != null) {
+			int[] c = chain;
+			chain = null;
+			myblocks = new ArrayList(chainLen);
+			for (int i = 0; i < chainLen; i++) {
+				Block b = (Block) sectors.get(c[i]);
+				if (lastblock != null)
+					lastblock.setNextBlock(b);
+				b.setStorage(this);
+				b.setInitialized(true);
+				myblocks.add(b);
+				lastblock = b;
+			}
+			sectors = null;
+		}
 		return myblocks;
 	}
 
+	/** adds a sector of the file to this storage; when reading from a
+	 * {@link SectorList} only its index is recorded
+	 */
+	private void addSector(List dta, int idx) {
+		if (!(dta instanceof SectorList)) {
+			this.addBlock((Block) dta.get(idx));
+			return;
+		}
+		SectorList sl = (SectorList) dta;
+		if (idx < 0 || idx >= sl.size())
+			throw new IndexOutOfBoundsException("Sector: " + idx + ", Size: " + sl.size());
+		if (sl.isInitialized(idx)) {
+			if (LEOFile.DEBUG)Logger.logWarn("ERROR: "+ this.toString()+ " - Block is already initialized.");
+			return;
+		}
+		sl.claim(idx);
+		if (chain == null) {
+			chain = new int[16];
+			chainLen = 0;
+			sectors = sl;
+		} else if (chainLen == chain.length) {
+			int[] c = new int[chainLen * 2];
+			System.arraycopy(chain, 0, c, 0, chainLen);
+			chain = c;
+		}
+		chain[chainLen++] = idx;
+	}
+
+	/** whether a sector holds the FAT or DIFAT */
+	private static boolean isSpecialSector(List dta, int idx) {
+		if (dta instanceof SectorList)
+			return ((SectorList) dta).isSpecial(idx);
+		return ((Block) dta.get(idx)).getIsSpecialBlock();
+	}
+
 
 	public void setIsSpecial(boolean b) {
         this.isSpecial = b;
@@ -158,7 +228,7 @@ public class Storage extends BlockByteReader {
 	/** remove a block from this Storage's headerData
 	*/
 	void removeBlock(Block b) {
-		myblocks.remove(b);
+		blocks().remove(b);
 	}
 
 	/** sets whether this Storage's headerData blocks are contained
@@ -339,21 +409,21 @@ public class Storage extends BlockByteReader {
 	    Storage
 	*/
 	public byte[] getBytes() {
-		return LEOFile.getBytes(myblocks);
+		return LEOFile.getBytes(blocks());
 	}
 	
 	   /** return the underlying byte array for this
     Storage
     */
     public OutputStream getByteStream() {
-        return LEOFile.getByteStream(myblocks);
+        return LEOFile.getByteStream(blocks());
     }
 
 	/** return the underlying byte array for this
     Storage
 	*/
 	public void writeBytes(OutputStream out) {
-		Iterator itx = myblocks.iterator();
+		Iterator itx = blocks().iterator();
 		while(itx.hasNext()) {
 			((Block)itx.next()).writeBytes(out);
 		}
@@ -364,6 +434,7 @@ public class Storage extends BlockByteReader {
 	*/
 	public void writeBytes(OutputStream out, int blen) {
 		Block[] bs = BlockFactory.getBlocksFromOutputStream(out, blen, Block.BIG);
+		chain = null;
 		if (myblocks != null) {
 			myblocks.clear();
 			lastblock = null;
@@ -379,6 +450,7 @@ public class Storage extends BlockByteReader {
 	*/
 	public void setOutputBytes(OutputStream b, int blen) {
 		Block[] bs = BlockFactory.getBlocksFromOutputStream(b, blen, Block.BIG);
+		chain = null;
 		if (myblocks != null) {
 			myblocks.clear();
 			lastblock = null;
@@ -398,6 +470,7 @@ public class Storage extends BlockByteReader {
 	       return;
 	    }
 		Block[] bs = BlockFactory.getBlocksFromByteArray(b, Block.BIG);
+		chain = null;
 		if (myblocks != null) {
 			myblocks.clear();
 			lastblock = null;
@@ -414,6 +487,7 @@ public class Storage extends BlockByteReader {
 	 */
 	private void setMiniFATSectorBytes(byte[] b) {
 	    Block[] bs = BlockFactory.getBlocksFromByteArray(b, Block.SMALL);
+        chain = null;
         if (myblocks != null) {
             myblocks.clear();
             lastblock = null;
@@ -432,6 +506,7 @@ public class Storage extends BlockByteReader {
 	 */
 	public void setBytesWithOverage(byte[] newbytes) {
 		int actuallen= newbytes.length;
+        chain = null;
         myblocks = new ArrayList(); 	// clear out
 		if (newbytes.length < StorageTable.BIGSTORAGE_SIZE) {	// usual case
 			int overage= newbytes.length%128;
@@ -469,6 +544,7 @@ public class Storage extends BlockByteReader {
 				Logger.logWarn("initMiniFAT: no miniFAT container found"); 
 			return;
 		}
+		chain = null;
 		myblocks = new ArrayList();
 		boolean endloop = false;
 		Block thisBlock = null;
@@ -506,18 +582,19 @@ public class Storage extends BlockByteReader {
 	    
 	*/
 	public void init(List dta, int[] FAT, boolean keepStartBlock) {
+		chain = null;
 		myblocks = new ArrayList();
 		boolean endloop = false;
 		if (getStartBlock() < 0)
 			return;
-		Block thisbb = null;
+		int thisbb = -1;
 		int nextIdx = 0; //, lastIdx = 0, specialOffset = 1;
 		
 		// ksc: for root block and miniFAT cont., we add start block to block list 
 		if (keepStartBlock) {
 			// for root storages, add rootstart block
-			thisbb = (Block) dta.get(startBlock+1);
-			this.addBlock(thisbb); //;
+			thisbb = startBlock+1;
+			this.addSector(dta, thisbb); //;
 		}
 		for (int i = startBlock; i < FAT.length;) {
 			nextIdx = FAT[i];			
@@ -536,9 +613,9 @@ public class Storage extends BlockByteReader {
 								"WARNING: Storage.init() Special block containing headerData.");
 						this.setIsSpecial(true);
 
-						thisbb = (Block) dta.get(i++);
-						if (!thisbb.getIsSpecialBlock()) {
-							this.addBlock(thisbb); //;
+						thisbb = i++;
+						if (!isSpecialSector(dta, thisbb)) {
+							this.addSector(dta, thisbb); //;
 						}
 						nextIdx = i;
 					} else {
@@ -553,10 +630,8 @@ public class Storage extends BlockByteReader {
 				case -2 : // end of Storage - keep end block 
 					if (i + 1 < dta.size()) {
 						// get the "padding" block for later retrieval
-						thisbb = (Block) dta.get(i + 1);
-						if (thisbb == null)
-							break;
-							this.addBlock(thisbb); //
+						thisbb = i + 1;
+							this.addSector(dta, thisbb); //
 						//}
 					}
 					endloop = true;
@@ -564,8 +639,8 @@ public class Storage extends BlockByteReader {
 
 				default : // normal block
 					if (dta.size() > nextIdx)
-						thisbb = (Block) dta.get(nextIdx);
-					if (thisbb == null)
+						thisbb = nextIdx;
+					if (thisbb < 0)
 						break;
 					if (nextIdx != i + 1) {
 						//the next is a jumper, pickup the orphan
@@ -573,12 +648,10 @@ public class Storage extends BlockByteReader {
 							Logger.logInfo(
 								"INFO: Storage init: jumper skipping: "
 									+ String.valueOf(i));
-						Block skipbb = (Block) dta.get(i + 1);
-
-						this.addBlock(skipbb); //
+						this.addSector(dta, i + 1); //
 					} else
-						if (!thisbb.getIsSpecialBlock()) { // just skip as probably a bbdix in the midst of the secid chain 
-							this.addBlock(thisbb); //     
+						if (!isSpecialSector(dta, thisbb)) { // just skip as probably a bbdix in the midst of the secid chain 
+							this.addSector(dta, thisbb); //     
 														
 					} 
 			}	
@@ -590,7 +663,7 @@ public class Storage extends BlockByteReader {
 		if (LEOFile.DEBUG) {
 			int sz= this.getActualFileSize();
 			if (sz!=0) {
-				if(Math.ceil(sz/512.0)!= myblocks.size()) 
+				if(Math.ceil(sz/512.0)!= this.getSizeInBlocks()) 
 					Logger.logWarn("Storage.init:  Number of blocks do not equal storage size");
 			}
 		}
@@ -666,7 +739,7 @@ public class Storage extends BlockByteReader {
 	/** return this Storage's existing headerData Blocks.
 	*/
 	Block[] getBlocks() {
-		if (myblocks.size() < 1) {
+		if (blocks().size() < 1) {
 			return this.initBigBlocks();
 		}
 		Block[] blox = new Block[this.myblocks.size()];
@@ -697,6 +770,8 @@ public class Storage extends BlockByteReader {
 	     byte array
 	*/
 	public int getSizeInBlocks() {
+		if (chain != null)
+			return chainLen;
 		return myblocks.size();
 	}
 
@@ -714,6 +789,8 @@ public class Storage extends BlockByteReader {
     * clear out object references in prep for closing workbook
     */
    public void close() {
+		chain = null;
+		sectors = null;
 		if (myblocks!=null)
 			myblocks.clear();
 		if (idxs!=null)
@@ -109,6 +109,8 @@ public final class Array extends io.starter.formats.XLS.XLSRecord
     }
 
 	private Stack expression;
+	/** the expression compiled for calculation, shared by every cell of the array */
+	private volatile CompiledExpression compiled;
 	
     public void init(){
         super.init();
@@ -269,7 +271,12 @@ public final class Array extends io.starter.formats.XLS.XLSRecord
     
 	public Object getValue(PtgExp pxp){
 		//try{
-			return FormulaCalculator.calculateFormula(expression);
+			CompiledExpression ce= compiled;
+			if (ce==null || !ce.isCompiledFrom(expression)) {
+				ce= CompiledExpression.compile(expression);
+				compiled= ce;
+			}
+			return ce.calculate();
 		//}catch(FunctionNotSupportedException e){
 			//Logger.logWarn("Array.getValue() failed: " + e);
 			//return null;
@@ -46,6 +46,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -54,7 +55,6 @@ import java.util.Stack;
 import java.util.TreeMap;
 import java.util.Vector;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -65,6 +65,7 @@ import io.starter.OpenXLS.CellRange;
 import io.starter.OpenXLS.ChartHandle;
 import io.starter.OpenXLS.ColHandle;
 import io.starter.OpenXLS.CommentHandle;
+import io.starter.OpenXLS.DateConverter;
 import io.starter.OpenXLS.ExcelTools;
 import io.starter.OpenXLS.FormatHandle;
 import io.starter.OpenXLS.ImageHandle;
@@ -82,7 +83,6 @@ import io.starter.formats.XLS.charts.GenericChartObject;
 import io.starter.formats.XLS.formulas.FormulaParser;
 import io.starter.formats.XLS.formulas.Ptg;
 import io.starter.formats.XLS.formulas.PtgRef;
-import io.starter.formats.cellformat.CellFormatFactory;
 import io.starter.toolkit.ByteTools;
 import io.starter.toolkit.CompatibleVector;
 import io.starter.toolkit.FastAddVector;
@@ -145,11 +145,7 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 	private String								sheetHash			= "";
 	private Map<Integer, Row>					rows				= new LinkedHashMap<Integer, Row>();
 
-	private SortedMap<CellAddressible, BiffRec>	cellsByRow			= new TreeMap<CellAddressible, BiffRec>(
-			new CellAddressible.RowMajorComparator());
-
-	private SortedMap<CellAddressible, BiffRec>	cellsByCol			= new TreeMap<CellAddressible, BiffRec>(
-			new CellAddressible.ColumnMajorComparator());
+	private CellStore							cellStore			= createCellStore();
 
 	private Map									arrFormulaLocs		= new HashMap();						// use
 																											// for
@@ -240,7 +236,17 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 	}
 
 	public void setDvalRec(Dval d) {
+		if (dval != null) {
+			List dvs = dval.getDvs();
+			for (int i = 0; i < dvs.size(); i++)
+				removeFromRangeIndex(dvs.get(i));
+		}
 		dval = d;
+		if (d != null) {
+			List dvs = d.getDvs();
+			for (int i = 0; dvs != null && i < dvs.size(); i++)
+				updateRangeIndex(dvs.get(i));
+		}
 	}
 
 	public Dval getDvalRec() {
@@ -260,6 +266,7 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 
 	private boolean								formulaShiftInclusive	= false;
 	private AbstractList						cond_formats			= new Vector();
+	private transient RangeIndex				rangeIndex;
 	private AbstractList						autoFilters				= new Vector();				// 20100111
 																									// KSC
 
@@ -775,8 +782,8 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 							}
 						}
 						try {
-							String output = CellFormatFactory
-									.fromPatternString(c.getFormatPattern())
+							String output = wkbook
+									.getFormatRenderer(((XLSRecord) c).myxf)
 									.format(o.toString());
 							if (output.indexOf(",") != -1)
 								output = "\"" + output + "\"";
@@ -841,8 +848,171 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 	public void addConditionalFormat(Condfmt cf) {
 		if (cond_formats == null)
 			cond_formats = new ArrayList();
-		if (cond_formats.indexOf(cf) == -1)
+		if (cond_formats.indexOf(cf) == -1) {
 			cond_formats.add(cf);
+			updateRangeIndex(cf);
+		}
+	}
+
+	/**
+	 * Gets the conditional formats which apply to a cell, in the order they
+	 * appear in the sheet.
+	 * @param row the zero-based row index
+	 * @param col the zero-based column index
+	 * @return a new list of the matching Condfmt records
+	 */
+	public List<Condfmt> getConditionalFormats(int row, int col) {
+		List<Object> found = getRangeIndex().query(row, col);
+		ArrayList<Condfmt> ret = new ArrayList<Condfmt>();
+		int[] rc = { row, col };
+		for (int i = 0; i < found.size(); i++) {
+			Object o = found.get(i);
+			if (o instanceof Condfmt && ((Condfmt) o).contains(rc))
+				ret.add((Condfmt) o);
+		}
+		return ret;
+	}
+
+	/**
+	 * Gets the first data validation which applies to a cell.
+	 * @param row the zero-based row index
+	 * @param col the zero-based column index
+	 * @return the Dv record, or null if the cell is not validated
+	 */
+	public Dv getDv(int row, int col) {
+		if (dval == null)
+			return null;
+		List<Object> found = getRangeIndex().query(row, col);
+		int[] rc = { row, col };
+		for (int i = 0; i < found.size(); i++) {
+			Object o = found.get(i);
+			if (o instanceof Dv && ((Dv) o).isInRange(rc))
+				return (Dv) o;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the merged range containing a cell.
+	 * @param row the zero-based row index
+	 * @param col the zero-based column index
+	 * @return the merged CellRange, or null if the cell is not merged
+	 */
+	public CellRange getMergedRange(int row, int col) {
+		if (mc.size() == 0)
+			return null;
+		List<Object> found = getRangeIndex().query(row, col);
+		int[] rc = { row, col };
+		for (int i = 0; i < found.size(); i++) {
+			Object o = found.get(i);
+			if (o instanceof CellRange && ((CellRange) o).contains(rc))
+				return (CellRange) o;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the hyperlink record covering a cell.
+	 * @param row the zero-based row index
+	 * @param col the zero-based column index
+	 * @return the first Hlink covering the cell, or null if there is none
+	 */
+	public Hlink getHlink(int row, int col) {
+		List<Object> found = getRangeIndex().query(row, col);
+		for (int i = 0; i < found.size(); i++) {
+			Object o = found.get(i);
+			if (o instanceof Hlink)
+				return (Hlink) o;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the spatial index of the merged ranges, data validations,
+	 * conditional formats and hyperlinks of this sheet, building it if it
+	 * has not been built since it was last invalidated. Once built it is
+	 * kept up to date by the records as they are added, removed or have
+	 * their ranges changed.
+	 */
+	RangeIndex getRangeIndex() {
+		RangeIndex idx = rangeIndex;
+		if (idx == null) {
+			idx = buildRangeIndex();
+			rangeIndex = idx;
+		}
+		return idx;
+	}
+
+	private RangeIndex buildRangeIndex() {
+		RangeIndex idx = new RangeIndex();
+		for (int i = 0; i < mc.size(); i++) {
+			CellRange[] ranges = ((Mergedcells) mc.get(i)).getMergedRanges();
+			for (int j = 0; ranges != null && j < ranges.length; j++)
+				idx.put(ranges[j], getIndexedRanges(ranges[j]));
+		}
+		if (dval != null) {
+			List dvs = dval.getDvs();
+			for (int i = 0; i < dvs.size(); i++)
+				idx.put(dvs.get(i), getIndexedRanges(dvs.get(i)));
+		}
+		for (int i = 0; i < cond_formats.size(); i++)
+			idx.put(cond_formats.get(i), getIndexedRanges(cond_formats.get(i)));
+		if (this.getWorkBook() != null) {
+			List hlinks = this.getWorkBook().getHlinklookup();
+			for (int i = 0; i < hlinks.size(); i++) {
+				Hlink hl = (Hlink) hlinks.get(i);
+				if (hl.getSheet() == this)
+					idx.put(hl, getIndexedRanges(hl));
+			}
+		}
+		return idx;
+	}
+
+	/** the zero-based {firstRow, firstCol, lastRow, lastCol} rectangles
+	 * covered by an indexed record or merged range
+	 */
+	private static int[][] getIndexedRanges(Object owner) {
+		if (owner instanceof CellRange) {
+			CellRange cr = (CellRange) owner;
+			return new int[][] { { cr.getFirstRow(), cr.getFirstCol(),
+					cr.getLastRow(), cr.getLastCol() } };
+		}
+		if (owner instanceof Dv)
+			return ((Dv) owner).getRowColRanges();
+		if (owner instanceof Condfmt)
+			return ((Condfmt) owner).getRowColRanges();
+		Hlink hl = (Hlink) owner;
+		return new int[][] { { hl.getRowFirst(), hl.getColFirst(),
+				hl.getRowLast(), hl.getColLast() } };
+	}
+
+	/**
+	 * Updates the ranges held in the spatial index for a merged range,
+	 * data validation, conditional format or hyperlink whose ranges have
+	 * been set or changed. Does nothing if the index has not been built.
+	 */
+	void updateRangeIndex(Object owner) {
+		RangeIndex idx = rangeIndex;
+		if (idx != null)
+			idx.put(owner, getIndexedRanges(owner));
+	}
+
+	/**
+	 * Removes a merged range, data validation, conditional format or
+	 * hyperlink from the spatial index.
+	 */
+	void removeFromRangeIndex(Object owner) {
+		RangeIndex idx = rangeIndex;
+		if (idx != null)
+			idx.remove(owner);
+	}
+
+	/**
+	 * Discards the spatial index, as when references on the sheet are
+	 * shifted; it is rebuilt on next use.
+	 */
+	void invalidateRangeIndex() {
+		rangeIndex = null;
 	}
 
 	@Override
@@ -922,6 +1092,8 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 	 */
 	@Override
 	public void removeCell(BiffRec cell) {
+		// un-index the cell before a MULBLANK is trimmed below
+		cellStore.remove(cell);
 		if (cell.getOpcode() == MULBLANK) {
 			((Mulblank) cell).removeCell(cell.getColNumber());
 		}
@@ -929,8 +1101,7 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 			Formula f = (Formula) cell;
 			this.wkbook.removeFormula(f);
 		}
-		cellsByRow.remove(cell);
-		cellsByCol.remove(cell);
+		lookupRangeChanged(cell);
 	}
 
 	/**
@@ -1193,22 +1364,17 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 	 * @return
 	 */
 	public ArrayList<BiffRec> getCellsByCol(int colNum) throws CellNotFoundException {
-		SortedMap<CellAddressible, BiffRec> theCells = cellsByCol
-				.subMap(new CellAddressible.RangeBoundary(0, colNum,
-						true), new CellAddressible.RangeBoundary(0, colNum + 1,
-								false));
+		ArrayList<BiffRec> theCells = cellStore.getCol(colNum);
 		if (theCells.size() == 0)
 			throw new CellNotFoundException(this.sheetname, 0, col);
 
-		Collection<BiffRec> cells = theCells.values();
-		Iterator<BiffRec> i = cells.iterator();
-		while (i.hasNext()) {
-			BiffRec biffrec = i.next();
+		for (int i = 0; i < theCells.size(); i++) {
+			BiffRec biffrec = theCells.get(i);
 			if (biffrec.getOpcode() == MULBLANK) {
 				((Mulblank) biffrec).setCurrentCell((short) colNum);
 			}
 		}
-		return new ArrayList<BiffRec>(cells);
+		return theCells;
 	}
 
 	/**
@@ -1217,14 +1383,63 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 	 * @return
 	 */
 	public ArrayList<BiffRec> getCellsByRow(int rowNum) throws CellNotFoundException {
-		SortedMap<CellAddressible, BiffRec> theCells = cellsByRow
-				.subMap(new CellAddressible.Reference(rowNum,
-						0), new CellAddressible.Reference(rowNum + 1, 0));
+		ArrayList<BiffRec> theCells = cellStore.getRow(rowNum);
 		if (theCells.size() == 0)
 			throw new CellNotFoundException(this.sheetname, 0, col);
 
-		Collection<BiffRec> cells = theCells.values();
-		return new ArrayList<BiffRec>(cells);
+		return theCells;
+	}
+
+	/**
+	 * Copies the cells in a row into an array in ascending column order
+	 * without allocating
+	 * @param rowNum the zero-based row index
+	 * @param dest the array to fill
+	 * @return the number of cells in the row; if this exceeds the length of
+	 *         the array only that many were copied
+	 */
+	public int getCellsByRow(int rowNum, BiffRec[] dest) {
+		return cellStore.getRow(rowNum, dest);
+	}
+
+	/**
+	 * Copies the cells in a column into an array in ascending row order
+	 * without allocating
+	 * @param colNum the zero-based column index
+	 * @param dest the array to fill
+	 * @return the number of cells in the column; if this exceeds the length
+	 *         of the array only that many were copied
+	 */
+	public int getCellsByCol(int colNum, BiffRec[] dest) {
+		return cellStore.getCol(colNum, dest);
+	}
+
+	/**
+	 * Gets the first row at or after the given row which contains cells
+	 * @return the zero-based row index, or -1 if there is none
+	 */
+	public int getNextRowWithCells(int rowNum) {
+		return cellStore.nextRow(rowNum);
+	}
+
+	/**
+	 * Gets the first column at or after the given column which contains cells
+	 * @return the zero-based column index, or -1 if there is none
+	 */
+	public int getNextColWithCells(int colNum) {
+		return cellStore.nextCol(colNum);
+	}
+
+	/**
+	 * Access the cells within a rectangular area in row major order
+	 * @param firstRow first row of the area
+	 * @param firstCol first column of the area
+	 * @param lastRow last row of the area, inclusive
+	 * @param lastCol last column of the area, inclusive
+	 * @return the cells in the area, empty if there are none
+	 */
+	public ArrayList<BiffRec> getCellsInRange(int firstRow, int firstCol, int lastRow, int lastCol) {
+		return cellStore.getRange(firstRow, firstCol, lastRow, lastCol);
 	}
 
 	/** get a handle to a specific column of cells in this sheet
@@ -1292,7 +1507,10 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 		try {
 			cells = this.getCellsByCol(colNum);
 			for (BiffRec cell : cells) {
+				// re-index the cell under its new address
+				this.cellStore.remove(cell);
 				cell.setCol((short) newCol);
+				this.cellStore.add((CellRec) cell);
 				this.updateDimensions(cell.getRowNumber(), cell.getColNumber());
 			}
 		} catch (CellNotFoundException e) {
@@ -1416,6 +1634,7 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 		int oldRow = row.getRowNumber();
 		int newRow = oldRow + shift;
 		row.setRowNumber(newRow);
+		cellStore.moveRow(oldRow, newRow);
 
 		rows.remove(oldRow);
 		rows.put(newRow, row);
@@ -1566,29 +1785,7 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 			try {
 				// shift all rows after this one down...
 				// moves refs, formats, merges, etc.
-				if (lastRow != null) {
-					int startrow = lastRow.getRowNumber();
-					if (startrow == MAXROWS)
-						startrow--; // 20080925 KSC: can't add more than maxrows
-
-					for (int t = startrow; t >= rownum; t--) { // traverse from
-																// last row to
-																// current
-						Row rowtoshift = rows.get(Integer.valueOf(t));
-						if (rowtoshift != null) {
-							try {
-								this.shiftRow(rowtoshift, 1);// pass original
-																// row # for
-																// formula
-																// shifting +
-																// flag
-							} catch (Exception e) {
-								Logger.logWarn("Boundsheet.insertRow() failed shifting row: "
-										+ t + " - " + e.toString());
-							}
-						}
-					}
-				}
+				this.shiftRows(rownum, 1);
 
 				// we add a blank because a row cannot be empty
 				roe = this.getRowByNumber(rownum);
@@ -1619,6 +1816,53 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 		return roe;
 	}
 
+	/** Inserts empty rows and shifts the following rows down.
+	 * Unlike repeated calls to {@link #insertRow} the rows and the references
+	 * to them are shifted once for the whole block.
+	 * 
+	 * @param first the zero-based index of the first row to insert
+	 * @param count the number of rows to insert
+	 * @throws IllegalArgumentException if cells would be pushed past the last
+	 *         row of the sheet
+	 */
+	public void insertRows(int first, int count) {
+		int maxrows = wkbook != null && wkbook.getIsExcel2007() ? MAXROWS : MAXROWS_BIFF8;
+		int last = -1;
+		for (Integer rn : rows.keySet())
+			if (rn.intValue() >= first && rn.intValue() > last)
+				last = rn.intValue();
+		if (last + (long) count >= maxrows || first + (long) count > maxrows)
+			throw new IllegalArgumentException("inserting " + count + " rows at row "
+					+ (first + 1) + " would move cells past the last row of the sheet ("
+					+ maxrows + ")");
+		// shift or expand/contract ALL affected references including named ranges
+		ReferenceTracker.updateReferences(first + 1, count, this, true);
+		this.shiftRows(first, count);
+	}
+
+	/** Shifts every row at or after the given row down, last row first.
+	 * 
+	 * @param first the zero-based index of the first row to be shifted
+	 * @param shift the number of rows by which to shift
+	 */
+	private void shiftRows(int first, int shift) {
+		// only visit the rows which exist, sparse sheets may have few of them
+		ArrayList<Integer> rownums = new ArrayList<Integer>();
+		for (Integer rn : rows.keySet()) {
+			if (rn.intValue() >= first && rn.intValue() < MAXROWS) // 20080925 KSC: can't add more than maxrows
+				rownums.add(rn);
+		}
+		Collections.sort(rownums, Collections.reverseOrder());
+		for (Integer rn : rownums) {
+			try {
+				this.shiftRow(rows.get(rn), shift);
+			} catch (Exception e) {
+				Logger.logWarn("Boundsheet.insertRow() failed shifting row: "
+						+ rn + " - " + e.toString());
+			}
+		}
+	}
+
 	/**
 	 * shifts Merged cells. 10-15-04 -jm
 	 */ // used???
@@ -2011,6 +2255,11 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 	}
 
 	/** adds a cell to the Sheet
+	 * <p>
+	 * A cell replacing an existing one keeps its merged range. A new cell
+	 * inside a merged range is given that range, so a cell removed from a
+	 * merge and added again still reports the merge, as the cells created
+	 * when the range was merged do.
 	 * 
 	 * @param obj
 	 * @param rc
@@ -2073,7 +2322,8 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 					FORMAT_ID = rec.getIxfe();
 				this.removeCell(mycell);
 			} catch (CellNotFoundException cnfe) {
-				// good!
+				// good! a new cell still belongs to any merge covering it
+				merge_range = this.getMergedRange(rc[0], rc[1]);
 			} ;
 		}
 
@@ -2118,6 +2368,261 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 		return rec;
 	}
 
+	/**
+	 * Adds a block of values in one pass, one array of values per row.
+	 * <p>
+	 * Each value is added as by {@link #addValue(Object, int[], int)}, with
+	 * java.util.Date values stored as date serial numbers, but each row and
+	 * column default format is looked up once and new cells are indexed
+	 * directly. Cells already present within the block are replaced through
+	 * addValue. Lookup caches and dependent formulas are cleared once for the
+	 * whole block rather than per cell.
+	 * 
+	 * @param values the rows of values; <code>null</code> values leave the
+	 *            cell untouched and <code>null</code> rows are skipped
+	 * @param firstRow the zero-based row of the first array
+	 * @param firstCol the zero-based column of the first value in each array
+	 * @param formatIds the format ID of each column of the block, or
+	 *            <code>null</code>; IDs of zero or less use the default format
+	 * @return the number of rows consumed
+	 */
+	public int addRowValues(Iterator<Object[]> values, int firstRow, int firstCol, int[] formatIds) {
+		BlockWriter w = new BlockWriter(firstCol, formatIds);
+		int r = firstRow;
+		try {
+			while (values.hasNext()) {
+				Object[] vals = values.next();
+				if (vals != null && vals.length > 0) {
+					w.startRow(r, vals.length);
+					for (int i = 0; i < vals.length; i++)
+						if (vals[i] != null)
+							w.add(i, vals[i]);
+					w.endRow();
+				}
+				r++;
+			}
+		} finally {
+			w.finish();
+		}
+		return r - firstRow;
+	}
+
+	/**
+	 * Adds numbers down a column in one pass.
+	 * 
+	 * @param values the numbers to add
+	 * @param firstRow the zero-based row of the first number
+	 * @param col the zero-based column
+	 * @param formatId the format ID of the new cells, zero or less for the
+	 *            default format
+	 * @see #addRowValues(Iterator, int, int, int[])
+	 */
+	public void addColumnValues(double[] values, int firstRow, int col, int formatId) {
+		BlockWriter w = new BlockWriter(col, new int[] { formatId });
+		try {
+			for (int i = 0; i < values.length; i++) {
+				w.startRow(firstRow + i, 1);
+				w.add(0, Double.valueOf(values[i]));
+				w.endRow();
+			}
+		} finally {
+			w.finish();
+		}
+	}
+
+	/**
+	 * Adds values down a column in one pass.
+	 * 
+	 * @param values the values to add; <code>null</code> values leave the cell
+	 *            untouched
+	 * @param firstRow the zero-based row of the first value
+	 * @param col the zero-based column
+	 * @param formatId the format ID of the new cells, zero or less for the
+	 *            default format
+	 * @see #addRowValues(Iterator, int, int, int[])
+	 */
+	public void addColumnValues(Object[] values, int firstRow, int col, int formatId) {
+		BlockWriter w = new BlockWriter(col, new int[] { formatId });
+		if (values instanceof String[])
+			getWorkBook().getSharedStringTable().ensureCapacity(values.length);
+		try {
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] == null)
+					continue;
+				w.startRow(firstRow + i, 1);
+				w.add(0, values[i]);
+				w.endRow();
+			}
+		} finally {
+			w.finish();
+		}
+	}
+
+	/** the pattern given to dates added without a date format */
+	private static final String DEFAULT_DATE_PATTERN = "m/d/yy h:mm";
+
+	/**
+	 * adds the cells of a block, looking up rows and column formats once and
+	 * clearing dependent formulas once for the area written
+	 */
+	private final class BlockWriter {
+		private final int firstCol;
+		private final int[] formatIds;
+		private final int defaultIxfe;
+		// default format of each block column, plus one; zero if not looked up
+		private int[] colFormats;
+		private HashMap<Integer, Integer> dateFormats;
+
+		private Row row;
+		private int rowNum, rowFormat;
+		private boolean newRow;
+		private int minCol, maxCol;
+
+		private int firstRow = -1, lastRow = -1, lastCol = -1, leftCol = Integer.MAX_VALUE;
+
+		BlockWriter(int firstCol, int[] formatIds) {
+			this.firstCol = firstCol;
+			this.formatIds = formatIds;
+			this.defaultIxfe = getWorkBook().getDefaultIxfe();
+			this.colFormats = new int[formatIds == null ? 16 : Math.max(formatIds.length, 1)];
+		}
+
+		void startRow(int r, int width) {
+			if (firstCol + width - 1 > WorkBook.MAXCOLS)
+				throw new InvalidRecordException("Cell Column number: " + (firstCol + width - 1)
+						+ " is greater than maximum allowable Columns: " + WorkBook.MAXCOLS);
+			if (r > WorkBook.MAXROWS)
+				throw new InvalidRecordException("Cell Row number: " + r
+						+ " is greater than maximum allowable row: " + WorkBook.MAXROWS);
+			rowNum = r;
+			row = getRowByNumber(r);
+			newRow = row == null;
+			rowFormat = (row != null && row.getExplicitFormatSet()) ? row.getIxfe() : -1;
+			minCol = Integer.MAX_VALUE;
+			maxCol = -1;
+		}
+
+		void add(int i, Object val) {
+			int col = firstCol + i;
+			int[] rc = { rowNum, col };
+			int fmt = (formatIds == null || i >= formatIds.length) ? 0 : formatIds[i];
+			boolean date = val instanceof java.util.Date;
+			if (date)
+				val = Double.valueOf(DateConverter.getXLSDateVal((java.util.Date) val, getWorkBook().getDateFormat()));
+
+			if (cellStore.get(rowNum, col) != null) {
+				// replacing keeps the merge and format of the existing cell
+				BiffRec rec = addValue(val, rc, date ? dateFormat(resolveFormat(i, fmt)) : fmt);
+				if (date) {
+					// a kept format which is not a date format still needs one,
+					// as WorkSheetHandle.add(Date...) gives it
+					int ixfe = dateFormat(rec.getIxfe());
+					if (ixfe != rec.getIxfe())
+						rec.setXFRecord(ixfe);
+				}
+				if (row == null)
+					row = getRowByNumber(rowNum);
+			} else {
+				int ixfe = resolveFormat(i, fmt);
+				if (date)
+					ixfe = dateFormat(ixfe);
+				XLSRecord rec = createValrec(val, rc, ixfe);
+				// as in addValue, a new cell belongs to any merge covering it
+				if (!fastCellAdds)
+					rec.setMergeRange(getMergedRange(rowNum, col));
+				rec.setSheet(Boundsheet.this);
+				rec.setRowCol(rc);
+				rec.setIsValueForCell(true);
+				rec.setStreamer(streamer);
+				rec.setWorkBook(getWorkBook());
+				if (row == null)
+					row = addNewRow(rec);
+				cellStore.add((CellRec) rec);
+				row.addCell(rec);
+				rec.resetCacheBytes();
+			}
+			minCol = Math.min(minCol, col);
+			maxCol = Math.max(maxCol, col);
+		}
+
+		void endRow() {
+			if (maxCol < 0)
+				return;
+			updateDimensions(rowNum, minCol);
+			updateDimensions(rowNum, maxCol);
+			if (newRow && row != null) {
+				double rh = getDefaultRowHeight();
+				if (rh != 12.75) // the default
+					row.setRowHeight((int) (rh * 20));
+			}
+			if (firstRow < 0 || rowNum < firstRow)
+				firstRow = rowNum;
+			lastRow = Math.max(lastRow, rowNum);
+			leftCol = Math.min(leftCol, minCol);
+			lastCol = Math.max(lastCol, maxCol);
+		}
+
+		/** resolves a requested format ID as addValue does for a new cell */
+		private int resolveFormat(int i, int fmt) {
+			if (fmt <= 0)
+				fmt = defaultIxfe;
+			if (fmt != defaultIxfe)
+				return fmt;
+			if (rowFormat >= 0)
+				return rowFormat;
+			if (i >= colFormats.length) {
+				int[] nc = new int[Math.max(colFormats.length * 2, i + 1)];
+				System.arraycopy(colFormats, 0, nc, 0, colFormats.length);
+				colFormats = nc;
+			}
+			if (colFormats[i] == 0) {
+				Colinfo co = getColInfo(firstCol + i);
+				colFormats[i] = ((co != null && co.getIxfe() != 0) ? co.getIxfe() : defaultIxfe) + 1;
+			}
+			return colFormats[i] - 1;
+		}
+
+		/** gets a format for dates based upon the given format, as
+		 * WorkSheetHandle.add(Date...) does */
+		private int dateFormat(int ixfe) {
+			if (dateFormats == null)
+				dateFormats = new HashMap<Integer, Integer>();
+			Integer key = Integer.valueOf(ixfe);
+			Integer ret = dateFormats.get(key);
+			if (ret == null) {
+				Xf xf = getWorkBook().getXf(ixfe);
+				String pat = xf == null ? null : xf.getFormatPattern();
+				if (xf != null && (pat == null || pat.equals("General"))) {
+					// never modify the xf in place; it may be shared
+					Xf clone = FormatHandle.cloneXf(xf, getWorkBook());
+					clone.setFormatPattern(DEFAULT_DATE_PATTERN);
+					Xf match = getWorkBook().getMatchingXf(clone);
+					if (match != null && match.getIdx() > -1)
+						ret = Integer.valueOf(match.getIdx());
+					else
+						ret = Integer.valueOf(Xf.updateXf(clone, clone.getFont().getIdx(), getWorkBook()).getIdx());
+				} else {
+					ret = key;
+				}
+				dateFormats.put(key, ret);
+			}
+			return ret.intValue();
+		}
+
+		/** clears cached lookups and formula values depending on the block */
+		void finish() {
+			if (lastRow < 0)
+				return;
+			ReferenceTracker rt = getWorkBook().getRefTracker();
+			if (rt == null)
+				return;
+			if (getWorkBook().getCalcMode() != CALCULATE_EXPLICIT)
+				rt.clearAffectedFormulaCells(Boundsheet.this, firstRow, leftCol, lastRow, lastCol);
+			else
+				rt.invalidateLookupIndexes(Boundsheet.this, firstRow, leftCol, lastRow, lastCol);
+		}
+	}
+
 	/**
 	 * for numbers stored as strings, try to guess the
 	 * format pattern used, and strip the value to a number
@@ -2140,7 +2645,7 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 				input = StringTool.strip(input, fmts.identifier);
 				p = fmts.pattern;
 				matched = true;
-				Double d = new Double(input);
+				Double d = Double.valueOf(input);
 				d = fmts.adjustValue(d);
 				Object[] ret = new Object[2];
 				ret[0] = d; // value
@@ -2333,14 +2838,20 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 		}
 	}
 
+	/** drops any cached lookup index over a range containing the cell */
+	private void lookupRangeChanged(BiffRec cell) {
+		if (wkbook != null && wkbook.getRefTracker() != null)
+			wkbook.getRefTracker().invalidateLookupIndexes(this, cell);
+	}
+
 	/** Add a cell to this boundsheet record and populate the cells array
 	 * 
 	 * @param cell
 	 */
 	@Override
 	public void addCell(CellRec cell) {
-		cellsByRow.put(cell, cell);
-		cellsByCol.put(cell, cell);
+		cellStore.add(cell);
+		lookupRangeChanged(cell);
 		Row row = rows.get(Integer.valueOf(cell.getRowNumber()));
 		if (null == row)
 			row = this.addNewRow(cell);
@@ -2350,6 +2861,64 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 		this.updateDimensions(cell.getRowNumber(), cell.getColNumber());
 	}
 
+	/** Replaces each MULBLANK overlapping an area with a BLANK for every
+	 * column it covers, so that the cells of the area may be moved one by one.
+	 */
+	void splitMulblanks(int firstRow, int firstCol, int lastRow, int lastCol) {
+		for (BiffRec cell : cellStore.getRange(firstRow, firstCol, lastRow, lastCol)) {
+			if (cell.getOpcode() != MULBLANK)
+				continue;
+			List<Blank> blanks = ((Mulblank) cell).getBlanks();
+			cellStore.remove(cell);
+			for (Blank b : blanks)
+				this.addCell(b);
+		}
+	}
+
+	/** Gives cells new addresses in place, as when a range is sorted.
+	 * Every cell is taken out of the cell index before any is re-addressed,
+	 * so the new addresses may be any rearrangement of the old ones. Shared
+	 * formulas with moved members are re-ordered; references to the cells
+	 * are not adjusted.
+	 * 
+	 * @param cells the cell records to be moved, which may not be MULBLANKs
+	 * @param newRows the zero-based new row of each cell
+	 * @param newCols the zero-based new column of each cell
+	 */
+	void moveCells(List<BiffRec> cells, int[] newRows, int[] newCols) {
+		// shared formula members find their SHRFMLA through the address of its
+		// host cell, so every member must be resolved before any cell moves
+		LinkedHashSet<Shrfmla> shared = new LinkedHashSet<Shrfmla>();
+		for (BiffRec cell : cells) {
+			if (cell.getOpcode() != FORMULA || !((Formula) cell).isSharedFormula())
+				continue;
+			((Formula) cell).populateExpression();
+			Shrfmla s = ((Formula) cell).shared;
+			if (s == null || !shared.add(s))
+				continue;
+			for (BiffRec member : cellStore.getRange(s.getFirstRow(),
+					s.getFirstCol(), s.getLastRow(), s.getLastCol())) {
+				if (member.getOpcode() == FORMULA)
+					((Formula) member).populateExpression();
+			}
+		}
+		for (BiffRec cell : cells)
+			cellStore.remove(cell);
+		for (int i = 0; i < cells.size(); i++) {
+			BiffRec cell = cells.get(i);
+			cell.setRowNumber(newRows[i]);
+			cell.setCol((short) newCols[i]);
+			Row row = rows.get(Integer.valueOf(newRows[i]));
+			if (null == row)
+				row = this.addNewRow(cell);
+			row.addCell(cell);
+			cellStore.add((CellRec) cell);
+			this.updateDimensions(newRows[i], newCols[i]);
+		}
+		for (Shrfmla s : shared)
+			s.membersMoved();
+	}
+
 	private boolean copypriorformats = true;
 
 	@Override
@@ -2443,11 +3012,21 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 			} catch (Exception e) {
 				Logger.logInfo("Boundsheet.moveCell() error :" + e);
 			}
+		} else if (c.getOpcode() == MULBLANK) {
+			// remove the blank while the record still has its old address
+			removeCell(startaddr);
+			int[] s = ExcelTools.getRowColFromString(endaddr);
+			c.setCol((short) s[1]);
+			c.setRowNumber(s[0]);
+			this.addCell((CellRec) c);
 		} else {
+			// un-index the record under its old address; removeCell would
+			// also destroy a formula
+			cellStore.remove(c);
+			lookupRangeChanged(c);
 			int[] s = ExcelTools.getRowColFromString(endaddr);
 			c.setCol((short) s[1]);
 			c.setRowNumber(s[0]);
-			removeCell(startaddr);
 			this.addCell((CellRec) c);
 		}
 	}
@@ -2467,6 +3046,9 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 				Logger.logInfo("Boundsheet.moveCell() error :" + e);
 			}
 		} else {
+			// the cell must not stay indexed under its old address
+			cellStore.remove(c);
+			lookupRangeChanged(c);
 			int[] s = ExcelTools.getRowColFromString(endaddr);
 			c.setCol((short) s[1]);
 			c.setRowNumber(s[0]);
@@ -2500,8 +3082,7 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 	@Override
 	public BiffRec getCell(int row, int col) throws CellNotFoundException {
 		// get the nearest entry from the cell map
-		BiffRec theCell = cellsByRow
-				.get(new CellAddressible.Reference(row, col));
+		BiffRec theCell = cellStore.get(row, col);
 		if (null == theCell)
 			throw new CellNotFoundException(this.sheetname, row, col);
 
@@ -2515,13 +3096,15 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 	    */
 	@Override
 	public BiffRec[] getCells() {
-		Collection<BiffRec> cells = cellsByRow.values();
-		return cells.toArray(new BiffRec[cells.size()]);
+		return cellStore.toArray();
 	}
 
 	@Override
 	public void addMergedCellsRec(Mergedcells r) {
 		mc.add(r);
+		CellRange[] ranges = r.getMergedRanges();
+		for (int i = 0; ranges != null && i < ranges.length; i++)
+			updateRangeIndex(ranges[i]);
 	}
 
 	/**
@@ -4203,7 +4786,21 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 	 */
 	HashMap<String, String> shExternalLinkInfo = null;
 
-	void parseOOXML(WorkBookHandle bk, WorkSheetHandle sheet, InputStream ii, ArrayList sst, ArrayList formulas, ArrayList hyperlinks, HashMap inlineStrs) throws XmlPullParserException, IOException {
+	void parseOOXML(WorkBookHandle bk, WorkSheetHandle sheet, InputStream ii, List sst, ArrayList formulas, ArrayList hyperlinks, HashMap inlineStrs) throws XmlPullParserException, IOException {
+		XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		XmlPullParser xpp = factory.newPullParser();
+
+		xpp.setInput(ii, null); // using XML 1.0 specification
+		parseOOXML(bk, sheet, xpp, sst, formulas, hyperlinks, inlineStrs);
+	}
+
+	/**
+	 * parse sheet.xml from a parser positioned at the start of the document,
+	 * such as one recorded ahead of time on another thread
+	 * @see #parseOOXML(WorkBookHandle, WorkSheetHandle, InputStream, ArrayList, ArrayList, ArrayList, HashMap)
+	 */
+	void parseOOXML(WorkBookHandle bk, WorkSheetHandle sheet, XmlPullParser xpp, List sst, ArrayList formulas, ArrayList hyperlinks, HashMap inlineStrs) throws XmlPullParserException, IOException {
 		int sfindex = formulas.size();
 
 		// try {
@@ -4213,11 +4810,6 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 		String type = "";
 		shExternalLinkInfo = new HashMap<String, String>();
 
-		XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-		factory.setNamespaceAware(true);
-		XmlPullParser xpp = factory.newPullParser();
-
-		xpp.setInput(ii, null); // using XML 1.0 specification
 		int eventType = xpp.getEventType();
 		while (eventType != XmlPullParser.END_DOCUMENT) {
 			if (eventType == XmlPullParser.START_TAG) {
@@ -4724,7 +5316,7 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 	 * @throws CellNotFoundException 
 	 * @throws XmlPullParserException 
 	 */
-	protected void parseSheetElements(WorkBookHandle bk, ZipFile zip, ArrayList cl, String parentDir, String externalDir, ArrayList formulas, ArrayList hyperlinks, HashMap inlineStrs, HashMap<String, WorkSheetHandle> pivotTables) throws XmlPullParserException, CellNotFoundException {
+	protected void parseSheetElements(WorkBookHandle bk, OOXMLPackage zip, ArrayList cl, String parentDir, String externalDir, ArrayList formulas, ArrayList hyperlinks, HashMap inlineStrs, HashMap<String, WorkSheetHandle> pivotTables) throws XmlPullParserException, CellNotFoundException {
 		String p;
 		ZipEntry target;
 
@@ -5090,7 +5682,7 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 	 * @param ii        InputStream
 	 * @param zip       Current Open ZipOutputStream
 	 */
-	void parseDrawingXML(WorkBookHandle bk, ArrayList drawingFiles, InputStream ii, ZipFile zip, String parentDir, String externalDir) {
+	void parseDrawingXML(WorkBookHandle bk, ArrayList drawingFiles, InputStream ii, OOXMLPackage zip, String parentDir, String externalDir) {
 		try {
 			java.util.Stack lastTag = new java.util.Stack(); // keep track of
 																// element
@@ -5367,6 +5959,26 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 		}
 	}
 
+	/**
+	 * create the cell index for a sheet, using the class named by
+	 * {@link XLSConstants#CELLSTORE_PROP} if set
+	 *
+	 * @return a new, empty CellStore
+	 */
+	private static CellStore createCellStore() {
+		String storeclass = System.getProperty(CELLSTORE_PROP);
+		if (storeclass != null) {
+			try {
+				return (CellStore) Class.forName(storeclass).getDeclaredConstructor().newInstance();
+			} catch (Exception e) {
+				Logger.logErr("Could not load custom CellStore: " + storeclass
+						+ ": " + e + ". Falling back to "
+						+ ColumnarCellStore.class.getName() + ".");
+			}
+		}
+		return new ColumnarCellStore();
+	}
+
 	/**
 	 * clear out object references in prep for closing workbook
 	 */
@@ -5385,11 +5997,7 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 		}
 		rows.clear();
 
-		cellsByRow = new TreeMap<CellAddressible, BiffRec>(
-				new CellAddressible.RowMajorComparator());
-
-		cellsByCol = new TreeMap<CellAddressible, BiffRec>(
-				new CellAddressible.ColumnMajorComparator());
+		cellStore = createCellStore();
 		// TODO: clear recs
 		arrayformulas.clear();
 		// TODO: clear recs
@@ -5429,6 +6037,7 @@ public final class Boundsheet extends XLSRecord implements Sheet {
 			c.close();
 		}
 		cond_formats.clear();
+		rangeIndex = null;
 
 		for (int i = 0; i < autoFilters.size(); i++) {
 			AutoFilter a = (AutoFilter) autoFilters.get(i);
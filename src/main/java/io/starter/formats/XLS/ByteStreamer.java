@@ -24,6 +24,9 @@ package io.starter.formats.XLS;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 import io.starter.toolkit.*;
 import io.starter.formats.LEO.*;
@@ -243,95 +246,152 @@ implements Serializable, XLSConstants{
      /**
       * Write all of the records to the output stream, including
       * creating lbplypos records, assembling continues, etc.
+      * <p>
+      * If the workbook has parallel writing enabled, the worksheet records
+      * are assembled and encoded on the common {@link ForkJoinPool}, one
+      * task per sheet. The stream offsets, which every INDEX and BOUNDSHEET
+      * depends on, are still computed in a single pass over all records in
+      * between, and the encoded sheets are written in their original order.
       */
      public StringBuffer writeOut(OutputStream out) {
+    	 Instrumentation.Phase phase = Instrumentation.start("xls.write");
+    	 try {
+    		 return this.writeWorkBook(out);
+    	 } finally {
+    		 phase.end();
+    	 }
+     }
+     
+     private StringBuffer writeWorkBook(OutputStream out) {
         // create a byte level lockdown file in same directory as output
  		StringBuffer lockdown = new StringBuffer();
  		boolean lockit = false; 
  		if(System.getProperties().get("io.starter.OpenXLS.autocreatelockdown")!=null)
  			lockit = System.getProperties().get("io.starter.OpenXLS.autocreatelockdown").equals("true");
  		
- 		// update tracker cells, packs formats ...
- 		this.workbook.prestream();		
- 		byte[] dt;
+ 		AbstractList rex;
+ 		BiffRec rec;
+ 		byte[][] sheetBytes;
+ 		int globalsEnd;
  		int recpos = 0, recctr = 0, dlen = 0;
+ 		Instrumentation.Phase prepare = Instrumentation.start("xls.write.prepare");
+ 		try {
+ 			// update tracker cells, packs formats ...
+ 			this.workbook.prestream();		
  		
  		
- 		 // get a private list of the records
- 		AbstractList rex = (AbstractList) new FastAddVector(records.size());
- 		rex.addAll(records);
+ 			 // get a private list of the records
+ 			rex = (AbstractList) new FastAddVector(records.size());
+ 			rex.addAll(records);
       
         
- 		// first pass -- prepare SST
-  		BiffRec rec =null;
-  		Iterator e = rex.iterator();
-  		while(e.hasNext()){
-              rec = (BiffRec) e.next();
-              ++recctr;
-              if(rec != null){
-  				if (rec.getByteReader() != null)
-  					rec.getByteReader().setApplyRelativePosition(true);
-  				// Logger.logInfo("ByteStreamer.stream() PREStreaming: "+ rec);
-  				if(rec.getOpcode() == BOUNDSHEET) {
-//  				add sheet recs to output vector
-			        List lst = ((Boundsheet)rec).assembleSheetRecs();
-			        rex.addAll(rex.size(),lst);
-  		        }else if(rec.getOpcode() == SST) {
-  		        	// add extra bytes necessary for adding continue recx 
-  		        	rec.preStream();
-  		        	recpos= (((Sst)rec).getNumContinues()*4);
-  		        	if(recpos < 0)// deal with empty SST
-  		        		recpos = 0;
-  		        	dlen+=recpos;
-  		        }else
-  		        	rec.preStream(); // perform expensive processes
-              }else{
-                  Logger.logWarn("Body Rec missing while preStreaming(): " + rec.toString());   
-              }
-          }
-          e = rex.iterator();
-          Index lastindex = null;
-          int ctr = 0;
-          while(e.hasNext()){
-              rec = (BiffRec)e.next();                   
-              if(ctr==0){ // handle the first BOF offset
-            	  rec.setOffset(0);
-            	  ctr++;
-              }else {                 
-            	  rec.setOffset(recpos);
-              }
+ 			// sheet records are assembled concurrently on the first BOUNDSHEET
+ 			List bounds = null;
+ 			Map assembled = null;
+ 			List sheetStarts = null;
+ 			if (!lockit && this.workbook.getParallelWrite()
+ 					&& this.workbook.getCharts().length == 0) {
+ 				bounds = new ArrayList();
+ 				for (int i = 0; i < rex.size(); i++) {
+ 					BiffRec b = (BiffRec) rex.get(i);
+ 					if (b != null && b.getOpcode() == BOUNDSHEET)
+ 						bounds.add(b);
+ 				}
+ 				if (bounds.size() > 1)
+ 					sheetStarts = new ArrayList();
+ 			}
+ 		
+ 			// first pass -- prepare SST
+  			rec =null;
+  			Iterator e = rex.iterator();
+  			while(e.hasNext()){
+	              rec = (BiffRec) e.next();
+	              ++recctr;
+	              if(rec != null){
+  					if (rec.getByteReader() != null)
+  						rec.getByteReader().setApplyRelativePosition(true);
+  					// Logger.logInfo("ByteStreamer.stream() PREStreaming: "+ rec);
+  					if(rec.getOpcode() == BOUNDSHEET) {
+	//  				add sheet recs to output vector
+				        List lst;
+				        if (sheetStarts != null) {
+				        	if (assembled == null)
+				        		assembled = assembleSheets(bounds);
+				        	lst = (List) assembled.get(rec);
+				        	sheetStarts.add(Integer.valueOf(rex.size()));
+				        } else
+				        	lst = ((Boundsheet)rec).assembleSheetRecs();
+				        rex.addAll(rex.size(),lst);
+  			        }else if(sheetStarts != null && rec.getOpcode() == ROW) {
+  			        	// already prepared along with its sheet
+  			        }else if(rec.getOpcode() == SST) {
+  			        	// add extra bytes necessary for adding continue recx 
+  			        	rec.preStream();
+  			        	recpos= (((Sst)rec).getNumContinues()*4);
+  			        	if(recpos < 0)// deal with empty SST
+  			        		recpos = 0;
+  			        	dlen+=recpos;
+  			        }else
+  			        	rec.preStream(); // perform expensive processes
+	              }else{
+	                  Logger.logWarn("Body Rec missing while preStreaming(): " + rec.toString());   
+	              }
+	          }
+	          e = rex.iterator();
+	          Index lastindex = null;
+	          int ctr = 0;
+	          while(e.hasNext()){
+	              rec = (BiffRec)e.next();                   
+	              if(ctr==0){ // handle the first BOF offset
+	            	  rec.setOffset(0);
+	            	  ctr++;
+	              }else {                 
+	            	  rec.setOffset(recpos);
+	              }
               
-              if(rec.getOpcode() == INDEX) { // need to get all it's component dbcell offsets set before we can process!
-                  if (lastindex != null) {
-                      lastindex.updateDbcellPointers();
-                  }
-                  lastindex = (Index)rec;
-              }
-//            offset dlen by number of new continue headers
-			  if(rec.getOpcode()==CONTINUE && ((Continue)rec).maskedMso!=null) {
-				rec.setData(((Continue)rec).maskedMso.getData());	// ensure any mso changes are propogated up
-			  }
-			  int rln = rec.getLength();  //length of total rec data including continue
-			  int numcx = rln/MAXRECLEN;	// num continues?
-			  if ((rln%MAXRECLEN)<=4 && numcx>0)	// hits boundary; since rlen==datalen+4, numcx is 1 more than actual continues
-				  numcx--;
-			  if(rec.getOpcode()==CONTINUE){
-				  Continue thiscont = (Continue)rec;
-				  if(thiscont.isBigRecContinue()) {// could cause bugs... if related rec is trimmed
-					  rln = 0; // do not count data byte size for Continues...
+	              if(rec.getOpcode() == INDEX) { // need to get all it's component dbcell offsets set before we can process!
+	                  if (lastindex != null) {
+	                      lastindex.updateDbcellPointers();
+	                  }
+	                  lastindex = (Index)rec;
+	              }
+	//            offset dlen by number of new continue headers
+				  if(rec.getOpcode()==CONTINUE && ((Continue)rec).maskedMso!=null) {
+					rec.setData(((Continue)rec).maskedMso.getData());	// ensure any mso changes are propogated up
+				  }
+				  int rln = rec.getLength();  //length of total rec data including continue
+				  int numcx = rln/MAXRECLEN;	// num continues?
+				  if ((rln%MAXRECLEN)<=4 && numcx>0)	// hits boundary; since rlen==datalen+4, numcx is 1 more than actual continues
+					  numcx--;
+				  if(rec.getOpcode()==CONTINUE){
+					  Continue thiscont = (Continue)rec;
+					  if(thiscont.isBigRecContinue()) {// could cause bugs... if related rec is trimmed
+						  rln = 0; // do not count data byte size for Continues...
+					  }
 				  }
-			  }
-			  if(((rln>(MAXRECLEN+4))
-					  &&(numcx>0)
-					  &&rec.getOpcode()!=SST )) {   
-			  	dlen += (numcx*4);
-				recpos += (numcx*4);
-			  }
-           	  dlen += rln;
-			  recpos += rln;
+				  if(((rln>(MAXRECLEN+4))
+						  &&(numcx>0)
+						  &&rec.getOpcode()!=SST )) {   
+				  	dlen += (numcx*4);
+					recpos += (numcx*4);
+				  }
+	           	  dlen += rln;
+				  recpos += rln;
+	          }
+	          if (lastindex !=null)lastindex.updateDbcellPointers();
+          
+	          // encode the sheets now that their offsets are known
+	          sheetBytes = null;
+	          globalsEnd = rex.size();
+	          if (sheetStarts != null) {
+	        	  globalsEnd = ((Integer) sheetStarts.get(0)).intValue();
+	        	  sheetBytes = encodeSheets(rex, sheetStarts);
+	          }
+          } finally {
+        	  prepare.end();
           }
-          if (lastindex !=null)lastindex.updateDbcellPointers();
-          e = rex.iterator();
+          Instrumentation.count("xls.records.written", rex.size());
+          Instrumentation.count("xls.bytesWritten", dlen);
           
           /**
            *  Get the updated Storages from LEO... output the RootStorage
@@ -351,41 +411,17 @@ implements Serializable, XLSConstants{
        	  
           // now output the workbook biff records
           if (LEOFile.DEBUG) LEOFile.actualOutput= 0;	// debugging          
-          while(e.hasNext()){
-			  	rec = (BiffRec) e.next();
-			  	
-				try { // output the rec bytes
-					// deal with CONTINUE record changes before streaming
-	  				if (ContinueHandler.createContinues(rec, out, this )) {
-	  					// Logger.logInfo("Created continues for: " + rec.toString());
-	  				}else{// Not a continued rec!
-	  				    this.writeRecord( out, rec );
-	  				    
-	  				    if (lockit) {
-	  				    	byte[] op = ByteTools.shortToLEBytes(rec.getOpcode());
-	  				    	dt = rec.getData();
-	  				    	byte[] ln = ByteTools.shortToLEBytes((short) dt.length);
-	  				    	 
-	  				    	// Logger.logInfo("=== WRITING RECORD DATA ===");
-	  				    	//lockdown.append("rec:" + rec.toString());
-	  				    	//lockdown.append("\r\n");
-	  				    	lockdown.append("opc:0x"+ Integer.toHexString(rec.getOpcode())+ " ["+ ByteTools.getByteString(op, false)+ "]");
-	  				    	lockdown.append("\r\n");
-	  				    	lockdown.append("len:0x"+ Integer.toHexString(rec.getLength())+ " ["+ ByteTools.getByteString(ln, false)+ "]");
-	  				    	lockdown.append("\r\n");
-	  				    	//lockdown.append("off:0x" + Integer.toHexString(off+0x200));
-	  				    	//lockdown.append("\r\n");
-	  				    	lockdown.append(ByteTools.getByteDump(dt, 1));
-	  				    	lockdown.append("\r\n");
-	  				    }
-	  				}
-				} catch (Exception a) {
-					throw new WorkBookException(
-							"Streaming WorkBook Bytes failed for record: "
-							+ rec.toString() + ": " + a + " Output Corrupted.",
-							WorkBookException.WRITING_ERROR, a );
-				} 
-			}        
+          writeRecords(out, rex, 0, globalsEnd, lockit ? lockdown : null);
+          if (sheetBytes != null) {
+        	  try {
+        		  for (int i = 0; i < sheetBytes.length; i++)
+        			  out.write(sheetBytes[i]);
+        	  } catch (IOException a) {
+        		  throw new WorkBookException(
+        				  "Streaming WorkBook Bytes failed: " + a + " Output Corrupted.",
+        				  WorkBookException.WRITING_ERROR, a );
+        	  }
+          }
 
           // pad to fit FAT size
           if (LEOFile.DEBUG) {
@@ -429,6 +465,130 @@ implements Serializable, XLSConstants{
      
      
      
+     /**
+      * Writes a run of records, spanning them across CONTINUE records
+      * where necessary.
+      * @param lockdown if not null, receives a dump of every record written
+      */
+     private void writeRecords(OutputStream out, List rex, int from, int to, StringBuffer lockdown) {
+          for (int i = from; i < to; i++) {
+			  	BiffRec rec = (BiffRec) rex.get(i);
+			  	
+				try { // output the rec bytes
+					// deal with CONTINUE record changes before streaming
+	  				if (ContinueHandler.createContinues(rec, out, this )) {
+	  					// Logger.logInfo("Created continues for: " + rec.toString());
+	  				}else{// Not a continued rec!
+	  				    this.writeRecord( out, rec );
+	  				    
+	  				    if (lockdown != null) {
+	  				    	byte[] op = ByteTools.shortToLEBytes(rec.getOpcode());
+	  				    	byte[] dt = rec.getData();
+	  				    	byte[] ln = ByteTools.shortToLEBytes((short) dt.length);
+	  				    	 
+	  				    	// Logger.logInfo("=== WRITING RECORD DATA ===");
+	  				    	//lockdown.append("rec:" + rec.toString());
+	  				    	//lockdown.append("\r\n");
+	  				    	lockdown.append("opc:0x"+ Integer.toHexString(rec.getOpcode())+ " ["+ ByteTools.getByteString(op, false)+ "]");
+	  				    	lockdown.append("\r\n");
+	  				    	lockdown.append("len:0x"+ Integer.toHexString(rec.getLength())+ " ["+ ByteTools.getByteString(ln, false)+ "]");
+	  				    	lockdown.append("\r\n");
+	  				    	//lockdown.append("off:0x" + Integer.toHexString(off+0x200));
+	  				    	//lockdown.append("\r\n");
+	  				    	lockdown.append(ByteTools.getByteDump(dt, 1));
+	  				    	lockdown.append("\r\n");
+	  				    }
+	  				}
+				} catch (Exception a) {
+					throw new WorkBookException(
+							"Streaming WorkBook Bytes failed for record: "
+							+ rec.toString() + ": " + a + " Output Corrupted.",
+							WorkBookException.WRITING_ERROR, a );
+				} 
+			}
+     }
+
+     /**
+      * Assembles the records of each sheet on the common pool, preparing the
+      * ROW records along the way.
+      * @return the record list of each sheet keyed by its Boundsheet
+      */
+     private static Map assembleSheets(List bounds) {
+    	 ForkJoinPool pool = ForkJoinPool.commonPool();
+    	 ForkJoinTask[] tasks = new ForkJoinTask[bounds.size()];
+    	 for (int i = 0; i < tasks.length; i++)
+    		 tasks[i] = pool.submit(new AssembleTask((Boundsheet) bounds.get(i)));
+    	 Map ret = new IdentityHashMap();
+    	 for (int i = 0; i < tasks.length; i++)
+    		 ret.put(bounds.get(i), tasks[i].join());
+    	 return ret;
+     }
+
+     /**
+      * Encodes the records of each sheet into its own buffer on the common
+      * pool. The offsets of all records must already be set.
+      * @param sheetStarts the index in <code>rex</code> of the first record of
+      *        each sheet; the last sheet runs to the end of the list
+      */
+     private byte[][] encodeSheets(List rex, List sheetStarts) {
+    	 ForkJoinPool pool = ForkJoinPool.commonPool();
+    	 ForkJoinTask[] tasks = new ForkJoinTask[sheetStarts.size()];
+    	 for (int i = 0; i < tasks.length; i++) {
+    		 int from = ((Integer) sheetStarts.get(i)).intValue();
+    		 int to = i + 1 < tasks.length
+    				 ? ((Integer) sheetStarts.get(i + 1)).intValue() : rex.size();
+    		 tasks[i] = pool.submit(new EncodeTask(rex, from, to));
+    	 }
+    	 byte[][] ret = new byte[tasks.length][];
+    	 for (int i = 0; i < tasks.length; i++)
+    		 ret[i] = (byte[]) tasks[i].join();
+    	 return ret;
+     }
+
+     /** assembles the records of one sheet and prepares its rows */
+     private static final class AssembleTask extends RecursiveTask {
+    	 private static final long serialVersionUID = 3190488274317307571L;
+    	 private final Boundsheet sheet;
+
+    	 AssembleTask(Boundsheet sheet) {
+    		 this.sheet = sheet;
+    	 }
+
+    	 @Override
+    	 protected Object compute() {
+    		 List lst = sheet.assembleSheetRecs();
+    		 for (int i = 0; i < lst.size(); i++) {
+    			 BiffRec rec = (BiffRec) lst.get(i);
+    			 if (rec.getOpcode() == ROW) {
+    				 if (rec.getByteReader() != null)
+    					 rec.getByteReader().setApplyRelativePosition(true);
+    				 rec.preStream();
+    			 }
+    		 }
+    		 return lst;
+    	 }
+     }
+
+     /** encodes a run of records into a buffer */
+     private final class EncodeTask extends RecursiveTask {
+    	 private static final long serialVersionUID = -6338316150384460826L;
+    	 private final List rex;
+    	 private final int from, to;
+
+    	 EncodeTask(List rex, int from, int to) {
+    		 this.rex = rex;
+    		 this.from = from;
+    		 this.to = to;
+    	 }
+
+    	 @Override
+    	 protected Object compute() {
+    		 ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    		 writeRecords(buf, rex, from, to, null);
+    		 return buf.toByteArray();
+    	 }
+     }
+     
      public void WriteAllRecs(String fName) {
     	 WriteAllRecs(fName, false);
      }
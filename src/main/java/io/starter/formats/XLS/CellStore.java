@@ -0,0 +1,133 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import java.util.ArrayList;
+
+/** The cell index of a single sheet.
+ * <p>
+ * A <code>CellStore</code> holds every value record of a {@link Boundsheet}
+ * and answers point, row and column queries against it. The implementation
+ * used by new sheets may be chosen by setting the system property
+ * {@link XLSConstants#CELLSTORE_PROP} to the name of a class implementing
+ * this interface; it defaults to {@link ColumnarCellStore}.
+ * <p>
+ * Cells are indexed by the address they had when they were added. Callers
+ * which change the address of a stored cell must either remove and re-add it
+ * or, for whole rows, call {@link #moveRow(int, int)} afterwards.
+ * 
+ * @see Boundsheet
+ */
+public interface CellStore {
+
+	/** Adds a cell to the index, replacing any cell already stored at its
+	 * address.
+	 * @param cell the cell record to be added
+	 */
+	public void add(CellRec cell);
+
+	/** Removes a cell from the index.
+	 * @param cell the cell record to be removed
+	 * @return whether the cell was present in the index
+	 */
+	public boolean remove(BiffRec cell);
+
+	/** Gets the cell at the given address.
+	 * Records spanning several columns (MULBLANK) are returned for every
+	 * column they cover.
+	 * @param row the zero-based row index
+	 * @param col the zero-based column index
+	 * @return the cell record, or <code>null</code> if there is none
+	 */
+	public BiffRec get(int row, int col);
+
+	/** Gets the cells in a row in ascending column order.
+	 * @param row the zero-based row index
+	 * @return a new list of the cells in the row, empty if there are none
+	 */
+	public ArrayList<BiffRec> getRow(int row);
+
+	/** Gets the cells in a column in ascending row order.
+	 * @param col the zero-based column index
+	 * @return a new list of the cells in the column, empty if there are none
+	 */
+	public ArrayList<BiffRec> getCol(int col);
+
+	/** Gets the cells within a rectangular area in ascending row major order.
+	 * Records spanning several columns are returned once if they overlap
+	 * the area.
+	 * @param firstRow the zero-based first row of the area
+	 * @param firstCol the zero-based first column of the area
+	 * @param lastRow the zero-based last row of the area, inclusive
+	 * @param lastCol the zero-based last column of the area, inclusive
+	 * @return a new list of the cells in the area, empty if there are none
+	 */
+	public ArrayList<BiffRec> getRange(int firstRow, int firstCol, int lastRow,
+			int lastCol);
+
+	/** Copies the cells in a row into an array in ascending column order.
+	 * @param row the zero-based row index
+	 * @param dest the array to fill
+	 * @return the number of cells in the row; if this exceeds the length of
+	 *         the array only that many were copied
+	 */
+	public int getRow(int row, BiffRec[] dest);
+
+	/** Copies the cells in a column into an array in ascending row order.
+	 * @param col the zero-based column index
+	 * @param dest the array to fill
+	 * @return the number of cells in the column; if this exceeds the length
+	 *         of the array only that many were copied
+	 */
+	public int getCol(int col, BiffRec[] dest);
+
+	/** Gets the first row at or after the given row which contains cells.
+	 * @param row the zero-based row index to start from
+	 * @return the zero-based row index, or -1 if there is none
+	 */
+	public int nextRow(int row);
+
+	/** Gets the first column at or after the given column which contains
+	 * cells.
+	 * @param col the zero-based column index to start from
+	 * @return the zero-based column index, or -1 if there is none
+	 */
+	public int nextCol(int col);
+
+	/** Re-indexes the cells of a row whose row number has been changed.
+	 * @param oldRow the row the cells were stored under
+	 * @param newRow the row the cells now belong to
+	 */
+	public void moveRow(int oldRow, int newRow);
+
+	/** Gets all cells in ascending row major order.
+	 * @return a new array of all cells in the index
+	 */
+	public BiffRec[] toArray();
+
+	/** Gets the number of cell records in the index. */
+	public int size();
+
+	/** Removes all cells from the index. */
+	public void clear();
+}
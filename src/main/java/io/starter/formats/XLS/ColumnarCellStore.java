@@ -0,0 +1,435 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Row major {@link CellStore} backed by primitive column arrays.
+ * <p>
+ * Each populated row owns a block holding a sorted <code>int[]</code> of
+ * column numbers and a parallel array of cell records, and the blocks are
+ * addressed directly by row number. A point lookup is an array access plus
+ * a binary search within the row, and no per-cell map entries or boxed keys
+ * are allocated.
+ * <p>
+ * Column queries are served by a secondary index of the same shape which is
+ * built on the first column request and then maintained incrementally. Bulk
+ * operations that move whole rows discard it to be rebuilt on demand.
+ * <p>
+ * Cells are found by the address they had when added, so a cell must be
+ * removed before its address or column extent is changed and added again
+ * afterwards. Like the other stores this class is not thread safe.
+ */
+public class ColumnarCellStore implements CellStore, Serializable {
+	private static final long serialVersionUID = -3640157384028856436L;
+
+	private static final int INITIAL_ROWS = 64;
+
+	private Block[] rows = new Block[INITIAL_ROWS];
+	private int lastRow = -1;
+	private int size = 0;
+
+	/** column index, <code>null</code> until a column is requested. It is
+	 * built before it is published, so threads which only read the store,
+	 * as during a parallel recalculation, may build it lazily; its blocks are
+	 * updated in place by later changes, which must not run concurrently
+	 * with any reader */
+	private transient volatile Block[] cols;
+
+	/** A sorted run of cells keyed by a primitive int: the column number
+	 * within a row block or the row number within a column block.
+	 */
+	static final class Block implements Serializable {
+		private static final long serialVersionUID = 2411620728313359447L;
+
+		int[] keys = new int[4];
+		BiffRec[] cells = new BiffRec[4];
+		int size = 0;
+
+		/** binary search for the key, as {@link java.util.Arrays#binarySearch} */
+		int find(int key) {
+			int lo = 0, hi = size - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				int k = keys[mid];
+				if (k < key)
+					lo = mid + 1;
+				else if (k > key)
+					hi = mid - 1;
+				else
+					return mid;
+			}
+			return -(lo + 1);
+		}
+
+		void insert(int idx, int key, BiffRec cell) {
+			if (size == keys.length) {
+				int cap = size << 1;
+				int[] nk = new int[cap];
+				BiffRec[] nc = new BiffRec[cap];
+				System.arraycopy(keys, 0, nk, 0, size);
+				System.arraycopy(cells, 0, nc, 0, size);
+				keys = nk;
+				cells = nc;
+			}
+			if (idx < size) {
+				System.arraycopy(keys, idx, keys, idx + 1, size - idx);
+				System.arraycopy(cells, idx, cells, idx + 1, size - idx);
+			}
+			keys[idx] = key;
+			cells[idx] = cell;
+			size++;
+		}
+
+		void removeAt(int idx) {
+			size--;
+			if (idx < size) {
+				System.arraycopy(keys, idx + 1, keys, idx, size - idx);
+				System.arraycopy(cells, idx + 1, cells, idx, size - idx);
+			}
+			cells[size] = null;
+		}
+
+		/** finds the position of the given record among entries with the key */
+		int indexOf(int key, BiffRec cell) {
+			int idx = find(key);
+			if (idx < 0)
+				return -1;
+			// keys may repeat in column blocks; scan the run both ways
+			for (int i = idx; i >= 0 && keys[i] == key; i--)
+				if (cells[i] == cell)
+					return i;
+			for (int i = idx + 1; i < size && keys[i] == key; i++)
+				if (cells[i] == cell)
+					return i;
+			return -1;
+		}
+
+		void addTo(List<BiffRec> list) {
+			for (int i = 0; i < size; i++)
+				list.add(cells[i]);
+		}
+	}
+
+	@Override
+	public void add(CellRec cell) {
+		int row = cell.getRowNumber();
+		int col = cell.getColFirst();
+		Block block = rowBlock(row, true);
+		int idx = block.find(col);
+		if (idx >= 0) {
+			BiffRec old = block.cells[idx];
+			if (old == cell)
+				return;
+			block.cells[idx] = cell;
+			if (cols != null) {
+				unindexCol(row, old);
+				cols = indexCol(cols, row, cell);
+			}
+			return;
+		}
+		block.insert(-idx - 1, col, cell);
+		size++;
+		if (cols != null)
+			cols = indexCol(cols, row, cell);
+	}
+
+	@Override
+	public boolean remove(BiffRec cell) {
+		int row = cell.getRowNumber();
+		Block block = rowBlock(row, false);
+		if (block != null) {
+			int idx = block.indexOf(firstCol(cell), cell);
+			if (idx >= 0) {
+				removeAt(row, block, idx);
+				if (cols != null && !unindexCol(row, cell))
+					cols = null;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public BiffRec get(int row, int col) {
+		Block block = rowBlock(row, false);
+		if (block == null)
+			return null;
+		int idx = block.find(col);
+		if (idx >= 0)
+			return block.cells[idx];
+
+		// a preceding record may span this column
+		idx = -idx - 2;
+		if (idx >= 0 && covers(block.cells[idx], col))
+			return block.cells[idx];
+		return null;
+	}
+
+	@Override
+	public ArrayList<BiffRec> getRow(int row) {
+		Block block = rowBlock(row, false);
+		if (block == null)
+			return new ArrayList<BiffRec>();
+		ArrayList<BiffRec> ret = new ArrayList<BiffRec>(block.size);
+		block.addTo(ret);
+		return ret;
+	}
+
+	@Override
+	public ArrayList<BiffRec> getCol(int col) {
+		if (cols == null)
+			buildColIndex();
+		Block[] index = cols;
+		if (col < 0 || col >= index.length || index[col] == null)
+			return new ArrayList<BiffRec>();
+		Block block = index[col];
+		ArrayList<BiffRec> ret = new ArrayList<BiffRec>(block.size);
+		block.addTo(ret);
+		return ret;
+	}
+
+	@Override
+	public int getRow(int row, BiffRec[] dest) {
+		Block block = rowBlock(row, false);
+		if (block == null)
+			return 0;
+		System.arraycopy(block.cells, 0, dest, 0, Math.min(block.size, dest.length));
+		return block.size;
+	}
+
+	@Override
+	public int getCol(int col, BiffRec[] dest) {
+		if (cols == null)
+			buildColIndex();
+		Block[] index = cols;
+		if (col < 0 || col >= index.length || index[col] == null)
+			return 0;
+		Block block = index[col];
+		System.arraycopy(block.cells, 0, dest, 0, Math.min(block.size, dest.length));
+		return block.size;
+	}
+
+	@Override
+	public int nextRow(int row) {
+		for (int r = Math.max(row, 0); r <= lastRow; r++)
+			if (rows[r] != null)
+				return r;
+		return -1;
+	}
+
+	@Override
+	public int nextCol(int col) {
+		if (cols == null)
+			buildColIndex();
+		Block[] index = cols;
+		// column blocks are left in place when emptied
+		for (int c = Math.max(col, 0); c < index.length; c++)
+			if (index[c] != null && index[c].size > 0)
+				return c;
+		return -1;
+	}
+
+	@Override
+	public ArrayList<BiffRec> getRange(int firstRow, int firstCol, int lastRow,
+			int lastCol) {
+		ArrayList<BiffRec> ret = new ArrayList<BiffRec>();
+		int last = Math.min(lastRow, this.lastRow);
+		for (int r = Math.max(firstRow, 0); r <= last; r++) {
+			Block block = rows[r];
+			if (block == null)
+				continue;
+			int idx = block.find(firstCol);
+			if (idx < 0) {
+				idx = -idx - 1;
+				// a preceding record may span into the area
+				if (idx > 0 && covers(block.cells[idx - 1], firstCol))
+					idx--;
+			}
+			for (; idx < block.size && block.keys[idx] <= lastCol; idx++)
+				ret.add(block.cells[idx]);
+		}
+		return ret;
+	}
+
+	@Override
+	public void moveRow(int oldRow, int newRow) {
+		if (oldRow == newRow)
+			return;
+		Block block = rowBlock(oldRow, false);
+		if (block == null)
+			return;
+		rows[oldRow] = null;
+		Block dest = rowBlock(newRow, false);
+		if (dest == null) {
+			rowBlock(newRow, true);
+			rows[newRow] = block;
+		} else {
+			// merge into the occupied row
+			for (int i = 0; i < block.size; i++) {
+				int idx = dest.find(block.keys[i]);
+				if (idx >= 0) {
+					dest.cells[idx] = block.cells[i];
+					size--;
+				} else
+					dest.insert(-idx - 1, block.keys[i], block.cells[i]);
+			}
+		}
+		while (lastRow >= 0 && rows[lastRow] == null)
+			lastRow--;
+		cols = null;
+	}
+
+	@Override
+	public BiffRec[] toArray() {
+		BiffRec[] ret = new BiffRec[size];
+		int pos = 0;
+		for (int r = 0; r <= lastRow; r++) {
+			Block block = rows[r];
+			if (block == null)
+				continue;
+			System.arraycopy(block.cells, 0, ret, pos, block.size);
+			pos += block.size;
+		}
+		return ret;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		rows = new Block[INITIAL_ROWS];
+		lastRow = -1;
+		size = 0;
+		cols = null;
+	}
+
+	/** gets the block for a row, optionally creating it */
+	private Block rowBlock(int row, boolean create) {
+		if (row < 0)
+			return null;
+		if (row >= rows.length) {
+			if (!create)
+				return null;
+			int cap = rows.length;
+			while (cap <= row)
+				cap <<= 1;
+			Block[] nr = new Block[cap];
+			System.arraycopy(rows, 0, nr, 0, lastRow + 1);
+			rows = nr;
+		}
+		Block block = rows[row];
+		if (block == null && create) {
+			block = new Block();
+			rows[row] = block;
+			if (row > lastRow)
+				lastRow = row;
+		}
+		return block;
+	}
+
+	private void removeAt(int row, Block block, int idx) {
+		block.removeAt(idx);
+		size--;
+		if (block.size == 0) {
+			rows[row] = null;
+			while (lastRow >= 0 && rows[lastRow] == null)
+				lastRow--;
+		}
+	}
+
+	private void buildColIndex() {
+		Block[] index = new Block[16];
+		for (int r = 0; r <= lastRow; r++) {
+			Block block = rows[r];
+			if (block == null)
+				continue;
+			for (int i = 0; i < block.size; i++)
+				index = indexCol(index, r, block.cells[i]);
+		}
+		cols = index;
+	}
+
+	/** adds a cell to a column index under each column it covers, returning
+	 * the index, which may have been grown */
+	private static Block[] indexCol(Block[] cols, int row, BiffRec cell) {
+		int last = lastCol(cell);
+		if (last >= cols.length) {
+			int cap = cols.length;
+			while (cap <= last)
+				cap <<= 1;
+			Block[] nc = new Block[cap];
+			System.arraycopy(cols, 0, nc, 0, cols.length);
+			cols = nc;
+		}
+		for (int c = firstCol(cell); c <= last; c++) {
+			Block block = cols[c];
+			if (block == null) {
+				block = new Block();
+				cols[c] = block;
+			}
+			int idx = block.find(row);
+			if (idx < 0)
+				idx = -idx - 1;
+			else
+				while (idx < block.size && block.keys[idx] == row)
+					idx++;
+			block.insert(idx, row, cell);
+		}
+		return cols;
+	}
+
+	/** removes a cell from the column index, returns false if it was not found */
+	private boolean unindexCol(int row, BiffRec cell) {
+		int last = lastCol(cell);
+		for (int c = firstCol(cell); c <= last; c++) {
+			Block block = c < cols.length ? cols[c] : null;
+			int idx = block == null ? -1 : block.indexOf(row, cell);
+			if (idx < 0)
+				return false;
+			block.removeAt(idx);
+		}
+		return true;
+	}
+
+	private static int firstCol(BiffRec cell) {
+		if (cell instanceof ColumnRange)
+			return ((ColumnRange) cell).getColFirst();
+		return cell.getColNumber();
+	}
+
+	private static int lastCol(BiffRec cell) {
+		if (cell instanceof ColumnRange)
+			return Math.max(((ColumnRange) cell).getColLast(), firstCol(cell));
+		return cell.getColNumber();
+	}
+
+	private static boolean covers(BiffRec cell, int col) {
+		return firstCol(cell) <= col && col <= lastCol(cell);
+	}
+}
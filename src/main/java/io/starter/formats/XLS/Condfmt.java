@@ -112,6 +112,7 @@ public final class Condfmt extends io.starter.formats.XLS.XLSRecord {
         byte[] sqrefdata = new byte[sqrefCount*8];
         System.arraycopy(data, 14, sqrefdata, 0, sqrefdata.length);
         refs = new DiscontiguousRefStruct(sqrefdata, this);
+        updateRangeIndex();
     }
     
     /**
@@ -248,6 +249,7 @@ public final class Condfmt extends io.starter.formats.XLS.XLSRecord {
     public void addLocation(String location) {
         refs.addRef(location);
         isdirty= true;
+        updateRangeIndex();
     }
  
     /**
@@ -269,6 +271,7 @@ public final class Condfmt extends io.starter.formats.XLS.XLSRecord {
     public void resetRange(String range) {
         refs = new DiscontiguousRefStruct(range, this);
         isdirty= true;
+        updateRangeIndex();
     }
     
     
@@ -382,6 +385,25 @@ public final class Condfmt extends io.starter.formats.XLS.XLSRecord {
         refs.addRef(range);
         isdirty= true;
         updateRecord();
+        updateRangeIndex();
+    }
+    
+    /**
+     * update this format's entry in the sheet's range index after its ranges change
+     */
+    private void updateRangeIndex() {
+        if (this.getSheet()!=null)
+            this.getSheet().updateRangeIndex(this);
+    }
+    
+    /**
+     * Get the rectangles this conditional format applies to, each in the format
+     * {topRow,leftCol,bottomRow,rightCol}
+     * @return
+     */
+    int[][] getRowColRanges() {
+        if (refs==null) return new int[0][];
+        return refs.getRowColRanges();
     }
 
 
@@ -0,0 +1,847 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import io.starter.formats.XLS.formulas.CalculationException;
+import io.starter.formats.XLS.formulas.FunctionConstants;
+import io.starter.formats.XLS.formulas.Ptg;
+import io.starter.formats.XLS.formulas.PtgArea3d;
+import io.starter.formats.XLS.formulas.PtgAreaErr3d;
+import io.starter.formats.XLS.formulas.PtgAreaN;
+import io.starter.formats.XLS.formulas.PtgExp;
+import io.starter.formats.XLS.formulas.PtgFunc;
+import io.starter.formats.XLS.formulas.PtgFuncVar;
+import io.starter.formats.XLS.formulas.PtgMemArea;
+import io.starter.formats.XLS.formulas.PtgMemFunc;
+import io.starter.formats.XLS.formulas.PtgName;
+import io.starter.formats.XLS.formulas.PtgRef;
+import io.starter.formats.XLS.formulas.PtgRefErr;
+import io.starter.formats.XLS.formulas.PtgRefErr3d;
+import io.starter.formats.XLS.formulas.PtgRefN;
+import io.starter.toolkit.Instrumentation;
+import io.starter.toolkit.Logger;
+
+/** The precedent/dependent graph of the formulas in a workbook.
+ * <p>
+ * Every formula is a node holding the areas it references, resolved to
+ * sheet coordinates. The areas are indexed per sheet so that the formulas
+ * depending on any cell can be found without scanning every reference in
+ * the book, and the formulas within an area are looked up in the cell store
+ * when precedents are needed.
+ * <p>
+ * The graph is built the first time it is needed and is then kept up to date
+ * by the {@link ReferenceTracker}: formulas whose references change are
+ * re-linked on the next use. References taken from a name, a shared formula
+ * or an array formula are re-linked when that record's references change,
+ * and members of shared and array formulas, whose references depend on
+ * where they are, are re-linked when cells on their sheet move.
+ * <p>
+ * Formulas whose references can not be determined statically (INDIRECT,
+ * OFFSET, multi-sheet references and the like) or which call volatile
+ * functions are treated as volatile: they are recalculated, with their
+ * dependents, on every recalculation and on the first calculation after
+ * any cell has changed, as in Excel.
+ * 
+ * @see ReferenceTracker#getDependencyGraph()
+ */
+public class DependencyGraph {
+	/** areas spanning more columns than this are kept in a single list per sheet */
+	private static final int WIDE_AREA = 64;
+
+	private static final int DONE = -1;
+
+	private final IdentityHashMap<Formula, Node> nodes = new IdentityHashMap<Formula, Node>();
+	private final IdentityHashMap<Boundsheet, SheetIndex> sheets = new IdentityHashMap<Boundsheet, SheetIndex>();
+	private final Set<Node> volatiles = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+	private final Set<Formula> stale = Collections.newSetFromMap(new IdentityHashMap<Formula, Boolean>());
+	/** the formulas whose references come from each name, shared formula or array */
+	private final IdentityHashMap<Object, Set<Node>> users = new IdentityHashMap<Object, Set<Node>>();
+	/** the shared and array formula members */
+	private final Set<Node> positional = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+	private boolean built = false;
+	private boolean fullRecalc = true;
+	private volatile boolean volatilesChanged = false;
+
+	/** a formula and the areas it references */
+	static final class Node {
+		final Formula formula;
+		Area[] refs;
+		/** the records other than the formula its references come from */
+		Object[] owners;
+		boolean isVolatile;
+		boolean isPositional;
+
+		Node(Formula formula) {
+			this.formula = formula;
+		}
+	}
+
+	/** a rectangular reference made by a formula */
+	static final class Area {
+		final Node owner;
+		final Boundsheet sheet;
+		final int firstRow, firstCol, lastRow, lastCol;
+
+		Area(Node owner, Boundsheet sheet, int firstRow, int firstCol, int lastRow, int lastCol) {
+			this.owner = owner;
+			this.sheet = sheet;
+			this.firstRow = firstRow;
+			this.firstCol = firstCol;
+			this.lastRow = lastRow;
+			this.lastCol = lastCol;
+		}
+
+		boolean contains(int row, int col) {
+			return firstRow <= row && row <= lastRow && firstCol <= col && col <= lastCol;
+		}
+
+		boolean isCell() {
+			return firstRow == lastRow && firstCol == lastCol;
+		}
+
+		boolean intersects(int r0, int c0, int r1, int c1) {
+			return firstRow <= r1 && r0 <= lastRow && firstCol <= c1 && c0 <= lastCol;
+		}
+	}
+
+	/** the areas referencing a single sheet */
+	static final class SheetIndex {
+		/** single cell references keyed by location */
+		final HashMap<Long, ArrayList<Area>> cells = new HashMap<Long, ArrayList<Area>>();
+		/** areas by column */
+		ArrayList<Area>[] cols = newBuckets(16);
+		/** areas spanning many columns */
+		final ArrayList<Area> wide = new ArrayList<Area>();
+
+		@SuppressWarnings("unchecked")
+		private static ArrayList<Area>[] newBuckets(int n) {
+			return new ArrayList[n];
+		}
+
+		void add(Area a) {
+			if (a.isCell()) {
+				Long key = key(a.firstRow, a.firstCol);
+				ArrayList<Area> l = cells.get(key);
+				if (l == null) {
+					l = new ArrayList<Area>(2);
+					cells.put(key, l);
+				}
+				l.add(a);
+			} else if (a.lastCol - a.firstCol >= WIDE_AREA) {
+				wide.add(a);
+			} else {
+				if (a.lastCol >= cols.length) {
+					int cap = cols.length;
+					while (cap <= a.lastCol)
+						cap <<= 1;
+					ArrayList<Area>[] nc = newBuckets(cap);
+					System.arraycopy(cols, 0, nc, 0, cols.length);
+					cols = nc;
+				}
+				for (int c = a.firstCol; c <= a.lastCol; c++) {
+					if (cols[c] == null)
+						cols[c] = new ArrayList<Area>();
+					cols[c].add(a);
+				}
+			}
+		}
+
+		void remove(Area a) {
+			if (a.isCell()) {
+				Long key = key(a.firstRow, a.firstCol);
+				ArrayList<Area> l = cells.get(key);
+				if (l != null && removeIdentical(l, a) && l.isEmpty())
+					cells.remove(key);
+			} else if (a.lastCol - a.firstCol >= WIDE_AREA) {
+				removeIdentical(wide, a);
+			} else {
+				for (int c = a.firstCol; c <= a.lastCol && c < cols.length; c++)
+					if (cols[c] != null)
+						removeIdentical(cols[c], a);
+			}
+		}
+
+		/** adds the owners of every area containing the cell */
+		void collect(int row, int col, Collection<Node> out) {
+			ArrayList<Area> l = cells.get(key(row, col));
+			if (l != null)
+				for (int i = 0; i < l.size(); i++)
+					out.add(l.get(i).owner);
+			if (col >= 0 && col < cols.length && cols[col] != null) {
+				l = cols[col];
+				for (int i = 0; i < l.size(); i++) {
+					Area a = l.get(i);
+					if (a.firstRow <= row && row <= a.lastRow)
+						out.add(a.owner);
+				}
+			}
+			for (int i = 0; i < wide.size(); i++) {
+				Area a = wide.get(i);
+				if (a.contains(row, col))
+					out.add(a.owner);
+			}
+		}
+
+		/** adds the owners of every area intersecting a rectangle */
+		void collect(int firstRow, int firstCol, int lastRow, int lastCol, Collection<Node> out) {
+			long size = (long) (lastRow - firstRow + 1) * (lastCol - firstCol + 1);
+			if (size <= cells.size()) {
+				for (int r = firstRow; r <= lastRow; r++)
+					for (int c = firstCol; c <= lastCol; c++) {
+						ArrayList<Area> l = cells.get(key(r, c));
+						if (l != null)
+							for (int i = 0; i < l.size(); i++)
+								out.add(l.get(i).owner);
+					}
+			} else {
+				for (ArrayList<Area> l : cells.values())
+					for (int i = 0; i < l.size(); i++) {
+						Area a = l.get(i);
+						if (a.intersects(firstRow, firstCol, lastRow, lastCol))
+							out.add(a.owner);
+					}
+			}
+			for (int c = Math.max(firstCol, 0); c <= lastCol && c < cols.length; c++) {
+				ArrayList<Area> l = cols[c];
+				if (l == null)
+					continue;
+				for (int i = 0; i < l.size(); i++) {
+					Area a = l.get(i);
+					if (a.firstRow <= lastRow && firstRow <= a.lastRow)
+						out.add(a.owner);
+				}
+			}
+			for (int i = 0; i < wide.size(); i++) {
+				Area a = wide.get(i);
+				if (a.intersects(firstRow, firstCol, lastRow, lastCol))
+					out.add(a.owner);
+			}
+		}
+
+		private static Long key(int row, int col) {
+			return Long.valueOf(((long) row << 20) | col);
+		}
+
+		private static boolean removeIdentical(ArrayList<Area> l, Area a) {
+			for (int i = l.size() - 1; i >= 0; i--) {
+				if (l.get(i) == a) {
+					l.remove(i);
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/** Returns whether the graph has been built. */
+	public synchronized boolean isBuilt() {
+		return built;
+	}
+
+	/** Builds the graph if necessary and re-links any formulas whose
+	 * references have changed since it was last used.
+	 * @param book the workbook owning the graph
+	 */
+	public synchronized void sync(WorkBook book) {
+		if (!built) {
+			HashMap<String, Boundsheet> sheetCache = new HashMap<String, Boundsheet>();
+			Formula[] formulas = book.getFormulas();
+			for (int i = 0; i < formulas.length; i++)
+				link(formulas[i], book, sheetCache);
+			stale.clear();
+			built = true;
+			return;
+		}
+		if (stale.isEmpty())
+			return;
+		Formula[] changed = stale.toArray(new Formula[stale.size()]);
+		stale.clear();
+		HashMap<String, Boundsheet> sheetCache = new HashMap<String, Boundsheet>();
+		for (int i = 0; i < changed.length; i++) {
+			Formula f = changed[i];
+			unlink(f);
+			// skip formulas that have been removed from their sheet
+			Boundsheet sheet = f.getSheet();
+			if (sheet != null && sheet.getCellsInRange(f.getRowNumber(), f.getColNumber(),
+					f.getRowNumber(), f.getColNumber()).contains(f))
+				link(f, book, sheetCache);
+		}
+	}
+
+	/** Discards the graph so it is rebuilt on next use. Called upon changes
+	 * which move cells, such as inserting or removing rows and columns.
+	 */
+	public synchronized void invalidate() {
+		nodes.clear();
+		sheets.clear();
+		volatiles.clear();
+		stale.clear();
+		users.clear();
+		positional.clear();
+		built = false;
+		fullRecalc = true;
+		volatilesChanged = false;
+	}
+
+	/** Flags that cells may have changed without their dependents being
+	 * cleared, so the next {@link #recalculate} must calculate every formula.
+	 */
+	public synchronized void requireFullRecalc() {
+		fullRecalc = true;
+	}
+
+	/** Notes that a formula was added or that its references changed. */
+	public synchronized void formulaChanged(Formula f) {
+		if (built)
+			stale.add(f);
+	}
+
+	/** Notes that the references of a name, shared formula or array formula
+	 * changed, so the formulas using them are re-linked on the next use.
+	 */
+	public synchronized void referencesChanged(Object rec) {
+		if (!built)
+			return;
+		Set<Node> s = users.get(rec);
+		if (s != null)
+			for (Node n : s)
+				stale.add(n.formula);
+	}
+
+	/** Notes that cells of a sheet have moved, as when rows or columns are
+	 * inserted or removed. The references which moved with them are updated
+	 * through {@link #formulaChanged} and {@link #referencesChanged}; the
+	 * members of shared and array formulas on the sheet, whose references
+	 * are relative to their position, are re-linked on the next use.
+	 */
+	public synchronized void cellsMoved(Boundsheet sheet) {
+		if (!built)
+			return;
+		for (Node n : positional)
+			if (n.formula.getSheet() == sheet)
+				stale.add(n.formula);
+	}
+
+	/** Notes that a cell has changed. The volatile formulas and their
+	 * dependents are cleared on the next calculation rather than on every
+	 * change.
+	 * @see #clearVolatilesIfChanged()
+	 */
+	public synchronized void cellChanged() {
+		if (built && !volatilesChanged)
+			volatilesChanged = true;
+	}
+
+	/** Clears the volatile formulas, and the formulas depending on them, if
+	 * a cell has changed since they were last calculated. Called before a
+	 * formula is calculated outside of a recalculation.
+	 */
+	public void clearVolatilesIfChanged() {
+		if (!volatilesChanged)
+			return;
+		synchronized (this) {
+			if (!volatilesChanged)
+				return;
+			volatilesChanged = false;
+			clearVolatileDependents();
+		}
+	}
+
+	/** Removes a formula from the graph. */
+	public synchronized void formulaRemoved(Formula f) {
+		if (built) {
+			stale.remove(f);
+			unlink(f);
+		}
+	}
+
+	/** Gets the formulas which directly reference a cell.
+	 * @param cell the referenced cell
+	 * @return the dependent formulas, in no particular order
+	 */
+	public synchronized List<Formula> getDependents(BiffRec cell) {
+		ArrayList<Formula> ret = new ArrayList<Formula>();
+		SheetIndex idx = cell.getSheet() == null ? null : sheets.get(cell.getSheet());
+		if (idx == null)
+			return ret;
+		Set<Node> found = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+		idx.collect(cell.getRowNumber(), cell.getColNumber(), found);
+		for (Node n : found)
+			ret.add(n.formula);
+		return ret;
+	}
+
+	/** Gets the formulas which directly reference any cell of an area.
+	 * @param sheet the sheet of the area
+	 * @param firstRow the zero-based first row of the area
+	 * @param firstCol the zero-based first column of the area
+	 * @param lastRow the zero-based last row of the area, inclusive
+	 * @param lastCol the zero-based last column of the area, inclusive
+	 * @return the dependent formulas, in no particular order
+	 */
+	public synchronized List<Formula> getDependents(Boundsheet sheet, int firstRow, int firstCol,
+			int lastRow, int lastCol) {
+		ArrayList<Formula> ret = new ArrayList<Formula>();
+		SheetIndex idx = sheet == null ? null : sheets.get(sheet);
+		if (idx == null)
+			return ret;
+		Set<Node> found = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+		idx.collect(firstRow, firstCol, lastRow, lastCol, found);
+		for (Node n : found)
+			ret.add(n.formula);
+		return ret;
+	}
+
+	/** Gets the volatile formulas, which depend on the workbook as a whole. */
+	public synchronized List<Formula> getVolatileFormulas() {
+		ArrayList<Formula> ret = new ArrayList<Formula>(volatiles.size());
+		for (Node n : volatiles)
+			ret.add(n.formula);
+		return ret;
+	}
+
+	/** Gets the uncalculated formulas a formula depends on, directly or
+	 * indirectly, in the order they must be calculated, ending with the
+	 * formula itself. Formulas found to be part of a reference cycle are given
+	 * a circular reference error and are left out.
+	 * @param f the formula about to be calculated
+	 */
+	public synchronized List<Formula> getCalculationOrder(Formula f) {
+		Node n = nodes.get(f);
+		if (n == null)
+			return new ArrayList<Formula>();
+		return sort(Collections.singletonList(n), null);
+	}
+
+	/** Calculates the formulas of a book in dependency order. Only formulas
+	 * without a cached value and volatile formulas are calculated, unless
+	 * cells may have changed unnoticed since the last recalculation, in which
+	 * case every formula is.
+	 * <p>
+	 * Formulas are evaluated deepest first, so that references into other
+	 * formulas always find a calculated value and never recurse. If the book
+	 * has parallel calculation enabled the formulas are grouped into levels
+	 * which only depend on earlier levels, and each level is calculated on
+	 * the common {@link ForkJoinPool}.
+	 * @param book the workbook owning the graph
+	 */
+	public void recalculate(WorkBook book) {
+		Instrumentation.Phase phase = Instrumentation.start("formula.recalc");
+		try {
+			recalculateInOrder(book);
+		} finally {
+			phase.end();
+		}
+	}
+
+	private void recalculateInOrder(WorkBook book) {
+		boolean parallel = book.getParallelCalc();
+		List<Formula> order;
+		ArrayList<ArrayList<Node>> levels = parallel ? new ArrayList<ArrayList<Node>>() : null;
+		synchronized (this) {
+			sync(book);
+			boolean all = fullRecalc;
+			Boundsheet[] bs = book.getWorkSheets();
+			for (int i = 0; !all && i < bs.length; i++)
+				all = bs[i].fastCellAdds;
+			fullRecalc = false;
+			volatilesChanged = false;
+			if (!all)
+				clearVolatileDependents();
+			ArrayList<Node> dirty = new ArrayList<Node>();
+			Formula[] formulas = book.getFormulas();
+			for (int i = 0; i < formulas.length; i++) {
+				Node n = nodes.get(formulas[i]);
+				if (n == null)
+					continue;
+				if (all)
+					n.formula.clearCachedValue();
+				if (!n.formula.hasCachedValue())
+					dirty.add(n);
+			}
+			order = sort(dirty, levels);
+		}
+		if (!parallel) {
+			for (int i = 0; i < order.size(); i++)
+				calculate(order.get(i));
+			return;
+		}
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		for (int i = 0; i < levels.size(); i++) {
+			ArrayList<Node> level = levels.get(i);
+			// volatile formulas may reach anywhere, so they run alone after the level
+			ArrayList<Formula> independent = new ArrayList<Formula>(level.size());
+			ArrayList<Formula> serial = new ArrayList<Formula>();
+			for (int j = 0; j < level.size(); j++) {
+				Node n = level.get(j);
+				(n.isVolatile ? serial : independent).add(n.formula);
+			}
+			if (independent.size() > 1)
+				pool.invoke(new LevelTask(independent, 0, independent.size()));
+			else
+				serial.addAll(0, independent);
+			for (int j = 0; j < serial.size(); j++)
+				calculate(serial.get(j));
+		}
+	}
+
+	/** clears the volatile formulas and everything which depends on them */
+	private void clearVolatileDependents() {
+		Set<Node> cleared = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+		ArrayList<Node> queue = new ArrayList<Node>(volatiles);
+		ArrayList<Node> found = new ArrayList<Node>();
+		while (!queue.isEmpty()) {
+			Node n = queue.remove(queue.size() - 1);
+			if (!cleared.add(n))
+				continue;
+			n.formula.clearCachedValue();
+			SheetIndex idx = n.formula.getSheet() == null ? null : sheets.get(n.formula.getSheet());
+			if (idx == null)
+				continue;
+			found.clear();
+			idx.collect(n.formula.getRowNumber(), n.formula.getColNumber(), found);
+			for (int i = 0; i < found.size(); i++)
+				if (!cleared.contains(found.get(i)))
+					queue.add(found.get(i));
+		}
+	}
+
+	/** calculates a formula whose precedents have been calculated */
+	private static void calculate(Formula f) {
+		try {
+			f.calculateOrdered();
+		} catch (FunctionNotSupportedException fe) {
+			Logger.logErr("WorkBookHandle.recalc:  Error calculating Formula " + fe.toString());
+		}
+	}
+
+	/** calculates a range of mutually independent formulas, splitting it across the pool */
+	private static final class LevelTask extends RecursiveAction {
+		private static final long serialVersionUID = -2851694262719365218L;
+		private static final int THRESHOLD = 32;
+
+		private final List<Formula> formulas;
+		private final int from, to;
+
+		LevelTask(List<Formula> formulas, int from, int to) {
+			this.formulas = formulas;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int i = from; i < to; i++)
+					calculate(formulas.get(i));
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new LevelTask(formulas, from, mid), new LevelTask(formulas, mid, to));
+		}
+	}
+
+	/** Topologically sorts the uncalculated formulas reachable from the roots
+	 * through their precedents, using an explicit stack so that long chains
+	 * of references do not exhaust the thread stack. If <code>levels</code>
+	 * is given, the formulas are also grouped by their depth in the graph:
+	 * every formula depends only on formulas in earlier levels.
+	 */
+	private List<Formula> sort(List<Node> roots, ArrayList<ArrayList<Node>> levels) {
+		IdentityHashMap<Node, Integer> state = new IdentityHashMap<Node, Integer>();
+		IdentityHashMap<Node, Integer> depth = levels == null ? null : new IdentityHashMap<Node, Integer>();
+		Set<Node> cyclic = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+		ArrayList<Node> order = new ArrayList<Node>();
+		ArrayList<Node> path = new ArrayList<Node>();
+		ArrayList<List<Node>> precedents = new ArrayList<List<Node>>();
+		ArrayList<Iterator<Node>> pending = new ArrayList<Iterator<Node>>();
+		for (int r = 0; r < roots.size(); r++) {
+			Node root = roots.get(r);
+			if (state.containsKey(root))
+				continue;
+			push(root, state, path, precedents, pending);
+			while (!path.isEmpty()) {
+				int top = path.size() - 1;
+				Iterator<Node> it = pending.get(top);
+				if (it.hasNext()) {
+					Node p = it.next();
+					Integer s = state.get(p);
+					if (s == null) {
+						push(p, state, path, precedents, pending);
+					} else if (s.intValue() != DONE) {
+						// back edge: every formula on the path from p is in a cycle
+						for (int i = s.intValue(); i <= top; i++)
+							cyclic.add(path.get(i));
+					}
+				} else {
+					Node n = path.remove(top);
+					List<Node> precs = precedents.remove(top);
+					pending.remove(top);
+					state.put(n, Integer.valueOf(DONE));
+					order.add(n);
+					if (depth != null) {
+						int d = 0;
+						for (int i = 0; i < precs.size(); i++) {
+							Integer pd = depth.get(precs.get(i));
+							if (pd != null && pd.intValue() >= d)
+								d = pd.intValue() + 1;
+						}
+						depth.put(n, Integer.valueOf(d));
+					}
+				}
+			}
+		}
+		ArrayList<Formula> ret = new ArrayList<Formula>(order.size());
+		for (int i = 0; i < order.size(); i++) {
+			Node n = order.get(i);
+			if (cyclic.contains(n)) {
+				Logger.logWarn("Circular reference found in formula "
+						+ n.formula.getCellAddressWithSheet());
+				n.formula.setCachedValue(new CalculationException(CalculationException.CIR_ERR));
+				continue;
+			}
+			ret.add(n.formula);
+			if (levels != null) {
+				int d = depth.get(n).intValue();
+				while (levels.size() <= d)
+					levels.add(new ArrayList<Node>());
+				levels.get(d).add(n);
+			}
+		}
+		return ret;
+	}
+
+	private void push(Node n, IdentityHashMap<Node, Integer> state, ArrayList<Node> path,
+			ArrayList<List<Node>> precedents, ArrayList<Iterator<Node>> pending) {
+		state.put(n, Integer.valueOf(path.size()));
+		List<Node> precs = getPrecedents(n);
+		path.add(n);
+		precedents.add(precs);
+		pending.add(precs.iterator());
+	}
+
+	/** gets the uncalculated formulas within the areas referenced by a node */
+	private List<Node> getPrecedents(Node n) {
+		if (n.refs == null || n.refs.length == 0)
+			return Collections.emptyList();
+		ArrayList<Node> ret = new ArrayList<Node>();
+		for (int i = 0; i < n.refs.length; i++) {
+			Area a = n.refs[i];
+			ArrayList<BiffRec> cells = a.sheet.getCellsInRange(a.firstRow, a.firstCol, a.lastRow, a.lastCol);
+			for (int j = 0; j < cells.size(); j++) {
+				BiffRec cell = cells.get(j);
+				if (cell instanceof Formula && !((Formula) cell).hasCachedValue()) {
+					Node p = nodes.get(cell);
+					if (p != null)
+						ret.add(p);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/** resolves the references of a formula and adds it to the graph */
+	private void link(Formula f, WorkBook book, HashMap<String, Boundsheet> sheetCache) {
+		Node n = new Node(f);
+		ArrayList<Area> refs = new ArrayList<Area>();
+		ArrayList<Object> owners = new ArrayList<Object>();
+		try {
+			Stack expression = f.getExpression();
+			if (expression != null)
+				addRefs(n, expression.toArray(), refs, owners, book, sheetCache);
+		} catch (Exception e) {
+			// can't resolve the references statically
+			n.isVolatile = true;
+		}
+		n.refs = refs.toArray(new Area[refs.size()]);
+		n.owners = owners.toArray();
+		nodes.put(f, n);
+		for (int i = 0; i < n.owners.length; i++) {
+			Set<Node> s = users.get(n.owners[i]);
+			if (s == null) {
+				s = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+				users.put(n.owners[i], s);
+			}
+			s.add(n);
+		}
+		if (n.isPositional)
+			positional.add(n);
+		for (int i = 0; i < n.refs.length; i++) {
+			Area a = n.refs[i];
+			SheetIndex idx = sheets.get(a.sheet);
+			if (idx == null) {
+				idx = new SheetIndex();
+				sheets.put(a.sheet, idx);
+			}
+			idx.add(a);
+		}
+		if (n.isVolatile)
+			volatiles.add(n);
+	}
+
+	private void unlink(Formula f) {
+		Node n = nodes.remove(f);
+		if (n == null)
+			return;
+		for (int i = 0; i < n.refs.length; i++) {
+			SheetIndex idx = sheets.get(n.refs[i].sheet);
+			if (idx != null)
+				idx.remove(n.refs[i]);
+		}
+		for (int i = 0; i < n.owners.length; i++) {
+			Set<Node> s = users.get(n.owners[i]);
+			if (s != null && s.remove(n) && s.isEmpty())
+				users.remove(n.owners[i]);
+		}
+		volatiles.remove(n);
+		positional.remove(n);
+	}
+
+	private void addRefs(Node n, Object[] ptgs, List<Area> refs, List<Object> owners,
+			WorkBook book, HashMap<String, Boundsheet> sheetCache) throws Exception {
+		for (int i = 0; i < ptgs.length; i++) {
+			if (!(ptgs[i] instanceof Ptg))
+				continue;
+			Ptg p = (Ptg) ptgs[i];
+			if (p instanceof PtgExp) {
+				// shared or array formula member
+				Formula f = (Formula) p.getParentRec();
+				n.isPositional = true;
+				if (f.isSharedFormula()) {
+					if (f.shared != null)
+						owners.add(f.shared);
+				}
+				else if (!f.getInternalRecords().isEmpty())
+					owners.add(f.getInternalRecords().get(0));	// the Array
+				addRefs(n, ((PtgExp) p).getConvertedExpression(), refs, owners, book, sheetCache);
+			} else if (p instanceof PtgRefErr || p instanceof PtgRefErr3d || p instanceof PtgAreaErr3d) {
+				// references nothing
+			} else if (p instanceof PtgRefN || p instanceof PtgAreaN) {
+				n.isVolatile = true;
+			} else if (p instanceof PtgRef) {
+				addRef(n, (PtgRef) p, refs, book, sheetCache);
+			} else if (p instanceof PtgName) {
+				Name name = ((PtgName) p).getName();
+				if (name == null)
+					continue;
+				owners.add(name);
+				Stack nexp = name.getExpression();
+				if (nexp != null && nexp.size() > 1) {
+					// a calculated name
+					n.isVolatile = true;
+					continue;
+				}
+				Ptg ptga = name.getPtga();
+				if (ptga != null)
+					addRefs(n, new Object[] { ptga }, refs, owners, book, sheetCache);
+			} else if (p instanceof PtgMemFunc) {
+				Stack sub = ((PtgMemFunc) p).getSubExpression();
+				if (sub != null)
+					addRefs(n, sub.toArray(), refs, owners, book, sheetCache);
+			} else if (p instanceof PtgMemArea) {
+				Ptg[] comps = p.getComponents();
+				if (comps != null)
+					addRefs(n, comps, refs, owners, book, sheetCache);
+			} else if (p instanceof PtgFunc || p instanceof PtgFuncVar) {
+				int id = (p instanceof PtgFunc) ? ((PtgFunc) p).getVal() : ((PtgFuncVar) p).getVal();
+				if (isVolatileFunction(id))
+					n.isVolatile = true;
+			} else if (p.getIsReference()) {
+				n.isVolatile = true;
+			}
+		}
+	}
+
+	private void addRef(Node n, PtgRef ref, List<Area> refs, WorkBook book,
+			HashMap<String, Boundsheet> sheetCache) throws Exception {
+		Boundsheet sheet;
+		if (ref instanceof PtgArea3d) {
+			sheet = ((PtgArea3d) ref).getFirstSheet();
+			Boundsheet last = ((PtgArea3d) ref).getLastSheet();
+			if (last != null && last != sheet) {
+				// spans several sheets
+				n.isVolatile = true;
+				return;
+			}
+		} else {
+			String name = ref.getSheetName();
+			if (name == null || name.length() == 0)
+				sheet = n.formula.getSheet();
+			else if (name.charAt(0) == '[')
+				return; // external reference
+			else {
+				sheet = sheetCache.get(name);
+				if (sheet == null) {
+					try {
+						sheet = book.getWorkSheetByName(name);
+						sheetCache.put(name, sheet);
+					} catch (WorkSheetNotFoundException e) {
+						sheet = null;
+					}
+				}
+			}
+		}
+		if (sheet == null)
+			return;
+		int[] rc = ref.getIntLocation();
+		if (rc.length > 2)
+			refs.add(new Area(n, sheet, Math.min(rc[0], rc[2]), Math.min(rc[1], rc[3]),
+					Math.max(rc[0], rc[2]), Math.max(rc[1], rc[3])));
+		else
+			refs.add(new Area(n, sheet, rc[0], rc[1], rc[0], rc[1]));
+	}
+
+	/**
+	 * functions whose result may change without any of their arguments
+	 * changing; add-in calls and ids we cannot resolve are assumed volatile
+	 * since nothing is known about what they read
+	 */
+	private static boolean isVolatileFunction(int id) {
+		switch (id) {
+		case FunctionConstants.xlfRand:
+		case FunctionConstants.xlfRANDBETWEEN:
+		case FunctionConstants.xlfADDIN:
+		case FunctionConstants.xlfNow:
+		case FunctionConstants.xlfToday:
+		case FunctionConstants.xlfOffset:
+		case FunctionConstants.XLF_INDIRECT:
+		case FunctionConstants.xlfCell:
+		case FunctionConstants.xlfInfo:
+			return true;
+		default:
+			return "".equals(FunctionConstants.getFunctionString((short) id));
+		}
+	}
+}
@@ -231,6 +231,25 @@ public class DiscontiguousRefStruct implements Serializable{
         }
         return retValues;
     }
+    /**
+     * Get each reference in this structure as a rectangle in the format
+     * {topRow,leftCol,bottomRow,rightCol}; single cell references have equal
+     * corners
+     * @return
+     */
+    public int[][] getRowColRanges() {
+        int[][] ret = new int[allrefs.size()][];
+        Iterator ptgs= allrefs.values().iterator();
+        int i= 0;
+        while (ptgs.hasNext()) {
+            int[] locs = ((PtgRef) ptgs.next()).getIntLocation();
+            if (locs.length < 4)
+                locs = new int[] {locs[0], locs[1], locs[0], locs[1]};
+            ret[i++] = locs;
+        }
+        return ret;
+    }
+    
     private byte[] getRecordData(PtgRef myPtg) {
         byte[] retData = new byte[0];
         int[] rc = myPtg.getRowCol();
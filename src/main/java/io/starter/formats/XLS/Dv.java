@@ -696,6 +696,7 @@ public class Dv extends io.starter.formats.XLS.XLSRecord {
     public void setRange(String range) {
     	if (range==null) {	// for creating a dv and adding range info later
     		cRangeList= null;
+    		updateRangeIndex();
     		return;
     	}
         if(range.indexOf(":")==-1)range = range+":"+range;
@@ -703,6 +704,7 @@ public class Dv extends io.starter.formats.XLS.XLSRecord {
         cRangeList = new ArrayList();
         cRangeList.add(p);
         dirtyflag = true;
+        updateRangeIndex();
     }
 
     /**
@@ -720,6 +722,7 @@ public class Dv extends io.starter.formats.XLS.XLSRecord {
         PtgArea p = new PtgArea(range, this, false);	// 20090609 KSC: absolute refs if '$' -really should test if row or col 		
         cRangeList.add(p);
         dirtyflag = true;
+        updateRangeIndex();
     }
     
     /**
@@ -735,6 +738,7 @@ public class Dv extends io.starter.formats.XLS.XLSRecord {
 //        p.setUseReferenceTracker(false);
         cRangeList.add(p);
         dirtyflag = true;
+        updateRangeIndex();
     }
     
     /**
@@ -1117,12 +1121,43 @@ public class Dv extends io.starter.formats.XLS.XLSRecord {
      */
     public boolean isInRange(String celladdy) {
     	// FIX broken COLROW
-        int[] rc = ExcelTools.getRowColFromString(celladdy);
+        return isInRange(ExcelTools.getRowColFromString(celladdy));
+    }
+    
+    /**
+     * Determines if the Dv contains the row and column passed in
+     * 
+     * @param rc zero-based {row, col}
+     * @return
+     */
+    public boolean isInRange(int[] rc) {
         for (int i=0;i<cRangeList.size();i++) {
             if (((PtgArea)cRangeList.get(i)).contains(rc))return true;
         }
         return false;
     }
+    
+    /**
+     * Get the rectangles this Dv applies to, each in the format
+     * {topRow,leftCol,bottomRow,rightCol}
+     * 
+     * @return
+     */
+    int[][] getRowColRanges() {
+        if (cRangeList==null) return new int[0][];
+        int[][] ret = new int[cRangeList.size()][];
+        for (int i=0;i<ret.length;i++)
+            ret[i] = ((PtgArea)cRangeList.get(i)).getIntLocation();
+        return ret;
+    }
+    
+    /**
+     * update this Dv's entry in the sheet's range index after its ranges change
+     */
+    private void updateRangeIndex() {
+        if (this.getSheet()!=null)
+            this.getSheet().updateRangeIndex(this);
+    }
     /**
      *  OOXML Element:
      * dataValidation (Data Validation)
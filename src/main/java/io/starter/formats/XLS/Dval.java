@@ -21,6 +21,7 @@
  * ---------- END COPYRIGHT NOTICE ----------
  */
 package io.starter.formats.XLS;
+import io.starter.OpenXLS.ExcelTools;
 import io.starter.toolkit.ByteTools;
 import io.starter.toolkit.Logger;
 
@@ -306,6 +307,8 @@ public class Dval extends io.starter.formats.XLS.XLSRecord {
      */
     public void addDvRec(Dv dv) {
         dvRecs.add(dv);
+        if (this.getSheet()!=null)
+            this.getSheet().updateRangeIndex(dv);
     }
     
     /**
@@ -343,6 +346,8 @@ public class Dval extends io.starter.formats.XLS.XLSRecord {
      */
     public void removeDvRec(Dv dv) {
         dvRecs.remove(dv);
+        if (this.getSheet()!=null)
+            this.getSheet().removeFromRangeIndex(dv);
     }
     /**
      * 
@@ -355,6 +360,11 @@ public class Dval extends io.starter.formats.XLS.XLSRecord {
         if (cellAddress.indexOf("!")!=-1) {
             cellAddress = cellAddress.substring(cellAddress.indexOf("!"));
         }
+        // look the cell up in the sheet's range index where this Dval is the sheet's own 
+        if (this.getSheet()!=null && this.getSheet().getDvalRec()==this) {
+            int[] rc = ExcelTools.getRowColFromString(cellAddress);
+            return this.getSheet().getDv(rc[0], rc[1]);
+        }
         for (int i=0;i<dvRecs.size();i++) {
             Dv d = (Dv)dvRecs.get(i);
             if (d.isInRange(cellAddress))return d;
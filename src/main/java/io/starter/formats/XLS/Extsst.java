@@ -165,18 +165,18 @@ public final class Extsst extends io.starter.formats.XLS.XLSRecord
        // iterate through the issts
        int sstOffset = mysst.getOffset();
         for(int t=0;t<totissts;t++){
-            Unicodestring str;
+            int strpos;
             if	(t==totissts) {
-                str = (Unicodestring)mysst.getUStringAt(totstrs-1);
+                strpos = mysst.getStringPos(totstrs-1);
             }else {
             // get the data
-                str = (Unicodestring)mysst.getUStringAt(ctr);
+                strpos = mysst.getStringPos(ctr);
             }
             ctr+=newdsst;
             
             lastsstpos = sstpos;
             lastContinueStrPos = continueStrPos;
-           sstpos = str.getSSTPos() +4; // always 4 off
+           sstpos = strpos +4; // always 4 off
             
             
             boolean newbucket = false;
@@ -71,8 +71,10 @@ extends XLSCellRecord {
 	/** Mask for the fShrFmla grbit flag. */
 	private static final short FSHRFMLA    = 0x08;
 	
-    private Object cachedValue;
+    private volatile Object cachedValue;	// may be published by another thread during a parallel recalc
     private Stack expression;
+    /** the expression compiled for calculation, discarded when it changes */
+    private transient CompiledExpression compiled;
     
 
     
@@ -221,6 +223,7 @@ extends XLSCellRecord {
    		}
    		
    		expression = null;
+   		compiled = null;
    	}
    	
     /**
@@ -231,6 +234,7 @@ extends XLSCellRecord {
     	if (expression != null) 
     	    clearExpression();
     	expression = exp;
+    	compiled = null;
 	updateRecord();
     }
     
@@ -372,6 +376,7 @@ extends XLSCellRecord {
         	
             expression = ExpressionParser.parseExpression(
             		this.getBytesAt (22, reclen - 22), this, length );
+            Instrumentation.count("formula.parse", 1);
             
             // If this is a shared formula reference, do some special init
             if (isSharedFormula())
@@ -434,6 +439,7 @@ extends XLSCellRecord {
 		//Shared Formula Init Performance Changes:  do not instantiate until calculate
 //		expression = shared.instantiate( pointer );
 		shared.addMember( this );
+		Instrumentation.count("formula.shared", 1);
 		
 		if (shared.containsIndirectFunction) registerIndirectFunction();
     }
@@ -448,6 +454,7 @@ extends XLSCellRecord {
     	
     	shared = null;
     	setSharedFormula( false );
+    	compiled = null;	// the PtgExp no longer reaches the shared expression
     }
     
     
@@ -865,8 +872,27 @@ extends XLSCellRecord {
 	 * @throws CalculationException 
 	 */
 	public Object calculate()
+	{
+		if (cachedValue == null && recurseCount.get() == 0
+				&& Instrumentation.isEnabled()) {
+			// time only the outermost calculation, which includes its precedents
+			Instrumentation.Phase phase = Instrumentation.start("formula.calculate");
+			try {
+				return calculateAtDepth();
+			} finally {
+				phase.end();
+			}
+		}
+		return calculateAtDepth();
+	}
+
+	private Object calculateAtDepth()
 	{
 		Integer depth = recurseCount.get();
+		if (depth == 0)
+			clearVolatiles();
+		if (depth == 0 && cachedValue == null)
+			calculatePrecedents();
 		
 		try{
 			recurseCount.set( depth + 1 );
@@ -885,6 +911,61 @@ extends XLSCellRecord {
 	}
 	
 
+	/** Clears the volatile formulas of the workbook, and their dependents,
+	 * if a cell has changed since they were last calculated.
+	 */
+	private void clearVolatiles() {
+		WorkBook book = getWorkBook();
+		if (book == null || book.getRefTracker() == null)
+			return;
+		book.getRefTracker().getDependencyGraph().clearVolatilesIfChanged();
+	}
+
+	/** Calculates the uncalculated formulas this formula depends on ahead of
+	 * it, deepest first, using the workbook's dependency graph. References to
+	 * them then find a cached value rather than recursing, and reference
+	 * cycles are reported from the graph.
+	 */
+	private void calculatePrecedents() {
+		WorkBook book = getWorkBook();
+		if (book == null || book.getRefTracker() == null
+				|| book.getCalcMode() != WorkBook.CALCULATE_AUTO)
+			return;
+		DependencyGraph graph = book.getRefTracker().getDependencyGraph();
+		if (!graph.isBuilt())
+			return;
+		graph.sync(book);
+		List<Formula> order = graph.getCalculationOrder(this);
+		recurseCount.set(1);
+		try {
+			for (int i = 0; i < order.size(); i++)
+				if (order.get(i) != this)
+					order.get(i).calculate();
+		} finally {
+			recurseCount.set(0);
+		}
+	}
+
+	/** Calculates the formula once its precedents are known to have been
+	 * calculated, as during an ordered recalc, without consulting the
+	 * dependency graph again.
+	 */
+	Object calculateOrdered() {
+		Integer depth = recurseCount.get();
+		if (depth == 0)
+			recurseCount.set(1);
+		try {
+			return calculate();
+		} finally {
+			recurseCount.set(depth);
+		}
+	}
+
+	/** Returns whether the formula has a calculated value. */
+	boolean hasCachedValue() {
+		return cachedValue != null;
+	}
+
 	/** Calculates the formula if necessary regardless of calculation mode.
 	 * If there is a cached value it will be returned. Otherwise, the formula
 	 * will be calculated and the result will be cached and returned. If you
@@ -893,10 +974,20 @@ extends XLSCellRecord {
 	private Object calculateInternal()
 	{	
 		// If we have a cached value, return it instead of calculating
-		if (cachedValue != null) return cachedValue;
+		if (cachedValue != null) {
+			Instrumentation.count("formula.cache.hit", 1);
+			return cachedValue;
+		}
+		Instrumentation.count("formula.cache.miss", 1);
 		populateExpression();
     	try {
-    		cachedValue= FormulaCalculator.calculateFormula(this.expression);
+    		CompiledExpression ce = compiled;
+    		if (ce == null || !ce.isCompiledFrom(expression)) {
+    			ce = CompiledExpression.compile(expression);
+    			compiled = ce;
+    			Instrumentation.count("formula.compile", 1);
+    		}
+    		cachedValue= ce.calculate();
     	} catch (StackOverflowError e){
         	Logger.logWarn("Stack overflow while calculating " 
         			+ this.getCellAddressWithSheet()
@@ -1067,6 +1158,15 @@ extends XLSCellRecord {
 //         this.updateRecord(); no need; will be updated after recalc, which will automatically happen on write
     }
     
+    /**
+     * Discards the compiled form of the expression.  Ptgs replaced or removed
+     * in the expression stack are detected on the next calculation, so this
+     * only releases the compiled form early.
+     */
+    public void clearCompiledExpression() {
+    	compiled = null;
+    }
+    
  	public String getArrayRefs() { 
 		if (internalRecords!=null && internalRecords.size()>0) {
 			Object o= internalRecords.get(0);
@@ -1160,6 +1260,7 @@ extends XLSCellRecord {
      */
     private boolean closed= false;    
     public void close() {
+        compiled = null;
         if (expression!=null) {
 	        while (!expression.isEmpty()) {
 	        	GenericPtg p= (GenericPtg) expression.pop();
@@ -1210,6 +1311,7 @@ extends XLSCellRecord {
 		int idx = this.expression.indexOf(thisptg);
 		this.expression.remove(idx);
 		this.expression.insertElementAt(ptgErr, idx);
+		compiled = null;
 	}
 	
 	
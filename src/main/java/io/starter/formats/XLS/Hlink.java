@@ -60,6 +60,7 @@ public final class Hlink extends XLSRecord{
         byte[] dt= this.getData();
         System.arraycopy(b, 0, dt, 0, 2);
         this.rowFirst = c;
+        updateRangeIndex();
     }
     public int getRowFirst(){return rowFirst;}
     
@@ -70,6 +71,7 @@ public final class Hlink extends XLSRecord{
         byte[] dt= this.getData();
         System.arraycopy(b, 0, dt, 2, 2);
         this.rowLast = c;
+        updateRangeIndex();
     }
     public int getRowLast(){return rowLast;}
     
@@ -80,6 +82,7 @@ public final class Hlink extends XLSRecord{
         byte[] dt= this.getData();
         System.arraycopy(b, 0, dt, 4, 2);
         this.colFirst = c;
+        updateRangeIndex();
     }
     public int getColFirst(){return colFirst;}
     
@@ -90,9 +93,17 @@ public final class Hlink extends XLSRecord{
         byte[] dt= this.getData();
         System.arraycopy(b, 0, dt, 6, 2);
         this.colLast = c;
+        updateRangeIndex();
     }
     public int getColLast(){return colLast;}    
     
+    /** update this link's entry in the sheet's range index after its bounds change
+    */
+    private void updateRangeIndex(){
+        if(this.getSheet()!=null)
+            this.getSheet().updateRangeIndex(this);
+    }
+    
     /** get the URL for this Hlink
     */
     public String getURL(){
@@ -156,7 +156,7 @@ extends XLSCellRecord {
 	    if(unsharedstr !=null)
 	    	return unsharedstr.toString();
 	    else 
-	    	return this.getWorkBook().getSharedStringTable().getUStringAt(isst).toCachingString();
+	    	return this.getWorkBook().getSharedStringTable().getStringAt(isst);
     }
 	
 	/**
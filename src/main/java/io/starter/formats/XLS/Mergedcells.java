@@ -71,6 +71,8 @@ public final class Mergedcells extends io.starter.formats.XLS.XLSRecord {
 	public void removeCellRange(CellRange rng){
 		this.ranges.remove(rng);
 		this.update();
+		if (this.getSheet()!=null)
+			this.getSheet().removeFromRangeIndex(rng);
 	}
 
 	/** merge a CellRange
@@ -80,6 +82,14 @@ public final class Mergedcells extends io.starter.formats.XLS.XLSRecord {
 	public void addCellRange(CellRange rng){
 	  //  rng.setIsmerge(true);
 		this.ranges.add(rng);
+		if (this.getSheet()!=null)
+			this.getSheet().updateRangeIndex(rng);
+	}
+
+	/** returns the number of merged ranges in this record
+	 */
+	int getRangeCount(){
+		return (ranges==null)?0:ranges.size();
 	}
 
 	/** returns the Merged BiffRec Ranges for this WorkSheet
@@ -175,6 +185,9 @@ public final class Mergedcells extends io.starter.formats.XLS.XLSRecord {
 	 */
 	public void initCells(WorkBookHandle wbook){
 		nummerges = (int) ByteTools.readShort(this.getByteAt(0), getByteAt(1));
+		// ranges read again replace any already in the sheet's range index
+		for (int i = 0; ranges != null && i < ranges.size(); i++)
+			this.getSheet().removeFromRangeIndex(ranges.get(i));
         ranges = new CompatibleVector();
         int pos = 2; // pointer to the indexes		
 		for(int x=0;x<nummerges;x++){
@@ -195,6 +208,7 @@ public final class Mergedcells extends io.starter.formats.XLS.XLSRecord {
 			//	Logger.logInfo(x);
 				cr.setWorkBook(wbook);
 				ranges.add(cr);
+				this.getSheet().updateRangeIndex(cr);
 				BiffRec[] ch = cr.getCellRecs();
 				Mulblank aMul= null;
 				for(int t=0;t<ch.length;t++){
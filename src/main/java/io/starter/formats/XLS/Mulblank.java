@@ -278,6 +278,31 @@ public final class Mulblank extends XLSCellRecord /*implements Mul*/
 		return false;	// don't delete this rec
 	}
 	
+	/**
+	 * creates a separate Blank for each cell of this range of blank cells, as used when
+	 * the cells are to be moved individually; this Mulblank is left unchanged
+	 * @return the Blanks in column order
+	 */
+	List<Blank> getBlanks() {
+		ArrayList<Blank> blanks= new ArrayList<Blank>(colLast-colFirst+1);
+		for (int i = colFirst; i <= colLast; i++) {
+			byte[] newblank = {0,0,0,0,0,0};	
+			// set the row...
+			System.arraycopy(this.getBytesAt(0, 2), 0, newblank, 0, 2);
+			// set the col...
+			System.arraycopy(ByteTools.shortToLEBytes((short) i),0,newblank,2,2);				
+			// set the ixfe
+			System.arraycopy(rgixfe, ((i-colFirst) * 2), newblank, 4, 2);
+			Blank b = new Blank(newblank);
+			b.streamer = this.streamer;
+			b.setWorkBook(this.getWorkBook());
+			b.setSheet(this.getSheet());
+			b.setMergeRange(this.getMergeRange(i));
+			blanks.add(b);
+		}
+		return blanks;
+	}
+	
 	
 		
     /** return a blank string val 
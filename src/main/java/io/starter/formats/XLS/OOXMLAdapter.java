@@ -624,6 +624,10 @@ public class OOXMLAdapter implements OOXMLConstants {
 		return f.getEntry(name);
 	}
 
+	protected static ZipEntry getEntry(OOXMLPackage f, String name) {
+		return f.getEntry(name);
+	}
+
 	/**
 	 * parses any .rels file into content List array list
 	 * 
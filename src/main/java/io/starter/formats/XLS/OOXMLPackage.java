@@ -0,0 +1,277 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/** The zip container of an OOXML document, as read by {@link OOXMLReader}.
+ * <p>
+ * A package is either a file on disk, read through {@link ZipFile}, or a
+ * buffer holding the bytes of the whole archive, which may be a heap,
+ * direct or memory-mapped <code>ByteBuffer</code>. Buffered packages are
+ * read through their central directory and each part is inflated on
+ * demand straight from the buffer, so an upload can be parsed without
+ * being written to a temporary file.
+ */
+public abstract class OOXMLPackage implements Closeable {
+
+	/** Opens a package on disk. */
+	public static OOXMLPackage open(File file) throws IOException {
+		return new FilePackage(new ZipFile(file));
+	}
+
+	/** Opens a package held in memory. The buffer is read from its current
+	 * position to its limit and must not be modified while the package is
+	 * in use.
+	 * @param buf the bytes of the zip archive
+	 * @param name the name reported for the package
+	 */
+	public static OOXMLPackage open(ByteBuffer buf, String name) throws IOException {
+		return new BufferPackage(buf, name);
+	}
+
+	/** Returns whether the buffer starts with the zip local file header
+	 * signature. The buffer position is not changed. */
+	public static boolean isZip(ByteBuffer buf) {
+		int p = buf.position();
+		return buf.limit() - p >= 4 && buf.get(p) == 'P' && buf.get(p + 1) == 'K'
+				&& buf.get(p + 2) == 3 && buf.get(p + 3) == 4;
+	}
+
+	/** Gets the entry for a part, or <code>null</code> if there is none. */
+	public abstract ZipEntry getEntry(String name);
+
+	/** Opens the uncompressed contents of a part. */
+	public abstract InputStream getInputStream(ZipEntry entry) throws IOException;
+
+	/** Gets the entries of every part in the package. */
+	public abstract Enumeration<? extends ZipEntry> entries();
+
+	/** Gets the name of the package, usually its file path. */
+	public abstract String getName();
+
+	/** {@link ZipFile} backed package */
+	static final class FilePackage extends OOXMLPackage {
+		private final ZipFile zip;
+
+		FilePackage(ZipFile zip) {
+			this.zip = zip;
+		}
+
+		public ZipEntry getEntry(String name) {
+			return zip.getEntry(name);
+		}
+
+		public InputStream getInputStream(ZipEntry entry) throws IOException {
+			return zip.getInputStream(entry);
+		}
+
+		public Enumeration<? extends ZipEntry> entries() {
+			return zip.entries();
+		}
+
+		public String getName() {
+			return zip.getName();
+		}
+
+		public void close() throws IOException {
+			zip.close();
+		}
+	}
+
+	/** Package read from a buffer by way of the zip central directory. */
+	static final class BufferPackage extends OOXMLPackage {
+		private static final int LOCAL_SIG = 0x04034b50, CENTRAL_SIG = 0x02014b50,
+				END_SIG = 0x06054b50;
+
+		private final ByteBuffer buf;
+		private final String name;
+		private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+		/** a part and the position of its local header */
+		private static final class Entry extends ZipEntry {
+			final int header;
+
+			Entry(String name, int header) {
+				super(name);
+				this.header = header;
+			}
+		}
+
+		BufferPackage(ByteBuffer source, String name) throws IOException {
+			this.name = name;
+			buf = source.slice();
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+
+			// the end of central directory record is followed only by a comment
+			int end = -1;
+			for (int i = buf.limit() - 22; i >= Math.max(0, buf.limit() - 22 - 0xffff); i--) {
+				if (buf.getInt(i) == END_SIG) {
+					end = i;
+					break;
+				}
+			}
+			if (end < 0)
+				throw new IOException(name + " is not a zip archive");
+			int count = buf.getShort(end + 10) & 0xffff;
+			long dir = buf.getInt(end + 16) & 0xffffffffL;
+			if (count == 0xffff || dir == 0xffffffffL)
+				throw new IOException(name + ": ZIP64 archives are not supported");
+
+			int pos = (int) dir;
+			for (int i = 0; i < count; i++) {
+				if (pos + 46 > buf.limit() || buf.getInt(pos) != CENTRAL_SIG)
+					throw new IOException(name + ": invalid zip central directory");
+				int method = buf.getShort(pos + 10) & 0xffff;
+				long csize = buf.getInt(pos + 20) & 0xffffffffL;
+				long size = buf.getInt(pos + 24) & 0xffffffffL;
+				int nlen = buf.getShort(pos + 28) & 0xffff;
+				int xlen = buf.getShort(pos + 30) & 0xffff;
+				int clen = buf.getShort(pos + 32) & 0xffff;
+				int header = buf.getInt(pos + 42);
+				byte[] nm = new byte[nlen];
+				for (int j = 0; j < nlen; j++)
+					nm[j] = buf.get(pos + 46 + j);
+				Entry e = new Entry(new String(nm, "UTF-8"), header);
+				e.setMethod(method);
+				e.setCompressedSize(csize);
+				e.setSize(size);
+				entries.put(e.getName(), e);
+				pos += 46 + nlen + xlen + clen;
+			}
+		}
+
+		public ZipEntry getEntry(String name) {
+			return entries.get(name);
+		}
+
+		public InputStream getInputStream(ZipEntry entry) throws IOException {
+			Entry e = entries.get(entry.getName());
+			if (e == null)
+				throw new IOException(entry.getName() + " not found in " + name);
+			int h = e.header;
+			if (buf.getInt(h) != LOCAL_SIG)
+				throw new IOException(name + ": invalid local header for " + e.getName());
+			int start = h + 30 + (buf.getShort(h + 26) & 0xffff) + (buf.getShort(h + 28) & 0xffff);
+			ByteBuffer data = buf.duplicate();
+			data.limit(start + (int) e.getCompressedSize());
+			data.position(start);
+			InputStream in = new BufferInputStream(data.slice());
+			if (e.getMethod() == ZipEntry.STORED)
+				return in;
+			if (e.getMethod() != ZipEntry.DEFLATED)
+				throw new IOException(name + ": unsupported compression method for " + e.getName());
+			return new PartInflaterStream(in);
+		}
+
+		public Enumeration<? extends ZipEntry> entries() {
+			return Collections.enumeration(entries.values());
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/** Releases the buffer; it is up to the owner to unmap it. */
+		public void close() {
+			entries.clear();
+		}
+	}
+
+	/** Inflates a raw deflate stream, supplying the trailing dummy byte
+	 * the nowrap inflater needs and freeing the inflater on close, as the
+	 * streams of {@link ZipFile} do. */
+	private static final class PartInflaterStream extends InflaterInputStream {
+		private boolean eof = false, closed = false;
+
+		PartInflaterStream(InputStream in) {
+			super(in, new Inflater(true), 8192);
+		}
+
+		protected void fill() throws IOException {
+			if (eof)
+				throw new EOFException("Unexpected end of ZLIB input stream");
+			len = in.read(buf, 0, buf.length);
+			if (len == -1) {
+				buf[0] = 0;
+				len = 1;
+				eof = true;
+			}
+			inf.setInput(buf, 0, len);
+		}
+
+		public void close() throws IOException {
+			if (!closed) {
+				closed = true;
+				inf.end();
+				super.close();
+			}
+		}
+	}
+
+	/** InputStream over the remaining bytes of a buffer */
+	private static final class BufferInputStream extends InputStream {
+		private final ByteBuffer data;
+
+		BufferInputStream(ByteBuffer data) {
+			this.data = data;
+		}
+
+		public int read() {
+			return data.hasRemaining() ? data.get() & 0xff : -1;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if (len == 0)
+				return 0;
+			if (!data.hasRemaining())
+				return -1;
+			len = Math.min(len, data.remaining());
+			data.get(b, off, len);
+			return len;
+		}
+
+		public long skip(long n) {
+			int k = (int) Math.max(0, Math.min(n, data.remaining()));
+			data.position(data.position() + k);
+			return k;
+		}
+
+		public int available() {
+			return data.remaining();
+		}
+	}
+}
@@ -38,6 +38,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -58,6 +61,8 @@ import io.starter.formats.OOXML.OOXMLConstants;
 import io.starter.formats.OOXML.PivotCacheDefinition;
 import io.starter.formats.OOXML.PivotTableDefinition;
 import io.starter.formats.OOXML.Theme;
+import io.starter.formats.XML.RecordedPullParser;
+import io.starter.toolkit.Instrumentation;
 import io.starter.toolkit.Logger;
 import io.starter.toolkit.StringTool;
 
@@ -84,8 +89,31 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
      */
     public  void parseNBind(WorkBookHandle bk, String fName) throws XmlPullParserException, IOException, CellNotFoundException
     {
-       ZipFile zip= new ZipFile(fName);
-       
+       parseNBind(bk, OOXMLPackage.open(new File(fName)), fName);
+    }
+
+    /**
+     * OOXML parseNBind - reads in an OOXML (Excel 7) workbook from an open package,
+     * which may be held in memory
+     * @param bk        WorkBookHandle - workbook to input
+     * @param zip       OOXML package; it is closed when done
+     * @param fName     name of the workbook; pass-through files are kept for names ending in .tmp 
+     * @throws XmlPullParserException
+     * @throws IOException
+     * @throws CellNotFoundException 
+     */
+    public  void parseNBind(WorkBookHandle bk, OOXMLPackage zip, String fName) throws XmlPullParserException, IOException, CellNotFoundException
+    {
+       Instrumentation.Phase phase= Instrumentation.start("ooxml.read");
+       try {
+    	   bindPackage(bk, zip, fName);
+       } finally {
+    	   phase.end();
+       }
+    }
+
+    private void bindPackage(WorkBookHandle bk, OOXMLPackage zip, String fName) throws XmlPullParserException, IOException, CellNotFoundException
+    {
        inputEncoding= System.getProperty("file.encoding");
        if (inputEncoding==null) inputEncoding= "UTF-8";
        // KSC: replaced with above       isUTFEncoding= (System.getProperty("file.encoding").startsWith("UTF"));
@@ -104,7 +132,7 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
        /* KSC: remove Xf recs first  -- NOTE has some issues for XLS->XLSX -- must fix !! */
        bk.getWorkBook().removeXfRecs();
 	   bk.getWorkBook().setDefaultIxfe(0);
-       
+    
        externalDir= getTempDir(bk.getWorkBook().getFactory().getFileName());              
        ArrayList formulas= new ArrayList();     // set in parseSheetXML, must process formulas after all sheets/cells have been added 
        ArrayList hyperlinks= new ArrayList();   // set in parseSheetXML, links with hyperlink target info in sheetX.xml.rels            ""
@@ -117,8 +145,19 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
        bk.getWorkBook().setCalcMode(origcalcmode);  // reset
     }
     
+    /**
+     * counts the uncompressed size of a part towards the bytes read, if known
+     */
+    private static void countBytesRead(ZipEntry target) {
+    	if (target!=null && target.getSize() >= 0)
+    		Instrumentation.count("ooxml.bytesRead", target.getSize());
+    }
+    
     protected static boolean parsePivotTables= true;		// KSC: TESTING -- only make true in testing
     
+    /** sheet parts tokenized ahead of binding when reading in parallel */
+    private SheetPrefetch prefetch= null;
+    
 
     /**
      * parses OOXML content files given a content list cl from zip file zip
@@ -136,10 +175,10 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
      * @throws CellNotFoundException 
      * @throws XmlPullParserException 
      */
-    protected  void parseBookLevelElements(WorkBookHandle bk, WorkSheetHandle sheet, ZipFile zip, ArrayList cl, String parentDir, ArrayList formulas, ArrayList hyperlinks, HashMap inlineStrs, HashMap<String, String> pivotCaches, HashMap<String, WorkSheetHandle> pivotTables) throws XmlPullParserException, CellNotFoundException {
+    protected  void parseBookLevelElements(WorkBookHandle bk, WorkSheetHandle sheet, OOXMLPackage zip, ArrayList cl, String parentDir, ArrayList formulas, ArrayList hyperlinks, HashMap inlineStrs, HashMap<String, String> pivotCaches, HashMap<String, WorkSheetHandle> pivotTables) throws XmlPullParserException, CellNotFoundException {
         String p;	// target path
         ZipEntry target;
-        ArrayList sst= new ArrayList(); // set in parseSSTXML, used in parsing sheet XML
+        List sst= new ArrayList(); // set in parseSSTXML, used in parsing sheet XML
         
         try {
             // parse content list for <elementName, target's path, rId>
@@ -160,10 +199,23 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
                
                if (ooxmlElement.equals("styles")) {
                    target= getEntry(zip,p + f);
-                   parseStylesXML(bk,wrapInputStream(zip.getInputStream(target)));                 
+                   countBytesRead(target);
+                   Instrumentation.Phase phase= Instrumentation.start("ooxml.styles");
+                   try {
+                	   parseStylesXML(bk,wrapInputStream(zip.getInputStream(target)));
+                   } finally {
+                	   phase.end();
+                   }
                } else if (ooxmlElement.equals("sst")) {
                    target= getEntry(zip,p + f);
-                   sst= Sst.parseOOXML(bk,wrapInputStream(zip.getInputStream(target)));                                  
+                   countBytesRead(target);
+                   Instrumentation.Phase phase= Instrumentation.start("ooxml.sst");
+                   try {
+                	   sst= Sst.parseOOXML(bk,wrapInputStream(zip.getInputStream(target)));
+                   } finally {
+                	   phase.end();
+                   }
+                   Instrumentation.count("sst.strings", sst.size());
                } else if (ooxmlElement.equals("sheet")) {  
                    // sheet.xml
                    target= getEntry(zip,p + f);
@@ -179,8 +231,18 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
                        sheet= bk.getWorkSheet(sheetnum);
                         // since we're adding a lot of cells, put sheet in fast add mode    // put statement here AFTER sheet is set :)
                        sheet.setFastCellAdds(true);
+                       countBytesRead(target);
                         
-                       sheet.getMysheet().parseOOXML(bk, sheet, wrapInputStream(zip.getInputStream(target)), sst, formulas, hyperlinks, inlineStrs);
+                       Instrumentation.Phase phase= Instrumentation.start("ooxml.sheet");
+                       try {
+                    	   XmlPullParser recorded= (prefetch!=null) ? prefetch.take(p + f) : null;
+                    	   if (recorded!=null)
+                    		   sheet.getMysheet().parseOOXML(bk, sheet, recorded, sst, formulas, hyperlinks, inlineStrs);
+                    	   else
+                    		   sheet.getMysheet().parseOOXML(bk, sheet, wrapInputStream(zip.getInputStream(target)), sst, formulas, hyperlinks, inlineStrs);
+                       } finally {
+                    	   phase.end();
+                       }
                        
                        // sheet.xml.rels
                        target= getEntry(zip,p + "_rels/" + f.substring(f.lastIndexOf("/")+1)+".rels");
@@ -204,6 +266,7 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
                    // workbook.xml
                    target= getEntry(zip,p + f);
                    
+                   countBytesRead(target);
                    if(DEBUG)
                        Logger.logInfo("About to parseWBOOXML:" + bk.toString());
                    pivotCaches= new HashMap<String, String>();
@@ -211,13 +274,24 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
                    
                    // now parse wb content - sheets and their sub-contents (charts, images, oleobjects...)
                    pivotTables= new HashMap<String, WorkSheetHandle>();
-                   parseBookLevelElements(bk, sheet, zip, wbContentList, p, formulas, hyperlinks, inlineStrs, pivotCaches, pivotTables);	
+                   if ("true".equals(System.getProperty(XLSConstants.PARALLEL_READ_PROP)))
+                	   prefetch= new SheetPrefetch(zip, getSheetParts(wbContentList, p));
+                   try {
+                	   parseBookLevelElements(bk, sheet, zip, wbContentList, p, formulas, hyperlinks, inlineStrs, pivotCaches, pivotTables);	
+                   } finally {
+                	   prefetch= null;
+                   }
                    
                    // after all sheet data has been added, now can add inline strings, if any
                    if (inlineStrs!=null) 
                        addInlineStrings(bk, inlineStrs);
                    // after all sheet data has been added, now can add formulas
-                   addFormulas(bk, formulas);                   
+                   Instrumentation.Phase phase= Instrumentation.start("ooxml.formulas");
+                   try {
+                	   addFormulas(bk, formulas);
+                   } finally {
+                	   phase.end();
+                   }
                    // after all sheet data and formulas, NOW can add pivot Tables
                    addPivotTables(bk, zip, pivotTables);
                 } else if (parsePivotTables && ooxmlElement.equals("pivotCacheDefinition")) {	// workbook-parent + pivotTable-parent
@@ -263,6 +337,76 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
     }
     
 
+    /**
+     * get the zip paths of the sheet parts in a workbook content list
+     * @param cl        workbook content list
+     * @param parentDir directory of the workbook part
+     */
+    private static List getSheetParts(ArrayList cl, String parentDir) {
+        ArrayList ret= new ArrayList();
+        for (int i= 0; i < cl.size(); i++) {
+            String[] c= (String[]) cl.get(i);
+            if (c[0].equals("sheet"))
+                ret.add(parsePathForZip(StringTool.getPath(c[1]), parentDir) + StringTool.stripPath(c[1]));
+        }
+        return ret;
+    }
+    
+    /**
+     * Tokenizes the sheet parts of a workbook on the common ForkJoinPool ahead
+     * of their being bound into the workbook, which must happen in order on
+     * the reading thread as cells share the workbook's strings, formats and
+     * records. Only a few parts more than the pool can work on are held at a
+     * time, so that a large workbook is not recorded entirely in memory.
+     */
+    private static final class SheetPrefetch {
+        private final OOXMLPackage zip;
+        private final List paths;
+        private final HashMap tasks= new HashMap();
+        private final int window= ForkJoinPool.getCommonPoolParallelism() + 1;
+        private int next= 0;
+        
+        SheetPrefetch(OOXMLPackage zip, List paths) {
+            this.zip= zip;
+            this.paths= paths;
+            fill();
+        }
+        
+        private void fill() {
+            while (next < paths.size() && tasks.size() < window) {
+                final String path= (String) paths.get(next++);
+                tasks.put(path, ForkJoinPool.commonPool().submit(new Callable() {
+                    public Object call() throws Exception {
+                        InputStream in= zip.getInputStream(getEntry(zip, path));
+                        try {
+                            return RecordedPullParser.record(wrapInputStream(in));
+                        } finally {
+                            in.close();
+                        }
+                    }
+                }));
+            }
+        }
+        
+        /**
+         * get the recorded sheet part, waiting for it if necessary
+         * @return the parser, or null if the part was not prefetched or could
+         *         not be read, in which case it should be parsed directly
+         */
+        XmlPullParser take(String path) {
+            ForkJoinTask task= (ForkJoinTask) tasks.remove(path);
+            fill();
+            if (task == null)
+                return null;
+            try {
+                return (XmlPullParser) task.join();
+            } catch (RuntimeException e) {
+                Logger.logWarn("OOXMLReader: parsing " + path + " on this thread after " + e.toString());
+                return null;
+            }
+        }
+    }
+
     /**
      * pass-through current OOXML element/file - i.e. save file to external directory on disk
      * because it cannot be processed into our normal BIFF8 machinery
@@ -280,7 +424,7 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
 
      * @param c String[] {type, filename, rid}
      */
-    protected static void handlePassThroughs(ZipFile zip, WorkBookHandle bk, String parentDir, String externalDir, String[] c) throws IOException {
+    protected static void handlePassThroughs(OOXMLPackage zip, WorkBookHandle bk, String parentDir, String externalDir, String[] c) throws IOException {
         passThrough(zip, parentDir+c[1], externalDir +c[1]); // save the original target file for later re-packaging
         ZipEntry target= getEntry(zip, parentDir + "_rels/" + c[1].substring(c[1].lastIndexOf("/")+1)+".rels"); // is there an associated .rels file??
         if (target==null)  // no .rels, just link to original OOXML element/file
@@ -296,7 +440,7 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
  * store embeds on disk and link information to for later retrieval  
  * @param c String[] {type, filename, rid}
  */
-    protected static void handleSheetPassThroughs(ZipFile zip, WorkBookHandle bk, Boundsheet sht, String parentDir, String externalDir, String[] c, String attrs) throws IOException {
+    protected static void handleSheetPassThroughs(OOXMLPackage zip, WorkBookHandle bk, Boundsheet sht, String parentDir, String externalDir, String[] c, String attrs) throws IOException {
         passThrough(zip, parentDir+c[1], externalDir +c[1]); // save the original target file for later re-packaging
         ZipEntry target= getEntry(zip, parentDir + "_rels/" + c[1].substring(c[1].lastIndexOf("/")+1)+".rels"); // is there an associated .rels file??
 	    if (target == null) // no .rels, just link to original OOXML element/file
@@ -314,7 +458,7 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
      * @param fout
      * @throws IOException
      */
-    protected static void passThrough(ZipFile zip, String fin, String fout) throws IOException{
+    protected static void passThrough(OOXMLPackage zip, String fin, String fout) throws IOException{
         try {
             java.io.File outfile = new java.io.File(fout);
             // clean it up
@@ -347,7 +491,7 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
      * @param namedRange    ArrayList to hold named ranges (must be added after all sheet data) 
      * @return
      */
-    ArrayList parsewbOOXML(ZipFile zip, WorkBookHandle bk, InputStream ii, String p, HashMap<String, String> pivotCaches) {
+    ArrayList parsewbOOXML(OOXMLPackage zip, WorkBookHandle bk, InputStream ii, String p, HashMap<String, String> pivotCaches) {
         ArrayList namedRanges= new ArrayList();  //must save and parse after all sheets have been added
         ArrayList contentList= new ArrayList();
         ArrayList sheets= new ArrayList();
@@ -739,7 +883,7 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
              } 
              // is xf 15 the default? (will happen if converted from xls) ******* very important to avoid unnecessary blank creation *******
              // see TestCorruption.TestStackOverflow
-             if (nXfs==15 && xf.toString().equals(bk.getWorkBook().getXf(0).toString()))
+             if (nXfs==15 && xf.matches(bk.getWorkBook().getXf(0)))
             	 bk.getWorkBook().setDefaultIxfe(15);
              nXfs++;
              
@@ -807,12 +951,12 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
      * take a passthrough element such as vmldrawing or theme which contains embedded objects (images), retrieve and store
      * for later re-writing to zip 
      * 
-     * @param zip       open ZipFile
+     * @param zip       open OOXMLPackage
      * @param target    ZipEntry pointing to .rels
      * @param p         path
      * @return String[] array of embeds
      */
-    protected static String[] storeEmbeds(ZipFile zip, ZipEntry target, String p, String externalDir) throws IOException {      
+    protected static String[] storeEmbeds(OOXMLPackage zip, ZipEntry target, String p, String externalDir) throws IOException {      
         //if(DEBUG) Logger.logInfo("storeEmbeds about to call parseRels on: " + target.toString());
         
        ArrayList embeds= parseRels(wrapInputStream(wrapInputStream(zip.getInputStream(target)))); // obtain a list of image file references for use in later parsing
@@ -1058,10 +1202,10 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
     /**
      * after all sheet data, etc is added, now add pivot tables 
      * @param bk		WorkBookHandle
-     * @param zip		open ZipFile
+     * @param zip		open OOXMLPackage
      * @param pivotTables Strings name pivot table files within zip
      */
-    void addPivotTables(WorkBookHandle bk, ZipFile zip, HashMap<String, WorkSheetHandle> pivotTables) throws IOException {
+    void addPivotTables(WorkBookHandle bk, OOXMLPackage zip, HashMap<String, WorkSheetHandle> pivotTables) throws IOException {
     	Iterator ii= pivotTables.keySet().iterator();
     	while (ii.hasNext()) {    		
     		String key= (String) ii.next();
@@ -1095,6 +1239,15 @@ public class OOXMLReader extends OOXMLAdapter implements OOXMLConstants {
      * @param externalDir
      */
     public static void refreshExternalFiles(ZipFile zipIn, String externalDir) {
+        refreshExternalFiles(new OOXMLPackage.FilePackage(zipIn), externalDir);
+    }
+
+    /**
+     * retrieve pass-through files (Files not processed by normal WBH channels) for later writing 
+     * @param zipIn
+     * @param externalDir
+     */
+    public static void refreshExternalFiles(OOXMLPackage zipIn, String externalDir) {
         Enumeration<? extends java.util.zip.ZipEntry> ee= zipIn.entries();
         while (ee.hasMoreElements()) {
         	ZipEntry ze= ee.nextElement();
@@ -0,0 +1,581 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import io.starter.OpenXLS.DateConverter;
+import io.starter.toolkit.Logger;
+
+/** Read-only streaming access to the cell values of an OOXML (.xlsx)
+ * workbook.
+ * <p>
+ * Where {@link OOXMLReader} binds the whole package into a
+ * {@link io.starter.OpenXLS.WorkBookHandle}, this reader pulls each
+ * worksheet part row by row straight out of the zip file and hands the
+ * values to the caller, either pushed to a {@link RowListener} or pulled
+ * through a {@link RowIterator}. No sheet, row or cell records are created;
+ * formulas are not parsed and their cached values are returned. Shared
+ * strings are resolved, and numbers whose cell format is a date format are
+ * returned as dates unless {@link #setConvertDates(boolean)} is turned off.
+ * <p>
+ * Memory use is bounded by the size of a single row plus the shared string
+ * table and the cell format table, which are read up front since cells
+ * refer to them by index.
+ * <pre>
+ * OOXMLStreamReader reader = new OOXMLStreamReader("big.xlsx");
+ * try {
+ *     reader.read(listener);
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ * 
+ * @see RowListener
+ */
+public class OOXMLStreamReader implements Closeable {
+
+	private final ZipFile zip;
+	private final ArrayList sheetNames = new ArrayList();
+	private final ArrayList sheetParts = new ArrayList();
+	private String sstPart, stylesPart;
+
+	private String[] sharedStrings;
+	private boolean[] dateXfs;
+	private boolean date1904 = false;
+	private boolean convertDates = true;
+
+	/** Opens an OOXML workbook for streaming.
+	 * @param fName the path of the .xlsx file
+	 */
+	public OOXMLStreamReader(String fName) throws IOException {
+		this(new File(fName));
+	}
+
+	/** Opens an OOXML workbook for streaming.
+	 * @param file the .xlsx file
+	 */
+	public OOXMLStreamReader(File file) throws IOException {
+		zip = new ZipFile(file);
+		try {
+			init();
+		} catch (IOException e) {
+			zip.close();
+			throw e;
+		} catch (RuntimeException e) {
+			zip.close();
+			throw e;
+		}
+	}
+
+	/** locates the workbook part and reads its sheet list and relationships */
+	private void init() throws IOException {
+		String document = null;
+		ArrayList rels = OOXMLAdapter.parseRels(open("_rels/.rels"));
+		for (int i = 0; i < rels.size(); i++) {
+			String[] c = (String[]) rels.get(i);
+			if (c[0].startsWith("document"))
+				document = resolve("", c[1]);
+		}
+		if (document == null || zip.getEntry(document) == null)
+			throw new WorkBookException("No workbook part found in " + zip.getName(),
+					WorkBookException.UNSPECIFIED_INIT_ERROR);
+
+		String dir = document.substring(0, document.lastIndexOf('/') + 1);
+		String relsName = dir + "_rels/" + document.substring(dir.length()) + ".rels";
+		HashMap targets = new HashMap();
+		if (zip.getEntry(relsName) != null) {
+			rels = OOXMLAdapter.parseRels(open(relsName));
+			for (int i = 0; i < rels.size(); i++) {
+				String[] c = (String[]) rels.get(i);
+				String target = resolve(dir, c[1]);
+				if (c[0].equals("sst"))
+					sstPart = target;
+				else if (c[0].equals("styles"))
+					stylesPart = target;
+				targets.put(c[2], target);
+			}
+		}
+
+		XmlPullParser xpp = newParser(document);
+		try {
+			int eventType = xpp.getEventType();
+			while (eventType != XmlPullParser.END_DOCUMENT) {
+				if (eventType == XmlPullParser.START_TAG) {
+					String tnm = xpp.getName();
+					if (tnm.equals("workbookPr")) {
+						String v = getAttribute(xpp, "date1904");
+						date1904 = v != null && (v.equals("1") || v.equalsIgnoreCase("true"));
+					} else if (tnm.equals("sheet")) {
+						String target = (String) targets.get(getAttribute(xpp, "id"));
+						if (target != null) {
+							sheetNames.add(getAttribute(xpp, "name"));
+							sheetParts.add(target);
+						}
+					}
+				}
+				eventType = xpp.next();
+			}
+		} catch (XmlPullParserException e) {
+			throw new WorkBookException("Unable to read workbook part " + document + ": " + e.toString(),
+					WorkBookException.UNSPECIFIED_INIT_ERROR, e);
+		}
+	}
+
+	/** Gets the number of worksheets in the workbook. */
+	public int getNumSheets() {
+		return sheetNames.size();
+	}
+
+	/** Gets the name of a worksheet.
+	 * @param sheetIndex the zero-based index of the sheet
+	 */
+	public String getSheetName(int sheetIndex) {
+		return (String) sheetNames.get(sheetIndex);
+	}
+
+	/** Gets whether numbers with a date format are returned as dates. */
+	public boolean getConvertDates() {
+		return convertDates;
+	}
+
+	/** Sets whether numbers with a date format are returned as
+	 * <code>java.util.Date</code>, which is the default, or as their serial
+	 * number value.
+	 */
+	public void setConvertDates(boolean convertDates) {
+		this.convertDates = convertDates;
+	}
+
+	/** Reads every worksheet in workbook order, passing the rows to the
+	 * listener. */
+	public void read(RowListener listener) throws IOException {
+		for (int i = 0; i < getNumSheets(); i++)
+			read(i, listener);
+	}
+
+	/** Reads a single worksheet, passing its rows to the listener.
+	 * @param sheetIndex the zero-based index of the sheet
+	 */
+	public void read(int sheetIndex, RowListener listener) throws IOException {
+		String name = getSheetName(sheetIndex);
+		RowIterator rows = rows(sheetIndex);
+		try {
+			listener.startSheet(sheetIndex, name);
+			while (rows.hasNext()) {
+				Object[] values = rows.next();
+				listener.row(rows.getRowNumber(), values);
+			}
+			listener.endSheet(sheetIndex, name);
+		} finally {
+			rows.close();
+		}
+	}
+
+	/** Returns an iterator over the rows of a worksheet. The iterator
+	 * should be closed if it is abandoned before the end of the sheet.
+	 * @param sheetIndex the zero-based index of the sheet
+	 */
+	public RowIterator rows(int sheetIndex) throws IOException {
+		loadSharedParts();
+		return new RowIterator((String) sheetParts.get(sheetIndex));
+	}
+
+	/** Closes the underlying zip file. */
+	public void close() throws IOException {
+		zip.close();
+	}
+
+	/** Iterates over the rows of a worksheet.
+	 * <p>
+	 * Each call to {@link #next()} returns the values of the next row which
+	 * contains any cells, indexed by zero-based column, with
+	 * <code>null</code> for missing cells. The row number is available from
+	 * {@link #getRowNumber()}. Parse errors are thrown as
+	 * {@link WorkBookException}s.
+	 */
+	public final class RowIterator implements Iterator<Object[]>, Closeable {
+		private final String part;
+		private final InputStream in;
+		private final XmlPullParser xpp;
+		private Object[] next;
+		private int nextRow = -1, rowNumber = -1;
+		private boolean done = false;
+
+		// the row being read
+		private Object[] buf = new Object[16];
+		private int width;
+
+		RowIterator(String part) throws IOException {
+			this.part = part;
+			in = open(part);
+			try {
+				xpp = newParser(part, in);
+			} catch (RuntimeException e) {
+				in.close();
+				throw e;
+			}
+		}
+
+		/** Gets the zero-based row number of the row last returned by
+		 * {@link #next()}. */
+		public int getRowNumber() {
+			return rowNumber;
+		}
+
+		public boolean hasNext() {
+			if (next == null && !done)
+				advance();
+			return next != null;
+		}
+
+		public Object[] next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			Object[] ret = next;
+			rowNumber = nextRow;
+			next = null;
+			return ret;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("the stream is read-only");
+		}
+
+		public void close() throws IOException {
+			done = true;
+			next = null;
+			in.close();
+		}
+
+		/** reads up to the next row containing cells */
+		private void advance() {
+			try {
+				int eventType = xpp.getEventType();
+				while (eventType != XmlPullParser.END_DOCUMENT) {
+					if (eventType == XmlPullParser.START_TAG
+							&& xpp.getName().equals("row")) {
+						String r = getAttribute(xpp, "r");
+						nextRow = (r != null) ? Integer.parseInt(r) - 1 : nextRow + 1;
+						readRow();
+						if (width > 0) {
+							next = new Object[width];
+							System.arraycopy(buf, 0, next, 0, width);
+							return;
+						}
+					} else if (eventType == XmlPullParser.END_TAG
+							&& xpp.getName().equals("sheetData")) {
+						break; // nothing after the cells is of interest
+					}
+					eventType = xpp.next();
+				}
+				close();
+			} catch (XmlPullParserException e) {
+				throw new WorkBookException("Unable to read " + part + ": " + e.toString(),
+						WorkBookException.RUNTIME_ERROR, e);
+			} catch (IOException e) {
+				throw new WorkBookException("Unable to read " + part + ": " + e.toString(),
+						WorkBookException.RUNTIME_ERROR, e);
+			}
+		}
+
+		/** reads the cells of the row the parser is positioned on */
+		private void readRow() throws XmlPullParserException, IOException {
+			for (int i = 0; i < width; i++)
+				buf[i] = null;
+			width = 0;
+			int col = -1, xf = 0;
+			String type = null, v = null;
+			int eventType = xpp.next();
+			while (eventType != XmlPullParser.END_DOCUMENT) {
+				if (eventType == XmlPullParser.START_TAG) {
+					String tnm = xpp.getName();
+					if (tnm.equals("c")) {
+						String r = null, s = null;
+						type = null;
+						v = null;
+						for (int i = 0; i < xpp.getAttributeCount(); i++) {
+							String nm = xpp.getAttributeName(i);
+							if (nm.equals("r"))
+								r = xpp.getAttributeValue(i);
+							else if (nm.equals("s"))
+								s = xpp.getAttributeValue(i);
+							else if (nm.equals("t"))
+								type = xpp.getAttributeValue(i);
+						}
+						col = (r != null) ? getColumn(r) : col + 1;
+						xf = (s != null) ? Integer.parseInt(s) : 0;
+					} else if (tnm.equals("v")) {
+						v = xpp.nextText();
+					} else if (tnm.equals("is")) {
+						v = readText("is");
+					} else if (tnm.equals("f")) {
+						xpp.nextText(); // formulas are not evaluated
+					}
+				} else if (eventType == XmlPullParser.END_TAG) {
+					String tnm = xpp.getName();
+					if (tnm.equals("c")) {
+						Object val = getValue(type, v, xf);
+						if (val != null && col >= 0)
+							set(col, val);
+					} else if (tnm.equals("row")) {
+						return;
+					}
+				}
+				eventType = xpp.next();
+			}
+		}
+
+		private void set(int col, Object val) {
+			if (col >= buf.length) {
+				int cap = buf.length;
+				while (cap <= col)
+					cap <<= 1;
+				Object[] nb = new Object[cap];
+				System.arraycopy(buf, 0, nb, 0, width);
+				buf = nb;
+			}
+			buf[col] = val;
+			if (col >= width)
+				width = col + 1;
+		}
+
+		/** concatenates the text runs up to the end of the element, leaving
+		 * out phonetic runs */
+		private String readText(String element) throws XmlPullParserException, IOException {
+			StringBuffer sb = new StringBuffer();
+			int depth = 0;	// within rPh
+			int eventType = xpp.next();
+			while (eventType != XmlPullParser.END_DOCUMENT) {
+				if (eventType == XmlPullParser.START_TAG) {
+					if (xpp.getName().equals("rPh"))
+						depth++;
+					else if (xpp.getName().equals("t") && depth == 0)
+						sb.append(xpp.nextText());
+				} else if (eventType == XmlPullParser.END_TAG) {
+					if (xpp.getName().equals("rPh"))
+						depth--;
+					else if (xpp.getName().equals(element))
+						break;
+				}
+				eventType = xpp.next();
+			}
+			return sb.toString();
+		}
+	}
+
+	/** Converts the text of a cell to its value according to its type. */
+	private Object getValue(String type, String v, int xf) {
+		if (v == null)
+			return null;
+		if (type == null || type.equals("n")) {
+			if (v.length() == 0)
+				return null;
+			if (convertDates && xf >= 0 && xf < dateXfs.length && dateXfs[xf]) {
+				try {
+					return DateConverter.getCalendarFromNumber(Double.parseDouble(v),
+							date1904 ? DateConverter.DateFormat.LEGACY_1904
+									: DateConverter.DateFormat.LEGACY_1900).getTime();
+				} catch (NumberFormatException e) {
+					return v;
+				}
+			}
+			try {
+				return Integer.valueOf(v);
+			} catch (NumberFormatException e) {
+				try {
+					return new Double(v);
+				} catch (NumberFormatException ex) {
+					return v;
+				}
+			}
+		}
+		if (type.equals("s")) {
+			try {
+				return sharedStrings[Integer.parseInt(v.trim())];
+			} catch (RuntimeException e) {
+				Logger.logWarn("OOXMLStreamReader: invalid shared string index " + v);
+				return null;
+			}
+		}
+		if (type.equals("b"))
+			return Boolean.valueOf(v.equals("1") || v.equalsIgnoreCase("true"));
+		// str, inlineStr, e and d are all returned as text
+		return v;
+	}
+
+	/** Gets the zero-based column of an A1 style cell reference. */
+	static int getColumn(String ref) {
+		int col = 0;
+		for (int i = 0; i < ref.length(); i++) {
+			char c = ref.charAt(i);
+			if (c >= 'A' && c <= 'Z')
+				col = col * 26 + (c - 'A' + 1);
+			else if (c >= 'a' && c <= 'z')
+				col = col * 26 + (c - 'a' + 1);
+			else if (c != '$')
+				break;
+		}
+		return col - 1;
+	}
+
+	/** reads the shared string and cell format tables on first use */
+	private synchronized void loadSharedParts() throws IOException {
+		if (sharedStrings != null)
+			return;
+		try {
+			dateXfs = (stylesPart != null && zip.getEntry(stylesPart) != null)
+					? parseDateXfs(newParser(stylesPart)) : new boolean[0];
+			sharedStrings = (sstPart != null && zip.getEntry(sstPart) != null)
+					? parseSharedStrings(newParser(sstPart)) : new String[0];
+		} catch (XmlPullParserException e) {
+			throw new WorkBookException("Unable to read shared parts of " + zip.getName() + ": " + e.toString(),
+					WorkBookException.UNSPECIFIED_INIT_ERROR, e);
+		}
+	}
+
+	/** reads the text of each shared string, ignoring formatting runs */
+	private static String[] parseSharedStrings(XmlPullParser xpp) throws XmlPullParserException, IOException {
+		ArrayList strings = new ArrayList();
+		StringBuffer sb = null;
+		int rph = 0;
+		int eventType = xpp.getEventType();
+		while (eventType != XmlPullParser.END_DOCUMENT) {
+			if (eventType == XmlPullParser.START_TAG) {
+				String tnm = xpp.getName();
+				if (tnm.equals("si"))
+					sb = new StringBuffer();
+				else if (tnm.equals("rPh"))
+					rph++;
+				else if (tnm.equals("t") && sb != null && rph == 0)
+					sb.append(xpp.nextText());
+			} else if (eventType == XmlPullParser.END_TAG) {
+				String tnm = xpp.getName();
+				if (tnm.equals("si")) {
+					strings.add(sb.toString());
+					sb = null;
+				} else if (tnm.equals("rPh")) {
+					rph--;
+				}
+			}
+			eventType = xpp.next();
+		}
+		return (String[]) strings.toArray(new String[strings.size()]);
+	}
+
+	/** works out which cell formats (cellXfs) display a date */
+	private static boolean[] parseDateXfs(XmlPullParser xpp) throws XmlPullParserException, IOException {
+		Map numFmts = new HashMap();
+		ArrayList xfs = new ArrayList();
+		boolean inCellXfs = false;
+		int eventType = xpp.getEventType();
+		while (eventType != XmlPullParser.END_DOCUMENT) {
+			if (eventType == XmlPullParser.START_TAG) {
+				String tnm = xpp.getName();
+				if (tnm.equals("numFmt")) {
+					String id = getAttribute(xpp, "numFmtId");
+					String code = getAttribute(xpp, "formatCode");
+					if (id != null && code != null)
+						numFmts.put(Integer.valueOf(id), code);
+				} else if (tnm.equals("cellXfs")) {
+					inCellXfs = true;
+				} else if (tnm.equals("xf") && inCellXfs) {
+					String id = getAttribute(xpp, "numFmtId");
+					Integer fmt = Integer.valueOf(id == null ? "0" : id);
+					String code = (String) numFmts.get(fmt);
+					xfs.add(Boolean.valueOf(Xf.isDateFormat(fmt.intValue(), code)));
+				}
+			} else if (eventType == XmlPullParser.END_TAG
+					&& xpp.getName().equals("cellXfs")) {
+				inCellXfs = false;
+			}
+			eventType = xpp.next();
+		}
+		boolean[] ret = new boolean[xfs.size()];
+		for (int i = 0; i < ret.length; i++)
+			ret[i] = ((Boolean) xfs.get(i)).booleanValue();
+		return ret;
+	}
+
+	private InputStream open(String name) throws IOException {
+		ZipEntry entry = OOXMLAdapter.getEntry(zip, name);
+		if (entry == null)
+			throw new IOException("Missing part " + name + " in " + zip.getName());
+		return OOXMLAdapter.wrapInputStream(zip.getInputStream(entry));
+	}
+
+	/** opens a part which is small enough to be read to the end */
+	private XmlPullParser newParser(String name) throws IOException {
+		return newParser(name, open(name));
+	}
+
+	private static XmlPullParser newParser(String name, InputStream in) {
+		try {
+			XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+			factory.setNamespaceAware(true);
+			XmlPullParser xpp = factory.newPullParser();
+			xpp.setInput(in, null);
+			return xpp;
+		} catch (XmlPullParserException e) {
+			throw new WorkBookException("Unable to read " + name + ": " + e.toString(),
+					WorkBookException.UNSPECIFIED_INIT_ERROR, e);
+		}
+	}
+
+	private static String getAttribute(XmlPullParser xpp, String name) {
+		for (int i = 0; i < xpp.getAttributeCount(); i++)
+			if (xpp.getAttributeName(i).equals(name))
+				return xpp.getAttributeValue(i);
+		return null;
+	}
+
+	/** resolves a relationship target against the directory of its source */
+	private static String resolve(String dir, String target) {
+		if (target.startsWith("/"))
+			return target.substring(1);
+		String path = dir + target;
+		// collapse any parent references
+		int i;
+		while ((i = path.indexOf("/../")) > 0) {
+			int start = path.lastIndexOf('/', i - 1);
+			path = path.substring(0, start + 1) + path.substring(i + 4);
+		}
+		if (path.startsWith("./"))
+			path = path.substring(2);
+		return path;
+	}
+}
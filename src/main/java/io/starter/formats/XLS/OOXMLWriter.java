@@ -35,6 +35,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -1103,18 +1104,27 @@ public class OOXMLWriter extends OOXMLAdapter implements OOXMLConstants {
           ArrayList hyperlinks= new ArrayList();
           // SHEETxx.XML
          this.writeSheetPrefix(sheet, bk, id);
-         RowHandle[] rows = sheet.getRows();
-         for(int xd=0;xd<rows.length;xd++){ 
-             RowHandle row = rows[xd];
+         // walk the row storage in row order rather than building RowHandles
+         Boundsheet bs = sheet.getMysheet();
+         Map rowmap = bs.getRowMap();
+         int[] rownums = new int[rowmap.size()];
+         int nrows = 0;
+         Iterator rx = rowmap.keySet().iterator();
+         while (rx.hasNext())
+             rownums[nrows++] = ((Integer) rx.next()).intValue();
+         Arrays.sort(rownums, 0, nrows);
+         for(int xd=0;xd<nrows;xd++){ 
+             Row row = bs.getRowByNumber(rownums[xd]);
              try{ // note: row #, col #'s are 1-based, sst and style index are 0-based
-                 this.writeRow(row, hyperlinks);
-             //} catch (RowNotFoundException re) {
-                  ; // do nothing
+                 this.writeRow(row, bk, hyperlinks);
+             }catch (IOException e) {
+                 throw e;
              }catch (Exception e) {
                  Logger.logErr("OOXMLWriter.writeSheetOOXML writing rows: " + e.toString());
                  e.printStackTrace();
              }
          }       
+         flushRowBuffer();
          writer.write( "</sheetData>" );
          writer.write( "\r\n" );
              
@@ -1267,6 +1277,192 @@ public class OOXMLWriter extends OOXMLAdapter implements OOXMLConstants {
 	}
 
 
+      /** sheet data pending output, encoded here and written to the zip
+       * entry in large chunks */
+      private char[] rowBuf = new char[8192];
+      private int rowLen = 0;
+      /** column letters by column number, filled in as they are used */
+      private String[] colNames = new String[256];
+      private static final String[] ERROR_VALUES = {"#DIV/0!", "#N/A", "#NAME?", "#NULL!", "#NUM!", "#REF!", "#VALUE!"};
+
+      private void flushRowBuffer() throws IOException {
+          if (rowLen > 0)
+              writer.write(rowBuf, 0, rowLen);
+          rowLen = 0;
+      }
+
+      private void put(String s) throws IOException {
+          int n = s.length();
+          if (rowLen + n > rowBuf.length) {
+              flushRowBuffer();
+              if (n > rowBuf.length) {
+                  writer.write(s);
+                  return;
+              }
+          }
+          s.getChars(0, n, rowBuf, rowLen);
+          rowLen += n;
+      }
+
+      private void put(int i) throws IOException {
+          if (rowLen + 11 > rowBuf.length)
+              flushRowBuffer();
+          if (i < 0) {
+              if (i == Integer.MIN_VALUE) {
+                  put(String.valueOf(i));
+                  return;
+              }
+              rowBuf[rowLen++] = '-';
+              i = -i;
+          }
+          int start = rowLen;
+          do {
+              rowBuf[rowLen++] = (char) ('0' + i % 10);
+              i /= 10;
+          } while (i > 0);
+          // digits were written least significant first
+          for (int a = start, b = rowLen - 1; a < b; a++, b--) {
+              char c = rowBuf[a];
+              rowBuf[a] = rowBuf[b];
+              rowBuf[b] = c;
+          }
+      }
+
+      /** encodes a cell address such as "B7" from a record's location */
+      private void putCellAddress(BiffRec rec) throws IOException {
+          int row = rec.getRowNumber();
+          int col = rec.getColNumber();
+          if (row < 0 || row >= XLSConstants.MAXROWS || col < 0) {
+              put(rec.getCellAddress());  // let the record sort out odd locations
+              return;
+          }
+          if (col >= colNames.length) {
+              String[] c = new String[Math.max(col + 1, colNames.length * 2)];
+              System.arraycopy(colNames, 0, c, 0, colNames.length);
+              colNames = c;
+          }
+          String name = colNames[col];
+          if (name == null) {
+              name = ExcelTools.getAlphaVal(col);
+              colNames[col] = name;
+          }
+          put(name);
+          put(row + 1);
+      }
+
+      /**
+       * Writes a row and all its cells to the zip output, reading the cell
+       * records directly and encoding them into a reused buffer.
+       * 
+       * @param row the row to write
+       * @param bk the workbook being written
+       * @param hyperlinks collects the hyperlinks in the row, which are
+       *            written after sheetData
+       * @throws IOException
+       */
+      protected void writeRow(Row row, WorkBookHandle bk, ArrayList hyperlinks) throws IOException {
+          put("<row r=\"");
+          put(row.getRowNumber() + 1);
+          put("\"");
+          if (row.getRowHeight()!=255) {   // if it's not default
+              put(" ht=\"");
+              put(String.valueOf(row.getRowHeight()/rowHtFactor));
+              put("\" customHeight=\"1\"");
+          }
+          int defaultIxfe = bk.getWorkBook().getDefaultIxfe();
+          int formatId = row.getExplicitFormatSet() ? row.getIxfe() : defaultIxfe;
+          if (formatId>0 && formatId>defaultIxfe) {     // row-level formatting specified
+              put(" s=\"");
+              put(formatId);
+              put("\" customFormat=\"1\"");
+          }
+          if (row.getHasAnyThickTopBorder()) 
+              put(" thickTop=\"1\"");
+          if (row.getHasAnyBottomBorder())
+              put(" thickBot=\"1\"");
+          if (row.isHidden())
+              put(" hidden=\"1\"");
+          if (row.isCollapsed())
+              put(" collapsed=\"1\"");
+          if (row.getOutlineLevel()!=0) {
+              put(" outlineLevel=\"");
+              put(row.getOutlineLevel());
+              put("\"");
+          }
+          put(">\r\n");
+          Mulblank aMul = null;
+          short c = -1;
+          Iterator it = row.getCells().iterator();
+          while (it.hasNext()) {
+              XLSRecord rec = (XLSRecord) it.next();
+              if (rec.getOpcode()==XLSConstants.MULBLANK) {
+                  // a Mulblank covers a range of cells; point it at the
+                  // column for this occurrence
+                  if (rec==aMul) {
+                      c++;
+                  } else {
+                      aMul = (Mulblank) rec;
+                      c = (short) aMul.getColFirst();
+                  }
+                  aMul.setCurrentCell(c);
+              }
+              int styleId = rec.getIxfe();
+              int dataType = rec.getCellType();
+              if (rec.hyperlink!=null)   // save; hyperlinks go after sheetData
+                  hyperlinks.add(new String[] {rec.getCellAddress(), rec.hyperlink.getURL(), rec.hyperlink.getDescription()});
+              put("<c r=\"");
+              putCellAddress(rec);
+              put("\"");
+              if (styleId > 0) {
+                  put(" s=\"");
+                  put(styleId);
+                  put("\"");
+              }
+              switch (dataType) {
+              case CellHandle.TYPE_STRING:
+                  String s = rec.getStringVal();
+                  boolean isErrVal = false;
+                  if ((s.indexOf("#")==0)) {   // must test if it's an error string value                           
+                      isErrVal = (Arrays.binarySearch(ERROR_VALUES, s.trim())>-1); 
+                  }
+                  if (!isErrVal) {
+                      put(" t=\"s\"><v>");     
+                      put(((Labelsst)rec).isst); // use isst instead of a lookup
+                      put("</v>");
+                  } else {// it's an error value, must have type of "e" 
+                      put(" t=\"e\"><v>");     
+                      put(s);
+                      put("</v>");
+                  }
+                  break;
+              case CellHandle.TYPE_DOUBLE:
+              case CellHandle.TYPE_FP:
+              case CellHandle.TYPE_INT:
+                  put(" t=\"n\"><v>");
+                  put(String.valueOf(rec.getInternalVal()));
+                  put("</v>");
+                  break;
+              case CellHandle.TYPE_FORMULA:
+                  try {
+                      put(new CellHandle(rec, bk).getFormulaHandle().getOOXML());
+                  } catch (FormulaNotFoundException e) {
+                      Logger.logErr("Error getting formula handle in OOXML Writer");
+                  }
+                  break;
+              case CellHandle.TYPE_BOOLEAN:
+                  put(" t=\"b\"><v>");
+                  put(rec.getIntVal());
+                  put("</v>");
+                  break;
+              case CellHandle.TYPE_BLANK:
+                  put(">"); 
+                  break;                    
+              }
+              put("</c>\r\n");
+          }
+          put("</row>\r\n");
+      }
+
 	/**
        * Writes a row and all contents to the zip output
      * @param hyperlinks 
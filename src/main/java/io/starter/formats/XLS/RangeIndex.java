@@ -0,0 +1,431 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/** Spatial index of the cell ranges covered by sheet-level records.
+ * <p>
+ * Each owner - a merged {@link io.starter.OpenXLS.CellRange}, a {@link Dv},
+ * a {@link Condfmt} or a {@link Hlink} - is stored with the rectangles of
+ * cells it covers in an R-tree, so that the owners covering a cell or
+ * overlapping an area are found in logarithmic rather than linear time.
+ * Owners may be added, replaced and removed individually.
+ * <p>
+ * Queries return owners in the order they were first added, which callers
+ * use to keep the precedence of the record lists the index was built from.
+ * Rectangles are zero-based and inclusive: {firstRow, firstCol, lastRow,
+ * lastCol}.
+ * 
+ * @see Boundsheet#getRangeIndex()
+ */
+final class RangeIndex {
+	private static final int MAX_ENTRIES = 16;
+	private static final int MIN_ENTRIES = 6;
+
+	/** a bounding rectangle, either a stored range or a tree node */
+	private static class Box {
+		int r0, c0, r1, c1;
+
+		final boolean contains(Box b) {
+			return r0 <= b.r0 && c0 <= b.c0 && r1 >= b.r1 && c1 >= b.c1;
+		}
+
+		final boolean intersects(int qr0, int qc0, int qr1, int qc1) {
+			return r0 <= qr1 && r1 >= qr0 && c0 <= qc1 && c1 >= qc0;
+		}
+
+		final long area() {
+			return (long) (r1 - r0 + 1) * (c1 - c0 + 1);
+		}
+
+		/** the area of the box enlarged to cover another */
+		final long unionArea(Box b) {
+			return (long) (Math.max(r1, b.r1) - Math.min(r0, b.r0) + 1)
+					* (Math.max(c1, b.c1) - Math.min(c0, b.c0) + 1);
+		}
+	}
+
+	/** a range covered by an owner */
+	private static final class Entry extends Box {
+		final Object owner;
+		final long seq;
+
+		Entry(int[] rect, Object owner, long seq) {
+			r0 = Math.min(rect[0], rect[2]);
+			c0 = Math.min(rect[1], rect[3]);
+			r1 = Math.max(rect[0], rect[2]);
+			c1 = Math.max(rect[1], rect[3]);
+			this.owner = owner;
+			this.seq = seq;
+		}
+	}
+
+	private static final class Node extends Box {
+		final boolean leaf;
+		final Box[] children = new Box[MAX_ENTRIES + 1];
+		int size;
+		Node parent;
+
+		Node(boolean leaf) {
+			this.leaf = leaf;
+		}
+
+		void add(Box b) {
+			children[size++] = b;
+			if (!leaf)
+				((Node) b).parent = this;
+		}
+
+		void remove(int i) {
+			System.arraycopy(children, i + 1, children, i, size - i - 1);
+			children[--size] = null;
+		}
+
+		void updateBounds() {
+			if (size == 0) {
+				r0 = c0 = r1 = c1 = 0;
+				return;
+			}
+			Box b = children[0];
+			r0 = b.r0;
+			c0 = b.c0;
+			r1 = b.r1;
+			c1 = b.c1;
+			for (int i = 1; i < size; i++) {
+				b = children[i];
+				if (b.r0 < r0)
+					r0 = b.r0;
+				if (b.c0 < c0)
+					c0 = b.c0;
+				if (b.r1 > r1)
+					r1 = b.r1;
+				if (b.c1 > c1)
+					c1 = b.c1;
+			}
+		}
+	}
+
+	/** an owner's place in the query order and its stored ranges */
+	private static final class Owned {
+		final long seq;
+		Entry[] entries;
+
+		Owned(long seq) {
+			this.seq = seq;
+		}
+	}
+
+	private static final Comparator<Entry> BY_SEQ = new Comparator<Entry>() {
+		public int compare(Entry e1, Entry e2) {
+			return (e1.seq < e2.seq) ? -1 : ((e1.seq == e2.seq) ? 0 : 1);
+		}
+	};
+
+	private Node root = new Node(true);
+	private final IdentityHashMap<Object, Owned> owners = new IdentityHashMap<Object, Owned>();
+	private final HashMap<Class, int[]> counts = new HashMap<Class, int[]>();
+	private long nextSeq;
+
+	/** Adds an owner, or replaces the ranges of one already in the index.
+	 * An owner which was already present keeps its place in the query
+	 * order.
+	 * @param owner the record or range covering the cells
+	 * @param rects the rectangles it covers, which may be empty
+	 */
+	synchronized void put(Object owner, int[][] rects) {
+		Owned o = owners.get(owner);
+		if (o != null) {
+			for (int i = 0; i < o.entries.length; i++)
+				delete(o.entries[i]);
+		} else {
+			o = new Owned(nextSeq++);
+			owners.put(owner, o);
+			int[] n = counts.get(owner.getClass());
+			if (n == null)
+				counts.put(owner.getClass(), n = new int[1]);
+			n[0]++;
+		}
+		o.entries = new Entry[rects.length];
+		for (int i = 0; i < rects.length; i++) {
+			o.entries[i] = new Entry(rects[i], owner, o.seq);
+			insert(o.entries[i]);
+		}
+	}
+
+	/** Removes an owner and its ranges.
+	 * @return whether the owner was in the index
+	 */
+	synchronized boolean remove(Object owner) {
+		Owned o = owners.remove(owner);
+		if (o == null)
+			return false;
+		counts.get(owner.getClass())[0]--;
+		for (int i = 0; i < o.entries.length; i++)
+			delete(o.entries[i]);
+		return true;
+	}
+
+	/** Returns whether an owner is in the index. */
+	synchronized boolean containsOwner(Object owner) {
+		return owners.containsKey(owner);
+	}
+
+	/** Gets the number of owners of exactly the given class. */
+	synchronized int count(Class c) {
+		int[] n = counts.get(c);
+		return (n == null) ? 0 : n[0];
+	}
+
+	/** Gets the owners with a range covering a cell.
+	 * @return a new list in the order the owners were added
+	 */
+	List<Object> query(int row, int col) {
+		return query(row, col, row, col);
+	}
+
+	/** Gets the owners with a range overlapping an area.
+	 * @return a new list in the order the owners were added
+	 */
+	synchronized List<Object> query(int firstRow, int firstCol, int lastRow,
+			int lastCol) {
+		ArrayList<Entry> found = new ArrayList<Entry>();
+		if (root.size > 0)
+			search(root, firstRow, firstCol, lastRow, lastCol, found);
+		if (found.size() > 1)
+			Collections.sort(found, BY_SEQ);
+		ArrayList<Object> ret = new ArrayList<Object>(found.size());
+		Object last = null;
+		for (int i = 0; i < found.size(); i++) {
+			Object o = found.get(i).owner;
+			// ranges of one owner are adjacent once sorted
+			if (o != last)
+				ret.add(o);
+			last = o;
+		}
+		return ret;
+	}
+
+	private static void search(Node n, int r0, int c0, int r1, int c1,
+			List<Entry> found) {
+		for (int i = 0; i < n.size; i++) {
+			Box b = n.children[i];
+			if (!b.intersects(r0, c0, r1, c1))
+				continue;
+			if (n.leaf)
+				found.add((Entry) b);
+			else
+				search((Node) b, r0, c0, r1, c1, found);
+		}
+	}
+
+	private void insert(Entry e) {
+		Node n = root;
+		while (!n.leaf)
+			n = chooseChild(n, e);
+		n.add(e);
+		adjust(n);
+	}
+
+	/** the child needing the least enlargement to cover a box */
+	private static Node chooseChild(Node n, Box b) {
+		Node best = null;
+		long bestGrowth = 0, bestArea = 0;
+		for (int i = 0; i < n.size; i++) {
+			Node c = (Node) n.children[i];
+			long area = c.area();
+			long growth = c.unionArea(b) - area;
+			if (best == null || growth < bestGrowth
+					|| (growth == bestGrowth && area < bestArea)) {
+				best = c;
+				bestGrowth = growth;
+				bestArea = area;
+			}
+		}
+		return best;
+	}
+
+	/** splits overfull nodes and refreshes bounds from a node to the root */
+	private void adjust(Node n) {
+		while (n != null) {
+			if (n.size > MAX_ENTRIES) {
+				Node sibling = split(n);
+				if (n.parent == null) {
+					Node r = new Node(false);
+					r.add(n);
+					r.add(sibling);
+					r.updateBounds();
+					root = r;
+					return;
+				}
+				n.parent.add(sibling);
+			} else
+				n.updateBounds();
+			n = n.parent;
+		}
+	}
+
+	/** quadratic split: moves part of an overfull node into a new sibling */
+	private static Node split(Node n) {
+		Box[] items = Arrays.copyOf(n.children, n.size);
+		int count = n.size;
+		Arrays.fill(n.children, null);
+		n.size = 0;
+		Node sibling = new Node(n.leaf);
+
+		// seeds are the pair which would waste the most area together
+		int s1 = 0, s2 = 1;
+		long worst = Long.MIN_VALUE;
+		for (int i = 0; i < count; i++)
+			for (int j = i + 1; j < count; j++) {
+				long waste = items[i].unionArea(items[j]) - items[i].area()
+						- items[j].area();
+				if (waste > worst) {
+					worst = waste;
+					s1 = i;
+					s2 = j;
+				}
+			}
+		n.add(items[s1]);
+		sibling.add(items[s2]);
+		n.updateBounds();
+		sibling.updateBounds();
+		items[s1] = items[s2] = null;
+		int left = count - 2;
+
+		while (left > 0) {
+			// a group which needs every remaining box to be full enough takes them
+			Node all = null;
+			if (n.size + left == MIN_ENTRIES)
+				all = n;
+			else if (sibling.size + left == MIN_ENTRIES)
+				all = sibling;
+			if (all != null) {
+				for (int i = 0; i < count; i++)
+					if (items[i] != null)
+						all.add(items[i]);
+				all.updateBounds();
+				break;
+			}
+			// otherwise place the box with the strongest preference first
+			int next = -1;
+			long bestDiff = -1, g1 = 0, g2 = 0;
+			for (int i = 0; i < count; i++) {
+				if (items[i] == null)
+					continue;
+				long d1 = n.unionArea(items[i]) - n.area();
+				long d2 = sibling.unionArea(items[i]) - sibling.area();
+				long diff = Math.abs(d1 - d2);
+				if (diff > bestDiff) {
+					bestDiff = diff;
+					next = i;
+					g1 = d1;
+					g2 = d2;
+				}
+			}
+			Node target;
+			if (g1 != g2)
+				target = (g1 < g2) ? n : sibling;
+			else if (n.area() != sibling.area())
+				target = (n.area() < sibling.area()) ? n : sibling;
+			else
+				target = (n.size <= sibling.size) ? n : sibling;
+			target.add(items[next]);
+			target.updateBounds();
+			items[next] = null;
+			left--;
+		}
+		return sibling;
+	}
+
+	private void delete(Entry e) {
+		Node leaf = findLeaf(root, e);
+		if (leaf == null)
+			return;
+		for (int i = 0; i < leaf.size; i++)
+			if (leaf.children[i] == e) {
+				leaf.remove(i);
+				break;
+			}
+		condense(leaf);
+	}
+
+	private static Node findLeaf(Node n, Entry e) {
+		for (int i = 0; i < n.size; i++) {
+			Box b = n.children[i];
+			if (n.leaf) {
+				if (b == e)
+					return n;
+			} else if (b.contains(e)) {
+				Node found = findLeaf((Node) b, e);
+				if (found != null)
+					return found;
+			}
+		}
+		return null;
+	}
+
+	/** removes underfull nodes on the path to the root and reinserts their
+	 * entries
+	 */
+	private void condense(Node n) {
+		ArrayList<Entry> orphans = new ArrayList<Entry>();
+		while (n.parent != null) {
+			Node parent = n.parent;
+			if (n.size < MIN_ENTRIES) {
+				for (int i = 0; i < parent.size; i++)
+					if (parent.children[i] == n) {
+						parent.remove(i);
+						break;
+					}
+				collect(n, orphans);
+			} else
+				n.updateBounds();
+			n = parent;
+		}
+		n.updateBounds();
+		while (!root.leaf && root.size == 1) {
+			root = (Node) root.children[0];
+			root.parent = null;
+		}
+		if (!root.leaf && root.size == 0)
+			root = new Node(true);
+		for (int i = 0; i < orphans.size(); i++)
+			insert(orphans.get(i));
+	}
+
+	private static void collect(Node n, List<Entry> into) {
+		for (int i = 0; i < n.size; i++) {
+			if (n.leaf)
+				into.add((Entry) n.children[i]);
+			else
+				collect((Node) n.children[i], into);
+		}
+	}
+}
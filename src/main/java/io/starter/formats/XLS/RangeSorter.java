@@ -0,0 +1,319 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import io.starter.OpenXLS.ExcelTools;
+import io.starter.formats.XLS.formulas.CalculationException;
+import io.starter.formats.XLS.formulas.Ptg;
+import io.starter.formats.XLS.formulas.PtgArea;
+import io.starter.formats.XLS.formulas.PtgRef;
+
+/** Sorts the rows or columns of a rectangular area of a sheet in place.
+ * <p>
+ * The sort keys are read once from the key columns (or rows) into primitive
+ * and collated arrays, and a stable permutation of the lines is computed
+ * from them with {@link Arrays#parallelSort(Object[], Comparator)}. The
+ * cell records of the area are then given their new addresses directly;
+ * no blanks are created for empty cells and no records are rebuilt.
+ * The relative references of a moved formula are shifted by the distance
+ * its line moves, as if the formula had been copied there, so that a
+ * formula referring to its own row still does after the sort. The formulas
+ * affected by the area are invalidated once afterwards.
+ * <p>
+ * Values are ordered as Excel orders them: numbers, then text compared
+ * without regard to case, then FALSE and TRUE, then errors. Blank cells
+ * sort last in either direction. Formulas sort by their calculated value.
+ * 
+ * @see io.starter.OpenXLS.CellRange#sortRows(int[], boolean[])
+ */
+public final class RangeSorter {
+	private static final byte NUMBER = 0, TEXT = 1, BOOLEAN = 2, ERROR = 3,
+			BLANK = 4;
+
+	private RangeSorter() {
+	}
+
+	/** Sorts the rows of an area on the values of one or more columns.
+	 * 
+	 * @param sheet the sheet holding the area
+	 * @param firstRow the zero-based first row of the area
+	 * @param firstCol the zero-based first column of the area
+	 * @param lastRow the zero-based last row of the area, inclusive
+	 * @param lastCol the zero-based last column of the area, inclusive
+	 * @param keyCols the zero-based key columns, most significant first
+	 * @param ascending the direction of each key
+	 * @throws IllegalArgumentException if there are no keys, the directions
+	 *         do not match them or a key column lies outside the area
+	 */
+	public static void sortRows(Boundsheet sheet, int firstRow, int firstCol,
+			int lastRow, int lastCol, int[] keyCols, boolean[] ascending) {
+		sort(sheet, firstRow, firstCol, lastRow, lastCol, true, keyCols,
+				ascending);
+	}
+
+	/** Sorts the columns of an area on the values of one or more rows.
+	 * 
+	 * @param sheet the sheet holding the area
+	 * @param firstRow the zero-based first row of the area
+	 * @param firstCol the zero-based first column of the area
+	 * @param lastRow the zero-based last row of the area, inclusive
+	 * @param lastCol the zero-based last column of the area, inclusive
+	 * @param keyRows the zero-based key rows, most significant first
+	 * @param ascending the direction of each key
+	 * @throws IllegalArgumentException if there are no keys, the directions
+	 *         do not match them or a key row lies outside the area
+	 */
+	public static void sortCols(Boundsheet sheet, int firstRow, int firstCol,
+			int lastRow, int lastCol, int[] keyRows, boolean[] ascending) {
+		sort(sheet, firstRow, firstCol, lastRow, lastCol, false, keyRows,
+				ascending);
+	}
+
+	private static void sort(Boundsheet sheet, int firstRow, int firstCol,
+			int lastRow, int lastCol, boolean byRows, int[] keys,
+			final boolean[] ascending) {
+		if (keys == null || keys.length == 0 || ascending == null
+				|| ascending.length != keys.length)
+			throw new IllegalArgumentException(
+					"each sort key needs a direction");
+		for (int k = 0; k < keys.length; k++) {
+			if (byRows ? keys[k] < firstCol || keys[k] > lastCol
+					: keys[k] < firstRow || keys[k] > lastRow)
+				throw new IllegalArgumentException("sort key " + keys[k]
+						+ " lies outside the range");
+		}
+		final int first = byRows ? firstRow : firstCol;
+		int n = (byRows ? lastRow : lastCol) - first + 1;
+		if (n < 2)
+			return;
+
+		// read the keys sequentially; collation is not thread safe
+		Collator collator = Collator.getInstance();
+		collator.setStrength(Collator.SECONDARY);
+		final byte[][] rank = new byte[keys.length][n];
+		final double[][] num = new double[keys.length][n];
+		final CollationKey[][] text = new CollationKey[keys.length][n];
+		for (int k = 0; k < keys.length; k++) {
+			Arrays.fill(rank[k], BLANK);
+			List<BiffRec> cells = byRows ? sheet.getCellsInRange(firstRow,
+					keys[k], lastRow, keys[k]) : sheet.getCellsInRange(
+					keys[k], firstCol, keys[k], lastCol);
+			for (BiffRec cell : cells) {
+				if (cell.getOpcode() == XLSConstants.MULBLANK)
+					continue;
+				int pos = (byRows ? cell.getRowNumber() : cell.getColNumber())
+						- first;
+				readKey(cell, pos, rank[k], num[k], text[k], collator);
+			}
+		}
+
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++)
+			order[i] = Integer.valueOf(i);
+		Arrays.parallelSort(order, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				int a = o1.intValue(), b = o2.intValue();
+				for (int k = 0; k < rank.length; k++) {
+					int ra = rank[k][a], rb = rank[k][b];
+					if (ra == BLANK || rb == BLANK) {
+						if (ra != rb)
+							return ra == BLANK ? 1 : -1;
+						continue;
+					}
+					int c = ra - rb;
+					if (c == 0) {
+						if (ra == TEXT)
+							c = text[k][a].compareTo(text[k][b]);
+						else if (ra != ERROR)
+							c = Double.compare(num[k][a], num[k][b]);
+					}
+					if (c != 0)
+						return ascending[k] ? c : -c;
+				}
+				return 0;
+			}
+		});
+
+		int[] target = new int[n];
+		boolean moved = false;
+		for (int i = 0; i < n; i++) {
+			target[order[i].intValue()] = i;
+			moved |= order[i].intValue() != i;
+		}
+		if (!moved)
+			return;
+
+		sheet.splitMulblanks(firstRow, firstCol, lastRow, lastCol);
+		List<BiffRec> cells = sheet.getCellsInRange(firstRow, firstCol,
+				lastRow, lastCol);
+		List<BiffRec> moving = new ArrayList<BiffRec>(cells.size());
+		int[] rows = new int[cells.size()], cols = new int[cells.size()];
+		for (BiffRec cell : cells) {
+			int r = cell.getRowNumber(), c = cell.getColNumber();
+			int pos = (byRows ? r : c) - first;
+			if (target[pos] == pos)
+				continue;
+			if (byRows)
+				r = first + target[pos];
+			else
+				c = first + target[pos];
+			if (cell.getOpcode() == XLSConstants.FORMULA
+					&& !((Formula) cell).isSharedFormula())
+				shiftReferences((Formula) cell, r - cell.getRowNumber(),
+						c - cell.getColNumber());
+			rows[moving.size()] = r;
+			cols[moving.size()] = c;
+			moving.add(cell);
+		}
+		sheet.moveCells(moving, rows, cols);
+
+		// the formulas depending on the area are invalidated once, not per cell
+		ReferenceTracker tracker = sheet.getWorkBook().getRefTracker();
+		tracker.getDependencyGraph().invalidate();
+		tracker.clearAffectedFormulaCells(sheet, firstRow, firstCol, lastRow,
+				lastCol);
+	}
+
+	/** Shifts the relative references of a formula which is about to move,
+	 * as copying it by the same offset would. Members of a shared formula
+	 * are left alone; their references are relative to the cell already.
+	 */
+	private static void shiftReferences(Formula f, int rowDelta, int colDelta) {
+		f.populateExpression();
+		Ptg[] refs;
+		try {
+			refs = f.getCellRangePtgs();
+		} catch (FormulaNotFoundException e) {
+			return;
+		}
+		for (int i = 0; i < refs.length; i++) {
+			if (!(refs[i] instanceof PtgRef))
+				continue; // names don't move with the formula
+			PtgRef ref = (PtgRef) refs[i];
+			if (ref.getIsRefErr() || (rowDelta != 0 && ref.getIsWholeCol())
+					|| (colDelta != 0 && ref.getIsWholeRow()))
+				continue;
+			PtgRef firstRef = ref, lastRef = ref;
+			if (ref instanceof PtgArea && ((PtgArea) ref).getFirstPtg() != null) {
+				firstRef = ((PtgArea) ref).getFirstPtg();
+				lastRef = ((PtgArea) ref).getLastPtg();
+			}
+			int[] rc;
+			try {
+				rc = ref.getIntLocation();
+			} catch (Exception e) {
+				continue;
+			}
+			int[] from = shift(rc[0], rc[1], firstRef, rowDelta, colDelta);
+			String addr;
+			if (from[0] < 0 || from[1] < 0) {
+				addr = "#REF!";
+			} else {
+				addr = ExcelTools.formatLocation(from, firstRef.isRowRel(),
+						firstRef.isColRel());
+				if (rc.length > 2) {
+					int[] to = shift(rc[2], rc[3], lastRef, rowDelta, colDelta);
+					addr = (to[0] < 0 || to[1] < 0) ? "#REF!" : addr + ":"
+							+ ExcelTools.formatLocation(to, lastRef.isRowRel(),
+									lastRef.isColRel());
+				}
+			}
+			if (addr.indexOf("#REF!") < 0) {
+				String sheet = ExcelTools.stripSheetNameFromRange(ref
+						.getLocationWithSheet())[0];
+				if (sheet != null)
+					addr = sheet + "!" + addr;
+			}
+			ReferenceTracker.updateAddressPerPolicy(ref, addr);
+		}
+		f.setCachedValue(null);
+	}
+
+	/** offsets the relative parts of one end of a reference */
+	private static int[] shift(int row, int col, PtgRef end, int rowDelta,
+			int colDelta) {
+		return new int[] { end.isRowRel() && row >= 0 ? row + rowDelta : row,
+				end.isColRel() && col >= 0 ? col + colDelta : col };
+	}
+
+	/** Reads the sort key of a cell into the arrays of one key line. */
+	private static void readKey(BiffRec cell, int pos, byte[] rank,
+			double[] num, CollationKey[] text, Collator collator) {
+		Object val;
+		switch (((XLSRecord) cell).getCellType()) {
+		case XLSConstants.TYPE_BLANK:
+			return;
+		case XLSConstants.TYPE_FP:
+		case XLSConstants.TYPE_INT:
+		case XLSConstants.TYPE_DOUBLE:
+			rank[pos] = NUMBER;
+			num[pos] = cell.getDblVal();
+			return;
+		case XLSConstants.TYPE_FORMULA:
+			try {
+				val = ((Formula) cell).calculateFormula();
+			} catch (Exception e) {
+				val = new CalculationException(CalculationException.VALUE);
+			}
+			if (isError(val)) {
+				rank[pos] = ERROR;
+				return;
+			}
+			break;
+		default:
+			if (cell instanceof Boolerr && ((Boolerr) cell).getIsErr())
+				val = new CalculationException(CalculationException.VALUE);
+			else if (cell instanceof Boolerr)
+				val = Boolean.valueOf(cell.getBooleanVal());
+			else
+				val = cell.getStringVal();
+		}
+		if (val instanceof Number) {
+			rank[pos] = NUMBER;
+			num[pos] = ((Number) val).doubleValue();
+		} else if (val instanceof Boolean) {
+			rank[pos] = BOOLEAN;
+			num[pos] = ((Boolean) val).booleanValue() ? 1 : 0;
+		} else if (val instanceof CalculationException) {
+			rank[pos] = ERROR;
+		} else if (val != null) {
+			rank[pos] = TEXT;
+			text[pos] = collator.getCollationKey(val.toString());
+		}
+	}
+
+	/** Whether a calculated value is the text of an error code. */
+	private static boolean isError(Object val) {
+		if (!(val instanceof String) || !((String) val).startsWith("#"))
+			return false;
+		return "#NULL!".equals(val)
+				|| CalculationException.getErrorCode((String) val) != 0;
+	}
+}
@@ -23,6 +23,7 @@
 package io.starter.formats.XLS;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.starter.OpenXLS.*;
 import io.starter.formats.XLS.charts.Ai;
@@ -59,17 +60,82 @@ public class ReferenceTracker {
 	private Map nameRefs = new HashMap();
     
 	// Database calc caches
-    private Map criteriaDBs = new HashMap();
-    private Map CollectionDBs = new HashMap();
-    private Map vlookups = new HashMap();
+    // concurrent so that formulas may be calculated in parallel
+    private Map criteriaDBs = new ConcurrentHashMap();
+    private Map CollectionDBs = new ConcurrentHashMap();
+    private Map vlookups = new ConcurrentHashMap();
     private	Collection crs = new Vector();
     
     // VLOOKUPs and other lookups need to calc col ptgs
-	private Map lookupColsCache = new HashMap();
+	private Map lookupColsCache = new ConcurrentHashMap();
+	
+	// search indexes over lookup ranges, dropped when a cell within them changes
+	private Map lookupIndexes = new ConcurrentHashMap();
+
+	// formula precedents and dependents
+	private DependencyGraph dependencyGraph = new DependencyGraph();
+
+    /** 
+     * 
+     * @return Returns the dependency graph of the workbook's formulas.
+     */
+    public DependencyGraph getDependencyGraph() {
+    	return dependencyGraph;
+    }
+
     public Map getLookupColCache(){
     	return lookupColsCache;
     }
     
+    /** 
+     * 
+     * @return Returns the lookup range indexes, keyed by range and vector.
+     * @see LookupIndex
+     */
+    public Map getLookupIndexes(){
+    	return lookupIndexes;
+    }
+    
+    /**
+     * drops the lookup indexes over any range containing the given cell
+     * 
+     * @param changedRec	the cell which was added, removed or changed
+     */
+    public void invalidateLookupIndexes(BiffRec changedRec) {
+    	invalidateLookupIndexes(changedRec.getSheet(), changedRec);
+    }
+    
+    /**
+     * drops the lookup indexes over any range containing the given cell
+     * 
+     * @param sheet	the sheet of the cell, which may not have been set on the cell yet
+     * @param changedRec	the cell which was added, removed or changed
+     */
+    public void invalidateLookupIndexes(Boundsheet sheet, BiffRec changedRec) {
+    	if (lookupIndexes.isEmpty() || sheet==null) return;
+    	String sheetname= GenericPtg.qualifySheetname(sheet.getSheetName());
+    	Iterator ii= lookupIndexes.values().iterator();
+    	while (ii.hasNext()) {
+    		if (((LookupIndex) ii.next()).covers(sheetname, changedRec))
+    			ii.remove();
+    	}
+    }
+    
+    /**
+     * drops the lookup indexes over any range overlapping an area of changed cells
+     * 
+     * @param sheet	the sheet of the area
+     */
+    public void invalidateLookupIndexes(Boundsheet sheet, int firstRow, int firstCol, int lastRow, int lastCol) {
+    	if (lookupIndexes.isEmpty() || sheet==null) return;
+    	String sheetname= GenericPtg.qualifySheetname(sheet.getSheetName());
+    	Iterator ii= lookupIndexes.values().iterator();
+    	while (ii.hasNext()) {
+    		if (((LookupIndex) ii.next()).intersects(sheetname, firstRow, firstCol, lastRow, lastCol))
+    			ii.remove();
+    	}
+    }
+    
     /** 
      * 
      * @return Returns the vlookups.
@@ -108,9 +174,10 @@ public class ReferenceTracker {
         // refPtgMap    =   new HashMap();
         
         // Databases
-        criteriaDBs = new HashMap();
-        CollectionDBs = new HashMap();
-        vlookups = new HashMap();
+        criteriaDBs = new ConcurrentHashMap();
+        CollectionDBs = new ConcurrentHashMap();
+        vlookups = new ConcurrentHashMap();
+        lookupIndexes = new ConcurrentHashMap();
     }
     
     /**
@@ -118,13 +185,15 @@ public class ReferenceTracker {
      */
 		public void clearLookupCaches() {
 			lookupColsCache.clear();
-			lookupColsCache= new HashMap();
+			lookupColsCache= new ConcurrentHashMap();
 			criteriaDBs.clear();
-	        criteriaDBs = new HashMap();
+	        criteriaDBs = new ConcurrentHashMap();
 	        CollectionDBs.clear();
-	        CollectionDBs = new HashMap();
+	        CollectionDBs = new ConcurrentHashMap();
 	        vlookups.clear();
-	        vlookups = new HashMap();
+	        vlookups = new ConcurrentHashMap();
+	        lookupIndexes.clear();
+	        lookupIndexes = new ConcurrentHashMap();
 		}
 	    
     /**
@@ -157,6 +226,41 @@ public class ReferenceTracker {
     }
     
     
+	 /**
+	  * Clears the cached value of every formula affected by a change to an
+	  * area of cells, such as a block of values added in one pass.
+	  * 
+	  * Equivalent to clearing the formulas affected by each cell of the area,
+	  * but walks the dependents only once.
+	  * 
+	  * @return Map of affected formula cells, keyed by address
+	  */
+	 public synchronized Map clearAffectedFormulaCells(Boundsheet sheet, int firstRow, int firstCol, int lastRow, int lastCol) {
+    	 HashMap affectedCellHandles = new HashMap();
+    	 WorkBook book= sheet.getWorkBook();
+    	 if (book==null) return affectedCellHandles;
+    	 invalidateLookupIndexes(sheet, firstRow, firstCol, lastRow, lastCol);
+    	 dependencyGraph.sync(book);
+
+    	 ArrayDeque<BiffRec> queue= new ArrayDeque<BiffRec>();
+    	 queue.addAll(dependencyGraph.getDependents(sheet, firstRow, firstCol, lastRow, lastCol));
+    	 dependencyGraph.cellChanged();	// volatile formulas are cleared on the next calculation
+    	 while (!queue.isEmpty()) {
+    		 BiffRec rec= queue.poll();
+    		 String adr = rec.getSheet().getSheetName()+"!" +rec.getCellAddress();
+    		 if (affectedCellHandles.containsKey(adr))
+    			 continue;
+    		 ReferenceTracker.addRec(rec, affectedCellHandles);
+    		 List<Formula> dependents= dependencyGraph.getDependents(rec);
+    		 for (int i= 0; i < dependents.size(); i++) {
+    			 Formula f= dependents.get(i);
+    			 if (f.getSheet()!=null && !affectedCellHandles.containsKey(f.getSheet().getSheetName()+"!" +f.getCellAddress()))
+    				 queue.add(f);
+    		 }
+    	 }
+    	 return affectedCellHandles;
+	 }
+
 	/**
      * Returns a Collection Map of cells that are affected by formula
      * references to this CellHandle.
@@ -213,53 +317,36 @@ public class ReferenceTracker {
     	 if(affectedCellHandles==null)
             affectedCellHandles = new HashMap();     
 
-        String newRecSheetName = changedRec.getSheet().getSheetName();
-        // get ref collection for the sheet
-        TrackedPtgs ptgRefs= (TrackedPtgs)sheetMap.get(GenericPtg.qualifySheetname(newRecSheetName));	// now tracked ptgs are stored per sheet        
-        if (ptgRefs==null) return affectedCellHandles;
-        Iterator parents= ptgRefs.getParents(changedRec);	// finds ALL parents affected by cell newRec
-        while(parents.hasNext()) {
-            BiffRec br = (BiffRec) parents.next();
-            short op= br.getOpcode();
-            if(op == XLSRecord.NAME){
-                  String theName = ((Name)br).getNameA();
-                  if (nameRefs.containsKey(theName)){
-                      // add all formulas that refer
-                      ArrayList list = (ArrayList)(nameRefs.get(theName)); // gets the ptgname
-                      for (int i=0;i<list.size();i++) {
-                          BiffRec ptgParent = ((Ptg)list.get(i)).getParentRec();
-                          if (ptgParent.getOpcode()==XLSConstants.NAME)
-                        	  continue; // a Named Range referencing another named range ... will be caught later
-  	                      String adr = ptgParent.getSheet().getSheetName()+"!" +ptgParent.getCellAddress();
-  	                      if(affectedCellHandles.get(adr)==null) {
-  	                    	  ReferenceTracker.addRec(ptgParent, affectedCellHandles);
-  	                    	  affectedCellHandles = (HashMap) clearAffectedFormulaCells(ptgParent,affectedCellHandles); // recurse parent formula and get cells it affects
-  	                      }                         
-                      }
-                  }
-            } else if (op==XLSConstants.CONDFMT ||
-            		op==XLSConstants.AI) {	// ignore since these records are not themselves referenced
-            } else if (op==XLSConstants.SHRFMLA) {	 // Shared Formula references are now reference-tracked; to find specific formula affected, use Shrfmla.getAffected
-            	Shrfmla sh= (Shrfmla) br;
-            	Formula f= sh.getAffected(changedRec);
-            	if (f!=null) {
-                    String adr = f.getSheet().getSheetName()+"!" +f.getCellAddress();
-                    if(!affectedCellHandles.containsKey(adr)) {
-                        ReferenceTracker.addRec(f, affectedCellHandles);
-                        affectedCellHandles = (HashMap) clearAffectedFormulaCells(f,affectedCellHandles);	// recurse parent formula and get cells it affects
-                    }
-            	}
-            } else {  // regular Formula
-            	if (br.getSheet()!=null) {
-                    String adr = br.getSheet().getSheetName()+"!" +br.getCellAddress();
-                    if(!affectedCellHandles.containsKey(adr)) {
-                        ReferenceTracker.addRec(br, affectedCellHandles);
-                    	affectedCellHandles = (HashMap) clearAffectedFormulaCells(br,affectedCellHandles);	// recurse parent formula and get cells it affects
-                    }
-            	} // ignore no sheet                 	
-            }
-    }
-    return affectedCellHandles;
+    	 WorkBook book= changedRec.getWorkBook();
+    	 if (book==null || changedRec.getSheet()==null) return affectedCellHandles;
+    	 invalidateLookupIndexes(changedRec);
+    	 dependencyGraph.sync(book);
+
+    	 // walk the dependents breadth-first: affected formulas are queued rather than recursed into
+    	 ArrayDeque<BiffRec> queue= new ArrayDeque<BiffRec>();
+    	 queue.add(changedRec);
+    	 dependencyGraph.cellChanged();	// volatile formulas are cleared on the next calculation
+    	 boolean walked= false;
+    	 while (!queue.isEmpty()) {
+    		 BiffRec rec= queue.poll();
+    		 if (rec==changedRec) {
+    			 if (walked)
+    				 continue;	// a formula reached again through a reference cycle
+    			 walked= true;
+    		 } else {
+    			 String adr = rec.getSheet().getSheetName()+"!" +rec.getCellAddress();
+    			 if (affectedCellHandles.containsKey(adr))
+    				 continue;
+    			 ReferenceTracker.addRec(rec, affectedCellHandles);
+    		 }
+    		 List<Formula> dependents= dependencyGraph.getDependents(rec);	// finds ALL formulas referencing rec
+    		 for (int i= 0; i < dependents.size(); i++) {
+    			 Formula f= dependents.get(i);
+    			 if (f.getSheet()!=null && !affectedCellHandles.containsKey(f.getSheet().getSheetName()+"!" +f.getCellAddress()))
+    				 queue.add(f);
+    		 }
+    	 }
+    	 return affectedCellHandles;
      }
 
      /**
@@ -325,7 +412,8 @@ public class ReferenceTracker {
      * @param cr
      * @return
      */
-    public Ptg addCellRange(Ptg ptgRef) {    	
+    public synchronized Ptg addCellRange(Ptg ptgRef) {    	
+    	referenceChanged(ptgRef);
     	// system setting to disable ref tracking...
     	String trackprop = System.getProperty(WorkBookHandle.REFTRACK_PROP);
     	if(trackprop != null)
@@ -387,14 +475,27 @@ public class ReferenceTracker {
         }
     }
 
+    /** flags the formulas affected by a changed reference for re-linking in the dependency graph
+     * 
+     * @param ptg
+     */
+    private void referenceChanged(Ptg ptg) {
+    	XLSRecord parent= ptg.getParentRec();
+    	if (parent instanceof Formula)
+    		dependencyGraph.formulaChanged((Formula) parent);
+    	else if (parent instanceof Name || parent instanceof Shrfmla || parent instanceof Array)
+    		dependencyGraph.referencesChanged(parent);	// the formulas using it
+    }
+
     /** removes a cellrange Ptg (Area, Area3d etc.) to be tracked
      * 
      * @param cr
      */
-    public void removeCellRange(Ptg cr) {
+    public synchronized void removeCellRange(Ptg cr) {
     	if(!(cr instanceof PtgRef)){
     		return;
     	}
+    	referenceChanged(cr);
         try{
         	String sheetname = "";
     		try{
@@ -418,9 +519,12 @@ public class ReferenceTracker {
      * @param pr	  original ptg contained in tracker
      * @param parent  new parent record of ptg
      */
-    public void updateInRefTracker(PtgRef pr, XLSRecord parent) {
+    public synchronized void updateInRefTracker(PtgRef pr, XLSRecord parent) {
     	if (pr instanceof PtgRefErr || pr instanceof PtgRefErr3d)
     		return; 
+    	referenceChanged(pr);
+    	if (parent instanceof Formula)
+    		dependencyGraph.formulaChanged((Formula) parent);
         try{
         	String sheetname = "";
     		try{
@@ -488,18 +592,19 @@ public class ReferenceTracker {
  				
 		HashSet updated= new HashSet(); // tracks which Ptgs have been already updated
 		
+		ReferenceTracker rt= thissheet.getWorkBook().getRefTracker();
+		rt.dependencyGraph.cellsMoved(thissheet);	// re-links shared and array members; shifted references are re-linked below
+		rt.lookupIndexes.clear();
+		thissheet.invalidateRangeIndex();	// merged, validated, formatted and linked ranges move in place
 		String sheetname= GenericPtg.qualifySheetname(thissheet.getSheetName());		
-		TrackedPtgs trackedptgs= (TrackedPtgs) thissheet.getWorkBook().getRefTracker().sheetMap.get(sheetname);
+		TrackedPtgs trackedptgs= (TrackedPtgs) rt.sheetMap.get(sheetname);
 		if (trackedptgs==null || trackedptgs.size()==0) return;
-		Object[] ptgs= null;
-		
-		ptgs= trackedptgs.toArray();
+		// only references which reach the start row/col or beyond can be shifted or expanded
+		Object[] ptgs= trackedptgs.getReaching(start-1, shiftRow);
 			
 		int i= (shiftamount>0?ptgs.length-1:0);
-		int end= (shiftamount>0?0:ptgs.length);
 		int inc= (shiftamount>0?-1:+1);
-		boolean done= false;
-		while (!done) {		
+		for (; i >= 0 && i < ptgs.length; i+=inc) {		
 			Ptg p= (Ptg) ptgs[i];
 			// skip these
 			if (p instanceof PtgRefErr || p instanceof PtgRefErr3d)  // these shouldn't be in the reference tracker ...
@@ -518,14 +623,10 @@ public class ReferenceTracker {
 				if (sheetname.equals(sht)) {						
 					if (shiftPtg(pr, sht, start, shiftamount, isExcel2008, shiftRow)) {
 						updated.add(pr);		// record which has already been updated to avoid incorrect expansion or movement
+						rt.referenceChanged(pr);	// re-link its formula in the dependency graph
 					}
 				}		            
             } 
-            i+=inc;
-            if (shiftamount>0)
-            	done= (i<0);
-            else
-            	done= (i==ptgs.length);
         }
 		// also update merged ranges which fall within range
         if (thissheet.hasMergedCells()) {
@@ -816,14 +917,17 @@ public class ReferenceTracker {
 		this.vlookups.clear();
 		this.crs.clear();
 		this.lookupColsCache.clear();
+		this.lookupIndexes.clear();
+		this.dependencyGraph.invalidate();
 		sheetMap = new HashMap();
 		nameRefs = new HashMap();
 		// Database calc caches
-	    criteriaDBs = new HashMap();
-	    CollectionDBs = new HashMap();
-	    vlookups = new HashMap();
+	    criteriaDBs = new ConcurrentHashMap();
+	    CollectionDBs = new ConcurrentHashMap();
+	    vlookups = new ConcurrentHashMap();
 	    crs = new Vector();	    
-		lookupColsCache = new HashMap();
+		lookupColsCache = new ConcurrentHashMap();
+		lookupIndexes = new ConcurrentHashMap();
 	}
 }
 
@@ -840,10 +944,22 @@ public class ReferenceTracker {
  *  LocationComparer will return the correct compare for a PtgRef object, based upon it's location and parent record, in other words
  *  PtgRef-A == PtgRef-B when both the location and the parent records are equal. 
  *  
+ *  Each PtgRef is also indexed by the last row and the last column it reaches, so that
+ *  inserting or deleting rows or columns only visits the references at or beyond the
+ *  insertion point rather than every reference on the sheet.  The reach is taken from
+ *  the ptg's coordinates when it is added, not decoded from its location key, which
+ *  can not represent the rows of large Excel 2007 sheets.
+ *  
  */
 class TrackedPtgs extends TreeMap {
 	private static final long serialVersionUID = 1L;
 	static final long SECONDPTGFACTOR= (((long)XLSRecord.MAXCOLS + (long)XLSRecord.MAXROWS*XLSRecord.MAXCOLS));
+	
+	/** tracked ptgs keyed by {last row, location, parent} and {last col, location, parent} */
+	private TreeMap rowReach= new TreeMap(new ReachComparer());
+	private TreeMap colReach= new TreeMap(new ReachComparer());
+	/** the {last row, last col} each location key was indexed under */
+	private TreeMap reachOf;
 
 	/**
 	 * set the custom Comparitor for tracked Ptgs
@@ -852,6 +968,7 @@ class TrackedPtgs extends TreeMap {
 	 */
 	public TrackedPtgs(Comparator c) {
 		super(c);
+		reachOf= new TreeMap(c);
 	}
 	
 	/** 
@@ -883,7 +1000,7 @@ class TrackedPtgs extends TreeMap {
 	 */
 	public boolean add(Object o){
 		try {		
-			super.put(this.getKey(o), o);
+			this.put(this.getKey(o), o);
 		} catch (IllegalArgumentException e)  {	// SHOULD NOT HAPPEN -- happens upon RefErrs but they shouldnt be added ...
 	// 	TESTING: report error
 //	System.err.println("Illegal PtgRef Location: " + o.toString());			
@@ -985,7 +1102,87 @@ class TrackedPtgs extends TreeMap {
      */
     @Override
     synchronized public Object remove(Object o) {
-    	return super.remove(getKey(o));
+    	long[] key= (long[]) getKey(o);
+    	Object ret= super.remove(key);
+    	int[] reach= (int[]) reachOf.remove(key);
+    	if (reach!=null) {
+    		rowReach.remove(new long[] {reach[0], key[0], key[1]});
+    		colReach.remove(new long[] {reach[1], key[0], key[1]});
+    	}
+    	return ret;
+    }
+    
+    /**
+     * override of put to keep the row and column reach indexes in step with the location keys
+     */
+    @Override
+    public Object put(Object key, Object value) {
+    	Object ret= super.put(key, value);
+    	long[] k= (long[]) key;
+    	int[] reach= getReach((PtgRef) value);
+    	int[] old= (int[]) reachOf.put(key, reach);
+    	if (old!=null) {
+    		rowReach.remove(new long[] {old[0], k[0], k[1]});
+    		colReach.remove(new long[] {old[1], k[0], k[1]});
+    	}
+    	rowReach.put(new long[] {reach[0], k[0], k[1]}, value);
+    	colReach.put(new long[] {reach[1], k[0], k[1]}, value);
+    	return ret;
+    }
+    
+    @Override
+    public void clear() {
+    	super.clear();
+    	rowReach.clear();
+    	colReach.clear();
+    	reachOf.clear();
+    }
+    
+    /**
+     * gets the last row and last column referenced by a ptg
+     * <br>locations which cannot be determined reach Integer.MAX_VALUE, i.e. are always affected 
+     * @param ref the tracked reference
+     * @return int[] {last row, last col}
+     */
+    static int[] getReach(PtgRef ref) {
+    	int[] rc;
+    	try {
+    		rc= ref.getIntLocation();
+    	} catch (Exception e) {
+    		rc= null;
+    	}
+    	if (rc==null || rc[0] < 0 || rc[1] < 0 || (rc.length > 2 && (rc[2] < 0 || rc[3] < 0)))
+    		return new int[] {Integer.MAX_VALUE, Integer.MAX_VALUE};
+    	if (rc.length > 2)
+    		return new int[] {Math.max(rc[0], rc[2]), Math.max(rc[1], rc[3])};
+    	return new int[] {rc[0], rc[1]};
+    }
+    
+    /**
+     * returns the tracked ptgs whose last row (or last column) is at or beyond the given index,
+     * in location order i.e. the same order as toArray
+     * @param from		0-based row or column 
+     * @param rows		true for rows, false for columns
+     * @return
+     */
+    public Object[] getReaching(int from, boolean rows) {
+    	if (from <= 0)
+    		return this.toArray();
+    	SortedMap tail= (rows?rowReach:colReach).tailMap(new long[] {from, Long.MIN_VALUE, Long.MIN_VALUE});
+    	Map.Entry[] entries= (Map.Entry[]) tail.entrySet().toArray(new Map.Entry[tail.size()]);
+    	Arrays.sort(entries, new Comparator() {
+    		public int compare(Object o1, Object o2) {
+    			long[] key1= (long[]) ((Map.Entry) o1).getKey();
+    			long[] key2= (long[]) ((Map.Entry) o2).getKey();
+    			if (key1[1]!=key2[1]) return (key1[1] < key2[1]?-1:1);
+    			if (key1[2]!=key2[2]) return (key1[2] < key2[2]?-1:1);
+    			return 0;
+    		}
+    	});
+    	Object[] ret= new Object[entries.length];
+    	for (int i= 0; i < entries.length; i++)
+    		ret[i]= entries[i].getValue();
+    	return ret;
     }
     
     
@@ -1043,6 +1240,23 @@ class LocationComparer implements Comparator {
     }
 }
 
+/**
+ * comparitor for the reach indexes of TrackedPtgs, keys consisting of 
+ * a last row or col, a long ptg location hash and a long parent record hashcode
+ *
+ */
+class ReachComparer implements Comparator {
+    public int compare(Object o1, Object o2) {
+    	long[] key1= (long[])o1;
+    	long[] key2= (long[])o2;
+    	for (int i= 0; i < 3; i++) {
+    		if (key1[i] < key2[i]) return -1;
+    		if (key1[i] > key2[i]) return 1;
+    	}
+    	return 0;
+    }
+}
+
 
 
 
@@ -315,7 +315,10 @@ public final class Row extends io.starter.formats.XLS.XLSRecord {
           BiffRec br = (BiffRec)it.next();
           v.add(br);
           if(br instanceof Formula) {
-        	  ((Formula)br).preStream();	// must do now so can ensure internal records are properly set
+        	  // sheets may be assembled concurrently; calculation may reach any sheet
+        	  synchronized (br.getWorkBook()) {
+        		  ((Formula)br).preStream();	// must do now so can ensure internal records are properly set
+        	  }
 	          Collection itx = ((Formula)br).getInternalRecords();
 	          BiffRec[] brints = (BiffRec[])itx.toArray(new BiffRec[itx.size()]);
 	          for(int x = 0;x<brints.length;x++) {
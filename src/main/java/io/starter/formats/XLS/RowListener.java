@@ -0,0 +1,58 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+/** Receives the rows of a worksheet from a streaming reader.
+ * <p>
+ * Streaming readers such as {@link OOXMLStreamReader} hand each row to the
+ * listener as soon as it has been read rather than binding it into a
+ * workbook, so that arbitrarily large files can be processed in constant
+ * memory. Rows without any cells are not reported.
+ * 
+ * @see OOXMLStreamReader
+ */
+public interface RowListener {
+
+	/** Called before the first row of a sheet.
+	 * @param sheetIndex the zero-based index of the sheet in the workbook
+	 * @param sheetName the name of the sheet
+	 */
+	public void startSheet(int sheetIndex, String sheetName);
+
+	/** Called for each row containing at least one cell, in file order.
+	 * @param row the zero-based row number
+	 * @param values the cell values indexed by zero-based column, with
+	 * <code>null</code> for columns without a value. Values are
+	 * <code>String</code>, <code>Integer</code>, <code>Double</code>,
+	 * <code>Boolean</code> or, for numbers with a date format,
+	 * <code>java.util.Date</code>. Error values are given as their
+	 * <code>String</code> form, eg. "#N/A".
+	 */
+	public void row(int row, Object[] values);
+
+	/** Called after the last row of a sheet.
+	 * @param sheetIndex the zero-based index of the sheet in the workbook
+	 * @param sheetName the name of the sheet
+	 */
+	public void endSheet(int sheetIndex, String sheetName);
+}
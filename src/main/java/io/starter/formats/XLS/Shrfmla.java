@@ -23,6 +23,7 @@
 package io.starter.formats.XLS;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.SortedSet;
@@ -30,6 +31,7 @@ import java.util.Stack;
 import java.util.TreeSet;
 
 import io.starter.OpenXLS.ExcelTools;
+import io.starter.formats.XLS.formulas.CompiledExpression;
 import io.starter.formats.XLS.formulas.FormulaParser;
 import io.starter.formats.XLS.formulas.GenericPtg;
 import io.starter.formats.XLS.formulas.Ptg;
@@ -55,7 +57,8 @@ import io.starter.toolkit.Logger;
  * ones. Existing shared formulas will be preserved in output. Removal of
  * formulas from the group is supported, including the cell currently hosting
  * the SHRFMLA record. Shared formula member cells will be reference-tracked
- * and recalculated properly.
+ * and recalculated properly. Members are calculated from a single template
+ * compiled from the shared expression, see {@link #calculate(Formula)}.
  * <pre>
  * OFFSET NAME        SIZE CONTENTS
  * 0      rwFirst     2    First Row
@@ -76,6 +79,8 @@ public final class Shrfmla extends XLSRecord {
     private int colLast;
     private Stack expression;
     private Ptg[] ptgcache;
+    /** the expression compiled for calculating members, shared by all of them */
+    private volatile CompiledExpression template;
     private Formula host;
     
     /** The set of Formula records referring to this shared formula. */
@@ -216,18 +221,8 @@ public final class Shrfmla extends XLSRecord {
     public static Stack convertStack (Stack in, Formula f){
     	Stack out = new Stack();
     	for (int idx = 0; idx < in.size(); idx++) {
-    		Ptg ptg = (Ptg) in.get( idx );
     		// convert the Ptg if necessary, otherwise clone it
-    		if (ptg instanceof PtgRefN){
-    			ptg = ((PtgRefN)ptg).convertToPtgRef(f);
-    		}else if (ptg instanceof PtgAreaN){
-    			ptg = ((PtgAreaN)ptg).convertToPtgArea(f);
-    		} else {
-    			ptg = (Ptg) ptg.clone();
-        		ptg.setParentRec( f );
-    		}
-    		
-    		out.add( ptg );
+    		out.add( CompiledExpression.bind( (Ptg) in.get( idx ), f ) );
     	}
     	return out;
     }
@@ -323,6 +318,46 @@ public final class Shrfmla extends XLSRecord {
     	}
     }
     
+    /**
+     * re-orders the members after their addresses were changed in place, as when a range
+     * is sorted, and recomputes the range and host cell from them
+     */
+    void membersMoved() {
+    	if (members.isEmpty()) return;
+    	for (int i= 0; ptgcache!=null && i < ptgcache.length; i++) {
+			if (ptgcache[i] instanceof PtgRefN) 
+    			((PtgRefN)ptgcache[i]).removeFromRefTracker();
+			else if (ptgcache[i] instanceof PtgAreaN)
+    			((PtgAreaN)ptgcache[i]).removeFromRefTracker();
+    	}
+    	SortedSet moved= new TreeSet( new CellAddressComparator() );
+    	moved.addAll(Arrays.asList(members.toArray()));	// not the set itself, which would be taken as already in order
+    	members= moved;
+    	Formula first= (Formula) members.first();
+    	rwFirst= rwLast= first.getRowNumber();
+    	colFirst= colLast= first.getColNumber();
+    	Iterator<Formula> ii= members.iterator();
+    	while (ii.hasNext()) {
+    		Formula f= ii.next();
+    		f.clearCachedValue();	// relative references resolve against the new address
+    		if (f.getRowNumber() > rwLast) rwLast= f.getRowNumber();
+    		if (f.getColNumber() < colFirst) colFirst= f.getColNumber();
+    		if (f.getColNumber() > colLast) colLast= f.getColNumber();
+    		Stack expr= f.getExpression();
+    		if (!expr.isEmpty() && expr.get(0) instanceof PtgExp) {
+    			((PtgExp) expr.get(0)).setRowFirst(first.getRowNumber());
+    			((PtgExp) expr.get(0)).setColFirst(first.getColNumber());
+    		}
+    	}
+    	if (host!=first) setHostCell(first);
+    	for (int i= 0; ptgcache!=null && i < ptgcache.length; i++) {
+			if (ptgcache[i] instanceof PtgRefN)
+    			((PtgRefN)ptgcache[i]).addToRefTracker();
+			else if (ptgcache[i] instanceof PtgAreaN)
+    			((PtgAreaN)ptgcache[i]).addToRefTracker();
+    	}
+    }
+    
     /**
      * return all the formulas that use this Shrfmla
      * @return
@@ -341,6 +376,31 @@ public final class Shrfmla extends XLSRecord {
 	public Stack instantiate (Formula parent) {
 		return convertStack( expression, parent );
 	}
+	
+	/**
+	 * calculate the shared expression for a specific member formula
+	 * <br>all members are calculated from one template, compiled on first use, 
+	 * which resolves the relative references against the member's row and column 
+	 * without instantiating a copy of the expression for it
+	 * @param member
+	 * @return the calculated value
+	 * @throws FunctionNotSupportedException
+	 */
+	public Object calculate (Formula member) throws FunctionNotSupportedException {
+		return getTemplate().calculate( member );
+	}
+	
+	/**
+	 * return the template used to calculate the member formulas
+	 */
+	CompiledExpression getTemplate() {
+		CompiledExpression t= template;
+		if (t==null || !t.isCompiledFrom( expression )) {
+			t= CompiledExpression.compileTemplate( expression );
+			template= t;
+		}
+		return t;
+	}
     /**Set if the formula contains Indirect()
      * @param containsIndirectFunction The containsIndirectFunction to set.
      */
@@ -423,6 +483,7 @@ public final class Shrfmla extends XLSRecord {
 	        }
         }
         ptgcache= null;
+        template= null;
         host= null;        
         super.close();        
    }
@@ -77,7 +77,7 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 	private int numconts = -1;
 	private int[] boundaries = null;
 	private byte[] grbits = null;
-	private List stringvector = new SstArrayList();
+	private SstStringList stringvector = new SstStringList();
 	private HashSet dupeSstEntries = new HashSet();
 	private HashSet existingSstEntries = new HashSet();
 	private Extsst myextsst = null;
@@ -182,7 +182,13 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 	public void init() {
 		if (originalsize == 0)
 			originalsize = reclen;
-		Sst.init(this);
+		Instrumentation.Phase phase = Instrumentation.start("xls.sst");
+		try {
+			Sst.init(this);
+		} finally {
+			phase.end();
+		}
+		Instrumentation.count("sst.strings", stringvector.size());
 	}
 
 	/**
@@ -380,14 +386,14 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
         // begin checking string against current record buffer boundary
         if(posEnd < bufferBoundary){// string does not cross current boundary - easy! retrieve totalStringLen bytes and create unicode string
             byte[] newStringBytes = getData(uLen, pos, ustrStart, cchExtRst, runlen, doublebyte, false);
-            this.initString(newStringBytes, pos, false);
+            this.initString(newStringBytes, pos);
             return posEnd;
         }else if(posEnd == bufferBoundary){// string is on the boundary - easy!
             if((this.numconts==0)||(this.numconts == this.contcounter)){
                 if(DEBUGLEVEL > 5)Logger.logInfo("Last String in SST encountered.");
             }
             byte[] newStringBytes = getData(uLen, pos, ustrStart, cchExtRst, runlen, doublebyte, false);
-            this.initString(newStringBytes, pos,false);
+            this.initString(newStringBytes, pos);
             
 			/* "If fHighByte is 0x1 and rgb is extended with a Continue record the break 
 			   MUST occur at the double-byte character boundary."
@@ -405,7 +411,7 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
                 
         // spans or crosses the continue boundary
         byte[] newStringBytes= getData(uLen, pos, ustrStart, cchExtRst, runlen, doublebyte, true);	// retrieve the bytes, accounting for spanning (true)
-        this.initString(newStringBytes, pos, false);
+        this.initString(newStringBytes, pos);
         return pos + (uLen.intValue()+ustrStart+cchExtRst+runlen);		// in most cases should be same as pos + totalStrLen but it's possible for uLen to be changed in getData 
     }
 
@@ -705,12 +711,12 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 		} else { // string2ByteLength spans continue(s) ************************************************* see infoteria/cannotread824315.xls 
 			int blen = string2ByteLength;
 			int idx = 0;
-			int start= 0;
 			string2bytes = new byte[blen];
 			while (blen > 0) {				// loop thru ensuing continues until correct length is read in
-				int curlen = Math.min(start+thiscont.getLength()-thiscont.grbitoff, blen);				
+				// getLength() includes the 4 byte record header
+				int curlen = Math.min(thiscont.getLength()-4-thiscont.grbitoff, blen);				
 				if (!bUnCompress1) {
-					byte[] tmp = thiscont.getBytesAt(start+thiscont.grbitoff, curlen);
+					byte[] tmp = thiscont.getBytesAt(thiscont.grbitoff, curlen);
 					System.arraycopy(tmp, 0, string2bytes, idx, curlen);
 				} else { // Expand the second string bytes - NOTE: This has not been hit so hasn't been tested ...
 					curlen *= 2;
@@ -722,17 +728,16 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 				}
 				// since we've accessed the last bytes of the prior Continue, blow it out!
 				if (this.thiscont.predecessor instanceof Continue) this.thiscont.predecessor.setData(null);
-				if (curlen >= thiscont.getLength()-thiscont.grbitoff) { // finished this one, get next continue
+				if (curlen >= thiscont.getLength()-4-thiscont.grbitoff) { // finished this one, get next continue
 					if ((currbound) < continues.size())
 						thiscont = (Continue) continues.get(currbound++);
 					if (this.thiscont.getHasGrbit())
 						thiscont.grbitoff = 1;
 					else
 						thiscont.grbitoff = 0;
-					start= 4;		// don't understand this but, hey, it works ...
 				} else {	// we are done
 					// get current length in current continues only (==start postion for extra data, if any)
-					string2ByteLength= curlen+start; 
+					string2ByteLength= curlen; 
 					break;
 				}
 				idx += curlen;
@@ -808,31 +813,25 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 	}
 
 	/**
-	 * given unicode bytes, create a Unicodestring and add it to the string vector
+	 * given unicode bytes, add the string they encode to the string vector;
+	 * plain strings are kept packed and decoded on first access
 	 */
-	Unicodestring initString(byte[] newStringBytes, int strpos,
-			boolean extrstbrk) {
-		// create a new Unicodestring, set its data
-		Unicodestring newString = new Unicodestring();
-		newString.setSSTPos(strpos);
-		newString.init(newStringBytes, extrstbrk);
-
-		// add the new String to the String table and return the new pointer
-		if (DEBUGLEVEL > 5)
-			Logger.logInfo(" val: " + newString.toString());
-		if (newString.getLen() == 0) {
+	void initString(byte[] newStringBytes, int strpos) {
+		if (newStringBytes.length == 0) {
 			Logger.logInfo("Adding zero-length string!");
-		} else {
-			this.putString(newString);
+			return;
 		}
-		return newString;
+		++retpos;
+		stringvector.add(newStringBytes, strpos);
+		if (DEBUGLEVEL > 5)
+			Logger.logInfo(" val: "
+					+ stringvector.getString(stringvector.size() - 1));
 	}
 
 	int retpos = -1;
 	private int putString(Unicodestring newString) {
 		++retpos;
-		((SstArrayList) stringvector).put((Object) newString, Integer.valueOf(
-				retpos));
+		stringvector.add(newString);
 		return retpos;
 	}
 
@@ -843,7 +842,7 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 		cbounds.removeAllElements();
 		sstgrbits.removeAllElements();
 		stringvector.clear();
-		stringvector = new SstArrayList();
+		stringvector = new SstStringList();
 		dupeSstEntries.clear();
 		dupeSstEntries = new HashSet();
 		existingSstEntries.clear();
@@ -893,26 +892,36 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 			cbounds.removeAllElements();
 			sstgrbits.removeAllElements();
 			byte[] strb = null;
-			Iterator it = stringvector.iterator();
-			while (it.hasNext()) {
-				Object ob = it.next();
-				Unicodestring str = (Unicodestring) ob;
-
-				// from updateUnicodeStrings()
-				str.setSSTPos(thispos);
-
-				strb = str.read();
-				try {
-					out.write(strb);
-				} catch (IOException e) {
-					Logger.logInfo("Exception getting String bytes: " + e);
+			for (int i = 0; i < stringvector.size(); i++) {
+				Unicodestring str = stringvector.peek(i);
+				int len;
+				if (str == null) {
+					// packed strings are copied straight from the arena
+					stringvector.setPosition(i, thispos);
+					len = stringvector.writePacked(i, out);
+				} else {
+					// from updateUnicodeStrings()
+					str.setSSTPos(thispos);
+
+					strb = str.read();
+					try {
+						out.write(strb);
+					} catch (IOException e) {
+						Logger.logInfo("Exception getting String bytes: " + e);
+					}
+					len = strb.length;
 				}
 				lastpos = thispos;
-				thispos = lastpos + strb.length;
-				checkOnBoundary(str, lastpos, thispos + 4, strb); // add 4
-																	// because 4
-																	// added to
-																	// boundaries
+				thispos = lastpos + len;
+				// add 4 because 4 added to boundaries
+				if (thispos + 4 >= thisbounds) {
+					// only strings reaching a boundary need to be examined
+					if (str == null) {
+						str = stringvector.decode(i);
+						strb = str.read();
+					}
+					checkOnBoundary(str, lastpos, thispos + 4, strb);
+				}
 			}
 
 			if (leftoverlen > 0) {// there was leftover data!
@@ -1202,7 +1211,7 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 		// get the existing position of this string
 		// but only if we're not ignoring dupes
 		if (this.getWorkBook().isSharedupes()) {
-			retpos = ((SstArrayList) stringvector).find(us); // indexOf will not
+			retpos = stringvector.find(us); // indexOf will not
 																// match entire
 																// unicode
 																// string
@@ -1245,8 +1254,8 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 
 		reclen += str.getLen();
 		datalen += str.getLen();
-		retpos = this.putString(str);
-		return retpos;
+		stringvector.addDetached(str);
+		return ++retpos;
 	}
 
 	/**
@@ -1364,10 +1373,11 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 		// get the existing position of this string
 		// but only if we're not ignoring dupes
 		if (this.getWorkBook().isSharedupes()) {
-			retpos = ((SstArrayList) stringvector).indexOf(s);
+			retpos = stringvector.indexOf(s);
 			if (retpos > -1) {
-				Unicodestring str = (Unicodestring) stringvector.get(retpos);
-				if (str.hasFormattingRuns())
+				// strings only held packed have no formatting runs
+				Unicodestring str = stringvector.peek(retpos);
+				if (str != null && str.hasFormattingRuns())
 					retpos = -1; // do not match if there are formatting runs
 									// embedded
 			}
@@ -1385,6 +1395,13 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 		return retpos;
 	}
 
+	/**
+	 * Grows the string table ahead of adding the given number of strings.
+	 */
+	void ensureCapacity(int n) {
+		stringvector.ensureCapacity(stringvector.size() + n);
+	}
+
 	/**
 	 * Determine if the isst passed in is for a duplicate string or not.
 	 */
@@ -1398,7 +1415,23 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 	 * Return the Unicodestring at the corresponding index
 	 */
 	Unicodestring getUStringAt(int i) {
-		return (Unicodestring) stringvector.get(i);
+		return stringvector.get(i);
+	}
+
+	/**
+	 * Return the text of the string at the corresponding index without
+	 * decoding it into a Unicodestring
+	 */
+	String getStringAt(int i) {
+		return stringvector.getString(i);
+	}
+
+	/**
+	 * Return the position within the SST data of the string at the
+	 * corresponding index
+	 */
+	int getStringPos(int i) {
+		return stringvector.getPosition(i);
 	}
 
 	/**
@@ -1408,7 +1441,7 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 	 * @return
 	 */
 	int find(Unicodestring us) {
-		return ((SstArrayList) stringvector).find(us);
+		return stringvector.find(us);
 	}
 
 	/**
@@ -1458,51 +1491,11 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 		sb.append("cstTotal:" + cstTotal + " cstUnique:" + cstUnique
 				+ " numConts:" + numconts);
 		for (int i = 0; i < stringvector.size(); i++) {
-			sb.append("\n " + stringvector.get(i));
+			sb.append("\n " + stringvector.getString(i));
 		}
 		return sb.toString();
 	}
 
-	/**
-	 * Override ArrayList to allow matching based on .toString. Required because
-	 * we call ArrayList.indexOf(String) when ArrayList contains UnicodeStrings.
-	 */
-	private class SstArrayList extends ArrayList {
-		/**
-		 * serialVersionUID
-		 */
-		private static final long serialVersionUID = 7904551471519095640L;
-		private HashMap container = new HashMap();
-
-		public boolean put(Object o, Integer isst) {
-			container.put(((Unicodestring) o).toCachingString(), isst);
-			return super.add(o);
-		}
-
-		public int indexOf(Object o) {
-			Object oo = container.get(o.toString());
-			if (oo == null)
-				return -1;
-			return ((Integer) oo).intValue();
-		}
-
-		public boolean remove(Object o) {
-			Logger.logWarn("String being removed from SST array, Indexing may be off");
-			container.remove(((Unicodestring) o).toCachingString());
-			return super.remove(o);
-		}
-
-		/**
-		 * find this particular unicode string, including formatting
-		 * 
-		 * @param us
-		 * @return
-		 */
-		public int find(Unicodestring us) {
-			return (super.indexOf(us));
-		}
-	}
-
 	/**
 	 * generate the OOXML necessary to describe this string table, also fill
 	 * sststrings list with unique sststrings
@@ -1520,9 +1513,10 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 				+ cstTotal + "\" uniqueCount=\"" + cstUnique + "\">"));
 		zip.write("\r\n");
 		for (int i = 0; i < this.getStringVector().size(); i++) {
-			Unicodestring us = ((Unicodestring) this.getStringVector().get(i));
-			ArrayList frs = us.getFormattingRuns();
-			String s = us.getStringVal();
+			// strings only held packed have no formatting runs
+			Unicodestring us = stringvector.peek(i);
+			ArrayList frs = (us == null) ? null : us.getFormattingRuns();
+			String s = stringvector.getString(i);
 			s = OOXMLAdapter.stripNonAscii(s).toString();
 			// sststrings.add(OOXMLAdapter.stripNonAscii(s));// zip.write(s); //
 			// used as an index for cell values in parsing sheet ooxml
@@ -1583,16 +1577,16 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 
 	/**
 	 * given SharedStrings.xml OOXML inputstream, read in string and formatting
-	 * data, if any and parse into ArrayList for later use in parseSheetOOXML
+	 * data, if any and parse into a list for later use in parseSheetOOXML
 	 * 
 	 * @param bk
 	 *            WorkBookHandle
 	 * @param ii
 	 *            InputStream
-	 * @return String ArrayList return list of shared strings
+	 * @return list of shared strings
 	 * @see parseSheetOOXML
 	 */
-	public static ArrayList parseOOXML(WorkBookHandle bk, InputStream ii) {
+	public static List parseOOXML(WorkBookHandle bk, InputStream ii) {
 		// NOTE:
 		// apparently can have dup entries in sharedstring.xml
 		// index of string links to cell value so must keep dups here
@@ -1687,8 +1681,7 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 		if (shareDups)
 			bk.getWorkBook().setSharedupes(true);
 
-		return (ArrayList) bk.getWorkBook().getSharedStringTable()
-				.getStringVector();
+		return bk.getWorkBook().getSharedStringTable().getStringVector();
 	}
 
 	/**
@@ -1702,7 +1695,7 @@ public final class Sst extends io.starter.formats.XLS.XLSRecord {
 	public ArrayList getAllStrings() {
 		ArrayList al = new ArrayList(stringvector.size());
 		for (int i = 0; i < stringvector.size(); i++) {
-			al.add(stringvector.get(i).toString());
+			al.add(stringvector.getString(i));
 		}
 		return al;
 	}
@@ -0,0 +1,449 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+
+import io.starter.toolkit.Instrumentation;
+import io.starter.toolkit.Logger;
+
+/** The strings of a shared string table.
+ * <p>
+ * Plain western strings, which make up nearly all of a typical table, are
+ * kept packed one after another in a single byte arena in their BIFF8
+ * encoding and are only decoded into a {@link Unicodestring} the first time
+ * one is asked for through {@link #get(int)}. Other strings are held as
+ * objects. Once handed out a string object is retained and is the one
+ * written from then on, as callers may change it in place.
+ * <p>
+ * Lookups by value go through an open addressed index of entry numbers,
+ * built on first use. Each entry is indexed under the value it had when it
+ * was added.
+ * 
+ * @see Sst
+ */
+final class SstStringList extends AbstractList<Unicodestring> implements
+		Serializable {
+	private static final long serialVersionUID = -2312806416651829613L;
+
+	private byte[] arena = new byte[1024];
+	private int arenaSize;
+	/** offset of each entry in the arena, -1 for entries held as objects */
+	private int[] offsets = new int[16];
+	/** position of each packed entry in the SST record data */
+	private int[] positions = new int[16];
+	private Unicodestring[] strings = new Unicodestring[16];
+	/** lookup keys of entries not in the arena, allocated when first needed */
+	private String[] keys;
+	private int size;
+
+	/** the value index; each slot holds an entry number + 1, or 0 if free */
+	private int[] slots;
+	/** the key hash of each entry, kept while the index exists */
+	private int[] hashes;
+
+	/** Gets the string at the given index, decoding it if necessary. */
+	@Override
+	public Unicodestring get(int i) {
+		rangeCheck(i);
+		Unicodestring str = strings[i];
+		if (str != null)
+			return str;
+		synchronized (this) {
+			if (strings[i] == null) {
+				strings[i] = decode(i);
+				Instrumentation.count("sst.decoded", 1);
+			}
+			return strings[i];
+		}
+	}
+
+	/** Gets the string object at the given index only if it has already
+	 * been decoded.
+	 * @return the string, or <code>null</code> if it is only held packed
+	 */
+	Unicodestring peek(int i) {
+		rangeCheck(i);
+		return strings[i];
+	}
+
+	/** Decodes a packed entry into a new string object which is not
+	 * retained by the list.
+	 */
+	Unicodestring decode(int i) {
+		int off = offsets[i];
+		Unicodestring str = new Unicodestring();
+		str.setSSTPos(positions[i]);
+		str.init(Arrays.copyOfRange(arena, off, off + packedLength(off)),
+				false);
+		return str;
+	}
+
+	/** Gets the text of the string at the given index without decoding it
+	 * into an object.
+	 */
+	String getString(int i) {
+		rangeCheck(i);
+		Unicodestring str = strings[i];
+		if (str != null)
+			return str.toCachingString();
+		int off = offsets[i];
+		int cch = cch(off);
+		if (isWide(off))
+			return new String(arena, off + 3, cch * 2,
+					StandardCharsets.UTF_16LE);
+		return new String(arena, off + 3, cch, StandardCharsets.ISO_8859_1);
+	}
+
+	/** Gets the position of a string in the SST record data. */
+	int getPosition(int i) {
+		rangeCheck(i);
+		Unicodestring str = strings[i];
+		return str != null ? str.getSSTPos() : positions[i];
+	}
+
+	/** Sets the position of a string in the SST record data. */
+	void setPosition(int i, int pos) {
+		rangeCheck(i);
+		positions[i] = pos;
+		if (strings[i] != null)
+			strings[i].setSSTPos(pos);
+	}
+
+	/** Writes the BIFF8 bytes of a packed entry.
+	 * @return the number of bytes written
+	 */
+	int writePacked(int i, ByteArrayOutputStream out) {
+		int off = offsets[i];
+		int len = packedLength(off);
+		out.write(arena, off, len);
+		return len;
+	}
+
+	/** Adds a string object which callers may keep and change. */
+	@Override
+	public boolean add(Unicodestring str) {
+		int i = append(-1, str.getSSTPos());
+		strings[i] = str;
+		byte[] data = str.read();
+		if (isPackable(data)) {
+			offsets[i] = pack(data);
+		} else {
+			if (keys == null)
+				keys = new String[offsets.length];
+			keys[i] = str.toCachingString();
+		}
+		indexEntry(i);
+		return true;
+	}
+
+	/** Adds a string which no caller keeps a reference to. Plain strings are
+	 * only stored packed.
+	 */
+	void addDetached(Unicodestring str) {
+		byte[] data = str.read();
+		if (isPackable(data)) {
+			indexEntry(append(pack(data), str.getSSTPos()));
+		} else {
+			add(str);
+		}
+	}
+
+	/** Adds a string from its BIFF8 encoding.
+	 * @param data the string bytes, spanning no CONTINUE boundaries
+	 * @param pos the position of the string in the SST record data
+	 */
+	void add(byte[] data, int pos) {
+		if (isPackable(data)) {
+			indexEntry(append(pack(data), pos));
+		} else {
+			Unicodestring str = new Unicodestring();
+			str.setSSTPos(pos);
+			str.init(data, false);
+			add(str);
+		}
+	}
+
+	/** Gets the index of the most recently added string with the given
+	 * value, ignoring formatting.
+	 */
+	@Override
+	public int indexOf(Object o) {
+		String s = o.toString();
+		int[] index = index();
+		int h = s.hashCode(), mask = index.length - 1, ret = -1;
+		for (int p = h & mask; index[p] != 0; p = (p + 1) & mask) {
+			int e = index[p] - 1;
+			if (hashes[e] == h && e > ret && keyEquals(e, s))
+				ret = e;
+		}
+		return ret;
+	}
+
+	/** Gets the index of the first string equal to the given one, including
+	 * its formatting.
+	 */
+	int find(Unicodestring us) {
+		String s = us.toCachingString();
+		int[] index = index();
+		int h = s.hashCode(), mask = index.length - 1, ret = -1;
+		byte[] data = null;
+		for (int p = h & mask; index[p] != 0; p = (p + 1) & mask) {
+			int e = index[p] - 1;
+			if (hashes[e] != h || (ret != -1 && e > ret) || !keyEquals(e, s))
+				continue;
+			boolean match;
+			if (strings[e] == null && us.isWesternString()) {
+				if (data == null)
+					data = us.read();
+				int off = offsets[e];
+				match = data.length == packedLength(off)
+						&& regionEquals(data, off);
+			} else {
+				match = us.equals(get(e));
+			}
+			if (match)
+				ret = e;
+		}
+		return ret;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		Logger.logWarn("String being removed from SST array, Indexing may be off");
+		Unicodestring us = (Unicodestring) o;
+		for (int i = 0; i < size; i++) {
+			if (us.equals(get(i))) {
+				remove(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public Unicodestring remove(int i) {
+		Unicodestring str = get(i);
+		int n = size - i - 1;
+		System.arraycopy(offsets, i + 1, offsets, i, n);
+		System.arraycopy(positions, i + 1, positions, i, n);
+		System.arraycopy(strings, i + 1, strings, i, n);
+		if (keys != null)
+			System.arraycopy(keys, i + 1, keys, i, n);
+		size--;
+		strings[size] = null;
+		if (keys != null)
+			keys[size] = null;
+		// the arena space is not reclaimed; entry numbers have shifted
+		slots = null;
+		hashes = null;
+		modCount++;
+		return str;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(strings, 0, size, null);
+		if (keys != null)
+			Arrays.fill(keys, 0, size, null);
+		size = 0;
+		arenaSize = 0;
+		slots = null;
+		hashes = null;
+		modCount++;
+	}
+
+	/** Grows the list to hold the given number of strings. */
+	void ensureCapacity(int n) {
+		if (n <= offsets.length)
+			return;
+		offsets = Arrays.copyOf(offsets, n);
+		positions = Arrays.copyOf(positions, n);
+		strings = Arrays.copyOf(strings, n);
+		if (keys != null)
+			keys = Arrays.copyOf(keys, n);
+		if (hashes != null)
+			hashes = Arrays.copyOf(hashes, n);
+	}
+
+	private int append(int off, int pos) {
+		if (size == offsets.length)
+			ensureCapacity(size + (size >> 1) + 1);
+		offsets[size] = off;
+		positions[size] = pos;
+		modCount++;
+		return size++;
+	}
+
+	private int pack(byte[] data) {
+		if (arenaSize + data.length > arena.length)
+			arena = Arrays.copyOf(arena, Math.max(arena.length
+					+ (arena.length >> 1), arenaSize + data.length));
+		System.arraycopy(data, 0, arena, arenaSize, data.length);
+		int off = arenaSize;
+		arenaSize += data.length;
+		return off;
+	}
+
+	/** Whether the given string bytes may be packed: a non-rich western
+	 * string whose bytes decode to the same characters its lookup key is
+	 * made of, and which {@link Unicodestring#read()} reproduces exactly.
+	 */
+	private static boolean isPackable(byte[] data) {
+		if (data.length < 3 || (data[2] & ~0x1) != 0)
+			return false;
+		int cch = (data[0] & 0xff) | (data[1] & 0xff) << 8;
+		if ((data[2] & 0x1) == 0)
+			return data.length == cch + 3
+					&& "ISO-8859-1".equalsIgnoreCase(XLSConstants.DEFAULTENCODING);
+		if (data.length != cch * 2 + 3
+				|| !"UTF-16LE".equalsIgnoreCase(XLSConstants.UNICODEENCODING))
+			return false;
+		// unpaired surrogates would not survive decoding
+		for (int i = 3; i < data.length; i += 2) {
+			char c = (char) ((data[i] & 0xff) | (data[i + 1] & 0xff) << 8);
+			if (Character.isHighSurrogate(c)) {
+				if (i + 3 >= data.length
+						|| !Character.isLowSurrogate((char) ((data[i + 2] & 0xff) | (data[i + 3] & 0xff) << 8)))
+					return false;
+				i += 2;
+			} else if (Character.isLowSurrogate(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int cch(int off) {
+		return (arena[off] & 0xff) | (arena[off + 1] & 0xff) << 8;
+	}
+
+	private boolean isWide(int off) {
+		return (arena[off + 2] & 0x1) != 0;
+	}
+
+	private int packedLength(int off) {
+		return 3 + (isWide(off) ? cch(off) * 2 : cch(off));
+	}
+
+	private boolean regionEquals(byte[] data, int off) {
+		for (int i = 0; i < data.length; i++) {
+			if (data[i] != arena[off + i])
+				return false;
+		}
+		return true;
+	}
+
+	private boolean keyEquals(int e, String s) {
+		if (offsets[e] == -1)
+			return keys[e].equals(s);
+		int off = offsets[e];
+		int cch = cch(off);
+		if (cch != s.length())
+			return false;
+		if (isWide(off)) {
+			for (int i = 0, p = off + 3; i < cch; i++, p += 2) {
+				if (s.charAt(i) != (char) ((arena[p] & 0xff) | (arena[p + 1] & 0xff) << 8))
+					return false;
+			}
+		} else {
+			for (int i = 0, p = off + 3; i < cch; i++, p++) {
+				if (s.charAt(i) != (char) (arena[p] & 0xff))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/** Computes the {@link String#hashCode()} of an entry's key. */
+	private int keyHash(int e) {
+		if (offsets[e] == -1)
+			return keys[e].hashCode();
+		int off = offsets[e];
+		int cch = cch(off), h = 0;
+		if (isWide(off)) {
+			for (int i = 0, p = off + 3; i < cch; i++, p += 2)
+				h = 31 * h + ((arena[p] & 0xff) | (arena[p + 1] & 0xff) << 8);
+		} else {
+			for (int i = 0, p = off + 3; i < cch; i++, p++)
+				h = 31 * h + (arena[p] & 0xff);
+		}
+		return h;
+	}
+
+	/** Gets the value index, building it if it does not exist yet. */
+	private synchronized int[] index() {
+		if (slots == null) {
+			hashes = new int[offsets.length];
+			slots = new int[tableSize(size)];
+			for (int e = 0; e < size; e++) {
+				hashes[e] = keyHash(e);
+				insert(slots, e);
+			}
+		}
+		return slots;
+	}
+
+	private void indexEntry(int e) {
+		if (slots == null)
+			return;
+		hashes[e] = keyHash(e);
+		if (size * 2 > slots.length) {
+			int[] grown = new int[slots.length * 2];
+			for (int i = 0; i < e; i++)
+				insert(grown, i);
+			slots = grown;
+		}
+		insert(slots, e);
+	}
+
+	private void insert(int[] table, int e) {
+		int mask = table.length - 1;
+		int p = hashes[e] & mask;
+		while (table[p] != 0)
+			p = (p + 1) & mask;
+		table[p] = e + 1;
+	}
+
+	private static int tableSize(int n) {
+		int cap = 16;
+		while (cap < n * 2)
+			cap <<= 1;
+		return cap;
+	}
+
+	private void rangeCheck(int i) {
+		if (i >= size)
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: "
+					+ size);
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/** {@link CellStore} keeping every cell in a row major and a column major
+ * {@link TreeMap}.
+ * <p>
+ * This is the original Boundsheet cell index. It is retained for callers
+ * which rely on its tolerance of cell addresses being changed in place, and
+ * may be selected through {@link XLSConstants#CELLSTORE_PROP}.
+ */
+public class TreeMapCellStore implements CellStore, Serializable {
+	private static final long serialVersionUID = 5302487762451934025L;
+
+	private SortedMap<CellAddressible, BiffRec> cellsByRow = new TreeMap<CellAddressible, BiffRec>(
+			new CellAddressible.RowMajorComparator());
+
+	private SortedMap<CellAddressible, BiffRec> cellsByCol = new TreeMap<CellAddressible, BiffRec>(
+			new CellAddressible.ColumnMajorComparator());
+
+	@Override
+	public void add(CellRec cell) {
+		cellsByRow.put(cell, cell);
+		cellsByCol.put(cell, cell);
+	}
+
+	@Override
+	public boolean remove(BiffRec cell) {
+		boolean found = cellsByRow.remove(cell) != null;
+		cellsByCol.remove(cell);
+		return found;
+	}
+
+	@Override
+	public BiffRec get(int row, int col) {
+		return cellsByRow.get(new CellAddressible.Reference(row, col));
+	}
+
+	@Override
+	public ArrayList<BiffRec> getRow(int row) {
+		SortedMap<CellAddressible, BiffRec> theCells = cellsByRow
+				.subMap(new CellAddressible.Reference(row, 0),
+						new CellAddressible.Reference(row + 1, 0));
+		return new ArrayList<BiffRec>(theCells.values());
+	}
+
+	@Override
+	public ArrayList<BiffRec> getCol(int col) {
+		SortedMap<CellAddressible, BiffRec> theCells = cellsByCol
+				.subMap(new CellAddressible.RangeBoundary(0, col, true),
+						new CellAddressible.RangeBoundary(0, col + 1, false));
+		return new ArrayList<BiffRec>(theCells.values());
+	}
+
+	@Override
+	public int getRow(int row, BiffRec[] dest) {
+		return copy(cellsByRow.subMap(new CellAddressible.Reference(row, 0),
+				new CellAddressible.Reference(row + 1, 0)), dest);
+	}
+
+	@Override
+	public int getCol(int col, BiffRec[] dest) {
+		SortedMap<CellAddressible, BiffRec> theCells = cellsByCol
+				.subMap(new CellAddressible.RangeBoundary(0, col, true),
+						new CellAddressible.RangeBoundary(0, col + 1, false));
+		// the column map orders ranges by their extent before their row, and
+		// includes ranges starting at the next column
+		int n = 0, lastRow = -1;
+		boolean sorted = true;
+		for (BiffRec cell : theCells.values()) {
+			if (cell instanceof ColumnRange
+					&& (((ColumnRange) cell).getColFirst() > col
+							|| ((ColumnRange) cell).getColLast() < col))
+				continue;
+			if (n < dest.length)
+				dest[n] = cell;
+			n++;
+			if (cell.getRowNumber() < lastRow)
+				sorted = false;
+			lastRow = cell.getRowNumber();
+		}
+		if (!sorted) {
+			if (n > dest.length)
+				return n;
+			Arrays.sort(dest, 0, n, new Comparator<BiffRec>() {
+				public int compare(BiffRec c1, BiffRec c2) {
+					return c1.getRowNumber() - c2.getRowNumber();
+				}
+			});
+		}
+		return n;
+	}
+
+	private static int copy(SortedMap<CellAddressible, BiffRec> cells,
+			BiffRec[] dest) {
+		int n = 0;
+		for (BiffRec cell : cells.values()) {
+			if (n < dest.length)
+				dest[n] = cell;
+			n++;
+		}
+		return n;
+	}
+
+	@Override
+	public int nextRow(int row) {
+		SortedMap<CellAddressible, BiffRec> tail = cellsByRow
+				.tailMap(new CellAddressible.Reference(Math.max(row, 0), 0));
+		return tail.isEmpty() ? -1 : tail.firstKey().getRowNumber();
+	}
+
+	@Override
+	public int nextCol(int col) {
+		col = Math.max(col, 0);
+		SortedMap<CellAddressible, BiffRec> tail = cellsByCol
+				.tailMap(new CellAddressible.RangeBoundary(0, col, true));
+		// the first key may be a MULBLANK which starts before the column
+		return tail.isEmpty() ? -1 : Math.max(tail.firstKey().getColFirst(), col);
+	}
+
+	@Override
+	public ArrayList<BiffRec> getRange(int firstRow, int firstCol, int lastRow,
+			int lastCol) {
+		ArrayList<BiffRec> ret = new ArrayList<BiffRec>();
+		SortedMap<CellAddressible, BiffRec> theCells = cellsByRow
+				.subMap(new CellAddressible.Reference(firstRow, 0),
+						new CellAddressible.Reference(lastRow + 1, 0));
+		for (BiffRec cell : theCells.values()) {
+			int first = cell.getColNumber(), last = first;
+			if (cell instanceof ColumnRange) {
+				first = ((ColumnRange) cell).getColFirst();
+				last = Math.max(((ColumnRange) cell).getColLast(), first);
+			}
+			if (last >= firstCol && first <= lastCol)
+				ret.add(cell);
+		}
+		return ret;
+	}
+
+	/** Does nothing; the tree maps stay ordered when rows are shifted in
+	 * sequence.
+	 */
+	@Override
+	public void moveRow(int oldRow, int newRow) {
+	}
+
+	@Override
+	public BiffRec[] toArray() {
+		Collection<BiffRec> cells = cellsByRow.values();
+		return cells.toArray(new BiffRec[cells.size()]);
+	}
+
+	@Override
+	public int size() {
+		return cellsByRow.size();
+	}
+
+	@Override
+	public void clear() {
+		cellsByRow.clear();
+		cellsByCol.clear();
+	}
+}
@@ -68,6 +68,9 @@ import io.starter.formats.XLS.formulas.PtgArea3d;
 import io.starter.formats.XLS.formulas.PtgExp;
 import io.starter.formats.XLS.formulas.PtgNameX;
 import io.starter.formats.XLS.formulas.PtgRef;
+import io.starter.formats.cellformat.CellFormatCache;
+import io.starter.formats.cellformat.CellFormatFactory;
+import io.starter.formats.cellformat.CellFormatRenderer;
 import io.starter.toolkit.FastAddVector;
 import io.starter.toolkit.Logger;
 
@@ -102,6 +105,8 @@ public class WorkBook implements Serializable, XLSConstants, Book {
 			indexnum = 0;
 	private int						defaultIxfe					= 15;
 	private int						CalcMode					= CALCULATE_AUTO;
+	private boolean					parallelCalc				= false;
+	private boolean					parallelWrite				= false;
 	private int						defaultLanguage				= 0;									// default
 																										// language
 																										// code
@@ -232,7 +237,15 @@ public class WorkBook implements Serializable, XLSConstants, Book {
 																										// pivot
 																										// cache
 
-	public HashMap					formatCache					= new HashMap();
+	private XfRegistry				xfRegistry					= new XfRegistry();
+
+	/**
+	 * links tostring of xf to xf rec for updating/reuse purposes
+	 * @deprecated a view of the xf registry kept for compatibility; use
+	 *             {@link #getMatchingXf(Xf)} to find a reusable xf
+	 */
+	@Deprecated
+	public HashMap					formatCache					= xfRegistry.getStringView();
 
 	private Index					lastidx;
 	private Sst						stringTable;
@@ -529,6 +542,8 @@ public class WorkBook implements Serializable, XLSConstants, Book {
 
 	private void addHlink(Hlink r) {
 		this.hlinklookup.add(r);
+		if (r.getSheet() != null)
+			r.getSheet().updateRangeIndex(r);
 	}
 
 	/** take care of any lazy updating before output
@@ -967,6 +982,8 @@ public class WorkBook implements Serializable, XLSConstants, Book {
 		this.formulashash.remove(fmla.getCellAddressWithSheet());
 		formulas.remove(fmla);
 		fmla.destroy();
+		if (refTracker != null)
+			refTracker.getDependencyGraph().formulaRemoved(fmla);
 	}
 
 	/**
@@ -1273,6 +1290,23 @@ public class WorkBook implements Serializable, XLSConstants, Book {
 		return (Format) formats.get(Short.valueOf((short) id));
 	}
 
+	private CellFormatCache formatRenderers;
+
+	/** Gets the compiled renderer for the number format of an XF.
+	 * Renderers are cached by format ID and may be shared between threads.
+	 * @param xf the XF record, <code>null</code> for the General format
+	 */
+	public CellFormatRenderer getFormatRenderer(Xf xf) {
+		if (xf == null)
+			return CellFormatFactory.compile(null);
+		CellFormatCache cache = formatRenderers;
+		if (cache == null) {
+			cache = new CellFormatCache();
+			formatRenderers = cache;
+		}
+		return cache.get(xf.getIfmt() & 0xFFFF, xf.getFormatPattern());
+	}
+
 	public TabID getTabID() {
 		return this.tabs;
 	}
@@ -1442,7 +1476,7 @@ public class WorkBook implements Serializable, XLSConstants, Book {
 			break;
 
 		case CONDFMT:
-			bs.getConditionalFormats().add(rec);
+			bs.addConditionalFormat((Condfmt) rec);
 			((Condfmt) rec).initializeReferences();
 			break;
 
@@ -2025,6 +2059,8 @@ public class WorkBook implements Serializable, XLSConstants, Book {
 	public void removeWorkSheet(Boundsheet sheet) {
 
 		int sheetNum = sheet.getSheetNum();
+		if (refTracker != null)
+			refTracker.getDependencyGraph().invalidate();
 		// remove the sheet
 		// automatically deletes Named ranges scoped to the sheet
 		Name[] namesOnSheet = sheet.getAllNames();
@@ -2312,7 +2348,7 @@ public class WorkBook implements Serializable, XLSConstants, Book {
 
 	/**
 	 * formatCache:
-	 * links tostring of xf to xf rec for updating/reuse purposes
+	 * links the formatting of xf to xf rec for updating/reuse purposes
 	 * 
 	 * @see FormatHandle.updateXf
 	 * @see WorkBook.addXf
@@ -2321,34 +2357,31 @@ public class WorkBook implements Serializable, XLSConstants, Book {
 	public void updateFormatCache(Xf xf) {
 		if (xf.tableidx != -1) { // if this xf has been already added to the
 									// workbook
-			if (formatCache.containsValue(xf)) { // xf signature has
-													// changed/it's been updated
-				Iterator ii = formatCache.keySet().iterator(); // remove and
-																// update below
-				while (ii.hasNext()) {
-					String key = (String) ii.next();
-					Xf x = (Xf) formatCache.get(key);
-					if (x.equals(xf)) {
-						formatCache.remove(key);
-						break;
-					}
-				}
-			}
-			String formatStr = xf.toString();
-
-			if (!formatCache.containsKey(formatStr))
-				formatCache.put(formatStr, xf);
+			xfRegistry.update(xf); // drops the entry for its old signature
 		}
 	}
 
+	/**
+	 * returns the xf in this workbook with the same formatting (font, number
+	 * format, fill, borders, alignment and protection) as the given xf
+	 * @see FormatHandle.updateXf 
+	 * @param xf
+	 * @return the matching xf or null if there is none
+	 */
+	public Xf getMatchingXf(Xf xf) {
+		return xfRegistry.get(xf);
+	}
+
 	/**
 	 * retrieve the format cache - links string vers. of xf to xf rec
 	 * used for resusing xf's
-	 * @see FormatHandle.updateXf 
-	 * @return
+	 * @deprecated lookups by string scan the xfs; use
+	 *             {@link #getMatchingXf(Xf)} instead
+	 * @return a live view keyed by the string form of each xf
 	 */
+	@Deprecated
 	public HashMap getFormatCache() {
-		return formatCache;
+		return xfRegistry.getStringView();
 	}
 
 	/** Get a substream by name.*/
@@ -3341,6 +3374,9 @@ public class WorkBook implements Serializable, XLSConstants, Book {
 	 */
 	public void setCalcMode(int mode) {
 		CalcMode = mode;
+		// explicit mode changes values without clearing their dependents
+		if (mode == CALCULATE_EXPLICIT && refTracker != null)
+			refTracker.getDependencyGraph().requireFullRecalc();
 	}
 
 	/**
@@ -3352,6 +3388,42 @@ public class WorkBook implements Serializable, XLSConstants, Book {
 		return CalcMode;
 	}
 
+	/**
+	 * Sets whether recalculation spreads independent formulas across
+	 * multiple threads.
+	 * @see WorkBookHandle.setParallelCalculation()
+	 * @param parallel
+	 */
+	public void setParallelCalc(boolean parallel) {
+		parallelCalc = parallel;
+	}
+
+	/**
+	 * Returns whether recalculation spreads independent formulas across
+	 * multiple threads.
+	 */
+	public boolean getParallelCalc() {
+		return parallelCalc;
+	}
+
+	/**
+	 * Sets whether the worksheet substreams are assembled and encoded on
+	 * multiple threads when the workbook is written.
+	 * @see WorkBookHandle.setParallelWrite()
+	 * @param parallel
+	 */
+	public void setParallelWrite(boolean parallel) {
+		parallelWrite = parallel;
+	}
+
+	/**
+	 * Returns whether the worksheet substreams are assembled and encoded on
+	 * multiple threads when the workbook is written.
+	 */
+	public boolean getParallelWrite() {
+		return parallelWrite;
+	}
+
 	/**
 	 * @return Returns the xfrecs.
 	 */
@@ -3422,6 +3494,8 @@ public class WorkBook implements Serializable, XLSConstants, Book {
 		this.formulas.add(rec);
 		String shn = rec.getSheet().getSheetName() + "!" + rec.getCellAddress();
 		this.formulashash.put(shn, rec);
+		if (refTracker != null)
+			refTracker.getDependencyGraph().formulaChanged(rec);
 	}
 
 	public boolean isSharedupes() {
@@ -3747,7 +3821,7 @@ public class WorkBook implements Serializable, XLSConstants, Book {
 			x.close();
 		}
 		this.xfrecs.clear();
-		this.formatCache.clear();
+		this.xfRegistry.clear();
 		this.formatlookup.clear();
 		this.formats.clear();
 		this.fonts.clear();
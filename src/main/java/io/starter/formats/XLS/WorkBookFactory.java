@@ -149,6 +149,31 @@ public class WorkBookFactory implements io.starter.toolkit.ProgressNotifier, XLS
      * @throws InvalidRecordException
      */
     public Book initWorkBook(Book book, BlockByteReader parsedata, LEOFile leo) throws InvalidRecordException {
+	Instrumentation.Phase phase = Instrumentation.start("xls.read");
+	int[] opcodeCounts = Instrumentation.isEnabled() ? new int[0x10000] : null;
+	try {
+	    return this.readRecords(book, parsedata, leo, opcodeCounts);
+	} finally {
+	    phase.end();
+	    if (opcodeCounts != null) {
+		Instrumentation.count("xls.bytesRead", parsedata.getLength());
+		int total = 0;
+		for (int op = 0; op < opcodeCounts.length; op++) {
+		    if (opcodeCounts[op] == 0)
+			continue;
+		    Instrumentation.count("xls.records.0x" + String.format("%04X", op), opcodeCounts[op]);
+		    total += opcodeCounts[op];
+		}
+		Instrumentation.count("xls.records", total);
+	    }
+	}
+    }
+
+    /**
+     * read the records of the workbook stream, counting them by opcode if
+     * an array is given
+     */
+    private Book readRecords(Book book, BlockByteReader parsedata, LEOFile leo, int[] opcodeCounts) throws InvalidRecordException {
 	
 	BlockByteReader blockByteReader = parsedata;
 	blockByteReader.setApplyRelativePosition(true);
@@ -219,6 +244,8 @@ public class WorkBookFactory implements io.starter.toolkit.ProgressNotifier, XLS
 
 		    // Init Record'
 		    rec = this.parse(book, opcode, i, reclen, blockByteReader);
+		    if (opcodeCounts != null)
+			opcodeCounts[opcode & 0xFFFF]++;
 
 		    if (progresslistener != null) {
 			progresslistener.setValue(i);
@@ -58,6 +58,9 @@ public interface XLSConstants
     public static String REFTRACK_PROP = "io.starter.OpenXLS.trackreferences";
     public static String USETEMPFILE_PROP = "io.starter.formats.LEO.usetempfile";    
     public static String VALIDATEWORKBOOK = "io.starter.formats.LEO.validateworkbook";
+    public static String CELLSTORE_PROP = "io.starter.OpenXLS.cellstore";
+    public static String PARALLEL_READ_PROP = "io.starter.OpenXLS.parallelread";
+    public static String METRICS_PROP = "io.starter.OpenXLS.metrics";
 	// Debug options
 	public static int DEBUG_LOW		= 50;
 	public static int DEBUG_MEDIUM 	= 60; 
@@ -0,0 +1,566 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import io.starter.OpenXLS.DateConverter;
+import io.starter.formats.LEO.BlockByteConsumer;
+import io.starter.formats.LEO.BlockByteReader;
+import io.starter.formats.LEO.InvalidFileException;
+import io.starter.formats.LEO.LEOFile;
+import io.starter.formats.XLS.formulas.PtgErr;
+import io.starter.toolkit.ByteTools;
+import io.starter.toolkit.Logger;
+
+/** Read-only streaming access to the cell values of a BIFF8 (.xls)
+ * workbook.
+ * <p>
+ * Where {@link WorkBookFactory} turns every record of the Workbook stream
+ * into an {@link XLSRecord} and assembles a {@link Book}, this reader walks
+ * the records through the {@link BlockByteReader} of the LEO file and
+ * decodes the cell records (LABELSST, LABEL, NUMBER, RK, MULRK, BOOLERR and
+ * FORMULA) in place, passing the values of each row to a
+ * {@link RowListener} as soon as the row is complete. Formulas are not
+ * parsed and their cached values are returned.
+ * <p>
+ * The shared string table and the cell formats are read once from the
+ * workbook globals when the reader is opened; otherwise memory use is
+ * bounded by the size of a single row.
+ * <pre>
+ * XLSStreamReader reader = new XLSStreamReader("big.xls");
+ * try {
+ *     reader.read(listener);
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ * 
+ * @see RowListener
+ * @see OOXMLStreamReader
+ */
+public class XLSStreamReader implements Closeable, XLSConstants {
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final LEOFile leo;
+	private final BlockByteReader data;
+	private final int blen;
+
+	private final ArrayList sheetNames = new ArrayList();
+	private final ArrayList sheetOffsets = new ArrayList();
+	private String[] sharedStrings = new String[0];
+	private boolean[] dateXfs = new boolean[0];
+	private boolean date1904 = false;
+	private boolean convertDates = true;
+
+	/** Opens a BIFF8 workbook for streaming.
+	 * @param fName the path of the .xls file
+	 */
+	public XLSStreamReader(String fName) throws IOException {
+		this(new File(fName));
+	}
+
+	/** Opens a BIFF8 workbook for streaming.
+	 * @param file the .xls file
+	 */
+	public XLSStreamReader(File file) throws IOException {
+		leo = new LEOFile(file, 0);
+		try {
+			if (!leo.hasWorkBook())
+				throw new InvalidFileException(file.getName()
+						+ " does not contain a supported Excel WorkBook.");
+			data = leo.getXLSBlockBytes();
+			data.setApplyRelativePosition(true);
+			blen = data.getLength();
+			readGlobals();
+		} catch (RuntimeException e) {
+			leo.close();
+			throw e;
+		}
+	}
+
+	/** Gets the number of worksheets in the workbook. */
+	public int getNumSheets() {
+		return sheetNames.size();
+	}
+
+	/** Gets the name of a worksheet.
+	 * @param sheetIndex the zero-based index of the sheet
+	 */
+	public String getSheetName(int sheetIndex) {
+		return (String) sheetNames.get(sheetIndex);
+	}
+
+	/** Gets whether numbers with a date format are returned as dates. */
+	public boolean getConvertDates() {
+		return convertDates;
+	}
+
+	/** Sets whether numbers with a date format are returned as
+	 * <code>java.util.Date</code>, which is the default, or as their serial
+	 * number value.
+	 */
+	public void setConvertDates(boolean convertDates) {
+		this.convertDates = convertDates;
+	}
+
+	/** Reads every worksheet in workbook order, passing the rows to the
+	 * listener. */
+	public void read(RowListener listener) {
+		for (int i = 0; i < getNumSheets(); i++)
+			read(i, listener);
+	}
+
+	/** Reads a single worksheet, passing its rows to the listener.
+	 * @param sheetIndex the zero-based index of the sheet
+	 */
+	public void read(int sheetIndex, RowListener listener) {
+		String name = getSheetName(sheetIndex);
+		listener.startSheet(sheetIndex, name);
+		new SheetReader(listener).read(((Integer) sheetOffsets.get(sheetIndex)).intValue());
+		listener.endSheet(sheetIndex, name);
+	}
+
+	/** Closes the underlying file. */
+	public void close() throws IOException {
+		leo.close();
+	}
+
+	/** reads the sheet list, shared strings and cell formats from the
+	 * workbook globals substream */
+	private void readGlobals() {
+		RecordCursor rec = new RecordCursor(0);
+		if (!rec.next() || rec.opcode != BOF)
+			throw new WorkBookException("Workbook stream does not start with a BOF record",
+					WorkBookException.NOT_BIFF8_FILE);
+		byte[] bof = rec.getData();
+		if (bof.length < 2 || ByteTools.readUnsignedShort(bof[0], bof[1]) != 0x600)
+			throw new WorkBookException("Not a BIFF8 workbook", WorkBookException.NOT_BIFF8_FILE);
+
+		HashMap formats = new HashMap();
+		ArrayList xfFormats = new ArrayList();
+		ContinuedData sst = null;
+		while (rec.next() && rec.opcode != EOF) {
+			if (rec.opcode == CONTINUE) {
+				if (sst != null)
+					sst.add(rec.getData());
+				continue;
+			}
+			if (sst != null) {
+				sharedStrings = sst.readSharedStrings();
+				sst = null;
+			}
+			switch (rec.opcode) {
+			case FILEPASS:
+				throw new WorkBookException("Streaming is not supported for encrypted workbooks",
+						WorkBookException.DECRYPTION_ERROR);
+			case DATE1904: {
+				byte[] b = rec.getData();
+				date1904 = b.length > 0 && b[0] == 1;
+				break;
+			}
+			case BOUNDSHEET: {
+				byte[] b = rec.getData();
+				if (b[5] == 0) { // worksheet or macro sheet, not a chart
+					sheetOffsets.add(Integer.valueOf(ByteTools.readInt(b, 0)));
+					sheetNames.add(readString(b, 7, b[6] & 0xff));
+				}
+				break;
+			}
+			case FORMAT: {
+				byte[] b = rec.getData();
+				formats.put(Integer.valueOf(ByteTools.readUnsignedShort(b[0], b[1])),
+						readString(b, 4, ByteTools.readUnsignedShort(b[2], b[3])));
+				break;
+			}
+			case XF: {
+				byte[] b = rec.getData();
+				xfFormats.add(Integer.valueOf(ByteTools.readUnsignedShort(b[2], b[3])));
+				break;
+			}
+			case SST: {
+				sst = new ContinuedData();
+				sst.add(rec.getData());
+				break;
+			}
+			}
+		}
+		if (sst != null)
+			sharedStrings = sst.readSharedStrings();
+
+		dateXfs = new boolean[xfFormats.size()];
+		for (int i = 0; i < dateXfs.length; i++) {
+			Integer ifmt = (Integer) xfFormats.get(i);
+			dateXfs[i] = Xf.isDateFormat(ifmt.intValue(), (String) formats.get(ifmt));
+		}
+	}
+
+	/** Walks the records of one worksheet substream, collecting cell values
+	 * into rows. Cells are stored in row order, so a row is complete when a
+	 * cell of a later row is seen. */
+	private final class SheetReader {
+		private final RowListener listener;
+		private final byte[] rk = new byte[4];
+		private Object[] buf = new Object[16];
+		private int width = 0, row = -1;
+		private int stringCol = -1;	// formula awaiting its STRING record
+
+		SheetReader(RowListener listener) {
+			this.listener = listener;
+		}
+
+		void read(int offset) {
+			RecordCursor rec = new RecordCursor(offset);
+			if (!rec.next() || rec.opcode != BOF)
+				throw new WorkBookException("No BOF record at sheet offset " + offset,
+						WorkBookException.RUNTIME_ERROR);
+			int depth = 1; // embedded charts have their own BOF/EOF
+			while (depth > 0 && rec.next()) {
+				short op = rec.opcode;
+				if (op == BOF) {
+					depth++;
+				} else if (op == EOF) {
+					depth--;
+				} else if (depth == 1) {
+					switch (op) {
+					case NUMBER: {
+						byte[] b = rec.getData();
+						set(b, ByteTools.readUnsignedShort(b[2], b[3]),
+								getNumber(readDouble(b, 6), xf(b, 4)));
+						break;
+					}
+					case RK: {
+						byte[] b = rec.getData();
+						set(b, ByteTools.readUnsignedShort(b[2], b[3]),
+								getNumber(rk(b, 6), xf(b, 4)));
+						break;
+					}
+					case MULRK: {
+						byte[] b = rec.getData();
+						int col = ByteTools.readUnsignedShort(b[2], b[3]);
+						for (int pos = 4; pos + 6 <= b.length - 2; pos += 6)
+							set(b, col++, getNumber(rk(b, pos + 2), xf(b, pos)));
+						break;
+					}
+					case LABELSST: {
+						byte[] b = rec.getData();
+						int isst = ByteTools.readInt(b, 6);
+						if (isst >= 0 && isst < sharedStrings.length)
+							set(b, ByteTools.readUnsignedShort(b[2], b[3]), sharedStrings[isst]);
+						else
+							Logger.logWarn("XLSStreamReader: invalid shared string index " + isst);
+						break;
+					}
+					case LABEL:
+					case RSTRING: {
+						byte[] b = rec.getData();
+						set(b, ByteTools.readUnsignedShort(b[2], b[3]),
+								readString(b, 8, ByteTools.readUnsignedShort(b[6], b[7])));
+						break;
+					}
+					case BOOLERR: {
+						byte[] b = rec.getData();
+						set(b, ByteTools.readUnsignedShort(b[2], b[3]), getBoolErr(b[6], b[7] != 0));
+						break;
+					}
+					case FORMULA: {
+						byte[] b = rec.getData();
+						int col = ByteTools.readUnsignedShort(b[2], b[3]);
+						if (b[12] == (byte) 0xff && b[13] == (byte) 0xff) {
+							switch (b[6]) {
+							case 0: // the string follows in a STRING record
+								setRow(b);
+								stringCol = col;
+								break;
+							case 1:
+							case 2:
+								set(b, col, getBoolErr(b[8], b[6] == 2));
+								break;
+							case 3:
+								set(b, col, "");
+								break;
+							}
+						} else {
+							set(b, col, getNumber(readDouble(b, 6), xf(b, 4)));
+						}
+						break;
+					}
+					case STRINGREC: {
+						if (stringCol >= 0) {
+							byte[] b = rec.getData();
+							set(stringCol, readString(b, 2, ByteTools.readUnsignedShort(b[0], b[1])));
+							stringCol = -1;
+						}
+						break;
+					}
+					}
+				}
+			}
+			flush();
+		}
+
+		private Object getNumber(double d, int xf) {
+			if (convertDates && xf < dateXfs.length && dateXfs[xf])
+				return DateConverter.getCalendarFromNumber(d,
+						date1904 ? DateConverter.DateFormat.LEGACY_1904
+								: DateConverter.DateFormat.LEGACY_1900).getTime();
+			if (d == Math.rint(d) && d >= Integer.MIN_VALUE && d <= Integer.MAX_VALUE)
+				return Integer.valueOf((int) d);
+			return new Double(d);
+		}
+
+		private double rk(byte[] b, int pos) {
+			System.arraycopy(b, pos, rk, 0, 4);
+			return Rk.parseRkNumber(rk);
+		}
+
+		/** starts a new row if the cell record belongs to a later one */
+		private void setRow(byte[] b) {
+			int r = ByteTools.readUnsignedShort(b[0], b[1]);
+			if (r != row) {
+				flush();
+				row = r;
+			}
+		}
+
+		private void set(byte[] b, int col, Object val) {
+			setRow(b);
+			set(col, val);
+		}
+
+		private void set(int col, Object val) {
+			if (col >= buf.length) {
+				int cap = buf.length;
+				while (cap <= col)
+					cap <<= 1;
+				Object[] nb = new Object[cap];
+				System.arraycopy(buf, 0, nb, 0, width);
+				buf = nb;
+			}
+			buf[col] = val;
+			if (col >= width)
+				width = col + 1;
+		}
+
+		private void flush() {
+			if (width > 0) {
+				Object[] values = new Object[width];
+				System.arraycopy(buf, 0, values, 0, width);
+				for (int i = 0; i < width; i++)
+					buf[i] = null;
+				width = 0;
+				listener.row(row, values);
+			}
+			stringCol = -1;
+		}
+	}
+
+	private static int xf(byte[] b, int pos) {
+		return ByteTools.readUnsignedShort(b[pos], b[pos + 1]);
+	}
+
+	private static Object getBoolErr(byte value, boolean isError) {
+		if (isError)
+			return new PtgErr(value).toString();
+		return Boolean.valueOf(value != 0);
+	}
+
+	private static double readDouble(byte[] b, int pos) {
+		long l = 0;
+		for (int i = 7; i >= 0; i--)
+			l = (l << 8) | (b[pos + i] & 0xff);
+		return Double.longBitsToDouble(l);
+	}
+
+	/** reads the characters of an unformatted unicode string whose length
+	 * has already been read; pos is the offset of the option flags */
+	private static String readString(byte[] b, int pos, int cch) {
+		int grbit = b[pos++];
+		if ((grbit & 0x8) != 0)
+			pos += 2; // formatting run count
+		if ((grbit & 0x4) != 0)
+			pos += 4; // phonetic data size
+		boolean wide = (grbit & 0x1) != 0;
+		cch = Math.min(cch, (b.length - pos) / (wide ? 2 : 1));
+		char[] chars = new char[Math.max(cch, 0)];
+		for (int i = 0; i < chars.length; i++) {
+			if (wide) {
+				chars[i] = (char) ((b[pos] & 0xff) | (b[pos + 1] & 0xff) << 8);
+				pos += 2;
+			} else {
+				chars[i] = (char) (b[pos++] & 0xff);
+			}
+		}
+		return new String(chars);
+	}
+
+	/** A position in the Workbook stream, reading one record header at a
+	 * time and fetching record data only when asked for. */
+	private final class RecordCursor implements BlockByteConsumer {
+		private int pos, next;
+		short opcode;
+		int length;
+
+		RecordCursor(int start) {
+			next = start;
+		}
+
+		/** advances to the next record, returns false at the end of the stream */
+		boolean next() {
+			if (next > blen - 4)
+				return false;
+			pos = next;
+			byte[] header = data.getHeaderBytes(pos);
+			opcode = ByteTools.readShort(header[0], header[1]);
+			length = ByteTools.readUnsignedShort(header[2], header[3]);
+			if (pos + 4 + length > blen)
+				throw new WorkBookException("Record 0x" + Integer.toHexString(opcode) + " at " + pos
+						+ " extends past the end of the Workbook stream", WorkBookException.RUNTIME_ERROR);
+			next = pos + 4 + length;
+			return true;
+		}
+
+		byte[] getData() {
+			if (length == 0)
+				return EMPTY;
+			return data.get(this, 0, length);
+		}
+
+		public int getOffset() {
+			return pos;
+		}
+
+		public void setOffset(int pos) {
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		public void setFirstBlock(int i) {
+		}
+
+		public void setLastBlock(int i) {
+		}
+
+		public int getFirstBlock() {
+			return 0;
+		}
+
+		public int getLastBlock() {
+			return 0;
+		}
+
+		public void setByteReader(BlockByteReader db) {
+		}
+
+		public BlockByteReader getByteReader() {
+			return data;
+		}
+	}
+
+	/** The data of a record and its CONTINUE records, read as one run of
+	 * bytes except where a string's characters are split between records,
+	 * in which case the continuation starts with fresh option flags. */
+	private static final class ContinuedData {
+		private final ArrayList chunks = new ArrayList();
+		private byte[] cur = EMPTY;
+		private int chunk = -1, pos = 0;
+
+		void add(byte[] b) {
+			chunks.add(b);
+		}
+
+		/** moves to the next chunk if the current one is exhausted */
+		private boolean nextChunk() {
+			while (pos >= cur.length) {
+				if (chunk + 1 >= chunks.size())
+					return false;
+				cur = (byte[]) chunks.get(++chunk);
+				pos = 0;
+			}
+			return true;
+		}
+
+		private int readByte() {
+			if (!nextChunk())
+				throw new ArrayIndexOutOfBoundsException("read past the end of the record");
+			return cur[pos++] & 0xff;
+		}
+
+		private int readShort() {
+			return readByte() | readByte() << 8;
+		}
+
+		private int readInt() {
+			return readShort() | readShort() << 16;
+		}
+
+		private void skip(int n) {
+			while (n > 0 && nextChunk()) {
+				int step = Math.min(n, cur.length - pos);
+				pos += step;
+				n -= step;
+			}
+		}
+
+		private String readString() {
+			int cch = readShort();
+			int grbit = readByte();
+			int runs = (grbit & 0x8) != 0 ? readShort() : 0;
+			int ext = (grbit & 0x4) != 0 ? readInt() : 0;
+			boolean wide = (grbit & 0x1) != 0;
+			char[] chars = new char[cch];
+			for (int i = 0; i < cch; i++) {
+				if (pos >= cur.length) {
+					if (!nextChunk())
+						break;
+					wide = (readByte() & 0x1) != 0;
+				}
+				chars[i] = (char) (wide ? readShort() : readByte());
+			}
+			skip(runs * 4 + ext);
+			return new String(chars);
+		}
+
+		String[] readSharedStrings() {
+			nextChunk();
+			readInt(); // total references
+			int count = readInt();
+			String[] ret = new String[count];
+			try {
+				for (int i = 0; i < count; i++)
+					ret[i] = readString();
+			} catch (ArrayIndexOutOfBoundsException e) {
+				Logger.logWarn("XLSStreamReader: shared string table is shorter than its count of " + count);
+			}
+			chunks.clear();
+			return ret;
+		}
+	}
+}
@@ -197,6 +197,15 @@ public class Xf extends io.starter.formats.XLS.XLSRecord
     	return this.getFont().toString() + thisToString;
     }
     
+    /**
+     * returns whether the given xf has the same formatting as this one,
+     * that is whether their string forms are equal
+     * @param xf
+     */
+    public boolean matches(Xf xf) {
+    	return new XfRegistry.Key(this).equals(new XfRegistry.Key(xf));
+    }
+    
     /**
      * inc # records using this xf
      */
@@ -399,6 +408,21 @@ public class Xf extends io.starter.formats.XLS.XLSRecord
 		if(myfmt.indexOf("mm")>-1||myfmt.indexOf("yy")>-1||myfmt.indexOf("dd")>-1)return true;
 		return false;
 	}
+
+	/** returns whether a number format is a Date, for readers which see the
+	 * format id and pattern without a WorkBook
+	 * 
+	 * @param ifmt the number format id
+	 * @param pattern the format pattern for a custom format, or null for a built in one
+	 */
+	public static boolean isDateFormat(int ifmt, String pattern) {
+        for(int x = 0;x<FormatConstants.DATE_FORMATS.length;x++){
+        	if(ifmt == Integer.parseInt(FormatConstants.DATE_FORMATS[x][1], 16))
+            	return true;
+        }
+        if(pattern == null)return false;
+		return isDatePattern(pattern.toLowerCase());
+	}
 	
 	/**
 	 * Parses an escaped xml format pattern (from ooxml) and returns an io.starter.OpenXLS compatible
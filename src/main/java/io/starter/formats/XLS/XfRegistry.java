@@ -0,0 +1,260 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/** Interning registry of the XF records in a workbook, keyed by the
+ * formatting they represent.
+ * <p>
+ * Each XF added to the workbook is registered under a {@link Key} holding
+ * the same properties as {@link Xf#toString()} (font, number format, fill,
+ * borders, alignment and protection) with a precomputed hash code. The
+ * first XF registered for a key is the one found by {@link #get(Xf)}. A
+ * reverse index from XF to its current key lets an XF whose formatting has
+ * changed be re-registered without searching the table.
+ * 
+ * @see WorkBook#getMatchingXf(Xf)
+ * @see WorkBook#updateFormatCache(Xf)
+ */
+final class XfRegistry implements Serializable {
+	private static final long serialVersionUID = 3326430167416212758L;
+
+	private final HashMap<Key, Xf> xfs = new HashMap<Key, Xf>();
+	private final IdentityHashMap<Xf, Key> keys = new IdentityHashMap<Xf, Key>();
+	private final StringView view = new StringView();
+
+	/** The formatting of an XF, equal for XFs with equal string forms. */
+	static final class Key implements Serializable {
+		private static final long serialVersionUID = -3052014337359021577L;
+
+		private final String fontName;
+		private final String format;
+		private final int[] values;
+		private final int hash;
+
+		Key(Xf xf) {
+			Font font = xf.getFont();
+			String f = "unknown"; // handle missing formats
+			try {
+				f = xf.getFormatPattern();
+			} catch (Exception e) {
+				;
+			}
+			java.awt.Color color = font.getColorAsColor();
+			fontName = font.getFontName();
+			format = f;
+			values = new int[] { font.getFontWeight(), font.getFontHeight(),
+					color == null ? -1 : color.getRGB() & 0xFFFFFF,
+					font.getBold() ? 1 : 0, font.getItalic() ? 1 : 0,
+					font.getStricken() ? 1 : 0, font.getUnderlined() ? 1 : 0,
+					font.getColor(), font.getUnderlineStyle(),
+					xf.getFillPattern(), xf.getForegroundColor(),
+					xf.getBackgroundColor(), xf.getTopBorderLineStyle(),
+					xf.getTopBorderColor(), xf.getLeftBorderLineStyle(),
+					xf.getLeftBorderColor(), xf.getBottomBorderLineStyle(),
+					xf.getBottomBorderColor(), xf.getRightBorderLineStyle(),
+					xf.getRightBorderColor(), xf.getWrapText() ? 1 : 0,
+					xf.getRotation(), xf.getHorizontalAlignment(),
+					xf.getVerticalAlignment(), xf.getIndent(),
+					xf.isLocked() ? 1 : 0, xf.isFormulaHidden() ? 1 : 0,
+					xf.getRightToLeftReadingOrder() };
+			int h = Arrays.hashCode(values);
+			h = 31 * h + (fontName == null ? 0 : fontName.hashCode());
+			hash = 31 * h + (format == null ? 0 : format.hashCode());
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return hash == k.hash && Arrays.equals(values, k.values)
+					&& (fontName == null ? k.fontName == null : fontName.equals(k.fontName))
+					&& (format == null ? k.format == null : format.equals(k.format));
+		}
+	}
+
+	/** Gets the registered XF with the same formatting as the given XF.
+	 * @return the matching XF or <code>null</code> if there is none
+	 */
+	Xf get(Xf xf) {
+		return xfs.get(new Key(xf));
+	}
+
+	/** Registers an XF under its current formatting, replacing the entry for
+	 * its previous formatting. If another XF is already registered with the
+	 * same formatting that one is kept.
+	 */
+	void update(Xf xf) {
+		Key old = keys.remove(xf);
+		if (old != null && xfs.get(old) == xf)
+			xfs.remove(old);
+		Key key = new Key(xf);
+		if (!xfs.containsKey(key)) {
+			xfs.put(key, xf);
+			keys.put(xf, key);
+		}
+	}
+
+	/** Unregisters an XF. */
+	void remove(Xf xf) {
+		Key old = keys.remove(xf);
+		if (old != null && xfs.get(old) == xf)
+			xfs.remove(old);
+	}
+
+	void clear() {
+		xfs.clear();
+		keys.clear();
+	}
+
+	/** Gets the registered XFs keyed by their string forms. */
+	HashMap<String, Xf> toStringMap() {
+		HashMap<String, Xf> ret = new HashMap<String, Xf>();
+		for (Iterator<Map.Entry<Key, Xf>> i = xfs.entrySet().iterator(); i.hasNext();) {
+			Xf xf = i.next().getValue();
+			ret.put(xf.toString(), xf);
+		}
+		return ret;
+	}
+
+	/** Gets a live view of the registry keyed by the string forms of the XFs,
+	 * as the former <code>WorkBook.formatCache</code> was.
+	 */
+	HashMap<String, Xf> getStringView() {
+		return view;
+	}
+
+	/** The registry seen as a map from <code>Xf.toString()</code> to XF.
+	 * <p>
+	 * Kept for callers of the deprecated <code>WorkBook.formatCache</code>.
+	 * Lookups by string scan the registry, and puts register the XF under
+	 * its own formatting whatever the key. The key, value and entry sets
+	 * are read only snapshots.
+	 */
+	private final class StringView extends HashMap<String, Xf> {
+		private static final long serialVersionUID = -6409517632930474181L;
+
+		@Override
+		public Xf get(Object key) {
+			if (!(key instanceof String))
+				return null;
+			for (Iterator<Xf> i = xfs.values().iterator(); i.hasNext();) {
+				Xf xf = i.next();
+				if (key.equals(xf.toString()))
+					return xf;
+			}
+			return null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public boolean containsValue(Object value) {
+			return value instanceof Xf && xfs.get(keys.get(value)) == value;
+		}
+
+		@Override
+		public Xf put(String key, Xf value) {
+			Xf old = get(key);
+			update(value);
+			return old;
+		}
+
+		@Override
+		public Xf putIfAbsent(String key, Xf value) {
+			Xf old = get(key);
+			if (old == null)
+				update(value);
+			return old;
+		}
+
+		@Override
+		public void putAll(Map<? extends String, ? extends Xf> m) {
+			for (Iterator<? extends Xf> i = m.values().iterator(); i.hasNext();)
+				update(i.next());
+		}
+
+		@Override
+		public Xf remove(Object key) {
+			Xf xf = get(key);
+			if (xf != null)
+				XfRegistry.this.remove(xf);
+			return xf;
+		}
+
+		@Override
+		public void clear() {
+			XfRegistry.this.clear();
+		}
+
+		@Override
+		public int size() {
+			return xfs.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return xfs.isEmpty();
+		}
+
+		@Override
+		public Set<String> keySet() {
+			return Collections.unmodifiableSet(toStringMap().keySet());
+		}
+
+		@Override
+		public Collection<Xf> values() {
+			return Collections.unmodifiableCollection(xfs.values());
+		}
+
+		@Override
+		public Set<Map.Entry<String, Xf>> entrySet() {
+			return Collections.unmodifiableSet(toStringMap().entrySet());
+		}
+
+		@Override
+		public Object clone() {
+			return toStringMap();
+		}
+	}
+}
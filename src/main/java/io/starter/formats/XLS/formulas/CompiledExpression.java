@@ -0,0 +1,363 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS.formulas;
+
+import java.util.Arrays;
+import java.util.Stack;
+
+import io.starter.formats.XLS.FunctionNotSupportedException;
+import io.starter.formats.XLS.XLSRecord;
+
+/** A formula expression compiled for repeated evaluation.
+ * <p>
+ * {@link FormulaCalculator} walks the parsed Ptg stack every time a formula
+ * is calculated, copying it into a fresh reversed stack and deciding for
+ * each token whether it is an operand, an operator and how many values it
+ * consumes. None of that depends on the cell values, so it is done once
+ * here: the tokens are flattened into a postfix array with the arity of each
+ * operator resolved, parentheses and attribute tokens removed, and the depth
+ * of the value stack precomputed. Evaluation is then a single pass over the
+ * array using a plain Ptg array as the value stack.
+ * <p>
+ * The value stack and the argument arrays passed to the operators are kept
+ * per thread and reused, so evaluation allocates nothing but the results of
+ * the operators. An expression may be evaluated again while it is being
+ * evaluated, when it references a cell whose formula shares it, so each
+ * nested evaluation takes its own {@link Frame}.
+ * <p>
+ * A compiled expression holds on to the tokens of the stack it was compiled
+ * from, so changes made to the tokens themselves, such as a reference being
+ * given a new location, are seen when it is next evaluated. A token being
+ * replaced or removed in the stack is detected by {@link #isCompiledFrom},
+ * after which the owner compiles the stack again. Expressions which
+ * are not well formed are not compiled; they are delegated to the
+ * interpreter so that they fail in exactly the same way.
+ * <p>
+ * The expression of a shared formula may be compiled as a <em>template</em>
+ * with {@link #compileTemplate}. A template is evaluated for a particular
+ * member cell with {@link #calculatePtg(XLSRecord)}: relative references are
+ * resolved against the cell and the other non-literal tokens are bound to it
+ * as the evaluation reaches them, so the members of the group share one
+ * compiled template rather than each holding its own copy of the expression.
+ * 
+ * @see FormulaCalculator
+ */
+public final class CompiledExpression {
+	private static final Ptg[] NO_ARGS = new Ptg[0];
+
+	/** the evaluation frames of the calling thread */
+	private static final ThreadLocal<Frames> FRAMES = new ThreadLocal<Frames>() {
+		@Override
+		protected Frames initialValue() {
+			return new Frames();
+		}
+	};
+
+	/** marks a token which the calculator can't handle */
+	private static final int UNSUPPORTED = -2;
+	/** marks an operand, which is pushed onto the value stack */
+	private static final int OPERAND = -1;
+
+	private final Stack source;
+	/** the tokens of the source when it was compiled */
+	private final Ptg[] tokens;
+
+	/** the tokens to be evaluated, <code>null</code> if not compiled */
+	private final Ptg[] code;
+	/** per token, the number of values consumed or one of the markers above */
+	private final int[] arity;
+	private final int depth;
+	/** per token, whether it is bound to the calculating cell; only for templates */
+	private final boolean[] bound;
+
+	private CompiledExpression(Stack source, Ptg[] tokens, Ptg[] code,
+			int[] arity, int depth) {
+		this(source, tokens, code, arity, depth, null);
+	}
+
+	private CompiledExpression(Stack source, Ptg[] tokens, Ptg[] code,
+			int[] arity, int depth, boolean[] bound) {
+		this.source = source;
+		this.tokens = tokens;
+		this.code = code;
+		this.arity = arity;
+		this.depth = depth;
+		this.bound = bound;
+	}
+
+	/** Compiles a parsed expression.
+	 * @param expression the Ptg stack of a formula in parse order
+	 */
+	public static CompiledExpression compile(Stack expression) {
+		int sz = expression.size();
+		Ptg[] ptgs = (Ptg[]) expression.toArray(new Ptg[sz]);
+		Ptg[] code = new Ptg[sz];
+		int[] arity = new int[sz];
+		int len = 0, sp = 0, depth = 0;
+
+		for (int i = 0; i < sz; i++) {
+			Ptg p = ptgs[i];
+			int t;
+			if (p.getIsOperator() || p.getIsControl() || p.getIsFunction()) {
+				// the parens are only there for display
+				if (p.getIsControl() && sp > 0 && p.getOpcode() == 0x15)
+					continue;
+				t = getArity(p);
+				if (t > sp) // would underflow, leave it to the interpreter
+					return new CompiledExpression(expression, ptgs, null, null, 0);
+				sp -= t - 1;
+			} else if (p.getIsOperand()) {
+				t = OPERAND;
+				sp++;
+			} else if (p instanceof PtgAtr) {
+				continue;
+			} else {
+				t = UNSUPPORTED;
+			}
+			if (sp > depth)
+				depth = sp;
+			code[len] = p;
+			arity[len] = t;
+			len++;
+			if (t == UNSUPPORTED)
+				break; // evaluation can't get any further
+		}
+		if (sp < 1 && (len == 0 || arity[len - 1] != UNSUPPORTED))
+			return new CompiledExpression(expression, ptgs, null, null, 0);
+
+		if (len < sz) {
+			Ptg[] c = new Ptg[len];
+			int[] a = new int[len];
+			System.arraycopy(code, 0, c, 0, len);
+			System.arraycopy(arity, 0, a, 0, len);
+			code = c;
+			arity = a;
+		}
+		return new CompiledExpression(expression, ptgs, code, arity, depth);
+	}
+
+	/** Compiles the relative expression of a shared formula as a template
+	 * which may be calculated for any of its member cells.
+	 * @param expression the Ptg stack of a shared formula in parse order,
+	 *        which may contain {@link PtgRefN} and {@link PtgAreaN} tokens
+	 * @see #calculatePtg(XLSRecord)
+	 */
+	public static CompiledExpression compileTemplate(Stack expression) {
+		CompiledExpression ce = compile(expression);
+		if (ce.code == null)
+			return new CompiledExpression(expression, ce.tokens, null, null, 0,
+					new boolean[0]);
+		boolean[] bound = new boolean[ce.code.length];
+		for (int i = 0; i < bound.length; i++)
+			bound[i] = !isLiteral(ce.code[i]);
+		return new CompiledExpression(expression, ce.tokens, ce.code, ce.arity,
+				ce.depth, bound);
+	}
+
+	/** Returns whether a token is a constant whose value does not depend on
+	 * the cell it is calculated for, so may be shared between cells.
+	 */
+	private static boolean isLiteral(Ptg p) {
+		return p instanceof PtgInt || p instanceof PtgNumber
+				|| p instanceof PtgStr || p instanceof PtgBool
+				|| p instanceof PtgErr || p instanceof PtgMissArg;
+	}
+
+	/** Binds a token of a shared formula to one of its member cells.
+	 * Relative references are converted to the absolute references they make
+	 * from the cell, any other token is copied and its parent set to the cell.
+	 * @param p the token of the shared formula
+	 * @param cell the member cell the token is calculated for
+	 * @return a token which may be calculated for the cell
+	 */
+	public static Ptg bind(Ptg p, XLSRecord cell) {
+		if (p instanceof PtgRefN)
+			return ((PtgRefN) p).convertToPtgRef(cell);
+		if (p instanceof PtgAreaN)
+			return ((PtgAreaN) p).convertToPtgArea(cell);
+		p = (Ptg) p.clone();
+		p.setParentRec(cell);
+		return p;
+	}
+
+	/** Gets the number of values consumed by an operator token. This must
+	 * agree with {@link FormulaCalculator#handlePtg}.
+	 */
+	private static int getArity(Ptg p) {
+		int t = 0;
+		if (p.getIsBinaryOperator()) t = 2;
+		if (p.getIsUnaryOperator()) t = 1;
+		if (p.getIsStandAloneOperator()) t = 0;
+		int op = p.getOpcode();
+		if (op == 0x22 || op == 0x42 || op == 0x62
+				|| op == 0x21 || op == 0x41 || op == 0x61)
+			t = p.getNumParams();
+		return t;
+	}
+
+	/** Returns whether this was compiled from the given expression and the
+	 * expression still holds the same tokens, so that a token replaced,
+	 * added or removed in place since it was compiled is detected.
+	 */
+	public boolean isCompiledFrom(Stack expression) {
+		if (expression != source)
+			return false;
+		synchronized (expression) {
+			if (expression.size() != tokens.length)
+				return false;
+			for (int i = 0; i < tokens.length; i++)
+				if (expression.elementAt(i) != tokens[i])
+					return false;
+		}
+		return true;
+	}
+
+	/** Calculates the expression.
+	 * @return the value of the resulting Ptg
+	 * @see FormulaCalculator#calculateFormula(Stack)
+	 */
+	public Object calculate() throws FunctionNotSupportedException {
+		return calculatePtg().getValue();
+	}
+
+	/** Calculates a template for one of the cells it applies to.
+	 * @return the value of the resulting Ptg
+	 * @see #calculatePtg(XLSRecord)
+	 */
+	public Object calculate(XLSRecord cell)
+			throws FunctionNotSupportedException {
+		return calculatePtg(cell).getValue();
+	}
+
+	/** Calculates the expression.
+	 * @return the resulting Ptg
+	 * @see FormulaCalculator#calculateFormulaPtg(Stack)
+	 */
+	public Ptg calculatePtg() throws FunctionNotSupportedException {
+		return calculatePtg(null);
+	}
+
+	/** Calculates a template for one of the cells it applies to.
+	 * @param cell the member cell to calculate, ignored unless this was
+	 *        compiled with {@link #compileTemplate}
+	 * @return the resulting Ptg
+	 */
+	public Ptg calculatePtg(XLSRecord cell)
+			throws FunctionNotSupportedException {
+		boolean[] bound = (cell != null ? this.bound : null);
+		if (code == null) {
+			if (bound == null)
+				return FormulaCalculator.calculateFormulaPtg(source);
+			Stack in = new Stack();
+			for (int i = 0; i < source.size(); i++)
+				in.add(bind((Ptg) source.get(i), cell));
+			return FormulaCalculator.calculateFormulaPtg(in);
+		}
+
+		Frames frames = FRAMES.get();
+		Frame frame = frames.enter(depth);
+		try {
+			return evaluate(frame, bound, cell);
+		} finally {
+			Arrays.fill(frame.vals, 0, depth, null);
+			frames.leave();
+		}
+	}
+
+	/** runs the compiled code using the value stack and arguments of a frame */
+	private Ptg evaluate(Frame frame, boolean[] bound, XLSRecord cell)
+			throws FunctionNotSupportedException {
+		Ptg[] vals = frame.vals;
+		int sp = 0;
+		for (int i = 0; i < code.length; i++) {
+			Ptg p = code[i];
+			int t = arity[i];
+			if (bound != null && bound[i])
+				p = bind(p, cell);
+			if (t == OPERAND) {
+				vals[sp++] = p;
+				continue;
+			}
+			if (t == UNSUPPORTED)
+				throw new FunctionNotSupportedException(
+						"WARNING: Calculating Formula failed: Unsupported/Incorrect Ptg Type: 0x"
+						+ p.getOpcode() + " " + p.getString());
+
+			Ptg[] vx = NO_ARGS;
+			if (t > 0) {
+				sp -= t;
+				vx = frame.args(t);
+				System.arraycopy(vals, sp, vx, 0, t);
+			}
+			try {
+				p = p.calculatePtg(vx);
+			} catch (CalculationException e) {
+				p = new PtgErr(e.getErrorCode());
+				if (e.getName().equals("#CIR_ERR!"))
+					((PtgErr) p).setCircularError(true);
+			} finally {
+				Arrays.fill(vx, null);
+			}
+			vals[sp++] = p;
+		}
+		return vals[sp - 1];
+	}
+
+	/** the value stack and argument arrays of one evaluation */
+	private static final class Frame {
+		Ptg[] vals = NO_ARGS;
+		/** argument arrays by arity, reusable once the operator returns */
+		Ptg[][] args = new Ptg[4][];
+
+		Ptg[] args(int n) {
+			if (n >= args.length)
+				args = Arrays.copyOf(args, Math.max(n + 1, args.length * 2));
+			Ptg[] a = args[n];
+			if (a == null)
+				a = args[n] = new Ptg[n];
+			return a;
+		}
+	}
+
+	/** the frames of a thread, one per level of nested evaluation */
+	private static final class Frames {
+		private Frame[] frames = new Frame[4];
+		private int level = 0;
+
+		Frame enter(int depth) {
+			if (level == frames.length)
+				frames = Arrays.copyOf(frames, level * 2);
+			Frame f = frames[level];
+			if (f == null)
+				f = frames[level] = new Frame();
+			if (f.vals.length < depth)
+				f.vals = new Ptg[depth];
+			level++;
+			return f;
+		}
+
+		void leave() {
+			level--;
+		}
+	}
+}
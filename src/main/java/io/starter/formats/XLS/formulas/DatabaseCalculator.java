@@ -128,7 +128,8 @@ public class DatabaseCalculator
 		//Logger.logErr("getDB: " + operands.toString()+ "NOT cached.");
 		Ptg[] dbrange= PtgCalculator.getAllComponents(operands);			
 		DB ret = DB.parseList(dbrange);
-		DBcache.getListDBs().put(operands.toString(),ret);
+		if (ret!=null)
+			DBcache.getListDBs().put(operands.toString(),ret);
 		return ret;
 	}		
 	
@@ -143,7 +144,8 @@ public class DatabaseCalculator
 		//Logger.logErr("getCriteria: " + operands.toString()+ "NOT cached.");
 		Ptg[] criteria = PtgCalculator.getAllComponents(operands);
 		Criteria ret = Criteria.parseCriteria(criteria);
-		DBcache.getCriteriaDBs().put(operands.toString(),ret);
+		if (ret!=null)
+			DBcache.getCriteriaDBs().put(operands.toString(),ret);
 		return ret;
 	}		
 		
@@ -0,0 +1,521 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS.formulas;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.starter.formats.XLS.BiffRec;
+import io.starter.formats.XLS.ColumnRange;
+import io.starter.formats.XLS.ReferenceTracker;
+import io.starter.toolkit.Logger;
+
+/** Search index over the values of a lookup range.
+ * <p>
+ * VLOOKUP, HLOOKUP, MATCH and LOOKUP scan their lookup vector from the top
+ * on every call, reading and parsing each cell as they go, so a column of
+ * lookups against a large table is quadratic. A <code>LookupIndex</code>
+ * reads the vector once and keeps its values together with hash indexes for
+ * exact matches and primitive arrays which are binary searched for
+ * approximate matches when the values are in order. The answers are the
+ * same as those of the linear scans in {@link LookupReferenceCalculator};
+ * where the scan's behaviour depends on the data in ways the index does not
+ * model (mixed types, missing values) the index declines and the scan is
+ * used instead.
+ * <p>
+ * Indexes are cached by the {@link ReferenceTracker} and dropped when a cell
+ * within their range is changed. Ranges containing formulas are not
+ * indexed as their values may change without the cells being edited.
+ * 
+ * @see ReferenceTracker#invalidateLookupIndexes(BiffRec)
+ */
+public final class LookupIndex {
+	/** returned by the search methods when the index can't answer */
+	public static final int NOT_INDEXED = -2;
+	/** returned by the search methods when there is no match */
+	public static final int NOT_FOUND = -1;
+
+	private final String sheetName;
+	private final int firstRow, firstCol, lastRow, lastCol;
+
+	/** the cell values in vector order, <code>null</code> if not indexable */
+	private final Object[] values;
+	/** whether each position refers to a cell which does not exist */
+	private final boolean[] blank;
+
+	// search structures, built on first use
+	private Numbers numbers, numbersSkipBlanks;
+	private Map strings;
+	private boolean comparable, comparableChecked;
+	private boolean ascending, descending;
+	private Map exact;
+	private double[] doubles;
+	private boolean doublesChecked, doublesAscending;
+
+	/** the numeric entries of the vector in order */
+	private static final class Numbers {
+		int[] pos;
+		double[] vals;
+		int n;
+		boolean ascending = true;
+		Map exact;
+	}
+
+	private LookupIndex(String sheetName, int[] bounds, Object[] values,
+			boolean[] blank) {
+		this.sheetName = sheetName;
+		this.firstRow = bounds[0];
+		this.firstCol = bounds[1];
+		this.lastRow = bounds[2];
+		this.lastCol = bounds[3];
+		this.values = values;
+		this.blank = blank;
+	}
+
+	/** Gets the index for a column of an area, as used by VLOOKUP. */
+	public static LookupIndex getColumnIndex(PtgArea area, int col) {
+		String key = area.toString() + ":c" + col;
+		LookupIndex idx = lookup(area, key);
+		if (idx == null)
+			idx = store(area, key, buildVector(area, col, true));
+		return idx;
+	}
+
+	/** Gets the index for a row of an area, as used by HLOOKUP. */
+	public static LookupIndex getRowIndex(PtgArea area, int row) {
+		String key = area.toString() + ":r" + row;
+		LookupIndex idx = lookup(area, key);
+		if (idx == null)
+			idx = store(area, key, buildVector(area, row, false));
+		return idx;
+	}
+
+	/** Gets the index for all cells of an area in component order, as used
+	 * by MATCH and LOOKUP. */
+	public static LookupIndex getAreaIndex(PtgArea area) {
+		String key = area.toString() + ":a";
+		LookupIndex idx = lookup(area, key);
+		if (idx == null)
+			idx = store(area, key, build(area.getComponents()));
+		return idx;
+	}
+
+	private static ReferenceTracker getRefTracker(PtgArea area) {
+		if (area.getParentRec() == null
+				|| area.getParentRec().getWorkBook() == null)
+			return null;
+		return area.getParentRec().getWorkBook().getRefTracker();
+	}
+
+	private static LookupIndex lookup(PtgArea area, String key) {
+		ReferenceTracker rt = getRefTracker(area);
+		if (rt == null)
+			return null;
+		return (LookupIndex) rt.getLookupIndexes().get(key);
+	}
+
+	private static LookupIndex store(PtgArea area, String key, LookupIndex idx) {
+		ReferenceTracker rt = getRefTracker(area);
+		if (idx != null && rt != null)
+			rt.getLookupIndexes().put(key, idx);
+		return idx;
+	}
+
+	/** Reads the values of a row or column of an area, creating the
+	 * references one at a time rather than as a component array.
+	 * @param down whether <code>line</code> is a column
+	 */
+	static LookupIndex buildVector(PtgArea area, int line, boolean down) {
+		int[] b = area.getComponentBounds();
+		int first = down ? b[0] : b[1];
+		int last = down ? b[2] : b[3];
+		if (down && last < first)	// as getColComponents does for whole columns
+			last = first;
+		if (line < 0 || (!down && (line < b[0] || line > b[2])))
+			return null;
+		int n = last - first + 1;
+		if (n <= 0)
+			return null;
+		Builder bld = new Builder(n);
+		for (int i = 0; i < n; i++) {
+			PtgRef ref = down ? area.getComponent(first + i, line)
+					: area.getComponent(line, first + i);
+			bld.add(i, ref);
+		}
+		return bld.finish();
+	}
+
+	/** Reads the values of a vector of references. */
+	static LookupIndex build(Ptg[] components) {
+		if (components == null || components.length == 0)
+			return null;
+		Builder bld = new Builder(components.length);
+		for (int i = 0; i < components.length; i++) {
+			if (!(components[i] instanceof PtgRef))
+				return null;
+			bld.add(i, (PtgRef) components[i]);
+		}
+		return bld.finish();
+	}
+
+	/** Collects the values and bounds of the entries of a vector. */
+	private static final class Builder {
+		final Object[] values;
+		final boolean[] blank;
+		final int[] bounds = { Integer.MAX_VALUE, Integer.MAX_VALUE, -1, -1 };
+		String sheet;
+		boolean indexable = true;
+
+		Builder(int n) {
+			values = new Object[n];
+			blank = new boolean[n];
+		}
+
+		void add(int i, PtgRef ref) {
+			int[] rc = ref.getIntLocation();
+			bounds[0] = Math.min(bounds[0], rc[0]);
+			bounds[1] = Math.min(bounds[1], rc[1]);
+			bounds[2] = Math.max(bounds[2], rc[0]);
+			bounds[3] = Math.max(bounds[3], rc[1]);
+			if (!indexable)
+				return;
+			if (i == 0) {
+				try {
+					sheet = ref.getSheetName();
+				} catch (Exception e) {
+					Logger.logWarn("LookupIndex: unable to resolve sheet of "
+							+ ref + ": " + e);
+				}
+			}
+			BiffRec cell = ref.getRefCells()[0];
+			if (cell != null && cell.getFormulaRec() != null) {
+				// keep the bounds so the entry is dropped on an edit
+				indexable = false;
+				return;
+			}
+			values[i] = ref.getValue();
+			blank[i] = cell == null;
+		}
+
+		LookupIndex finish() {
+			if (!indexable)
+				return new LookupIndex(sheet, bounds, null, null);
+			return new LookupIndex(sheet, bounds, values, blank);
+		}
+	}
+
+	/** Returns whether a changed cell lies within the indexed range.
+	 * @param sheet the qualified name of the sheet of the cell
+	 */
+	public boolean covers(String sheet, BiffRec cell) {
+		int row = cell.getRowNumber();
+		if (row < firstRow || row > lastRow)
+			return false;
+		int first = cell.getColNumber(), last = first;
+		if (cell instanceof ColumnRange) {
+			first = ((ColumnRange) cell).getColFirst();
+			last = Math.max(((ColumnRange) cell).getColLast(), first);
+		}
+		if (last < firstCol || first > lastCol)
+			return false;
+		return sheetName == null || sheet == null || sheetName.equals(sheet);
+	}
+
+	/** Returns whether an area of changed cells overlaps the indexed range.
+	 * @param sheet the qualified name of the sheet of the area
+	 */
+	public boolean intersects(String sheet, int firstRow, int firstCol, int lastRow, int lastCol) {
+		if (lastRow < this.firstRow || firstRow > this.lastRow
+				|| lastCol < this.firstCol || firstCol > this.lastCol)
+			return false;
+		return sheetName == null || sheet == null || sheetName.equals(sheet);
+	}
+
+	/** Returns whether the values of the range could be indexed. */
+	public boolean isIndexed() {
+		return values != null;
+	}
+
+	/** Gets the number of entries in the vector. */
+	public int size() {
+		return values == null ? 0 : values.length;
+	}
+
+	/** Gets the string form of the value at a position, as
+	 * <code>getValue().toString()</code>, or <code>null</code> if the value
+	 * is <code>null</code>. */
+	public String getString(int pos) {
+		Object o = values[pos];
+		return o == null ? null : o.toString();
+	}
+
+	/** Finds a number as the VLOOKUP and HLOOKUP scans do. Entries which do
+	 * not parse as numbers are ignored. An exact match returns the first
+	 * equal entry. An approximate match returns the first equal entry, the
+	 * entry before the first one greater than the number or the last entry.
+	 * @param skipBlanks whether zeros read from missing cells are ignored
+	 * @return the position, {@link #NOT_FOUND} or {@link #NOT_INDEXED}
+	 */
+	public int findNumber(double match, boolean approximate, boolean skipBlanks) {
+		Numbers nv = getNumbers(skipBlanks);
+		if (nv == null)
+			return NOT_INDEXED;
+		if (!approximate) {
+			if (Double.isNaN(match))
+				return NOT_FOUND;
+			Integer pos = (Integer) nv.exact.get(Double.valueOf(normalize(match)));
+			return pos == null ? NOT_FOUND : pos.intValue();
+		}
+
+		int k;
+		if (nv.ascending && !Double.isNaN(match)) {
+			// first entry not less than the number
+			int lo = 0, hi = nv.n;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (nv.vals[mid] < match)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			k = lo;
+		} else {
+			for (k = 0; k < nv.n; k++)
+				if (nv.vals[k] == match || nv.vals[k] > match)
+					break;
+		}
+		if (k == nv.n)
+			return values.length - 1;
+		if (nv.vals[k] == match)
+			return nv.pos[k];
+		return nv.pos[k] == 0 ? NOT_FOUND : nv.pos[k] - 1;
+	}
+
+	private synchronized Numbers getNumbers(boolean skipBlanks) {
+		if (values == null)
+			return null;
+		Numbers nv = skipBlanks ? numbersSkipBlanks : numbers;
+		if (nv != null)
+			return nv.pos == null ? null : nv;
+
+		nv = new Numbers();
+		int len = values.length;
+		int[] pos = new int[len];
+		double[] vals = new double[len];
+		int n = 0;
+		Map exact = new HashMap();
+		boolean indexable = true;
+		for (int i = 0; i < len; i++) {
+			if (values[i] == null) { // the scan would fail on this
+				indexable = false;
+				break;
+			}
+			double d;
+			try {
+				d = Double.parseDouble(values[i].toString());
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			if (skipBlanks && d == 0 && blank[i])
+				continue;
+			if (n > 0 && !(vals[n - 1] <= d))
+				nv.ascending = false;
+			if (Double.isNaN(d))
+				nv.ascending = false;
+			else {
+				Double key = Double.valueOf(normalize(d));
+				if (!exact.containsKey(key))
+					exact.put(key, Integer.valueOf(i));
+			}
+			pos[n] = i;
+			vals[n] = d;
+			n++;
+		}
+		if (indexable) {
+			nv.pos = pos;
+			nv.vals = vals;
+			nv.n = n;
+			nv.exact = exact;
+		}
+		if (skipBlanks)
+			numbersSkipBlanks = nv;
+		else
+			numbers = nv;
+		return indexable ? nv : null;
+	}
+
+	/** folds negative zero, which is <code>==</code> but not equal to zero */
+	private static double normalize(double d) {
+		return d == 0 ? 0.0 : d;
+	}
+
+	/** Finds the first entry equal to a string ignoring case, as
+	 * {@link String#equalsIgnoreCase(String)}.
+	 * @return the position or {@link #NOT_FOUND}
+	 */
+	public int findStringIgnoreCase(String match) {
+		Map m = getStrings();
+		Integer pos = (Integer) m.get(fold(match));
+		return pos == null ? NOT_FOUND : pos.intValue();
+	}
+
+	private synchronized Map getStrings() {
+		if (strings == null) {
+			Map m = new HashMap();
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] == null)
+					continue;
+				String key = fold(values[i].toString());
+				if (!m.containsKey(key))
+					m.put(key, Integer.valueOf(i));
+			}
+			strings = m;
+		}
+		return strings;
+	}
+
+	/** maps each char as String.equalsIgnoreCase compares them */
+	private static String fold(String s) {
+		char[] c = s.toCharArray();
+		for (int i = 0; i < c.length; i++)
+			c[i] = Character.toLowerCase(Character.toUpperCase(c[i]));
+		return new String(c);
+	}
+
+	/** Finds a value as the MATCH scan does. Only answers when every entry
+	 * and the lookup value are of the same class, for which the scan
+	 * compares them with <code>compareTo</code>.
+	 * @param matchType 0 for the first equal entry, 1 for the last entry
+	 * not greater than the value in an ascending vector, -1 for the last
+	 * entry not less than the value in a descending vector
+	 * @return the one based position, 0 if there is no match or the vector
+	 * is out of order, or {@link #NOT_INDEXED}
+	 */
+	public int match(Object lookupValue, int matchType) {
+		if (values == null || lookupValue == null || values.length == 0
+				|| matchType < -1 || matchType > 1)
+			return NOT_INDEXED;
+		if (!checkComparable() || values[0].getClass() != lookupValue.getClass())
+			return NOT_INDEXED;
+
+		if (matchType == 0) {
+			Integer pos = (Integer) exact.get(lookupValue);
+			return pos == null ? 0 : pos.intValue() + 1;
+		}
+		// matchType 1 requires ascending order, -1 descending
+		if (matchType == 1 ? !ascending : !descending)
+			return 0;
+		// count of the leading entries on the matching side of the value
+		int lo = 0, hi = values.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int c = compare(values[mid], lookupValue);
+			if (matchType == 1 ? c <= 0 : c >= 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/** checks that the entries are all of one comparable class, building
+	 * the exact match index and noting their order if they are */
+	private synchronized boolean checkComparable() {
+		if (!comparableChecked) {
+			comparableChecked = true;
+			Class type = values[0] == null ? null : values[0].getClass();
+			comparable = type == Integer.class || type == Double.class
+					|| type == Boolean.class || type == String.class;
+			for (int i = 1; comparable && i < values.length; i++)
+				if (values[i] == null || values[i].getClass() != type)
+					comparable = false;
+			if (comparable) {
+				Map m = new HashMap();
+				ascending = true;
+				descending = true;
+				for (int i = 0; i < values.length; i++) {
+					if (!m.containsKey(values[i]))
+						m.put(values[i], Integer.valueOf(i));
+					if (i > 0) {
+						int c = compare(values[i - 1], values[i]);
+						if (c > 0)
+							ascending = false;
+						else if (c < 0)
+							descending = false;
+					}
+				}
+				exact = m;
+			}
+		}
+		return comparable;
+	}
+
+	private static int compare(Object a, Object b) {
+		return ((Comparable) a).compareTo(b);
+	}
+
+	/** Finds the first entry greater than a number, as the vector LOOKUP
+	 * scan does. Only answers when every entry is a number.
+	 * @return the position, the size if there is none, or
+	 * {@link #NOT_INDEXED}
+	 */
+	public int findFirstGreater(double match) {
+		double[] d = getDoubles();
+		if (d == null)
+			return NOT_INDEXED;
+		int n = d.length;
+		if (!doublesAscending) {
+			for (int i = 0; i < n; i++)
+				if (Double.compare(match, d[i]) < 0)
+					return i;
+			return n;
+		}
+		int lo = 0, hi = n;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (Double.compare(d[mid], match) <= 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	private synchronized double[] getDoubles() {
+		if (!doublesChecked && values != null) {
+			doublesChecked = true;
+			double[] d = new double[values.length];
+			for (int i = 0; i < d.length; i++) {
+				if (!(values[i] instanceof Number))
+					return null;
+				d[i] = ((Number) values[i]).doubleValue();
+			}
+			boolean asc = true;
+			for (int i = 1; i < d.length && asc; i++)
+				asc = Double.compare(d[i - 1], d[i]) <= 0;
+			doublesAscending = asc;
+			doubles = d;
+		}
+		return doubles;
+	}
+}
@@ -282,28 +282,36 @@ public class LookupReferenceCalculator
 		WorkBook bk = table_array.getParentRec().getWorkBook();
 		PtgRef[] lookupComponents = null;
 		PtgRef[] valueComponents = null;
+		LookupIndex index = null;
+		PtgArea pa = null;
+		int firstrow = 0;
 		// first, get the lookup Column Vals
 		if(table_array instanceof PtgName){
 			// Handle getting vals out of name
 
 		}else if (table_array instanceof PtgArea || table_array instanceof PtgArea3d){
 			try{
-				PtgArea pa = (PtgArea)table_array;
+				pa = (PtgArea)table_array;
 				int[] range = table_array.getIntLocation();
 
 				//				 TODO: check rc sanity here
-				int firstrow = range[0];
-				lookupComponents = (PtgRef[])pa.getRowComponents(firstrow);
-				valueComponents = (PtgRef[])pa.getRowComponents(firstrow + rowNum);
+				firstrow = range[0];
+				index = LookupIndex.getRowIndex(pa, firstrow);
+				if (index != null && (!index.isIndexed() || index.size() == 0))
+					index = null;	// scan the components instead
+				if (index == null) {
+					lookupComponents = (PtgRef[])pa.getRowComponents(firstrow);
+					valueComponents = (PtgRef[])pa.getRowComponents(firstrow + rowNum);
+				}
 			}catch(/*20070209 KSC: FormulaNotFound*/Exception e){
 				Logger.logWarn("Error in LookupReferenceCalculator: Cannot determine PtgArea location. " +e);}
 
 		}
 		// error check
-		if (lookupComponents == null || lookupComponents.length == 0)return new PtgErr(PtgErr.ERROR_REF);
+		if (index == null && (lookupComponents == null || lookupComponents.length == 0))return new PtgErr(PtgErr.ERROR_REF);
 		// lets check if we are dealing with strings or numbers....
 		try{
-			String val = lookupComponents[0].getValue().toString();
+			String val = (index != null)? index.getString(0) : lookupComponents[0].getValue().toString();
 			Double d = new Double(val);
 		}catch(NumberFormatException e){
 			isNumber=false;
@@ -318,6 +326,20 @@ public class LookupReferenceCalculator
 				return new PtgErr( PtgErr.ERROR_NA );
 			}
 
+			if (index != null) {
+				int i = index.findNumber(match_num, sorted, false);
+				if (i == LookupIndex.NOT_FOUND)
+					return new PtgErr( PtgErr.ERROR_NA );
+				int[] b = pa.getComponentBounds();
+				if (i != LookupIndex.NOT_INDEXED) {
+					if (rowNum < 0 || firstrow + rowNum > b[2])
+						return new PtgErr( PtgErr.ERROR_REF );
+					return pa.getComponent(firstrow + rowNum, b[1] + i).getPtgVal();
+				}
+				lookupComponents = (PtgRef[])pa.getRowComponents(firstrow);
+				valueComponents = (PtgRef[])pa.getRowComponents(firstrow + rowNum);
+			}
+
 			for (int i = 0; i < lookupComponents.length; i++){
 				double val;
 				try {
@@ -606,7 +628,19 @@ public class LookupReferenceCalculator
     public static Ptg calcLookup(Ptg[] operands) {
     	String lookup= operands[0].getValue().toString().toUpperCase();
     	if (operands.length>2) { //normal version of lookup
-        	Ptg[] vector= operands[1].getComponents();
+    		// a numeric lookup in a vector of numbers can use the index
+    		int found= LookupIndex.NOT_INDEXED;
+    		if (operands[1] instanceof PtgArea) {
+    			LookupIndex index= LookupIndex.getAreaIndex((PtgArea) operands[1]);
+    			if (index!=null) {
+    				try {
+    					found= index.findFirstGreater(new Double(lookup).doubleValue());
+    				} catch (NumberFormatException e) {
+    					; // compared as a date or string below
+    				}
+    			}
+    		}
+        	Ptg[] vector= (found==LookupIndex.NOT_INDEXED)? operands[1].getComponents() : null;
 	    	Ptg[] returnvector= operands[2].getComponents();
 	    	if (returnvector==null) // happens when operands[2] is a PtgRef
 	    		return new PtgNumber(0);	// this is what excel does
@@ -614,11 +648,17 @@ public class LookupReferenceCalculator
 	    	//If the LOOKUP function can't find the lookup_value, the function matches the largest value in lookup_vector that is less than or equal to lookup_value. 
 	    	//If lookup_value is smaller than the smallest value in lookup_vector, LOOKUP returns the #N/A error value
 	    	Object retval= null;
-	    	for (int i= 0; i < vector.length; i++) {
-	    		if (Calculator.compareCellValue(vector[i].getValue(), lookup, ">"))	
-	    			break;
-	    		if (i < returnvector.length)
+	    	if (vector==null) {
+	    		int i= Math.min(found, returnvector.length) - 1;
+	    		if (i >= 0)
 	    			retval= returnvector[i].getValue();
+	    	} else {
+		    	for (int i= 0; i < vector.length; i++) {
+		    		if (Calculator.compareCellValue(vector[i].getValue(), lookup, ">"))	
+		    			break;
+		    		if (i < returnvector.length)
+		    			retval= returnvector[i].getValue();
+		    	}
 	    	}
 	    	if (retval instanceof Number)
 	    		return new PtgNumber(((Number) retval).doubleValue());
@@ -743,6 +783,14 @@ public class LookupReferenceCalculator
 			} 
 			if (lookupArray  instanceof PtgArea){
 				PtgArea pa = (PtgArea)lookupArray;
+				LookupIndex index= LookupIndex.getAreaIndex(pa);
+				if (index!=null) {
+					int pos= index.match(lookupValue, matchType);
+					if (pos > 0)
+						return new PtgInt(pos);
+					if (pos==0)
+						return new PtgErr(PtgErr.ERROR_NA);
+				}
 				values = pa.getComponents();
 			}else if (lookupArray instanceof PtgMemFunc) { 
 	            PtgMemFunc pa = (PtgMemFunc)lookupArray;
@@ -1181,6 +1229,9 @@ public class LookupReferenceCalculator
 	
 			PtgRef[] lookupComponents = null;
 			PtgRef[] valueComponents = null;
+			LookupIndex index = null;
+			PtgArea indexed = null;
+			int firstcol = -1;
 			// first, get the lookup Column Vals
 			if(table_array instanceof PtgName){	// 20090211 KSC: 
 				PtgArea3d pa= new PtgArea3d(false);
@@ -1198,9 +1249,15 @@ public class LookupReferenceCalculator
 					PtgArea pa = (PtgArea)table_array;
 					int[] range = table_array.getIntLocation();					
 		//			 TODO: check rc sanity here
-					int firstcol = range[1] ;
-					lookupComponents = (PtgRef[])pa.getColComponents(firstcol);
-					valueComponents = (PtgRef[])pa.getColComponents(firstcol + colNum);
+					firstcol = range[1] ;
+					index = LookupIndex.getColumnIndex(pa, firstcol);
+					if (index != null && (!index.isIndexed() || index.size() == 0))
+						index = null;	// scan the components instead
+					if (index == null) {
+						lookupComponents = (PtgRef[])pa.getColComponents(firstcol);
+						valueComponents = (PtgRef[])pa.getColComponents(firstcol + colNum);
+					} else
+						indexed = pa;
 				}catch(/*20070209 KSC: FormulaNotFound*/Exception e){
 					Logger.logWarn("LookupReferenceCalculator.calcVlookup cannot determine PtgArea location. " +e);}
 				
@@ -1208,8 +1265,6 @@ public class LookupReferenceCalculator
 	            try{
 	                PtgMemFunc pa = (PtgMemFunc)table_array;
 	               // int[] range = table_array.getIntLocation();
-	                int firstcol = -1;
-	
 	                try{
 	                    int[] rc1 = pa.getFirstloc().getIntLocation();
 	
@@ -1225,7 +1280,7 @@ public class LookupReferenceCalculator
 	        	Logger.logWarn("LookupReferenceCalculator.calcVlookup cannot determine PtgArea location. " +e);}
 	        }
 			// error check
-			if (lookupComponents==null || lookupComponents.length==0)
+			if (index==null && (lookupComponents==null || lookupComponents.length==0))
                 return new PtgErr(PtgErr.ERROR_REF);
 			if (lookup_value==null || lookup_value.getValue()==null) // 20070221 KSC: Error trap getValue
                 return new PtgErr(PtgErr.ERROR_NULL);
@@ -1251,6 +1306,16 @@ public class LookupReferenceCalculator
                     return new PtgErr(PtgErr.ERROR_NA);
 				}
 				
+				if (index != null) {
+					int i = index.findNumber(match_num, rangeLookup, true);
+					if (i == LookupIndex.NOT_FOUND)
+						return new PtgErr( PtgErr.ERROR_NA );
+					if (i != LookupIndex.NOT_INDEXED)
+						return indexed.getComponent(indexed.getComponentBounds()[0] + i, firstcol + colNum).getPtgVal();
+					lookupComponents = (PtgRef[])indexed.getColComponents(firstcol);
+					valueComponents = (PtgRef[])indexed.getColComponents(firstcol + colNum);
+				}
+				
 				for (int i = 0; i < lookupComponents.length; i++) {
 					double val;
 					
@@ -1282,11 +1347,15 @@ public class LookupReferenceCalculator
 			// It's a String
 			else {
 				if (rangeLookup){	// approximate match
+					if (index != null) {
+						lookupComponents = (PtgRef[])indexed.getColComponents(firstcol);
+						valueComponents = (PtgRef[])indexed.getColComponents(firstcol + colNum);
+					}
 					String match_str = lookup_value.getValue().toString();
 	                int match_len = match_str.length();
 	                for (int i=0;i<lookupComponents.length;i++) {
 	                	try {
-		                    String val = lookupComponents[i].getValue().toString();
+		                    String val = (index != null)? index.getString(i) : lookupComponents[i].getValue().toString();
 		                    if (val.equalsIgnoreCase(match_str)) {// we found it
 		                        return valueComponents[i].getPtgVal();
 		                    }else if (val.length()>=match_len && val.substring(0, match_len).equalsIgnoreCase(match_str)) { // matches up to length, but not all, return previous
@@ -1300,6 +1369,14 @@ public class LookupReferenceCalculator
 	                }
 				} else{ // unsorted
                     String match_str = lookup_value.getValue().toString();
+                    if (index != null) {
+                    	int i = index.findStringIgnoreCase(match_str);
+                    	if (i != LookupIndex.NOT_FOUND)
+                    		return indexed.getComponent(indexed.getComponentBounds()[0] + i, firstcol + colNum).getPtgVal();
+                    	if (index.getString(index.size() -1) != null)
+                    		return new PtgErr(PtgErr.ERROR_NA);
+                    	return new PtgErr(PtgErr.ERROR_NULL);	// as when the scan ends on a missing value
+                    }
 	                for (int i=0;i<lookupComponents.length;i++) {
 	                	try {
 		                    String val = lookupComponents[i].getValue().toString();
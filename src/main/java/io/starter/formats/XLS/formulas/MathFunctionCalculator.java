@@ -1110,6 +1110,30 @@ Returns a subtotal in a list or database
 				// stores the cells that pass the criteria expression and therefore will be summed up
 				ArrayList passesList= new ArrayList();
 				
+				// ranges are read directly where possible rather than as a Ptg per cell
+				RangeValues rv= RangeValues.of(range);
+				RangeValues sumrv= (sum_range!=null && rv!=null)? RangeValues.of(sum_range): null;
+				if (rv!=null && (sum_range==null || (sumrv!=null && sumrv.size()>=rv.size()))) {
+					if (sumrv==null)
+						sumrv= rv;
+					double ret= 0.0;
+					for (int i= 0; i < rv.size(); i++) {
+						boolean passes= false;
+						try {
+							passes= Calculator.compareCellValue(rv.getValue(i), sCriteria, op);
+						} catch (Exception e) {	// don't report error
+						}
+						if (passes) {
+							try {
+								ret+= sumrv.getDoubleVal(i);
+							} catch (Exception e) {
+								Logger.logErr("MathFunctionCalculator.calcSumif:  error obtaining cell value: " + e.toString());
+							}
+						}
+					}
+					return new PtgNumber(ret);
+				}
+				
 				// test criteria for all cells in range, storing those cells (or sum_range cells) 
 				// that pass in passesList
 				Ptg[] cells= range.getComponents();
@@ -1237,6 +1261,35 @@ Returns the sum of the products of corresponding array components
 protected static Ptg calcSumproduct(Ptg[] operands){
 	double res= 0;
 	int dim= 0;	// all arrays must have same dimension see below
+	RangeValues[] views= new RangeValues[operands.length];
+	for (int i= 0; i < operands.length && views!=null; i++) {
+		views[i]= RangeValues.of(operands[i]);
+		if (views[i]==null || views[i].size()!=views[0].size())
+			views= null;
+	}
+	if (views!=null && views.length > 0) {	// all ranges of one size: read the values directly
+		dim= views[0].size();
+		for (int j= 0; j < dim; j++) {
+			double d= 1;
+			for (int i= 0; i < views.length; i++) {
+				if (views[i].isNumber(j)) {
+					d=d*views[i].getNumber(j);
+					continue;
+				}
+				Object o= views[i].getValue(j);
+				if (o instanceof Double)
+					d=d*((Double) o).doubleValue();
+				else if (o instanceof Integer)
+					d=d*((Integer) o).intValue();
+				else if (o instanceof Float)
+					d=d*((Float) o).floatValue();
+				else
+					d= 0;	// non-numeric values are treated as 0's
+			}
+			res+=d;
+		}
+		return new PtgNumber(res);
+	}
 	ArrayList arrays= new ArrayList();
 	for (int i= 0; i < operands.length; i++) {
 		if (operands[i] instanceof PtgErr)  return new PtgErr(PtgErr.ERROR_NA);	// it's what excel does
@@ -124,6 +124,91 @@ public class PtgArea extends PtgRef implements Ptg{
 public Ptg[] getComponents(){
     Vector v = new Vector();
     try{
+        int[] bounds = this.getComponentBounds();
+        int startrow = bounds[0];
+        int startcol = bounds[1];
+        int endrow = bounds[2];
+        int endcol = bounds[3];
+        
+        // usually don't need to set sheet on setlocation becuase uses parent_rec's sheet
+        // cases of named range or if location sheet does not = parent_rec sheet, set sheet explicitly
+        String sht= null;	// usual case, don't need to set sheet
+    	Boundsheet sh= parent_rec.getSheet(); 
+        if (sh==null || (this.sheetname!=null && !this.sheetname.equals(sh.getSheetName()))) {
+        	if (sh==null || !GenericPtg.qualifySheetname(this.sheetname).equals(GenericPtg.qualifySheetname(sh.getSheetName())))
+        			sht= this.sheetname + "!";
+        }
+        // loop through the cols
+        for (;startcol<=endcol;startcol++){
+            // loop through the rows inside
+            int rowholder = startrow;
+            for (;rowholder<=endrow;rowholder++){
+                String displaycol = ExcelTools.getAlphaVal(startcol);
+                int displayrow = rowholder+1;
+                PtgRef pref;
+                if (sht==null)
+                	pref = new PtgRef(displaycol+displayrow, parent_rec, false);
+                else
+                	pref = new PtgRef(sht + displaycol+displayrow, parent_rec, false);
+                v.add(pref);
+            }
+        }
+    }catch (Exception e){
+        Logger.logErr("calculating formula range value failed.", e);
+    }
+    PtgRef[] pref = new PtgRef[v.size()];
+    v.toArray(pref);         
+    return pref;             
+}
+
+/** Gets the values of the cells of this area in component order without
+ * creating a Ptg per cell.
+ * 
+ * @return the values, or <code>null</code> if they can't be read directly
+ * 		and {@link #getComponents()} must be used
+ */
+public RangeValues getRangeValues() {
+	try {
+		int[] bounds = this.getComponentBounds();
+		Boundsheet sheet = this.getComponentSheet();
+		if (bounds == null || sheet == null)
+			return null;
+		return RangeValues.read(sheet, bounds[0], bounds[1], bounds[2], bounds[3], parent_rec);
+	} catch (Exception e) {
+		return null;
+	}
+}
+
+/** Gets a reference to one cell of this area, qualified with its sheet
+ * as the references returned by {@link #getComponents()} are.
+ */
+PtgRef getComponent(int row, int col) {
+	String loc= ExcelTools.getAlphaVal(col) + (row+1);
+	Boundsheet sh= parent_rec.getSheet();
+	if (sh==null || (this.sheetname!=null && !this.sheetname.equals(sh.getSheetName()))) {
+		if (sh==null || !GenericPtg.qualifySheetname(this.sheetname).equals(GenericPtg.qualifySheetname(sh.getSheetName())))
+			loc= this.sheetname + "!" + loc;
+	}
+	return new PtgRef(loc, parent_rec, false);
+}
+
+/** Gets the sheet the components of this area refer to.
+ * @return the sheet, or <code>null</code> if it can't be resolved
+ */
+protected Boundsheet getComponentSheet() throws Exception {
+	Boundsheet sh= parent_rec.getSheet(); 
+    if (sh==null || (this.sheetname!=null && !this.sheetname.equals(sh.getSheetName()))) {
+    	if (sh==null || !GenericPtg.qualifySheetname(this.sheetname).equals(GenericPtg.qualifySheetname(sh.getSheetName())))
+    		return parent_rec.getWorkBook().getWorkSheetByName(this.sheetname);
+    }
+    return sh;
+}
+
+/** Gets the bounds of the cells of this area as returned by
+ * {@link #getComponents()}.
+ * @return firstRow, firstCol, lastRow, lastCol
+ */
+protected int[] getComponentBounds() {
 //       TODO: check rc sanity here
         int startcol = -1;
         int startrow = -1;
@@ -160,36 +245,7 @@ public Ptg[] getComponents(){
             endcol = endloc[3];
             endrow = endloc[2];
         }
-        
-        // usually don't need to set sheet on setlocation becuase uses parent_rec's sheet
-        // cases of named range or if location sheet does not = parent_rec sheet, set sheet explicitly
-        String sht= null;	// usual case, don't need to set sheet
-    	Boundsheet sh= parent_rec.getSheet(); 
-        if (sh==null || (this.sheetname!=null && !this.sheetname.equals(sh.getSheetName()))) {
-        	if (sh==null || !GenericPtg.qualifySheetname(this.sheetname).equals(GenericPtg.qualifySheetname(sh.getSheetName())))
-        			sht= this.sheetname + "!";
-        }
-        // loop through the cols
-        for (;startcol<=endcol;startcol++){
-            // loop through the rows inside
-            int rowholder = startrow;
-            for (;rowholder<=endrow;rowholder++){
-                String displaycol = ExcelTools.getAlphaVal(startcol);
-                int displayrow = rowholder+1;
-                PtgRef pref;
-                if (sht==null)
-                	pref = new PtgRef(displaycol+displayrow, parent_rec, false);
-                else
-                	pref = new PtgRef(sht + displaycol+displayrow, parent_rec, false);
-                v.add(pref);
-            }
-        }
-    }catch (Exception e){
-        Logger.logErr("calculating formula range value failed.", e);
-    }
-    PtgRef[] pref = new PtgRef[v.size()];
-    v.toArray(pref);         
-    return pref;             
+        return new int[] {startrow, startcol, endrow, endcol};
 }
 
 	
@@ -765,8 +821,10 @@ public Ptg[] getComponents(){
 	    }
 	    
 	    // cache
-	    parent_rec.getWorkBook().getRefTracker().getVlookups().put(this.toString(),this);
-	    parent_rec.getWorkBook().getRefTracker().getLookupColCache().put(lu+":"+Integer.valueOf(colNum),v);
+	    if (v!=null) {
+	    	parent_rec.getWorkBook().getRefTracker().getVlookups().put(this.toString(),this);
+	    	parent_rec.getWorkBook().getRefTracker().getLookupColCache().put(lu+":"+Integer.valueOf(colNum),v);
+	    }
 	    return v;             
 	}
     /**
@@ -775,6 +833,14 @@ public Ptg[] getComponents(){
      * @return all Ptg's within colNum
      */
     public Ptg[] getRowComponents(int rowNum){
+		String lu = this.toString();
+		Object o = parent_rec.getWorkBook().getRefTracker().getVlookups().get(lu);
+		if(o!=null) {
+			Ptg[] ret = (Ptg[])parent_rec.getWorkBook()
+				.getRefTracker().getLookupColCache().get(lu+":r"+Integer.valueOf(rowNum));
+			if(ret!=null)
+				return ret;
+		}
         FastAddVector v = new FastAddVector();
     	Ptg[] allComponents = this.getComponents();
     	for(int i=0;i<allComponents.length;i++){
@@ -785,6 +851,9 @@ public Ptg[] getComponents(){
     	}
         PtgRef[] pref = new PtgRef[v.size()];
         v.toArray(pref);
+        // cache, as for column components
+    	parent_rec.getWorkBook().getRefTracker().getVlookups().put(lu,this);
+    	parent_rec.getWorkBook().getRefTracker().getLookupColCache().put(lu+":r"+Integer.valueOf(rowNum),pref);
         return pref; 
     }
 	/**
@@ -628,32 +628,10 @@ public class PtgArea3d extends PtgArea implements Ptg, IxtiListener{
 				sht = this.toString();
 				sht = sht.substring(0,sht.indexOf("!")) + "!";
 			}
-			int startrow=0, startcol=0, endrow=0, endcol=0;
-			if (!this.wholeCol && !this.wholeRow) { // normal case
-//				 TODO: check rc sanity here
-				int[] startloc= firstPtg.getRealIntLocation();	// Get Actual Coordinates
-				startcol = startloc[1];
-				startrow = startloc[0];
-				int[] endloc = lastPtg.getRealIntLocation();	// Get Actual Coordinates
-				endcol = endloc[1];
-				endrow = endloc[0];
-			} else if (this.wholeRow) {		// like $1:$1
-				startcol= 0;
-				try {
-					endcol= this.getSheet().getMaxCol();
-				} catch (NullPointerException ne) { // can happens when Name record is being init'd and sheet records are not set yet
-					return null;
-				}
-				startrow= endrow= firstPtg.rw;
-			} else if (this.wholeCol) {		// like $J:$J
-			    startrow= 0;	// Get Actual Coordinates
-				startcol= endcol= firstPtg.col;
-				try {
-					endrow= this.getSheet().getMaxRow();
-				} catch (NullPointerException ne) { // can happens when Name record is being init'd and sheet records are not set yet
-					return null;
-				}
-			}			
+			int[] bounds= this.getComponentBounds();
+			if (bounds==null)
+				return null;
+			int startrow= bounds[0], startcol= bounds[1], endrow= bounds[2], endcol= bounds[3];
 			for (;startcol<=endcol;startcol++){
 				// loop through the rows inside
 				int rowholder = startrow;
@@ -679,7 +657,55 @@ public class PtgArea3d extends PtgArea implements Ptg, IxtiListener{
 	}
 
 
-	
+	/**
+	 * returns the bounds of the components of this area, taking whole row
+	 * and whole column references to the extent of the sheet
+	 * @return firstRow, firstCol, lastRow, lastCol or null if the sheet is not yet set
+	 */
+	protected int[] getComponentBounds() {
+		int startrow=0, startcol=0, endrow=0, endcol=0;
+		if (!this.wholeCol && !this.wholeRow) { // normal case
+//			 TODO: check rc sanity here
+			int[] startloc= firstPtg.getRealIntLocation();	// Get Actual Coordinates
+			startcol = startloc[1];
+			startrow = startloc[0];
+			int[] endloc = lastPtg.getRealIntLocation();	// Get Actual Coordinates
+			endcol = endloc[1];
+			endrow = endloc[0];
+		} else if (this.wholeRow) {		// like $1:$1
+			startcol= 0;
+			try {
+				endcol= this.getSheet().getMaxCol();
+			} catch (NullPointerException ne) { // can happens when Name record is being init'd and sheet records are not set yet
+				return null;
+			}
+			startrow= endrow= firstPtg.rw;
+		} else if (this.wholeCol) {		// like $J:$J
+		    startrow= 0;	// Get Actual Coordinates
+			startcol= endcol= firstPtg.col;
+			try {
+				endrow= this.getSheet().getMaxRow();
+			} catch (NullPointerException ne) { // can happens when Name record is being init'd and sheet records are not set yet
+				return null;
+			}
+		}
+		return new int[] {startrow, startcol, endrow, endcol};
+	}
+
+	/**
+	 * returns the sheet named in this reference, which the components are read from
+	 */
+	protected Boundsheet getComponentSheet() throws Exception {
+		String sht= this.toString();
+		int i= sht.indexOf("!");
+		if (i==-1)
+			return parent_rec.getSheet();
+		sht= sht.substring(0, i);
+		if (sht.indexOf("'")==0)
+			sht= sht.substring(1, sht.length()-1);
+		return parent_rec.getWorkBook().getWorkSheetByName(sht);
+	}
+
 	/**
 	 * sets the column to be relative (relative is true) or absolute (relative is false)
 	 * <br>absolute references do not shift upon column inserts or deletes 
@@ -108,59 +108,82 @@ public class PtgCalculator
 	protected static double[] getDoubleValueArray(Ptg[] operands) throws CalculationException
 	{
 
-		Double d = null;	
-		// we don't know the size ahead of time, so use a vector for now.
-		CompatibleVector cv = new CompatibleVector();
-		
+		// we don't know the size ahead of time, so grow as we go
+		double[] darr = new double[16];
+		int n = 0;
 		for (int i=0;i<operands.length;i++){
+			// ranges are read as primitive values where possible
+			RangeValues rv = RangeValues.of(operands[i]);
+			if (rv != null) {
+				int sz = rv.size();
+				darr = ensureCapacity(darr, n + sz);
+				for (int x=0;x<sz;x++){
+					if (rv.isNumber(x)) {
+						darr[n++] = rv.getNumber(x);
+					} else {
+						Double d = toDouble(rv.getValue(x));
+						if (d == null)
+							return null;
+						darr[n++] = d.doubleValue();
+					}
+				}
+				continue;
+			}
 			// is it multidimensional?
 		    Ptg[] pthings = operands[i].getComponents(); // optimized -- do it once!  -jm
-			if (pthings!= null){
-				for (int x=0;x<pthings.length; x++){
-					cv.add(pthings[x]);
-				}
-			}else{
-				cv.add(operands[i]);
+			if (pthings == null)
+				pthings = new Ptg[] {operands[i]};
+			darr = ensureCapacity(darr, n + pthings.length);
+			for (int x=0;x<pthings.length; x++){
+				Double d = toDouble(pthings[x].getValue());
+				if (d == null)
+					return null;
+				darr[n++] = d.doubleValue();
 			}
 		}
+		if (n == darr.length)
+			return darr;
+		double[] ret = new double[n];
+		System.arraycopy(darr, 0, ret, 0, n);
+		return ret;
+	}
 
-		double[] darr = new double[cv.size()];
-		int i=0;
-		Enumeration en = cv.elements();
-		while(en.hasMoreElements()){
-			d= null;//new Double(0.0);		// 20081229 KSC: reset
-			Ptg pthing = (Ptg)en.nextElement();
-			Object ob = pthing.getValue();
-			if (ob == null || ob.toString().trim().equals("")){	// 20060802 KSC: added trim
-				darr[i] = 0; 
-			}else if(ob.toString().equals("#CIR_ERR!")){
-				throw new CircularReferenceException(CalculationException.VALUE);
-			}else{
-			
-				try{
-                    if (ob instanceof Double) {
-                        d = (Double)ob;
-                    }else {
-                        String s = ob.toString();
-    					d = new Double(s);
-                    }
-				}catch(NumberFormatException e){	
-					try {
-                        String s = ob.toString();
-                        if (s.equals("#N/A")) {	// 20090130 KSC: if error value, propagate error (ala Excel) -- null caught in calling method propagates "#N/A"
-    						return null;                        	
-                        }
-					} catch (Exception ee) {
-						Logger.logWarn("PtgCalculator getting Double value array failed: " + ee);
-						d = new Double(Double.NaN);
-					}
-				}
-				if(d!=null) 
-					darr[i] = d.doubleValue();				
-			}
-			i++;
-		}			
-		return darr;            
+	private static double[] ensureCapacity(double[] darr, int len) {
+		if (len <= darr.length)
+			return darr;
+		double[] ret = new double[Math.max(len, darr.length * 2)];
+		System.arraycopy(darr, 0, ret, 0, darr.length);
+		return ret;
+	}
+
+	/**
+	 * converts an operand value for getDoubleValueArray: blanks are 0 as are
+	 * values which are not numeric
+	 * @return the value or null if it is #N/A, which propagates
+	 */
+	private static Double toDouble(Object ob) throws CalculationException {
+		Double d = null;
+		if (ob == null || ob.toString().trim().equals("")){	// 20060802 KSC: added trim
+			return Double.valueOf(0); 
+		}else if(ob.toString().equals("#CIR_ERR!")){
+			throw new CircularReferenceException(CalculationException.VALUE);
+		}
+		try{
+            if (ob instanceof Double) {
+                d = (Double)ob;
+            }else {
+                String s = ob.toString();
+				d = new Double(s);
+            }
+		}catch(NumberFormatException e){	
+            String s = ob.toString();
+            if (s.equals("#N/A")) {	// 20090130 KSC: if error value, propagate error (ala Excel) -- null caught in calling method propagates "#N/A"
+				return null;                        	
+            }
+		}
+		if (d == null)
+			return Double.valueOf(0);
+		return d;
 	}
 	
 	protected static double[] getDoubleValueArray(Ptg operands) throws CalculationException{
@@ -130,7 +130,7 @@ public class PtgExp extends GenericPtg implements Ptg
 		Object o= null;;
 		Formula f= (Formula) this.getParentRec();		
 		if ( f.isSharedFormula() ) {
-			 o= FormulaCalculator.calculateFormula( f.shared.instantiate( f) );
+			 o= f.shared.calculate( f );
 //			throw new UnsupportedOperationException (
 //					"Shared formulas must be instantiated for calculation");
 		}else{
@@ -153,7 +153,7 @@ public class PtgExp extends GenericPtg implements Ptg
 		Object o= null;;
 		Formula f=  ((Formula) this.getParentRec());
 		if ( f.isSharedFormula() ) {			
-			 o= FormulaCalculator.calculateFormula( f.shared.instantiate( f ) );
+			 o= f.shared.calculate( f );
 		}else{
 			Object r= null;
 			if (f.getInternalRecords().size()>0) 
@@ -228,6 +228,25 @@ public byte[] getRecord(){
     		parseSubexpression();	// not parsed yet    		
     	return ptgs;
     }    
+
+    /**
+     * returns the values of the cells of this range in component order
+     * @return the values or null if a component is not a single cell reference
+     * @see RangeValues
+     */
+    public RangeValues getRangeValues() {
+    	Ptg[] comps= this.getComponents();
+    	if (comps==null)
+    		return null;
+    	RangeValues ret= RangeValues.create(comps.length, parent_rec);
+    	for (int i= 0; i < comps.length; i++) {
+    		if (comps[i].getClass()!=PtgRef.class && comps[i].getClass()!=PtgRef3d.class)
+    			return null;
+    		ret.add(((PtgRef) comps[i]).getRefCells()[0]);
+    	}
+    	ret.calculate();
+    	return ret;
+    }
     
     /**
      * @return Returns the firstPtg.
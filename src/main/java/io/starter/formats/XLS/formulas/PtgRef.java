@@ -31,7 +31,6 @@ import io.starter.formats.XLS.WorkSheetNotFoundException;
 import io.starter.formats.XLS.XLSRecord;
 
 import io.starter.formats.XLS.*;
-import io.starter.formats.cellformat.CellFormatFactory;
 import io.starter.toolkit.ByteTools;
 import io.starter.toolkit.Logger;
 import io.starter.toolkit.StringTool;
@@ -837,8 +836,8 @@ public class PtgRef extends GenericPtg implements Ptg {
                    retValue = cell.getInternalVal();
                 }
 			}
-			return CellFormatFactory.fromPatternString(
-					cell.getXfRec().getFormatPattern() ).format( retValue );
+			return cell.getWorkBook().getFormatRenderer(
+					(Xf) cell.getXfRec() ).format( retValue );
         } else{
             try {
                 if(!this.parent_rec.getSheet().getWindow2().getShowZeroValues())
@@ -917,6 +916,7 @@ public class PtgRef extends GenericPtg implements Ptg {
 			f.getExpression().set(z, ptg);	// update expression with new Ptg
 		else
 			f.getExpression().add(ptg);
+		f.clearCompiledExpression();
 		return true;
 	}
 	
@@ -1054,12 +1054,12 @@ public class PtgRef extends GenericPtg implements Ptg {
 	 */
 	protected long getHashCode() {
 		if (rw >= 0)		
-			return col+ ((rw+1)*MAXCOLS);
+			return col+ ((rw+1)*(long)MAXCOLS);
 		else
-			return col+ ((MAXROWS-rw+1)*MAXCOLS);
+			return col+ ((MAXROWS-rw+1)*(long)MAXCOLS);
 	}
 	public static long getHashCode(int row, int col) {
-		return col+ ((row+1)*MAXCOLS);		
+		return col+ ((row+1)*(long)MAXCOLS);		
 	}
 	
     /**
@@ -0,0 +1,299 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS.formulas;
+
+import java.util.BitSet;
+import java.util.List;
+
+import io.starter.formats.XLS.BiffRec;
+import io.starter.formats.XLS.Boolerr;
+import io.starter.formats.XLS.Boundsheet;
+import io.starter.formats.XLS.ColumnRange;
+import io.starter.formats.XLS.Formula;
+import io.starter.formats.XLS.Mulblank;
+import io.starter.formats.XLS.XLSConstants;
+import io.starter.formats.XLS.XLSRecord;
+
+/** The values of the cells of a reference as primitive arrays.
+ * <p>
+ * Aggregate functions such as SUM, AVERAGE and COUNT only need the values of
+ * the cells in their ranges, but {@link Ptg#getComponents()} creates a
+ * {@link PtgRef} per cell and each value is boxed on the way out. A
+ * <code>RangeValues</code> is read straight from the sheet's cell store:
+ * numeric values are kept in a <code>double[]</code> and bitmaps record
+ * which positions are blank or hold errors. Other values (strings,
+ * booleans, errors) are kept as objects for the few positions that have
+ * them.
+ * <p>
+ * Positions are in component order, that is column by column, so that
+ * position <code>i</code> corresponds to <code>getComponents()[i]</code>
+ * and {@link #getValue(int)} returns what that component's
+ * <code>getValue()</code> would.
+ * 
+ * @see PtgArea#getRangeValues()
+ * @see PtgMemFunc#getRangeValues()
+ */
+public final class RangeValues {
+	/** kind of a position which refers to a cell which does not exist */
+	private static final byte MISSING = 0;
+	/** kind of a position with a numeric value held in <code>numbers</code> */
+	private static final byte NUMBER = 1;
+	/** kind of a position whose value is held in <code>others</code> */
+	private static final byte OTHER = 2;
+	/** kind of a formula position which has not been calculated yet */
+	private static final byte FORMULA = 3;
+	/** kind of a formula position whose calculation threw the exception
+	 * held in <code>others</code> */
+	private static final byte FAILED = 4;
+
+	/** ranges larger than this are left to the component path */
+	private static final int MAX_SIZE = 1 << 26;
+
+	private double[] numbers;
+	private byte[] kinds;
+	private Object[] others;
+	private final BitSet blanks = new BitSet();
+	private final BitSet errors = new BitSet();
+	/** numeric positions whose value is an Integer rather than a Double */
+	private final BitSet ints = new BitSet();
+	private int size;
+	/** the value of a missing cell, as PtgRef reports it */
+	private final Object missing;
+
+	private RangeValues(int capacity, XLSRecord parent) {
+		numbers = new double[capacity];
+		kinds = new byte[capacity];
+		Object m = Integer.valueOf(0);
+		try {
+			if (!parent.getSheet().getWindow2().getShowZeroValues())
+				m = null;
+		} catch (NullPointerException e) {
+			// assume zero, which the vast majority of cases are
+		}
+		missing = m;
+	}
+
+	/** Gets the values of an area, a complex range or <code>null</code>
+	 * if the operand is neither or its values can't be read directly.
+	 */
+	public static RangeValues of(Ptg operand) {
+		if (operand instanceof PtgArea && !(operand instanceof PtgAreaErr3d))
+			return ((PtgArea) operand).getRangeValues();
+		if (operand instanceof PtgMemFunc)
+			return ((PtgMemFunc) operand).getRangeValues();
+		return null;
+	}
+
+	/** Reads the values of a rectangular area of a sheet in column order.
+	 * @return the values, or <code>null</code> if the area is too large
+	 */
+	static RangeValues read(Boundsheet sheet, int firstRow, int firstCol,
+			int lastRow, int lastCol, XLSRecord parent) {
+		if (lastRow < firstRow || lastCol < firstCol)
+			return new RangeValues(0, parent);
+		int nrows = lastRow - firstRow + 1;
+		long n = (long) nrows * (lastCol - firstCol + 1);
+		if (n > MAX_SIZE)
+			return null;
+		RangeValues ret = new RangeValues((int) n, parent);
+		ret.size = (int) n;
+		List<BiffRec> cells = sheet.getCellsInRange(firstRow, firstCol, lastRow, lastCol);
+		for (int i = 0; i < cells.size(); i++) {
+			BiffRec cell = cells.get(i);
+			int row = cell.getRowNumber();
+			int first = cell.getColNumber(), last = first;
+			if (cell instanceof ColumnRange) {
+				first = ((ColumnRange) cell).getColFirst();
+				last = Math.max(((ColumnRange) cell).getColLast(), first);
+			}
+			first = Math.max(first, firstCol);
+			last = Math.min(last, lastCol);
+			for (int col = first; col <= last; col++) {
+				if (cell.getOpcode() == XLSConstants.MULBLANK)
+					((Mulblank) cell).setCurrentCell((short) col);
+				ret.set((col - firstCol) * nrows + (row - firstRow), cell);
+			}
+		}
+		ret.calculate();
+		return ret;
+	}
+
+	/** Creates an empty list of values to be filled with {@link #add}. */
+	static RangeValues create(int capacity, XLSRecord parent) {
+		return new RangeValues(capacity, parent);
+	}
+
+	/** Appends the value of a cell, which may be <code>null</code> if the
+	 * cell does not exist. Formulas are calculated by {@link #calculate()}. */
+	void add(BiffRec cell) {
+		if (size == kinds.length) {
+			int cap = Math.max(16, size * 2);
+			double[] nn = new double[cap];
+			byte[] nk = new byte[cap];
+			System.arraycopy(numbers, 0, nn, 0, size);
+			System.arraycopy(kinds, 0, nk, 0, size);
+			numbers = nn;
+			kinds = nk;
+			if (others != null) {
+				Object[] no = new Object[cap];
+				System.arraycopy(others, 0, no, 0, size);
+				others = no;
+			}
+		}
+		int idx = size++;
+		if (cell != null)
+			set(idx, cell);
+	}
+
+	private void set(int idx, BiffRec cell) {
+		if (((XLSRecord) cell).isBlank)
+			blanks.set(idx);
+		if (cell.getFormulaRec() != null) {
+			setOther(idx, cell.getFormulaRec());
+			kinds[idx] = FORMULA;
+			return;
+		}
+		switch (((XLSRecord) cell).getCellType()) {
+		case XLSConstants.TYPE_INT:
+			numbers[idx] = cell.getIntVal();
+			kinds[idx] = NUMBER;
+			ints.set(idx);
+			break;
+		case XLSConstants.TYPE_DOUBLE:
+		case XLSConstants.TYPE_FP:
+			numbers[idx] = cell.getDblVal();
+			kinds[idx] = NUMBER;
+			break;
+		default:
+			setOther(idx, cell.getInternalVal());
+			if (cell instanceof Boolerr && Formula.isErrorValue(cell.getStringVal()))
+				errors.set(idx);
+		}
+	}
+
+	private void setOther(int idx, Object value) {
+		if (others == null)
+			others = new Object[kinds.length];
+		others[idx] = value;
+		kinds[idx] = OTHER;
+		if (value instanceof CalculationException)
+			errors.set(idx);
+	}
+
+	/** calculates the formulas among the values in position order */
+	void calculate() {
+		for (int i = 0; i < size; i++) {
+			if (kinds[i] != FORMULA)
+				continue;
+			Object v;
+			try {
+				v = ((Formula) others[i]).calculateFormula();
+			} catch (RuntimeException e) {
+				// rethrown when the value is asked for, as PtgRef would
+				others[i] = e;
+				kinds[i] = FAILED;
+				continue;
+			}
+			if (v instanceof Double || v instanceof Integer) {
+				numbers[i] = ((Number) v).doubleValue();
+				others[i] = null;
+				kinds[i] = NUMBER;
+				if (v instanceof Integer)
+					ints.set(i);
+			} else {
+				setOther(i, v);
+				if (v instanceof String && Formula.isErrorValue((String) v))
+					errors.set(i);
+			}
+		}
+	}
+
+	/** Gets the number of positions. */
+	public int size() {
+		return size;
+	}
+
+	/** Gets the numeric values. Positions which are not numbers hold 0; the
+	 * array may be longer than {@link #size()} and must not be modified.
+	 */
+	public double[] getNumbers() {
+		return numbers;
+	}
+
+	/** Whether the position holds a numeric value. */
+	public boolean isNumber(int i) {
+		return kinds[i] == NUMBER;
+	}
+
+	/** Gets the numeric value of a position which {@link #isNumber(int)}. */
+	public double getNumber(int i) {
+		return numbers[i];
+	}
+
+	/** Whether the position refers to a blank or non-existent cell, as
+	 * {@link PtgRef#isBlank()}. */
+	public boolean isBlank(int i) {
+		return kinds[i] == MISSING || blanks.get(i);
+	}
+
+	/** Whether the position holds an error value, either an error cell or
+	 * a formula whose result is an error. */
+	public boolean isError(int i) {
+		return errors.get(i);
+	}
+
+	/** Gets the value of a position as {@link PtgRef#getValue()} would. */
+	public Object getValue(int i) {
+		switch (kinds[i]) {
+		case MISSING:
+			return missing;
+		case NUMBER:
+			if (ints.get(i))
+				return Integer.valueOf((int) numbers[i]);
+			return Double.valueOf(numbers[i]);
+		case FAILED:
+			throw (RuntimeException) others[i];
+		default:
+			return others[i];
+		}
+	}
+
+	/** Gets the value of a position as a double as
+	 * {@link GenericPtg#getDoubleVal()} would, NaN if it is not numeric. */
+	public double getDoubleVal(int i) {
+		if (kinds[i] == NUMBER)
+			return numbers[i];
+		Object o = getValue(i);
+		if (o == null)
+			return Double.NaN;
+		if (o instanceof Number)
+			return ((Number) o).doubleValue();
+		if (o.toString().equals(""))
+			return 0;
+		try {
+			return new Double(o.toString()).doubleValue();
+		} catch (Exception e) {
+			return Double.NaN;
+		}
+	}
+}
@@ -53,8 +53,30 @@ public class StatisticalCalculator
     */
     protected static Ptg calcAverage(Ptg[] operands){
         Vector vect = new Vector();
+        int count = 0;
+//        double total = 0;
+        BigDecimal bd= new BigDecimal(0);
        
         for (int i=0;i<operands.length;i++){
+            RangeValues rv = RangeValues.of(operands[i]);
+            if (rv != null) {	// read ranges directly rather than as a Ptg per cell
+                for (int z=0;z<rv.size();z++){
+                    if (rv.isBlank(z))	continue;
+                    if (rv.isNumber(z)) {
+                        bd= bd.add(new BigDecimal(rv.getNumber(z)));
+                        count++;
+                        continue;
+                    }
+                    try{
+                        Object ov = rv.getValue(z);
+                        if (ov != null) {
+                            bd= bd.add(new BigDecimal(Double.parseDouble(String.valueOf(ov))));
+                            count++;
+                        }
+                    }catch(NumberFormatException e){};
+                }
+                continue;
+            }
             Ptg[] pthings = operands[i].getComponents(); // optimized -- do it once!! -jm
             if (pthings != null){
                 for (int z=0;z<pthings.length;z++){
@@ -65,9 +87,6 @@ public class StatisticalCalculator
                 vect.add(p);
             }
         }
-        int count = 0;
-//        double total = 0;
-        BigDecimal bd= new BigDecimal(0);
         for (int i=0;i<vect.size();i++){
             Ptg p = (Ptg)vect.elementAt(i);
             try{
@@ -403,6 +422,23 @@ CORREL
 	 protected static Ptg calcCount(Ptg[] operands){
 	     int count = 0;
 	     for (int i=0;i<operands.length;i++){
+	         RangeValues rv = RangeValues.of(operands[i]);
+	         if (rv != null){ // a range read directly
+	            for (int z=0;z<rv.size();z++){
+	                 if (rv.isNumber(z)){
+	                     count++;
+	                     continue;
+	                 }
+	                 Object o = rv.getValue(z);
+	                 if (o != null){
+	                     try{
+	                         Double n = new Double(String.valueOf(o));
+	                         count++;
+	                     }catch (NumberFormatException e){}
+	                 }
+	            }
+	            continue;
+	         }
 	         Ptg[] pref = operands[i].getComponents(); // optimized -- do it once!! -jm
 	         if (pref != null){ // it is some sort of range  
 	            for (int z=0;z<pref.length;z++){
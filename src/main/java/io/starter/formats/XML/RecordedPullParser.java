@@ -0,0 +1,345 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XML;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/** An {@link XmlPullParser} replaying the events of a document which was
+ * parsed ahead of time.
+ * <p>
+ * {@link #record(InputStream)} runs a namespace aware parser over the whole
+ * input and keeps every START_TAG, TEXT and END_TAG event along with the
+ * element names, prefixes and attributes. This lets the costly part of
+ * parsing, inflating and tokenizing the input, run on another thread than
+ * the code consuming the events. Only the calls made through {@link #next()}
+ * are supported; {@link #getText()} on a tag returns the tag rebuilt from
+ * its name and attributes rather than the original markup.
+ */
+public class RecordedPullParser implements XmlPullParser {
+	private byte[] types = new byte[256];
+	/** the element name, or the text of a TEXT event */
+	private String[] values = new String[256];
+	private String[] prefixes = new String[256];
+	private String[] namespaces = new String[256];
+	/** index of the first attribute of a START_TAG in <code>attrs</code> */
+	private int[] attrStart = new int[256];
+	private short[] attrCount = new short[256];
+	/** prefix, namespace, name and value of each attribute */
+	private String[] attrs = new String[1024];
+	private int size = 0, attrSize = 0;
+	private int pos = -1;
+	private String encoding;
+
+	/** Parses an entire document into a new recorded parser.
+	 * @param in the document; it is not closed
+	 * @return a parser positioned at START_DOCUMENT
+	 */
+	public static RecordedPullParser record(InputStream in)
+			throws XmlPullParserException, IOException {
+		XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		XmlPullParser xpp = factory.newPullParser();
+		xpp.setInput(in, null);
+		RecordedPullParser ret = new RecordedPullParser();
+		int eventType = xpp.getEventType();
+		while (eventType != END_DOCUMENT) {
+			if (eventType == START_TAG)
+				ret.addTag(xpp);
+			else if (eventType == END_TAG)
+				ret.add(END_TAG, xpp.getName(), xpp.getPrefix(), xpp.getNamespace());
+			else if (eventType == TEXT)
+				ret.add(TEXT, xpp.getText(), null, null);
+			eventType = xpp.next();
+		}
+		ret.encoding = xpp.getInputEncoding();
+		return ret;
+	}
+
+	private void add(int type, String value, String prefix, String namespace) {
+		if (size == types.length) {
+			int n = size * 2;
+			types = Arrays.copyOf(types, n);
+			values = Arrays.copyOf(values, n);
+			prefixes = Arrays.copyOf(prefixes, n);
+			namespaces = Arrays.copyOf(namespaces, n);
+			attrStart = Arrays.copyOf(attrStart, n);
+			attrCount = Arrays.copyOf(attrCount, n);
+		}
+		types[size] = (byte) type;
+		values[size] = value;
+		prefixes[size] = prefix;
+		namespaces[size] = namespace;
+		size++;
+	}
+
+	private void addTag(XmlPullParser xpp) {
+		int n = xpp.getAttributeCount();
+		if (attrSize + n * 4 > attrs.length)
+			attrs = Arrays.copyOf(attrs, Math.max(attrs.length * 2, attrSize + n * 4));
+		for (int i = 0; i < n; i++) {
+			attrs[attrSize++] = xpp.getAttributePrefix(i);
+			attrs[attrSize++] = xpp.getAttributeNamespace(i);
+			attrs[attrSize++] = xpp.getAttributeName(i);
+			attrs[attrSize++] = xpp.getAttributeValue(i);
+		}
+		add(START_TAG, xpp.getName(), xpp.getPrefix(), xpp.getNamespace());
+		attrStart[size - 1] = attrSize - n * 4;
+		attrCount[size - 1] = (short) n;
+	}
+
+	/** Gets the number of events recorded. */
+	public int size() {
+		return size;
+	}
+
+	public int getEventType() {
+		if (pos < 0)
+			return START_DOCUMENT;
+		return pos < size ? types[pos] : END_DOCUMENT;
+	}
+
+	public int next() {
+		if (pos < size)
+			pos++;
+		return getEventType();
+	}
+
+	public int nextToken() {
+		return next();
+	}
+
+	public String getName() {
+		int t = getEventType();
+		return t == START_TAG || t == END_TAG ? values[pos] : null;
+	}
+
+	public String getPrefix() {
+		int t = getEventType();
+		return t == START_TAG || t == END_TAG ? prefixes[pos] : null;
+	}
+
+	public String getText() {
+		int t = getEventType();
+		if (t == TEXT)
+			return values[pos];
+		if (t == END_TAG)
+			return "</" + qualify(prefixes[pos], values[pos]) + ">";
+		if (t != START_TAG)
+			return null;
+		StringBuffer ret = new StringBuffer("<").append(qualify(prefixes[pos], values[pos]));
+		for (int i = 0; i < getAttributeCount(); i++)
+			ret.append(' ').append(qualify(getAttributePrefix(i), getAttributeName(i)))
+					.append("=\"").append(getAttributeValue(i)).append('"');
+		return ret.append('>').toString();
+	}
+
+	private static String qualify(String prefix, String name) {
+		return prefix == null ? name : prefix + ":" + name;
+	}
+
+	public char[] getTextCharacters(int[] holderForStartAndLength) {
+		String s = getText();
+		if (s == null) {
+			holderForStartAndLength[0] = holderForStartAndLength[1] = -1;
+			return null;
+		}
+		holderForStartAndLength[0] = 0;
+		holderForStartAndLength[1] = s.length();
+		return s.toCharArray();
+	}
+
+	public boolean isWhitespace() throws XmlPullParserException {
+		if (getEventType() != TEXT)
+			throw new XmlPullParserException("no text at " + getPositionDescription());
+		return values[pos].trim().length() == 0;
+	}
+
+	public int getAttributeCount() {
+		return getEventType() == START_TAG ? attrCount[pos] : -1;
+	}
+
+	private String attr(int index, int field) {
+		if (index < 0 || index >= getAttributeCount())
+			throw new IndexOutOfBoundsException("attribute " + index + " at " + getPositionDescription());
+		return attrs[attrStart[pos] + index * 4 + field];
+	}
+
+	public String getAttributePrefix(int index) {
+		return attr(index, 0);
+	}
+
+	public String getAttributeNamespace(int index) {
+		return attr(index, 1);
+	}
+
+	public String getAttributeName(int index) {
+		return attr(index, 2);
+	}
+
+	public String getAttributeValue(int index) {
+		return attr(index, 3);
+	}
+
+	public String getAttributeValue(String namespace, String name) {
+		for (int i = 0; i < getAttributeCount(); i++) {
+			if (!name.equals(getAttributeName(i)))
+				continue;
+			if (namespace == null || namespace.equals(getAttributeNamespace(i)))
+				return getAttributeValue(i);
+		}
+		return null;
+	}
+
+	public String getAttributeType(int index) {
+		attr(index, 0);
+		return "CDATA";
+	}
+
+	public boolean isAttributeDefault(int index) {
+		attr(index, 0);
+		return false;
+	}
+
+	public String getNamespace() {
+		int t = getEventType();
+		return t == START_TAG || t == END_TAG ? namespaces[pos] : null;
+	}
+
+	public String getInputEncoding() {
+		return encoding;
+	}
+
+	public int getDepth() {
+		int depth = 0;
+		for (int i = 0; i <= pos && i < size; i++) {
+			if (types[i] == START_TAG)
+				depth++;
+			else if (types[i] == END_TAG && i < pos)
+				depth--;
+		}
+		return depth;
+	}
+
+	public String getPositionDescription() {
+		return "event " + pos + " of " + size;
+	}
+
+	public int getLineNumber() {
+		return -1;
+	}
+
+	public int getColumnNumber() {
+		return -1;
+	}
+
+	public boolean isEmptyElementTag() throws XmlPullParserException {
+		if (getEventType() != START_TAG)
+			throw new XmlPullParserException("no start tag at " + getPositionDescription());
+		return pos + 1 < size && types[pos + 1] == END_TAG;
+	}
+
+	public void require(int type, String namespace, String name)
+			throws XmlPullParserException {
+		if (type != getEventType() || (name != null && !name.equals(getName())))
+			throw new XmlPullParserException("expected " + TYPES[type] + " "
+					+ name + " at " + getPositionDescription());
+	}
+
+	public String nextText() throws XmlPullParserException {
+		if (getEventType() != START_TAG)
+			throw new XmlPullParserException("no start tag at " + getPositionDescription());
+		int t = next();
+		String ret = "";
+		if (t == TEXT) {
+			ret = values[pos];
+			t = next();
+		}
+		if (t != END_TAG)
+			throw new XmlPullParserException("no end tag at " + getPositionDescription());
+		return ret;
+	}
+
+	public int nextTag() throws XmlPullParserException {
+		int t = next();
+		if (t == TEXT && isWhitespace())
+			t = next();
+		if (t != START_TAG && t != END_TAG)
+			throw new XmlPullParserException("no tag at " + getPositionDescription());
+		return t;
+	}
+
+	/** Rewinds the parser to START_DOCUMENT. */
+	public void setInput(Reader in) {
+		pos = -1;
+	}
+
+	/** Rewinds the parser to START_DOCUMENT. */
+	public void setInput(InputStream inputStream, String inputEncoding) {
+		pos = -1;
+	}
+
+	public void setFeature(String name, boolean state) throws XmlPullParserException {
+		if (state != getFeature(name))
+			throw new XmlPullParserException("unsupported feature " + name);
+	}
+
+	public boolean getFeature(String name) {
+		return FEATURE_PROCESS_NAMESPACES.equals(name);
+	}
+
+	public void setProperty(String name, Object value) throws XmlPullParserException {
+		throw new XmlPullParserException("unsupported property " + name);
+	}
+
+	public Object getProperty(String name) {
+		return null;
+	}
+
+	public void defineEntityReplacementText(String entityName, String replacementText)
+			throws XmlPullParserException {
+		throw new XmlPullParserException("entities are resolved while recording");
+	}
+
+	public int getNamespaceCount(int depth) {
+		return 0;
+	}
+
+	public String getNamespacePrefix(int pos) throws XmlPullParserException {
+		throw new XmlPullParserException("namespace declarations are not recorded");
+	}
+
+	public String getNamespaceUri(int pos) throws XmlPullParserException {
+		throw new XmlPullParserException("namespace declarations are not recorded");
+	}
+
+	public String getNamespace(String prefix) {
+		return null;
+	}
+}
@@ -155,4 +155,11 @@ unread);
      isInited = true;
      return internalIn.read();
   }
+
+  /** Reads a block at a time; readers would otherwise pull single bytes
+   * through the underlying (often inflating) stream. */
+  public int read(byte[] b, int off, int len) throws IOException {
+     isInited = true;
+     return internalIn.read(b, off, len);
+  }
 }
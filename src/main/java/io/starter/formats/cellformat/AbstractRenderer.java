@@ -0,0 +1,39 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.cellformat;
+
+import io.starter.OpenXLS.Cell;
+
+/** Base class of the compiled renderers, providing the
+ * <code>String</code> returning {@link CellFormat} methods.
+ */
+abstract class AbstractRenderer implements CellFormatRenderer {
+
+	public String format (Object input) {
+		return this.format( input, new StringBuilder() ).toString();
+	}
+
+	public String format (Cell cell) {
+		return this.format( cell, new StringBuilder() ).toString();
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.cellformat;
+
+import java.io.Serializable;
+
+/** Compiled {@link CellFormatRenderer}s of a workbook indexed by number
+ * format ID.
+ * <p>
+ * Each entry remembers the pattern it was compiled from and is recompiled
+ * if the format has since been changed. Lookups are lock free and the cache
+ * may be shared between threads.
+ */
+public final class CellFormatCache implements Serializable {
+	private static final long serialVersionUID = 4305939626431857190L;
+
+	/** format IDs are unsigned 16 bit values */
+	private static final int MAX_ID = 0xFFFF;
+
+	private static final class Entry {
+		final String pattern;
+		final CellFormatRenderer renderer;
+
+		Entry (String pattern, CellFormatRenderer renderer) {
+			this.pattern = pattern;
+			this.renderer = renderer;
+		}
+	}
+
+	private transient volatile Entry[] entries;
+
+	/** Gets the renderer for a number format.
+	 * @param ifmt the number format ID
+	 * @param pattern the number format pattern currently associated with
+	 *        the ID, <code>null</code> or empty for General
+	 */
+	public CellFormatRenderer get (int ifmt, String pattern) {
+		Entry[] cache = this.entries;
+		if (cache != null && ifmt >= 0 && ifmt < cache.length) {
+			Entry entry = cache[ifmt];
+			if (entry != null && (entry.pattern == pattern
+					|| (pattern != null && pattern.equals( entry.pattern ))))
+				return entry.renderer;
+		}
+
+		CellFormatRenderer renderer = CellFormatFactory.compile( pattern );
+		if (ifmt >= 0 && ifmt <= MAX_ID)
+			this.put( ifmt, new Entry( pattern, renderer ) );
+		return renderer;
+	}
+
+	/** Discards all compiled renderers. */
+	public synchronized void clear () {
+		this.entries = null;
+	}
+
+	private synchronized void put (int ifmt, Entry entry) {
+		Entry[] cache = this.entries;
+		int len = cache == null ? 0 : cache.length;
+		if (ifmt >= len) {
+			Entry[] grown = new Entry[Math.min( MAX_ID + 1,
+					Math.max( ifmt + 1, Math.max( 256, len * 2 ) ) )];
+			if (cache != null)
+				System.arraycopy( cache, 0, grown, 0, len );
+			cache = grown;
+		}
+		// entries are immutable so a racing reader sees either entry whole
+		cache[ifmt] = entry;
+		this.entries = cache;
+	}
+}
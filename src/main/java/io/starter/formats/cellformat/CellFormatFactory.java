@@ -22,24 +22,43 @@
  */
 package io.starter.formats.cellformat;
 
+import java.util.regex.Pattern;
+
 import io.starter.toolkit.StringTool;
 
 public class CellFormatFactory {
+	private static final Pattern DATE_PATTERN = Pattern.compile(
+			".*(((y{1,4}|m{1,5}|d{1,4}|h{1,2}|s{1,2}).*)+).*" );
+
 	private CellFormatFactory() {
 		// this is a static-only class
 		throw new UnsupportedOperationException();
 	}
 	
 	public static CellFormat fromPatternString (String pattern) {
+		return create( pattern, false );
+	}
+
+	/** Compiles an Excel number format pattern into an immutable renderer
+	 * which may be reused and shared between threads. The renderer formats
+	 * values exactly as the format returned by
+	 * {@link #fromPatternString(String)} for the same pattern.
+	 * @see CellFormatCache
+	 */
+	public static CellFormatRenderer compile (String pattern) {
+		return (CellFormatRenderer) create( pattern, true );
+	}
+
+	private static CellFormat create (String pattern, boolean compiled) {
     	if (null == pattern || "".equals( pattern )
         		|| "General".equalsIgnoreCase( pattern ) ) {
-        	return new GeneralCellFormat();
+        	return compiled ? GeneralRenderer.INSTANCE : new GeneralCellFormat();
         }
             	        
         String[] pats= pattern.split(";");
     	
         String tester= StringTool.convertPatternExtractBracketedExpression(pats[0]);
-        if (tester.matches(".*(((y{1,4}|m{1,5}|d{1,4}|h{1,2}|s{1,2}).*)+).*")) {
+        if (DATE_PATTERN.matcher( tester ).matches()) {
         	String string;
         	if (pats.length > 3) {
     			string = StringTool.convertPatternFromExcelToStringFormatter( pats[ 3 ], false );
@@ -47,8 +66,9 @@ public class CellFormatFactory {
     			string = "%s";
     		}
         	
-    		return new DateCellFormat(
-        			StringTool.convertDatePatternFromExcelToStringFormatter( tester ), string );
+        	String date = StringTool.convertDatePatternFromExcelToStringFormatter( tester );
+    		return compiled ? new DateRenderer( date, string )
+    				: new DateCellFormat( date, string );
         }
         
         String positive, negative, zero, string; 
@@ -69,6 +89,7 @@ public class CellFormatFactory {
 			string = "%s";
 		}
         
-        return new NumberCellFormat( positive, negative, zero, string );
+        return compiled ? new NumberRenderer( positive, negative, zero, string )
+        		: new NumberCellFormat( positive, negative, zero, string );
 	}
 }
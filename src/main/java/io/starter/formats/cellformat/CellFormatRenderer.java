@@ -0,0 +1,45 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.cellformat;
+
+import io.starter.OpenXLS.Cell;
+
+/** A compiled cell format which may be shared between threads.
+ * <p>
+ * Renderers are immutable and are obtained from
+ * {@link CellFormatFactory#compile(String)}. They produce the same output as
+ * the formats returned by {@link CellFormatFactory#fromPatternString(String)}
+ * but do the pattern analysis once, so callers formatting many cells should
+ * keep and reuse them, typically through a {@link CellFormatCache}.
+ */
+public interface CellFormatRenderer extends CellFormat {
+	/** Appends the formatted value to the given buffer.
+	 * @return the buffer
+	 */
+	public StringBuilder format (Object input, StringBuilder out);
+
+	/** Appends the formatted value of the cell to the given buffer.
+	 * @return the buffer
+	 */
+	public StringBuilder format (Cell cell, StringBuilder out);
+}
@@ -0,0 +1,232 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.cellformat;
+
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import io.starter.OpenXLS.Cell;
+import io.starter.OpenXLS.CellHandle;
+import io.starter.OpenXLS.DateConverter;
+
+/** Compiled form of {@link DateCellFormat}.
+ * <p>
+ * The <code>SimpleDateFormat</code> pattern is split into fields once and
+ * dates are rendered from the day number and time of day in the default time
+ * zone, which is what <code>SimpleDateFormat</code> would show for the same
+ * instant. Patterns using other fields, non Gregorian default calendars and
+ * dates before the Gregorian cutover are formatted by a per-thread copy of
+ * the <code>SimpleDateFormat</code>.
+ */
+final class DateRenderer extends AbstractRenderer {
+	private static final long MILLIS_DAY = 86400000L;
+	/** day number of the Gregorian cutover, 1582-10-15 */
+	private static final long GREGORIAN_DAYS = -141427;
+
+	private final SimpleDateFormat prototype;
+	private final ThreadLocal<SimpleDateFormat> formats;
+	private final FormatSection text;
+
+	// the compiled pattern, null if it can't be rendered directly
+	private final char[] fields;
+	private final int[] counts;
+	private final String[] literals;
+	private final TimeZone zone;
+	private final String[] months, shortMonths, weekdays, shortWeekdays, ampm;
+
+	DateRenderer (String date, String text) {
+		// built up front so invalid patterns fail as DateCellFormat does
+		this.prototype = new SimpleDateFormat( date );
+		this.formats = new ThreadLocal<SimpleDateFormat>() {
+			protected SimpleDateFormat initialValue () {
+				return (SimpleDateFormat) prototype.clone();
+			}
+		};
+		this.text = new FormatSection( text );
+
+		char[] f = new char[date.length()];
+		int[] c = new int[date.length()];
+		String[] l = new String[date.length()];
+		int n = 0;
+		boolean ok = this.prototype.getCalendar() instanceof GregorianCalendar;
+		NumberFormat nf = this.prototype.getNumberFormat();
+		if (!(nf instanceof DecimalFormat) || ((DecimalFormat) nf)
+				.getDecimalFormatSymbols().getZeroDigit() != '0')
+			ok = false;
+		for (int i = 0; i < date.length() && ok;) {
+			char ch = date.charAt( i );
+			int j = i + 1;
+			if ((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z')) {
+				if ("yMdHhmsEa".indexOf( ch ) < 0) {
+					ok = false;
+					break;
+				}
+				while (j < date.length() && date.charAt( j ) == ch)
+					j++;
+				f[n] = ch;
+				c[n] = j - i;
+			} else if (ch == '\'') {
+				ok = false;
+				break;
+			} else {
+				while (j < date.length() && !isPatternChar( date.charAt( j ) ))
+					j++;
+				l[n] = date.substring( i, j );
+			}
+			n++;
+			i = j;
+		}
+
+		if (ok) {
+			this.fields = new char[n];
+			this.counts = new int[n];
+			this.literals = new String[n];
+			System.arraycopy( f, 0, this.fields, 0, n );
+			System.arraycopy( c, 0, this.counts, 0, n );
+			System.arraycopy( l, 0, this.literals, 0, n );
+			this.zone = (TimeZone) this.prototype.getTimeZone().clone();
+			DateFormatSymbols symbols = this.prototype.getDateFormatSymbols();
+			this.months = symbols.getMonths();
+			this.shortMonths = symbols.getShortMonths();
+			this.weekdays = symbols.getWeekdays();
+			this.shortWeekdays = symbols.getShortWeekdays();
+			this.ampm = symbols.getAmPmStrings();
+		} else {
+			this.fields = null;
+			this.counts = null;
+			this.literals = null;
+			this.zone = null;
+			this.months = this.shortMonths = this.weekdays
+					= this.shortWeekdays = this.ampm = null;
+		}
+	}
+
+	private static boolean isPatternChar (char ch) {
+		return (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z')
+				|| ch == '\'';
+	}
+
+	public StringBuilder format (Object input, StringBuilder out) {
+		return out.append( this.formats.get().format( input ) );
+	}
+
+	public StringBuilder format (Cell cell, StringBuilder out) {
+		// make sure to return the empty string for blank cells
+		// getting the calendar coerces to double and thus gets zero
+		if ( (cell instanceof CellHandle && ((CellHandle) cell).isBlank())
+				|| "".equals( cell.getVal() ) )
+			return out;
+		
+		if (cell.getCellType() == Cell.TYPE_STRING) {
+			return this.text.format( (String) cell.getVal(), out );
+		}
+		
+		long millis = DateConverter.getCalendarFromCell( cell ).getTimeInMillis();
+		if (this.fields == null)
+			return out.append( this.formats.get().format( new Date( millis ) ) );
+		return this.format( millis, out );
+	}
+
+	/** renders the instant from its civil date and time in the zone */
+	private StringBuilder format (long millis, StringBuilder out) {
+		long local = millis + this.zone.getOffset( millis );
+		long days = Math.floorDiv( local, MILLIS_DAY );
+		if (days < GREGORIAN_DAYS)
+			return out.append( this.formats.get().format( new Date( millis ) ) );
+		int time = (int) Math.floorMod( local, MILLIS_DAY ) / 1000;
+		int hour = time / 3600, minute = time / 60 % 60, second = time % 60;
+		int weekday = (int) Math.floorMod( days + 4, 7L ) + 1;	// 1970-01-01 was a Thursday
+
+		// civil date from the day number, proleptic Gregorian
+		long z = days + 719468;
+		long era = Math.floorDiv( z, 146097L );
+		long doe = z - era * 146097;
+		long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		long mp = (5 * doy + 2) / 153;
+		int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+		int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+		int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+
+		for (int i = 0; i < this.fields.length; i++) {
+			int count = this.counts[i];
+			switch (this.fields[i]) {
+			case 0:
+				out.append( this.literals[i] );
+				break;
+			case 'y':
+				if (count == 2)
+					pad( out, year % 100, 2 );
+				else
+					pad( out, year, count );
+				break;
+			case 'M':
+				if (count >= 4)
+					out.append( this.months[month - 1] );
+				else if (count == 3)
+					out.append( this.shortMonths[month - 1] );
+				else
+					pad( out, month, count );
+				break;
+			case 'd':
+				pad( out, day, count );
+				break;
+			case 'H':
+				pad( out, hour, count );
+				break;
+			case 'h':
+				pad( out, hour % 12 == 0 ? 12 : hour % 12, count );
+				break;
+			case 'm':
+				pad( out, minute, count );
+				break;
+			case 's':
+				pad( out, second, count );
+				break;
+			case 'E':
+				out.append( count >= 4 ? this.weekdays[weekday]
+						: this.shortWeekdays[weekday] );
+				break;
+			case 'a':
+				out.append( this.ampm[hour < 12 ? 0 : 1] );
+				break;
+			}
+		}
+		return out;
+	}
+
+	/** appends a non-negative number zero padded to the given width */
+	private static void pad (StringBuilder out, int value, int width) {
+		int digits = 1;
+		for (int v = value; v >= 10; v /= 10)
+			digits++;
+		for (int i = digits; i < width; i++)
+			out.append( '0' );
+		out.append( value );
+	}
+}
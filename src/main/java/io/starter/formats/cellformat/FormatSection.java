@@ -0,0 +1,239 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.cellformat;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/** A <code>java.util.Formatter</code> format string, as produced by
+ * {@link io.starter.toolkit.StringTool#convertPatternFromExcelToStringFormatter},
+ * compiled for repeated use with a single argument.
+ * <p>
+ * Format strings consisting of literal text around at most one plain
+ * <code>%s</code> or <code>%,w.pf</code> conversion are rendered directly
+ * into the output buffer. Fixed point values are rounded on a scaled
+ * <code>long</code> and only values lying within rounding error of a tie,
+ * or too large for that, are handed to <code>String.format</code> so the
+ * output is always identical to it. Any other format string is passed to
+ * <code>String.format</code> as is.
+ */
+final class FormatSection {
+	private static final long[] POW10 = new long[19];
+	static {
+		POW10[0] = 1;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10;
+	}
+
+	/** largest scaled value rounded directly; its double error stays well
+	 * inside {@link #TIE_MARGIN} */
+	private static final double MAX_SCALED = 1e12;
+	private static final double TIE_MARGIN = 1e-3;
+	private static final int MAX_PRECISION = 9;
+
+	private final String format;
+	private final boolean compiled;
+	private final String prefix;
+	private final String suffix;
+	/** 's', 'f' or 0 if the format has no conversion */
+	private final char conversion;
+	private final boolean grouping;
+	private final int width;
+	private final int precision;
+	private final char decimalSeparator;
+	private final char groupingSeparator;
+	private final int groupingSize;
+	private final boolean percent;
+
+	FormatSection (String format) {
+		this.format = format;
+		this.percent = format.contains( "%%" );
+
+		StringBuilder pre = new StringBuilder(), post = new StringBuilder();
+		StringBuilder cur = pre;
+		char conv = 0;
+		boolean group = false, ok = true;
+		int w = 0, prec = -1;
+		int len = format.length();
+		for (int i = 0; i < len && ok; i++) {
+			char c = format.charAt( i );
+			if (c != '%') {
+				cur.append( c );
+				continue;
+			}
+			if (++i >= len) {
+				ok = false;
+				break;
+			}
+			c = format.charAt( i );
+			if (c == '%') {
+				cur.append( c );
+				continue;
+			}
+			if (conv != 0) {
+				// only a single argument is supplied
+				ok = false;
+				break;
+			}
+			if (c == ',') {
+				group = true;
+				c = ++i < len ? format.charAt( i ) : 0;
+			}
+			if (c >= '1' && c <= '9') {
+				while (c >= '0' && c <= '9') {
+					w = w * 10 + (c - '0');
+					c = ++i < len ? format.charAt( i ) : 0;
+				}
+			}
+			if (c == '.') {
+				prec = 0;
+				c = ++i < len ? format.charAt( i ) : 0;
+				if (!(c >= '0' && c <= '9'))
+					ok = false;
+				while (c >= '0' && c <= '9') {
+					prec = prec * 10 + (c - '0');
+					c = ++i < len ? format.charAt( i ) : 0;
+				}
+			}
+			if (c == 's' && !group && w == 0 && prec < 0)
+				conv = 's';
+			else if (c == 'f' && w < 1000)
+				conv = 'f';
+			else
+				ok = false;
+			cur = post;
+		}
+
+		char dec = '.', grp = ',';
+		int size = 3;
+		if (ok && conv == 'f') {
+			if (prec < 0)
+				prec = 6;
+			// Formatter localizes fixed point output to the default locale
+			Locale locale = Locale.getDefault( Locale.Category.FORMAT );
+			if (!locale.equals( Locale.US )) {
+				DecimalFormatSymbols dfs = DecimalFormatSymbols.getInstance( locale );
+				dec = dfs.getDecimalSeparator();
+				grp = dfs.getGroupingSeparator();
+				NumberFormat nf = NumberFormat.getIntegerInstance( locale );
+				size = nf instanceof DecimalFormat
+						? ((DecimalFormat) nf).getGroupingSize() : -1;
+				if (dfs.getZeroDigit() != '0' || (group && size < 1))
+					ok = false;
+			}
+		}
+
+		this.compiled = ok;
+		this.prefix = pre.toString();
+		this.suffix = post.toString();
+		this.conversion = conv;
+		this.grouping = group;
+		this.width = w;
+		this.precision = prec;
+		this.decimalSeparator = dec;
+		this.groupingSeparator = grp;
+		this.groupingSize = size;
+	}
+
+	/** Returns whether the format contains a literal percent sign. */
+	boolean isPercent () {
+		return this.percent;
+	}
+
+	/** Returns whether the format is exactly <code>%s</code>. */
+	boolean isText () {
+		return "%s".equals( this.format );
+	}
+
+	/** Appends <code>String.format(format, arg)</code> to the buffer. */
+	StringBuilder format (Object arg, StringBuilder out) {
+		if (this.compiled && this.conversion == 'f' && arg instanceof Double)
+			return this.format( ((Double) arg).doubleValue(), out );
+		if (!this.compiled || this.conversion == 'f')
+			return out.append( String.format( this.format, arg ) );
+
+		out.append( this.prefix );
+		if (this.conversion == 's')
+			out.append( String.valueOf( arg ) );
+		return out.append( this.suffix );
+	}
+
+	/** Appends <code>String.format(format, Double.valueOf(value))</code>
+	 * to the buffer. */
+	StringBuilder format (double value, StringBuilder out) {
+		if (!this.compiled)
+			return out.append( String.format( this.format, Double.valueOf( value ) ) );
+		if (this.conversion != 'f') {
+			out.append( this.prefix );
+			if (this.conversion == 's')
+				out.append( value );
+			return out.append( this.suffix );
+		}
+
+		// negative values, -0.0 and NaN fail the sign test
+		if (Double.doubleToRawLongBits( value ) >= 0
+				&& this.precision <= MAX_PRECISION) {
+			double scaled = value * POW10[ this.precision ];
+			if (scaled < MAX_SCALED) {
+				double floor = Math.floor( scaled );
+				double frac = scaled - floor;
+				if (Math.abs( frac - 0.5 ) > TIE_MARGIN) {
+					long n = (long) floor + (frac > 0.5 ? 1 : 0);
+					out.append( this.prefix );
+					this.appendFixed( n, out );
+					return out.append( this.suffix );
+				}
+			}
+		}
+		return out.append( String.format( this.format, Double.valueOf( value ) ) );
+	}
+
+	/** appends a rounded value scaled by the precision */
+	private void appendFixed (long n, StringBuilder out) {
+		long ip = n / POW10[ this.precision ];
+		long fp = n % POW10[ this.precision ];
+		int digits = 1;
+		while (digits < POW10.length && ip >= POW10[ digits ])
+			digits++;
+		int len = digits;
+		if (this.grouping)
+			len += (digits - 1) / this.groupingSize;
+		if (this.precision > 0)
+			len += 1 + this.precision;
+		for (int i = len; i < this.width; i++)
+			out.append( ' ' );
+
+		for (int d = digits - 1; d >= 0; d--) {
+			out.append( (char) ('0' + (ip / POW10[ d ]) % 10) );
+			if (this.grouping && d > 0 && d % this.groupingSize == 0)
+				out.append( this.groupingSeparator );
+		}
+		if (this.precision > 0) {
+			out.append( this.decimalSeparator );
+			for (int d = this.precision - 1; d >= 0; d--)
+				out.append( (char) ('0' + (fp / POW10[ d ]) % 10) );
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.cellformat;
+
+import io.starter.OpenXLS.Cell;
+import io.starter.OpenXLS.ExcelTools;
+
+/** Compiled form of {@link GeneralCellFormat}. */
+final class GeneralRenderer extends AbstractRenderer {
+	static final GeneralRenderer INSTANCE = new GeneralRenderer();
+
+	private GeneralRenderer() {}
+
+	public StringBuilder format (Object obj, StringBuilder out) {
+		// try to parse strings as numbers
+		if (obj instanceof String) try {
+			obj = Double.valueOf( (String) obj );
+		} catch (NumberFormatException ex) {
+			// this is OK, it just wasn't a number
+		}
+		
+		if (obj instanceof Number) {
+			Number num = (Number) obj;
+			if (num.longValue() == num.doubleValue()) {
+				// it's an integer
+				return out.append( num.longValue() );
+			}
+			// it's floating-point
+			return out.append( ExcelTools.getNumberAsString( num.doubleValue() ) );
+		}
+		
+		return out.append( obj.toString() );
+	}
+
+	public StringBuilder format (Cell cell, StringBuilder out) {
+		return this.format( cell.getVal(), out );
+	}
+}
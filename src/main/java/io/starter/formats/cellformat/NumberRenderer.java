@@ -0,0 +1,79 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.cellformat;
+
+import io.starter.OpenXLS.Cell;
+
+/** Compiled form of {@link NumberCellFormat}. */
+final class NumberRenderer extends AbstractRenderer {
+	private final FormatSection positive, negative, zero, string;
+
+	NumberRenderer (String positive, String negative, String zero, String string) {
+		this.positive = new FormatSection( positive );
+		this.negative = new FormatSection( negative );
+		this.zero = zero.equals( positive ) ? this.positive : new FormatSection( zero );
+		this.string = new FormatSection( string );
+	}
+
+	public StringBuilder format (Object input, StringBuilder out) {
+		if (input instanceof String) {
+			// hack to make useless @ pattern work
+			if (this.positive.isText()) {
+				return out.append( String.valueOf( input ) );
+			}
+			try{
+				input = Double.valueOf( input.toString() );
+			}catch(NumberFormatException e){
+				return this.string.format( input, out );
+			}
+		}
+		if (input instanceof Number) {
+			FormatSection format;
+			double value = ((Number) input).doubleValue();
+			
+			if (value > 0) format = this.positive;
+			else if (value < 0) {
+				format = this.negative;
+				value = Math.abs( value );
+			}
+			else format = this.zero;
+			
+			// hack to make percentage formats work
+			if (format.isPercent()) {
+				value *= 100;
+			}
+			
+			// hack to make useless @ pattern work
+			if (format.isText()) {
+				return out.append( String.valueOf( input ) );
+			}
+			
+			return format.format( value, out );
+		}
+		throw new IllegalArgumentException( "unsupported input type" );
+	}
+
+	public StringBuilder format (Cell cell, StringBuilder out) {
+		return this.format( cell.getVal(), out );
+	}
+}
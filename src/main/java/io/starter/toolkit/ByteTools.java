@@ -25,6 +25,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.util.Collection;
@@ -228,48 +229,31 @@ public static String getByteString(byte[] bt, boolean pad){
     /** converts and bitswaps an eight bite byte array into an IEEE double.
     */
     public static double eightBytetoLEDouble(byte[] bite){
-        byte[] b = new byte[8];
-        b[0] = bite[7];
-        b[1] = bite[6];
-        b[2] = bite[5];
-        b[3] = bite[4];
-        b[4] = bite[3];
-        b[5] = bite[2];
-        b[6] = bite[1];
-        b[7] = bite[0];
-        double d = 0;
-        java.io.ByteArrayInputStream bais = new java.io.ByteArrayInputStream(b); 
-        java.io.DataInputStream dis = new java.io.DataInputStream(bais);
-        try {
-            Double dbl = new Double(dis.readDouble()); 
-            d = dbl.doubleValue();
-        } catch (java.io.IOException e){ Logger.logInfo("io exception in byte to Double conversion" + e);}
-        return d;
+        return Double.longBitsToDouble(eightBytetoLELong(bite));
     }
     
     
     /** converts and bitswaps an eight bite byte array into an IEEE double.
     */
     public static long eightBytetoLELong(byte[] bite){
-        byte[] b = new byte[8];
-        b[0] = bite[7];
-        b[1] = bite[6];
-        b[2] = bite[5];
-        b[3] = bite[4];
-        b[4] = bite[3];
-        b[5] = bite[2];
-        b[6] = bite[1];
-        b[7] = bite[0];
         long l = 0;
-        java.io.ByteArrayInputStream bais = new java.io.ByteArrayInputStream(b); 
-        java.io.DataInputStream dis = new java.io.DataInputStream(bais);
-        try {
-            Long lg = new Long(dis.readLong()); 
-            l = lg.longValue();
-        } catch (java.io.IOException e){ Logger.logInfo("io exception in byte to Double conversion" + e);}
+        for (int i = 7; i >= 0; i--)
+            l = (l << 8) | (bite[i] & 0xff);
         return l;
     }    
 
+   /**
+    * Reads an InputStream to its end; the stream is not closed.
+    */
+    public static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 8192));
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1)
+            out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+
    /** 
     * Get an array of bytes from a collection of byte arrays
     * 
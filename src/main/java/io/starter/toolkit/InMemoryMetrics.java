@@ -0,0 +1,164 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.toolkit;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** {@link Metrics} collector which keeps totals in memory.
+ * <p>
+ * For each phase it keeps the number of runs and the total time, longest
+ * time and allocation of those runs; for each counter its total. The totals
+ * may be read individually, as a flat {@link #snapshot() map}, or as the
+ * text returned by {@link #toString()}, one <code>name value</code> pair to
+ * a line, which suits log files and monitoring agents.
+ * 
+ * <pre>
+ * InMemoryMetrics metrics = new InMemoryMetrics();
+ * Instrumentation.setMetrics(metrics);
+ * WorkBookHandle book = new WorkBookHandle(&quot;in.xls&quot;);
+ * book.write(out);
+ * Logger.logInfo(metrics.toString());
+ * </pre>
+ */
+public class InMemoryMetrics implements Metrics {
+
+	private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<String, LongAdder>();
+	private final ConcurrentHashMap<String, PhaseTotals> phases = new ConcurrentHashMap<String, PhaseTotals>();
+
+	private static final class PhaseTotals {
+		final LongAdder count = new LongAdder();
+		final LongAdder nanos = new LongAdder();
+		final LongAdder allocated = new LongAdder();
+		volatile long maxNanos;
+
+		synchronized void max(long n) {
+			if (n > maxNanos)
+				maxNanos = n;
+		}
+	}
+
+	/** Always <code>true</code>. */
+	@Override
+	public boolean isEnabled() {
+		return true;
+	}
+
+	@Override
+	public void phase(String phase, long nanos, long allocated) {
+		PhaseTotals t = phases.get(phase);
+		if (t == null) {
+			PhaseTotals nt = new PhaseTotals();
+			t = phases.putIfAbsent(phase, nt);
+			if (t == null)
+				t = nt;
+		}
+		t.count.increment();
+		t.nanos.add(nanos);
+		if (allocated > 0)
+			t.allocated.add(allocated);
+		if (nanos > t.maxNanos)
+			t.max(nanos);
+	}
+
+	@Override
+	public void count(String counter, long delta) {
+		LongAdder a = counters.get(counter);
+		if (a == null) {
+			LongAdder na = new LongAdder();
+			a = counters.putIfAbsent(counter, na);
+			if (a == null)
+				a = na;
+		}
+		a.add(delta);
+	}
+
+	/** Gets the total of a counter, or 0 if it was never counted. */
+	public long getCount(String counter) {
+		LongAdder a = counters.get(counter);
+		return (a == null) ? 0 : a.sum();
+	}
+
+	/** Gets the number of times a phase has run. */
+	public long getPhaseCount(String phase) {
+		PhaseTotals t = phases.get(phase);
+		return (t == null) ? 0 : t.count.sum();
+	}
+
+	/** Gets the total time spent in a phase, in nanoseconds. */
+	public long getPhaseNanos(String phase) {
+		PhaseTotals t = phases.get(phase);
+		return (t == null) ? 0 : t.nanos.sum();
+	}
+
+	/** Gets the estimated bytes allocated during a phase. */
+	public long getPhaseAllocated(String phase) {
+		PhaseTotals t = phases.get(phase);
+		return (t == null) ? 0 : t.allocated.sum();
+	}
+
+	/** Gets the ratio of formula values found cached to all formula values
+	 * requested, or NaN if none were.
+	 */
+	public double getFormulaCacheHitRate() {
+		long hits = getCount("formula.cache.hit");
+		long total = hits + getCount("formula.cache.miss");
+		return (total == 0) ? Double.NaN : (double) hits / total;
+	}
+
+	/** Gets every total, sorted by name. Counters appear under their own
+	 * name; each phase contributes <code>.count</code>, <code>.nanos</code>,
+	 * <code>.maxNanos</code> and <code>.allocated</code> entries.
+	 */
+	public Map<String, Long> snapshot() {
+		TreeMap<String, Long> ret = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> e : counters.entrySet())
+			ret.put(e.getKey(), e.getValue().sum());
+		for (Map.Entry<String, PhaseTotals> e : phases.entrySet()) {
+			PhaseTotals t = e.getValue();
+			String name = e.getKey();
+			ret.put(name + ".count", t.count.sum());
+			ret.put(name + ".nanos", t.nanos.sum());
+			ret.put(name + ".maxNanos", t.maxNanos);
+			ret.put(name + ".allocated", t.allocated.sum());
+		}
+		return ret;
+	}
+
+	/** Discards all totals. */
+	public void reset() {
+		counters.clear();
+		phases.clear();
+	}
+
+	/** Returns the {@link #snapshot()} as <code>name value</code> lines. */
+	@Override
+	public String toString() {
+		StringBuffer sb = new StringBuffer();
+		for (Map.Entry<String, Long> e : snapshot().entrySet())
+			sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+		return sb.toString();
+	}
+}
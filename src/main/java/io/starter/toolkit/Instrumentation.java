@@ -0,0 +1,205 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.toolkit;
+
+import java.lang.management.ManagementFactory;
+
+import io.starter.formats.XLS.XLSConstants;
+
+/** Holds the {@link Metrics} collector OpenXLS reports to.
+ * <p>
+ * The default collector discards everything. Another may be installed with
+ * {@link #setMetrics(Metrics)}, or by setting the system property
+ * {@link XLSConstants#METRICS_PROP} to the name of a class implementing
+ * {@link Metrics} before the first workbook is opened.
+ * <p>
+ * The phases reported are
+ * <ul>
+ * <li><code>leo.init</code> - reading the compound file sector tables and
+ * directories</li>
+ * <li><code>xls.read</code> - instantiating the BIFF8 records</li>
+ * <li><code>xls.sst</code> - decoding the shared string table</li>
+ * <li><code>ooxml.read</code>, and its parts <code>ooxml.styles</code>,
+ * <code>ooxml.sst</code>, <code>ooxml.sheet</code> and
+ * <code>ooxml.formulas</code> - reading an XLSX package</li>
+ * <li><code>formula.calculate</code> - outermost formula calculations,
+ * including the precedents they calculate; <code>formula.recalc</code> -
+ * calculating a workbook in dependency order</li>
+ * <li><code>xls.write</code>, and its part <code>xls.write.prepare</code> -
+ * writing BIFF8</li>
+ * </ul>
+ * and the counters
+ * <ul>
+ * <li><code>leo.bytesRead</code>, <code>xls.bytesRead</code>,
+ * <code>ooxml.bytesRead</code> and <code>xls.bytesWritten</code> - bytes of
+ * compound file, BIFF8 records and uncompressed XLSX parts</li>
+ * <li><code>xls.records</code> and <code>xls.records.0x<i>opcode</i></code>
+ * - records read, in total and by opcode; <code>xls.records.written</code>
+ * </li>
+ * <li><code>sst.strings</code> and <code>sst.decoded</code> - shared
+ * strings read, and those since decoded into objects</li>
+ * <li><code>formula.cache.hit</code> and <code>formula.cache.miss</code> -
+ * formula values found cached or calculated; <code>formula.parse</code>,
+ * <code>formula.compile</code> and <code>formula.shared</code> - formulas
+ * parsed, compiled and attached to their shared formula</li>
+ * </ul>
+ * Allocation is estimated from the allocation counter of the thread running
+ * a phase, so work handed to other threads is not included.
+ */
+public final class Instrumentation {
+
+	/** The collector used unless another is installed; it is never enabled. */
+	public static final Metrics NONE = new Metrics() {
+		@Override
+		public boolean isEnabled() {
+			return false;
+		}
+
+		@Override
+		public void phase(String phase, long nanos, long allocated) {
+		}
+
+		@Override
+		public void count(String counter, long delta) {
+		}
+	};
+
+	private static final Phase NO_PHASE = new Phase(null, null, 0, 0);
+
+	private static volatile Metrics metrics = createMetrics();
+
+	private Instrumentation() {
+	}
+
+	/** Gets the collector in use. */
+	public static Metrics getMetrics() {
+		return metrics;
+	}
+
+	/** Installs a collector.
+	 * @param m the collector, or <code>null</code> to stop collecting
+	 */
+	public static void setMetrics(Metrics m) {
+		metrics = (m == null) ? NONE : m;
+	}
+
+	/** Whether the collector in use is taking measurements. */
+	public static boolean isEnabled() {
+		return metrics.isEnabled();
+	}
+
+	/** Adds to a counter if measurements are being taken. */
+	public static void count(String counter, long delta) {
+		Metrics m = metrics;
+		if (m.isEnabled())
+			m.count(counter, delta);
+	}
+
+	/** Starts timing a phase. The returned phase must be ended, normally in
+	 * a <code>finally</code> block; when measurements are not being taken it
+	 * is a shared instance which does nothing.
+	 * @param name the name of the phase
+	 */
+	public static Phase start(String name) {
+		Metrics m = metrics;
+		if (!m.isEnabled())
+			return NO_PHASE;
+		return new Phase(m, name, System.nanoTime(), allocatedBytes());
+	}
+
+	/** A phase being timed. */
+	public static final class Phase {
+		private final Metrics metrics;
+		private final String name;
+		private final long start, allocated;
+
+		Phase(Metrics metrics, String name, long start, long allocated) {
+			this.metrics = metrics;
+			this.name = name;
+			this.start = start;
+			this.allocated = allocated;
+		}
+
+		/** Reports the phase to the collector it was started with. */
+		public void end() {
+			if (metrics == null)
+				return;
+			long nanos = System.nanoTime() - start;
+			long now = allocatedBytes();
+			metrics.phase(name, nanos, (allocated < 0 || now < 0) ? -1 : now
+					- allocated);
+		}
+	}
+
+	/** Gets the bytes allocated so far by the current thread, or -1 if the
+	 * JVM cannot tell. Only called while an enabled collector is installed.
+	 */
+	private static long allocatedBytes() {
+		if (!Allocation.SUPPORTED)
+			return -1;
+		return ((com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean()).getThreadAllocatedBytes(Thread
+				.currentThread().getId());
+	}
+
+	/** Probes for, and enables, the JVM wide thread allocation counters.
+	 * Held in its own class so that this happens on the first measurement
+	 * rather than when OpenXLS is loaded with metrics disabled.
+	 */
+	private static final class Allocation {
+		static final boolean SUPPORTED = allocationSupported();
+	}
+
+	private static boolean allocationSupported() {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory
+					.getThreadMXBean();
+			if (!(bean instanceof com.sun.management.ThreadMXBean))
+				return false;
+			com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+			if (!sun.isThreadAllocatedMemorySupported())
+				return false;
+			if (!sun.isThreadAllocatedMemoryEnabled())
+				sun.setThreadAllocatedMemoryEnabled(true);
+			return true;
+		} catch (Throwable t) {
+			return false;
+		}
+	}
+
+	/**
+	 * create the collector named by {@link XLSConstants#METRICS_PROP} if set
+	 */
+	private static Metrics createMetrics() {
+		String metricsclass = System.getProperty(XLSConstants.METRICS_PROP);
+		if (metricsclass != null) {
+			try {
+				return (Metrics) Class.forName(metricsclass).getDeclaredConstructor().newInstance();
+			} catch (Exception e) {
+				Logger.logErr("Could not load custom Metrics: " + metricsclass
+						+ ": " + e + ". Metrics will not be collected.");
+			}
+		}
+		return NONE;
+	}
+}
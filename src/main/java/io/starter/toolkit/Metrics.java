@@ -0,0 +1,56 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.toolkit;
+
+/** Receives measurements taken while workbooks are read, calculated and
+ * written.
+ * <p>
+ * The collector in use is installed through {@link Instrumentation}, which
+ * also lists the measurements OpenXLS reports. Implementations must be safe
+ * for use from several threads at once.
+ * 
+ * @see InMemoryMetrics
+ */
+public interface Metrics {
+
+	/** Whether measurements should be taken at all. Instrumented code checks
+	 * this before doing any work on the collector's behalf, so a disabled
+	 * collector costs next to nothing.
+	 */
+	public boolean isEnabled();
+
+	/** Records one run of a phase.
+	 * @param phase the name of the phase, for instance <code>xls.read</code>
+	 * @param nanos the time the run took
+	 * @param allocated an estimate of the bytes the running thread allocated
+	 *        during the run, or -1 if the JVM does not provide one
+	 */
+	public void phase(String phase, long nanos, long allocated);
+
+	/** Adds to a counter.
+	 * @param counter the name of the counter, for instance
+	 *        <code>xls.bytesRead</code>
+	 * @param delta the amount to add
+	 */
+	public void count(String counter, long delta);
+}
@@ -0,0 +1,99 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import org.junit.Test;
+
+/**
+ * Tests that cells written a block at a time through
+ * {@link WorkSheetHandle#addRows(Object[][], int, int, int[])} end up as
+ * they would if added one by one.
+ */
+public class AddRowsTest {
+
+	private final WorkBookHandle book = new WorkBookHandle();
+	private final WorkSheetHandle sheet;
+
+	public AddRowsTest() throws Exception {
+		sheet = book.getWorkSheet(0);
+	}
+
+	@Test
+	public void testNewCellJoinsMerge() throws Exception {
+		new CellRange("Sheet1!B2:C3", book, true).mergeCells(false);
+		sheet.removeCell("C3");
+
+		sheet.addRows(new Object[][] { { "a", "b", "c" } }, 2, 1, null);
+		CellRange merge = sheet.getCell("C3").getMergedCellRange();
+		assertNotNull(merge);
+		assertEquals("B2:C3", merge.getRange().substring(merge.getRange().indexOf('!') + 1));
+		assertNull(sheet.getCell("D3").getMergedCellRange());
+	}
+
+	@Test
+	public void testFormulas() throws Exception {
+		sheet.add(Double.valueOf(4), "D1");
+		sheet.add("=A1*2", "D2");
+		sheet.addRows(new Object[][] { { Double.valueOf(3), "=A1+1" }, { "=SUM(A1:B1)", null } }, 0, 0, null);
+
+		assertTrue(sheet.getCell("B1").isFormula());
+		assertEquals(4.0, sheet.getCell("B1").getDoubleVal(), 0);
+		assertEquals(7.0, sheet.getCell("A2").getDoubleVal(), 0);
+		assertEquals(6.0, sheet.getCell("D2").getDoubleVal(), 0);
+
+		// replacing the value below a formula recalculates it
+		sheet.addRows(new Object[][] { { Double.valueOf(10) } }, 0, 0, null);
+		assertEquals(11.0, sheet.getCell("B1").getDoubleVal(), 0);
+		assertEquals(21.0, sheet.getCell("A2").getDoubleVal(), 0);
+	}
+
+	@Test
+	public void testDates() throws Exception {
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(2020, Calendar.MARCH, 15);
+		Date d = cal.getTime();
+
+		sheet.add(Double.valueOf(1), "B1");
+		sheet.getCell("B1").setBold(true);
+		sheet.addRows(new Object[][] { { d, d } }, 0, 0, null);
+
+		CellHandle added = sheet.getCell("A1");
+		assertTrue(added.isDate());
+		assertEquals(43905.0, added.getDoubleVal(), 0);
+
+		// a replaced cell keeps its own format but still shows a date
+		CellHandle replaced = sheet.getCell("B1");
+		assertTrue(replaced.isDate());
+		assertTrue(replaced.getFormatHandle().getIsBold());
+		assertEquals(43905.0, replaced.getDoubleVal(), 0);
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests SUM, AVERAGE and SUMPRODUCT over ranges with gaps, blank cells,
+ * text, booleans and errors.
+ */
+public class AggregateTest {
+	private final WorkBookHandle book = new WorkBookHandle();
+	private final WorkSheetHandle sheet;
+
+	/* A1:A8 is 1, (none), 3, "x", (blank), 6, =A1*7, TRUE
+	 * B1:B8 is 2 in every row but B2, which does not exist */
+	public AggregateTest() throws Exception {
+		sheet = book.getWorkSheet(0);
+		sheet.add(Double.valueOf(1), "A1");
+		sheet.add(Double.valueOf(3), "A3");
+		sheet.add("x", "A4");
+		sheet.add(null, "A5");
+		sheet.add(Integer.valueOf(6), "A6");
+		sheet.add("=A1*7", "A7");
+		sheet.add(Boolean.TRUE, "A8");
+		for (int i = 1; i <= 8; i++)
+			if (i != 2)
+				sheet.add(Integer.valueOf(2), "B" + i);
+	}
+
+	private Object calc(String formula) throws Exception {
+		sheet.add(formula, "D1");
+		return sheet.getCell("D1").getFormulaHandle().calculate();
+	}
+
+	private double number(String formula) throws Exception {
+		return ((Number) calc(formula)).doubleValue();
+	}
+
+	@Test
+	public void testSkipsBlanksAndText() throws Exception {
+		assertEquals(17.0, number("=SUM(A1:A8)"), 0);
+		assertEquals(17.0 / 4, number("=AVERAGE(A1:A8)"), 1e-12);
+		assertEquals(34.0, number("=SUMPRODUCT(A1:A8,B1:B8)"), 0);
+	}
+
+	@Test
+	public void testFormulaMembersFollowEdits() throws Exception {
+		assertEquals(17.0, number("=SUM(A1:A8)"), 0);
+		sheet.getCell("A1").setVal(2);
+		assertEquals(25.0, number("=SUM(A1:A8)"), 0);
+		assertEquals(14.0, number("=MAX(A1:A8)"), 0);
+	}
+
+	@Test
+	public void testEmptyRange() throws Exception {
+		assertEquals(0.0, number("=SUM(F1:G20)"), 0);
+		assertEquals(0.0, number("=SUMPRODUCT(F1:F20,G1:G20)"), 0);
+		assertEquals("#DIV/0!", calc("=AVERAGE(F1:G20)").toString());
+	}
+
+	@Test
+	public void testErrorPropagates() throws Exception {
+		sheet.add("=NA()", "A2");
+		assertEquals("#N/A", calc("=SUM(A1:A8)").toString());
+		assertEquals("#N/A", calc("=SUM(B1:B8,A1:A3)").toString());
+		// a range beside the error is unaffected
+		assertEquals(28.0, number("=SUM(A3:B8)"), 0);
+	}
+
+	@Test
+	public void testSumAcrossSheets() throws Exception {
+		WorkSheetHandle other = book.getWorkSheet(1);
+		other.add(Double.valueOf(100), "A1");
+		other.add("=Sheet1!A3+1", "A3");
+		assertEquals(108.0, number("=SUM(Sheet2!A1:A5,A1:A3)"), 0);
+	}
+}
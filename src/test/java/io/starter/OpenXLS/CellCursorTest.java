@@ -0,0 +1,157 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import io.starter.formats.XLS.Boundsheet;
+import io.starter.formats.XLS.Mulblank;
+import io.starter.formats.XLS.XLSConstants;
+import io.starter.toolkit.ByteTools;
+
+/**
+ * Tests that a CellCursor visits exactly the populated cells of a sparse
+ * sheet, in order, including each column of a MULBLANK.
+ */
+public class CellCursorTest {
+	private final WorkSheetHandle sheet;
+
+	/* A1 C1 / B6 / A10 [B10:E10 MULBLANK] F10 / A1001 D1001 / Z60000 */
+	public CellCursorTest() throws Exception {
+		sheet = new WorkBookHandle().getWorkSheet(0);
+		sheet.add(Double.valueOf(1), "A1");
+		sheet.add("c", "C1");
+		sheet.add(Integer.valueOf(6), "B6");
+		sheet.add(Double.valueOf(10), "A10");
+		sheet.add(Double.valueOf(15), "F10");
+		sheet.add("=A1+B6", "A1001");
+		sheet.add(Boolean.TRUE, "D1001");
+		sheet.add(Double.valueOf(0.5), "Z60000");
+
+		Boundsheet bs = sheet.getMysheet();
+		byte[] data = new byte[6 + 4 * 2];
+		System.arraycopy(ByteTools.shortToLEBytes((short) 9), 0, data, 0, 2);
+		System.arraycopy(ByteTools.shortToLEBytes((short) 1), 0, data, 2, 2);
+		System.arraycopy(ByteTools.shortToLEBytes((short) 4), 0, data, data.length - 2, 2);
+		Mulblank m = new Mulblank();
+		m.setOpcode(XLSConstants.MULBLANK);
+		m.setData(data);
+		m.setLength(data.length);
+		m.init();
+		m.setSheet(bs);
+		m.setWorkBook(bs.getWorkBook());
+		bs.addCell(m);
+	}
+
+	private static String walk(CellCursor cur) {
+		StringBuilder sb = new StringBuilder();
+		while (cur.next()) {
+			if (sb.length() > 0)
+				sb.append(' ');
+			sb.append(cur.getCellAddress());
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testRowMajor() {
+		assertEquals("A1 C1 B6 A10 B10 C10 D10 E10 F10 A1001 D1001 Z60000",
+				walk(sheet.getCellCursor()));
+	}
+
+	@Test
+	public void testColumnMajor() {
+		assertEquals("A1 A10 A1001 B6 B10 C1 C10 D10 D1001 E10 F10 Z60000",
+				walk(sheet.getCellCursor(true)));
+	}
+
+	@Test
+	public void testArea() {
+		// rows 6 to 1000, columns C to E: only the middle of the MULBLANK
+		assertEquals("C10 D10 E10", walk(sheet.getCellCursor(5, 2, 999, 4, false)));
+		assertEquals("C10 D10 E10", walk(sheet.getCellCursor(5, 2, 999, 4, true)));
+		// an area between the populated rows
+		assertEquals("", walk(sheet.getCellCursor(10, 0, 999, 30, false)));
+		assertEquals("Z60000", walk(sheet.getCellCursor(1001, 0, 65535, 255, false)));
+	}
+
+	@Test
+	public void testValues() throws Exception {
+		CellCursor cur = sheet.getCellCursor();
+		double total = 0;
+		int blanks = 0;
+		while (cur.next()) {
+			if (cur.isBlank()) {
+				blanks++;
+				assertEquals(10 - 1, cur.getRowNum());
+			} else {
+				switch (cur.getCellType()) {
+				case Cell.TYPE_DOUBLE:
+				case Cell.TYPE_FP:
+				case Cell.TYPE_INT:
+					total += cur.getDouble();
+				}
+			}
+			if (cur.isFormula())
+				assertEquals(7, cur.getInt());
+		}
+		assertEquals(4, blanks);
+		assertEquals(32.5, total, 0);
+		try {
+			cur.getCell();
+			fail("a finished cursor has no cell");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testHandleAndReset() throws Exception {
+		CellCursor cur = sheet.getCellCursor(1000, 0, 1000, 10, false);
+		assertTrue(cur.next());
+		CellHandle h = cur.getCellHandle();
+		assertEquals("A1001", h.getCellAddress());
+		assertEquals("=A1+B6", h.getFormulaHandle().getFormulaString());
+		assertTrue(cur.next());
+		assertTrue(cur.getBoolean());
+		assertFalse(cur.next());
+
+		sheet.add("x", "B1001");
+		cur.reset();
+		assertEquals("A1001 B1001 D1001", walk(cur));
+	}
+
+	@Test
+	public void testEmptySheet() throws Exception {
+		WorkSheetHandle empty = sheet.getWorkBook().getWorkSheet(1);
+		CellCursor cur = empty.getCellCursor();
+		assertFalse(cur.next());
+		assertFalse(cur.next());
+		assertFalse(empty.getCellCursor(true).next());
+	}
+}
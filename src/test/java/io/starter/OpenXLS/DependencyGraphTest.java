@@ -0,0 +1,180 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import io.starter.formats.XLS.DependencyGraph;
+import io.starter.formats.XLS.Formula;
+
+/**
+ * Tests the ordering, cycle detection and volatile handling of the
+ * dependency graph used by {@link WorkBookHandle#recalc()}.
+ */
+public class DependencyGraphTest {
+
+	@Test
+	public void testCalculationOrder() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		sheet.add(Double.valueOf(1), "A1");
+		sheet.add("=C1+B1", "D1");
+		sheet.add("=B1*2", "C1");
+		sheet.add("=A1+1", "B1");
+
+		DependencyGraph graph = graph(book);
+		graph.sync(book.getWorkBook());
+		List<Formula> order = graph.getCalculationOrder(formula(sheet, "D1"));
+		int b = order.indexOf(formula(sheet, "B1"));
+		int c = order.indexOf(formula(sheet, "C1"));
+		int d = order.indexOf(formula(sheet, "D1"));
+		assertTrue("B1 before C1 " + order, b >= 0 && b < c);
+		assertEquals("D1 comes last", order.size() - 1, d);
+		assertTrue(graph.getDependents(sheet.getCell("A1").getCell()).contains(
+				formula(sheet, "B1")));
+
+		book.recalc();
+		assertEquals(6.0, sheet.getCell("D1").getDoubleVal(), 0);
+		sheet.getCell("A1").setVal(10);
+		book.recalc();
+		assertEquals(33.0, sheet.getCell("D1").getDoubleVal(), 0);
+	}
+
+	@Test
+	public void testCycle() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		sheet.add("=G2+1", "G1");
+		sheet.add("=G1+1", "G2");
+		sheet.add(Double.valueOf(2), "H1");
+		sheet.add("=H1*3", "H2");
+		book.calculateFormulas();
+		assertEquals("#CIR_ERR!", String.valueOf(sheet.getCell("G1").getVal()));
+		assertEquals("#CIR_ERR!", String.valueOf(sheet.getCell("G2").getVal()));
+		// formulas outside the cycle are unaffected
+		assertEquals(6.0, sheet.getCell("H2").getDoubleVal(), 0);
+	}
+
+	@Test
+	public void testVolatileRefresh() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		sheet.add("=RANDBETWEEN(1,1000000)", "A1");
+		sheet.add("=A1*1", "B1");
+		sheet.add(Double.valueOf(4), "C1");
+		sheet.add("=C1+1", "D1");
+		book.recalc();
+
+		List<Formula> volatiles = graph(book).getVolatileFormulas();
+		assertTrue(volatiles.contains(formula(sheet, "A1")));
+		assertFalse(volatiles.contains(formula(sheet, "D1")));
+
+		Set<Object> seen = new HashSet<Object>();
+		for (int i = 0; i < 10; i++) {
+			book.recalc();
+			Object a = sheet.getCell("A1").getVal();
+			// dependents of a volatile formula are refreshed with it
+			assertEquals(a, sheet.getCell("B1").getVal());
+			seen.add(a);
+		}
+		assertTrue("RANDBETWEEN is recalculated " + seen, seen.size() > 1);
+	}
+
+	@Test
+	public void testInsertRowKeepsGraph() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		for (int i = 1; i <= 10; i++)
+			sheet.add(Double.valueOf(i), "A" + i);
+		sheet.add("=A8*2", "C1");
+		sheet.add("=SUM(A1:A10)", "C2");
+		sheet.add("=SUM(A5:A9)", "C3");
+		book.recalc();
+		DependencyGraph graph = graph(book);
+		assertTrue(graph.isBuilt());
+
+		sheet.insertRow(3);
+		graph.sync(book.getWorkBook());
+		Formula c1 = formula(sheet, "C1");
+		assertTrue(graph.getDependents(sheet.getCell("A9").getCell()).contains(c1));
+		assertFalse(graph.getDependents(sheet.getCell("A8").getCell()).contains(c1));
+
+		sheet.getCell("A9").setVal(100);
+		assertEquals(200.0, sheet.getCell("C1").getDoubleVal(), 0);
+		assertEquals(147.0, sheet.getCell("C2").getDoubleVal(), 0);
+		assertEquals(127.0, sheet.getCell("C3").getDoubleVal(), 0);
+	}
+
+	@Test
+	public void testNamedRangeExpands() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		for (int i = 1; i <= 4; i++)
+			sheet.add(Double.valueOf(i), "A" + i);
+		book.createNamedRange("vals", "Sheet1!$A$1:$A$4");
+		sheet.add("=SUM(vals)", "C1");
+		book.recalc();
+		assertEquals(10.0, sheet.getCell("C1").getDoubleVal(), 0);
+
+		sheet.insertRow(2);
+		sheet.add(Double.valueOf(7), "A3");
+		assertEquals(17.0, sheet.getCell("C1").getDoubleVal(), 0);
+		sheet.getCell("A5").setVal(10);
+		assertEquals(23.0, sheet.getCell("C1").getDoubleVal(), 0);
+	}
+
+	@Test
+	public void testVolatileClearedOnNextCalculation() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		sheet.add(Double.valueOf(1), "A1");
+		sheet.add(Double.valueOf(2), "A2");
+		sheet.add("=A1+1", "B1");
+		sheet.add("=INDIRECT(\"A2\")*10", "B2");
+		book.recalc();
+		assertEquals(20.0, sheet.getCell("B2").getDoubleVal(), 0);
+
+		// only the static dependents are affected by the change itself
+		List<CellHandle> affected = sheet.getCell("A2").calculateAffectedCells();
+		assertTrue(affected.isEmpty());
+		sheet.getCell("A2").setVal(5);
+		assertEquals(50.0, sheet.getCell("B2").getDoubleVal(), 0);
+		assertEquals(2.0, sheet.getCell("B1").getDoubleVal(), 0);
+	}
+
+	private static DependencyGraph graph(WorkBookHandle book) {
+		return book.getWorkBook().getRefTracker().getDependencyGraph();
+	}
+
+	private static Formula formula(WorkSheetHandle sheet, String addr) throws Exception {
+		return sheet.getCell(addr).getFormulaHandle().getFormulaRec();
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Tests that inserted rows move the references below them, including rows
+ * only an Excel 2007 sheet can address.
+ */
+public class InsertRowsTest {
+
+	@Test
+	public void testShiftBeyondRow131071() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		book.setIsExcel2007(true);
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		sheet.add(Double.valueOf(1), "E10000");
+		sheet.add("=A262150", "B1");
+		sheet.add("=SUM(A262150:C262155)", "B2");
+		sheet.add("=A5", "B3");
+
+		sheet.insertRow(9999);
+		assertEquals("=A262151", formula(sheet, "B1"));
+		assertEquals("=SUM(A262151:C262156)", formula(sheet, "B2"));
+		assertEquals("=A5", formula(sheet, "B3"));
+
+		sheet.insertRows(9999, 3);
+		assertEquals("=A262154", formula(sheet, "B1"));
+		assertEquals("=SUM(A262154:C262159)", formula(sheet, "B2"));
+		assertEquals(1.0, sheet.getCell("E10004").getDoubleVal(), 0);
+	}
+
+	@Test
+	public void testRejectPastLastRow() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		sheet.add(Double.valueOf(1), "A65535");
+		sheet.insertRows(10, 1);
+		assertEquals(1.0, sheet.getCell("A65536").getDoubleVal(), 0);
+		try {
+			sheet.insertRows(10, 1);
+			fail("row 65536 can not move down on a BIFF8 sheet");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals(1.0, sheet.getCell("A65536").getDoubleVal(), 0);
+	}
+
+	private static String formula(WorkSheetHandle sheet, String addr) throws Exception {
+		return sheet.getCell(addr).getFormulaHandle().getFormulaString();
+	}
+}
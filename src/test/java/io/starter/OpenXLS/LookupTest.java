@@ -0,0 +1,86 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests that VLOOKUP, HLOOKUP and MATCH answer from the current values of
+ * their tables once those have been indexed.
+ */
+public class LookupTest {
+	private final WorkBookHandle book = new WorkBookHandle();
+	private final WorkSheetHandle sheet;
+
+	public LookupTest() throws Exception {
+		sheet = book.getWorkSheet(0);
+		for (int i = 1; i <= 20; i++) {
+			sheet.add(Double.valueOf(i * 10), "A" + i);
+			sheet.add("v" + i, "B" + i);
+		}
+	}
+
+	@Test
+	public void testEditInExplicitMode() throws Exception {
+		book.setFormulaCalculationMode(WorkBook.CALCULATE_EXPLICIT);
+		sheet.add("=VLOOKUP(50,A1:B20,2,FALSE)", "D1");
+		sheet.add("=MATCH(50,A1:A20,0)", "D2");
+		assertEquals("v5", sheet.getCell("D1").getFormulaHandle().calculate());
+		assertEquals(5, ((Number) sheet.getCell("D2").getFormulaHandle().calculate()).intValue());
+
+		sheet.getCell("A3").setVal(50);
+		book.recalc();
+		assertEquals("v3", sheet.getCell("D1").getVal());
+		assertEquals(3, ((Number) sheet.getCell("D2").getVal()).intValue());
+	}
+
+	@Test
+	public void testEditInAutomaticMode() throws Exception {
+		sheet.add("=VLOOKUP(\"v7\",B1:B20,1,FALSE)", "D1");
+		sheet.add("=VLOOKUP(75,A1:B20,2,TRUE)", "D2");
+		assertEquals("v7", sheet.getCell("D1").getVal());
+		assertEquals("v7", sheet.getCell("D2").getVal());
+
+		sheet.getCell("B7").setVal("w7");
+		sheet.getCell("A8").setVal(72);
+		assertEquals("#N/A", sheet.getCell("D1").getVal().toString());
+		assertEquals("v8", sheet.getCell("D2").getVal());
+	}
+
+	@Test
+	public void testHlookup() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			sheet.add(Double.valueOf(i), ExcelTools.getAlphaVal(5 + i) + "1");
+			sheet.add("h" + i, ExcelTools.getAlphaVal(5 + i) + "2");
+		}
+		sheet.add("=HLOOKUP(3,F1:J2,2,FALSE)", "D1");
+		sheet.add("=HLOOKUP(3,F1:J2,3,FALSE)", "D2");
+		assertEquals("h3", sheet.getCell("D1").getVal());
+		assertEquals("#REF!", sheet.getCell("D2").getVal().toString());
+
+		sheet.getCell("G1").setVal(3);
+		assertEquals("h1", sheet.getCell("D1").getVal());
+	}
+}
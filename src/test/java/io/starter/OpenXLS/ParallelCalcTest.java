@@ -0,0 +1,91 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that recalculating on several threads gives the results of a
+ * single-threaded recalculation.
+ */
+public class ParallelCalcTest {
+
+	private static final int ROWS = 200;
+
+	/** builds a book whose formulas form several dependency levels */
+	private static WorkBookHandle book(boolean parallel) throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		book.setParallelCalculation(parallel);
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		for (int r = 1; r <= ROWS; r++) {
+			sheet.add(Double.valueOf(r), "A" + r);
+			sheet.add("=A" + r + "*2", "B" + r);
+			sheet.add("=B" + r + "+SUM(A1:A" + r + ")", "C" + r);
+			sheet.add("=VLOOKUP(" + (ROWS + 1 - r) + ",A1:C" + ROWS + ",3,FALSE)", "D" + r);
+			sheet.add("=INDIRECT(\"C" + r + "\")+D" + r, "E" + r);
+		}
+		sheet.add("=SUM(E1:E" + ROWS + ")", "F1");
+		return book;
+	}
+
+	@Test
+	public void testMatchesSerial() throws Exception {
+		WorkBookHandle serial = book(false), parallel = book(true);
+		assertTrue(parallel.getParallelCalculation());
+		serial.recalc();
+		parallel.recalc();
+		assertSameValues(serial, parallel);
+
+		// change the inputs the levels are built on and calculate again
+		for (int r = 1; r <= ROWS; r += 7) {
+			serial.getWorkSheet(0).getCell("A" + r).setVal(r * 3);
+			parallel.getWorkSheet(0).getCell("A" + r).setVal(r * 3);
+		}
+		serial.recalc();
+		parallel.recalc();
+		assertSameValues(serial, parallel);
+	}
+
+	@Test
+	public void testKnownTotal() throws Exception {
+		WorkBookHandle parallel = book(true);
+		parallel.recalc();
+		// E = 2 * C = 2 * (2r + r(r+1)/2), summed over r
+		double expect = 0;
+		for (int r = 1; r <= ROWS; r++)
+			expect += 2 * (2 * r + r * (r + 1) / 2.0);
+		assertEquals(expect, parallel.getWorkSheet(0).getCell("F1").getDoubleVal(), 0);
+	}
+
+	private static void assertSameValues(WorkBookHandle expect, WorkBookHandle actual) throws Exception {
+		WorkSheetHandle e = expect.getWorkSheet(0), a = actual.getWorkSheet(0);
+		for (int r = 1; r <= ROWS; r++)
+			for (char c = 'B'; c <= 'E'; c++)
+				assertEquals("" + c + r, e.getCell("" + c + r).getDoubleVal(),
+						a.getCell("" + c + r).getDoubleVal(), 0);
+		assertEquals(e.getCell("F1").getDoubleVal(), a.getCell("F1").getDoubleVal(), 0);
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import io.starter.formats.XLS.XLSConstants;
+
+/**
+ * Tests that reading an XLSX file with its sheet parts tokenized
+ * concurrently gives the same workbook as reading it serially.
+ */
+public class ParallelReadTest {
+	private final byte[] xlsx;
+
+	public ParallelReadTest() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		while (book.getNumWorkSheets() < 7)
+			book.createWorkSheet("S" + book.getNumWorkSheets());
+		WorkSheetHandle[] sheets = book.getWorkSheets();
+		for (int s = 0; s < sheets.length; s++) {
+			for (int r = 1; r <= 150; r += (s + 1)) {
+				sheets[s].add(Double.valueOf(r + s / 10.0), "A" + r);
+				sheets[s].add("text <" + s + "> & " + (r % 9), "B" + r);
+				sheets[s].add("=A" + r + "*2", "C" + r);
+			}
+			sheets[s].add(Boolean.FALSE, "E1");
+		}
+		sheets[3].add("=SUM(" + sheets[2].getSheetName() + "!A1:A150)", "F1");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write(out, WorkBookHandle.FORMAT_XLSX);
+		xlsx = out.toByteArray();
+	}
+
+	private WorkBookHandle read(boolean parallel) throws Exception {
+		String old = System.getProperty(XLSConstants.PARALLEL_READ_PROP);
+		System.setProperty(XLSConstants.PARALLEL_READ_PROP, String.valueOf(parallel));
+		try {
+			return new WorkBookHandle(new ByteArrayInputStream(xlsx));
+		} finally {
+			if (old == null)
+				System.clearProperty(XLSConstants.PARALLEL_READ_PROP);
+			else
+				System.setProperty(XLSConstants.PARALLEL_READ_PROP, old);
+		}
+	}
+
+	private static byte[] xls(WorkBookHandle book) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write(out, WorkBookHandle.FORMAT_XLS);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testSameWorkbook() throws Exception {
+		assertArrayEquals(xls(read(false)), xls(read(true)));
+	}
+
+	@Test
+	public void testValues() throws Exception {
+		WorkBookHandle book = read(true);
+		assertEquals(7, book.getNumWorkSheets());
+		WorkSheetHandle s4 = book.getWorkSheet(4);
+		assertEquals(11.4, s4.getCell("A11").getDoubleVal(), 1e-9);
+		assertEquals("text <4> & 2", s4.getCell("B11").getStringVal());
+		assertEquals(22.8, s4.getCell("C11").getDoubleVal(), 1e-9);
+		assertEquals("false", s4.getCell("E1").getStringVal());
+
+		double sum = 0;
+		for (int r = 1; r <= 150; r += 3)
+			sum += r + 0.2;
+		assertEquals(sum, book.getWorkSheet(3).getCell("F1").getDoubleVal(), 1e-9);
+	}
+
+	@Test
+	public void testCellsInOrder() throws Exception {
+		WorkBookHandle serial = read(false), parallel = read(true);
+		for (int s = 0; s < serial.getNumWorkSheets(); s++) {
+			CellCursor a = serial.getWorkSheet(s).getCellCursor();
+			CellCursor b = parallel.getWorkSheet(s).getCellCursor();
+			while (a.next()) {
+				assertEquals(true, b.next());
+				assertEquals(a.getCellAddress(), b.getCellAddress());
+				assertEquals(String.valueOf(a.getVal()), String.valueOf(b.getVal()));
+			}
+			assertEquals(false, b.next());
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests that writing the sheets of a workbook in parallel produces the same
+ * file as writing them one at a time.
+ */
+public class ParallelWriteTest {
+
+	/* builds the same book every time: sheets of numbers, shared strings,
+	 * merges, gaps of empty rows and formulas reading the sheet before */
+	private static WorkBookHandle book(int sheets) throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		while (book.getNumWorkSheets() < sheets)
+			book.createWorkSheet("Sheet" + (book.getNumWorkSheets() + 1));
+		for (int s = 0; s < sheets; s++) {
+			WorkSheetHandle sheet = book.getWorkSheet(s);
+			for (int r = 1; r <= 400; r++) {
+				if (r % 50 > 40)
+					continue;
+				sheet.add(Double.valueOf(r * (s + 1)), "A" + r);
+				sheet.add("label " + (r % 17), "B" + r);
+				if (s > 0)
+					sheet.add("=A" + r + "+Sheet" + s + "!A" + r, "C" + r);
+			}
+			new CellRange(sheet.getSheetName() + "!D" + (s + 3) + ":F" + (s + 3), book, true).mergeCells(false);
+		}
+		return book;
+	}
+
+	private static byte[] write(WorkBookHandle book, boolean parallel) throws Exception {
+		book.setParallelWrite(parallel);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write(out, WorkBookHandle.FORMAT_XLS);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testSameBytes() throws Exception {
+		byte[] serial = write(book(6), false);
+		byte[] parallel = write(book(6), true);
+		assertArrayEquals(serial, parallel);
+	}
+
+	@Test
+	public void testRewrite() throws Exception {
+		// a second write of the same book goes over records already prepared
+		WorkBookHandle book = book(4);
+		byte[] first = write(book, true);
+		book.getWorkSheet(2).add("added", "K7");
+		byte[] second = write(book, true);
+		assertArrayEquals(write(book, false), second);
+		assertFalse(Arrays.equals(first, second));
+	}
+
+	@Test
+	public void testReadBack() throws Exception {
+		WorkBookHandle book = new WorkBookHandle(new ByteArrayInputStream(write(book(5), true)));
+		assertEquals(5, book.getNumWorkSheets());
+		WorkSheetHandle last = book.getWorkSheet(4);
+		assertEquals(1500.0, last.getCell("A300").getDoubleVal(), 0);
+		assertEquals("label 11", last.getCell("B300").getStringVal());
+		assertEquals(2430.0, last.getCell("C270").getDoubleVal(), 0);
+		assertEquals("D7:F7", last.getCell("E7").getMergedCellRange().getRange().replaceAll(".*!", ""));
+	}
+
+	@Test
+	public void testSingleSheet() throws Exception {
+		WorkBookHandle book = book(1);
+		assertArrayEquals(write(book(1), false), write(book, true));
+	}
+}
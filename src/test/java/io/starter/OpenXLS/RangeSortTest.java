@@ -0,0 +1,167 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Tests CellRange.sortRows and sortColumns: the ordering of mixed values,
+ * multiple keys, stability and the references of formulas that move.
+ */
+public class RangeSortTest {
+	private final WorkBookHandle book = new WorkBookHandle();
+	private final WorkSheetHandle sheet;
+
+	public RangeSortTest() throws Exception {
+		sheet = book.getWorkSheet(0);
+	}
+
+	/** fills column A from row 1 with the values, leaving nulls empty, and
+	 * numbers each row in column B */
+	private void column(Object... values) throws Exception {
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null)
+				sheet.add(values[i], "A" + (i + 1));
+			sheet.add(Integer.valueOf(i + 1), "B" + (i + 1));
+		}
+	}
+
+	/** the original row numbers in column B, in their current order */
+	private String order(int rows) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int r = 1; r <= rows; r++)
+			sb.append(r > 1 ? " " : "").append(sheet.getCell("B" + r).getIntVal());
+		return sb.toString();
+	}
+
+	private void sortRows(String range, int[] keys, boolean... ascending) throws Exception {
+		new CellRange(sheet.getSheetName() + "!" + range, book, true).sortRows(keys, ascending);
+	}
+
+	@Test
+	public void testMixedTypes() throws Exception {
+		// 1:"pear" 2:TRUE 3:10 4:(empty) 5:=NA() 6:"Apple" 7:-2.5 8:FALSE 9:"#N/A" 10:"apple"
+		column("pear", Boolean.TRUE, Integer.valueOf(10), null, "=NA()", "Apple",
+				Double.valueOf(-2.5), Boolean.FALSE, "#N/A", "apple");
+		sortRows("A1:B10", new int[] { 0 }, true);
+		// numbers, text regardless of case (the text "#N/A" is text), FALSE, TRUE,
+		// errors, then the empty cell
+		assertEquals("7 3 9 6 10 1 8 2 5 4", order(10));
+		assertEquals("Apple", sheet.getCell("A4").getStringVal());
+		assertEquals("#N/A", sheet.getCell("A9").getFormulaHandle().calculate().toString());
+	}
+
+	@Test
+	public void testDescendingKeepsBlanksLast() throws Exception {
+		column(Integer.valueOf(3), null, "x", Integer.valueOf(7), null, Boolean.TRUE);
+		sortRows("A1:B6", new int[] { 0 }, false);
+		assertEquals("6 3 4 1 2 5", order(6));
+	}
+
+	@Test
+	public void testSecondaryKeyAndStability() throws Exception {
+		// A is the primary key, C the secondary; rows 2 and 5 tie on both
+		column("b", "a", "b", "a", "a", "b");
+		Object[] c = { Integer.valueOf(1), Integer.valueOf(2), Integer.valueOf(3),
+				Integer.valueOf(9), Integer.valueOf(2), Integer.valueOf(3) };
+		for (int i = 0; i < c.length; i++)
+			sheet.add(c[i], "C" + (i + 1));
+		sortRows("A1:C6", new int[] { 0, 2 }, true, false);
+		assertEquals("4 2 5 3 6 1", order(6));
+	}
+
+	@Test
+	public void testFormulaReferences() throws Exception {
+		column(Integer.valueOf(30), Integer.valueOf(10), Integer.valueOf(20));
+		for (int r = 1; r <= 3; r++)
+			sheet.add("=A" + r + "*10+$B$1", "C" + r);
+		sheet.add("=B1", "E1");
+		sheet.add("=SUM(A1:A3)", "E2");
+		sortRows("A1:C3", new int[] { 0 }, true);
+
+		assertEquals("2 3 1", order(3));
+		// moved formulas still read their own row; the absolute reference stays
+		assertEquals("=A1*10+$B$1", sheet.getCell("C1").getFormulaHandle().getFormulaString());
+		assertEquals("=A3*10+$B$1", sheet.getCell("C3").getFormulaHandle().getFormulaString());
+		assertEquals(302.0, sheet.getCell("C3").getDoubleVal(), 0);
+		// references from outside the range are not rewritten, but recalculate
+		assertEquals("=B1", sheet.getCell("E1").getFormulaHandle().getFormulaString());
+		assertEquals(2, ((Number) sheet.getCell("E1").getVal()).intValue());
+		assertEquals(60.0, sheet.getCell("E2").getDoubleVal(), 0);
+	}
+
+	@Test
+	public void testSharedFormulaMembers() throws Exception {
+		// F5:F12 of this sheet share =Cn+Dn
+		WorkBookHandle wb = new WorkBookHandle(System.getProperty("user.dir")
+				+ "/docs/samples/Formulas/testFormula.xls");
+		WorkSheetHandle s2 = wb.getWorkSheet("Sheet2");
+		new CellRange("Sheet2!C5:F12", wb, true).sortRows(new int[] { 3 }, new boolean[] { false });
+
+		double last = Double.MAX_VALUE;
+		for (int r = 5; r <= 12; r++) {
+			CellHandle f = s2.getCell("F" + r);
+			assertEquals("=C" + r + "+D" + r, f.getFormulaHandle().getFormulaString());
+			double sum = s2.getCell("C" + r).getDoubleVal() + s2.getCell("D" + r).getDoubleVal();
+			assertEquals(sum, ((Number) f.getFormulaHandle().calculate()).doubleValue(), 0);
+			double d = s2.getCell("D" + r).getDoubleVal();
+			assertTrue(d <= last);
+			last = d;
+		}
+		assertEquals(3267.0, s2.getCell("F5").getDoubleVal(), 0);
+	}
+
+	@Test
+	public void testSortColumns() throws Exception {
+		// row 1 is the key; row 2 numbers the columns
+		Object[] keys = { "c", Integer.valueOf(5), null, "A", Integer.valueOf(1) };
+		for (int i = 0; i < keys.length; i++) {
+			String col = ExcelTools.getAlphaVal(i);
+			if (keys[i] != null)
+				sheet.add(keys[i], col + "1");
+			sheet.add(Integer.valueOf(i + 1), col + "2");
+		}
+		new CellRange(sheet.getSheetName() + "!A1:E2", book, true).sortColumns(new int[] { 0 },
+				new boolean[] { true });
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < keys.length; i++)
+			sb.append(i > 0 ? " " : "").append(sheet.getCell(ExcelTools.getAlphaVal(i) + "2").getIntVal());
+		assertEquals("5 2 4 1 3", sb.toString());
+	}
+
+	@Test
+	public void testKeyOutsideRange() throws Exception {
+		column(Integer.valueOf(2), Integer.valueOf(1));
+		try {
+			sortRows("A1:B2", new int[] { 3 }, true);
+			fail("a key outside the range should be rejected");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		assertEquals("1 2", order(2));
+	}
+}
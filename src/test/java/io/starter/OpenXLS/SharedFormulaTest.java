@@ -0,0 +1,107 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import io.starter.formats.XLS.Formula;
+
+/**
+ * Tests the members of a shared formula group read from an Excel file as
+ * rows are inserted and deleted around them.
+ * <p>
+ * Sheet2 of testFormula.xls holds C and D values in rows 4 to 12 and
+ * <code>=Cn+Dn</code> in F4 to F12; F5 to F12 share one SHRFMLA whose host
+ * is F5.
+ */
+public class SharedFormulaTest {
+	private final WorkSheetHandle sheet;
+
+	public SharedFormulaTest() throws Exception {
+		WorkBookHandle book = new WorkBookHandle(System.getProperty("user.dir")
+				+ "/docs/samples/Formulas/testFormula.xls");
+		sheet = book.getWorkSheet("Sheet2");
+		assertNotNull(((Formula) sheet.getCell("F9").getCell()).shared);
+	}
+
+	private double value(String addr) throws Exception {
+		return ((Number) sheet.getCell(addr).getFormulaHandle().calculate()).doubleValue();
+	}
+
+	private String formula(String addr) throws Exception {
+		return sheet.getCell(addr).getFormulaHandle().getFormulaString();
+	}
+
+	/** checks that each formula in the rows adds its own row's C and D */
+	private void assertRowsAdd(int first, int last) throws Exception {
+		for (int r = first; r <= last; r++) {
+			assertEquals("=C" + r + "+D" + r, formula("F" + r));
+			double expect = sheet.getCell("C" + r).getDoubleVal() + sheet.getCell("D" + r).getDoubleVal();
+			assertEquals("F" + r, expect, value("F" + r), 0);
+		}
+	}
+
+	@Test
+	public void testInsertAboveMembers() throws Exception {
+		sheet.insertRow(6); // a new row 7; F7:F12 move to F8:F13
+		assertNotNull(((Formula) sheet.getCell("F10").getCell()).shared);
+		assertRowsAdd(4, 6);
+		assertRowsAdd(8, 13);
+		assertEquals(3267.0, value("F8"), 0);
+
+		sheet.getCell("C8").setVal(100);
+		assertEquals(3314.0, value("F8"), 0);
+		assertEquals(67.0, value("F5"), 0);
+	}
+
+	@Test
+	public void testInsertAboveHost() throws Exception {
+		sheet.insertRows(1, 3); // everything moves down three rows
+		assertRowsAdd(7, 15);
+		assertEquals(1024.0, value("F15"), 0);
+		sheet.getCell("D8").setVal(1);
+		assertEquals(36.0, value("F8"), 0);
+	}
+
+	@Test
+	public void testDeleteMember() throws Exception {
+		sheet.removeRow(6); // row 7, with F7 = 3267
+		assertNotNull(((Formula) sheet.getCell("F9").getCell()).shared);
+		assertRowsAdd(4, 11);
+		assertEquals(50.0, value("F7"), 0);
+		assertEquals(1024.0, value("F11"), 0);
+	}
+
+	@Test
+	public void testDeleteHost() throws Exception {
+		sheet.removeRow(4); // row 5, with the host formula F5
+		assertRowsAdd(4, 11);
+		assertEquals(160.0, value("F5"), 0);
+
+		sheet.getCell("C11").setVal(1);
+		assertEquals(514.0, value("F11"), 0);
+	}
+}
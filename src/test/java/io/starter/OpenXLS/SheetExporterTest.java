@@ -0,0 +1,126 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.OpenXLS;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * Tests the quoting and escaping of each SheetExporter format, and the
+ * padding of sparse rows.
+ */
+public class SheetExporterTest {
+	private final WorkSheetHandle sheet;
+
+	public SheetExporterTest() throws Exception {
+		sheet = new WorkBookHandle().getWorkSheet(0);
+	}
+
+	private String export(int format) throws Exception {
+		StringWriter out = new StringWriter();
+		sheet.export(out, format);
+		return out.toString();
+	}
+
+	@Test
+	public void testCsvQuoting() throws Exception {
+		sheet.add("plain", "A1");
+		sheet.add("a,b", "B1");
+		sheet.add("say \"hi\"", "C1");
+		sheet.add("two\nlines", "D1");
+		sheet.add("cr\rhere", "E1");
+		sheet.add("tab\tis fine", "F1");
+		assertEquals("plain,\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\",\"cr\rhere\",tab\tis fine\r\n",
+				export(SheetExporter.CSV));
+	}
+
+	@Test
+	public void testTsvQuoting() throws Exception {
+		sheet.add("a,b", "A1");
+		sheet.add("tab\there", "B1");
+		sheet.add("\"", "C1");
+		assertEquals("a,b\t\"tab\there\"\t\"\"\"\"\r\n", export(SheetExporter.TSV));
+	}
+
+	@Test
+	public void testJsonEscaping() throws Exception {
+		sheet.add("q\"b\\s/", "A1");
+		sheet.add("n\nr\rt\t", "B1");
+		sheet.add("ctl\u0001\u001f", "C1");
+		sheet.add("é日 ", "D1");
+		sheet.add("", "E1");
+		// an empty string is stored as a blank
+		assertEquals("[\"q\\\"b\\\\s/\",\"n\\nr\\rt\\t\",\"ctl\\u0001\\u001f\",\"é日 \",null]\n",
+				export(SheetExporter.JSON_LINES));
+	}
+
+	@Test
+	public void testJsonTypes() throws Exception {
+		sheet.add(Integer.valueOf(42), "A1");
+		sheet.add(Double.valueOf(-0.25), "B1");
+		sheet.add(Boolean.TRUE, "C1");
+		sheet.add("=NA()", "E1");
+		sheet.add("=A1*2", "A2");
+		assertEquals("[42,-0.25,true,null,\"#N/A\"]\n[84,null,null,null,null]\n",
+				export(SheetExporter.JSON_LINES));
+	}
+
+	@Test
+	public void testHtmlEscaping() throws Exception {
+		sheet.add("<b>&amp;\"</b>", "A1");
+		sheet.add("it's", "B2");
+		assertEquals("<table>\n<tr><td>&lt;b&gt;&amp;amp;&quot;&lt;/b&gt;</td><td></td></tr>\n"
+				+ "<tr><td></td><td>it's</td></tr>\n</table>\n", export(SheetExporter.HTML));
+	}
+
+	@Test
+	public void testSparseRows() throws Exception {
+		sheet.add("x", "B2");
+		sheet.add(Double.valueOf(1.5), "D5");
+		sheet.add(Boolean.FALSE, "A5");
+		assertEquals(",,,\r\n,x,,\r\n,,,\r\n,,,\r\nFALSE,,,1.5\r\n", export(SheetExporter.CSV));
+
+		SheetExporter area = new SheetExporter(sheet, SheetExporter.TSV);
+		area.setArea(0, 0, 9, 1);
+		StringWriter out = new StringWriter();
+		area.write(out);
+		// rows past the last populated one are not written
+		assertEquals("\t\r\n\tx\r\n\t\r\n\t\r\nFALSE\t\r\n", out.toString());
+	}
+
+	@Test
+	public void testFormattedUtf8() throws Exception {
+		sheet.add(Double.valueOf(1234.5), "A1");
+		sheet.getCell("A1").setFormatPattern("#,##0.00");
+		sheet.add("café", "B1");
+		SheetExporter exporter = new SheetExporter(sheet, SheetExporter.CSV);
+		exporter.setFormatted(true);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		exporter.write(out);
+		assertEquals("\"1,234.50\",café\r\n", new String(out.toByteArray(), "UTF-8"));
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import io.starter.OpenXLS.CellHandle;
+import io.starter.OpenXLS.WorkBookHandle;
+import io.starter.OpenXLS.WorkSheetHandle;
+import io.starter.toolkit.ByteTools;
+
+/**
+ * Tests the row blocks and column index of {@link ColumnarCellStore}, and a
+ * sheet keeping it consistent as cells move and MULBLANKs are trimmed.
+ */
+public class ColumnarCellStoreTest {
+
+	private final ColumnarCellStore store = new ColumnarCellStore();
+
+	@Test
+	public void testAddGetRemove() {
+		NumberRec a = cell(0, 0, 1), b = cell(0, 300, 2), c = cell(70000, 5, 3);
+		store.add(a);
+		store.add(b);
+		store.add(c);
+		assertEquals(3, store.size());
+		assertSame(b, store.get(0, 300));
+		assertSame(c, store.get(70000, 5));
+		assertNull(store.get(1, 0));
+
+		assertTrue(store.remove(b));
+		assertFalse(store.remove(b));
+		assertNull(store.get(0, 300));
+		assertEquals(1, store.getRow(0).size());
+
+		// a cell added at an occupied address replaces the old one
+		NumberRec d = cell(0, 0, 4);
+		store.add(d);
+		assertSame(d, store.get(0, 0));
+		assertEquals(2, store.size());
+	}
+
+	@Test
+	public void testRangeAndColumnOrder() {
+		for (int r = 9; r >= 0; r--)
+			for (int col = 4; col >= 0; col--)
+				store.add(cell(r, col, r * 10 + col));
+		List<BiffRec> range = store.getRange(2, 1, 4, 3);
+		assertEquals(9, range.size());
+		for (int i = 0; i < range.size(); i++) {
+			assertEquals(2 + i / 3, range.get(i).getRowNumber());
+			assertEquals(1 + i % 3, range.get(i).getColNumber());
+		}
+		List<BiffRec> col = store.getCol(2);
+		assertEquals(10, col.size());
+		for (int i = 0; i < col.size(); i++)
+			assertEquals(i, col.get(i).getRowNumber());
+		assertEquals(3, store.nextRow(3));
+		assertEquals(-1, store.nextRow(10));
+	}
+
+	@Test
+	public void testColumnIndexFollowsChanges() {
+		NumberRec a = cell(5, 2, 1);
+		store.add(a);
+		assertEquals(1, store.getCol(2).size());
+
+		// once built the index is kept up to date
+		NumberRec b = cell(1, 2, 2);
+		store.add(b);
+		assertSame(b, store.getCol(2).get(0));
+		store.remove(a);
+		assertEquals(1, store.getCol(2).size());
+		NumberRec c = cell(1, 2, 3);
+		store.add(c);
+		assertSame(c, store.getCol(2).get(0));
+		assertEquals(1, store.getCol(2).size());
+	}
+
+	@Test
+	public void testSpanningRecord() {
+		Mulblank m = mulblank(2, 1, 4);
+		store.add(m);
+		store.add(cell(2, 6, 1));
+		assertSame(m, store.get(2, 3));
+		assertNull(store.get(2, 5));
+		assertSame(m, store.getCol(4).get(0));
+		assertEquals(1, store.getRange(0, 3, 5, 3).size());
+		assertTrue(store.remove(m));
+		assertNull(store.get(2, 1));
+		assertEquals(0, store.getCol(4).size());
+	}
+
+	@Test
+	public void testMoveRow() {
+		NumberRec a = cell(3, 0, 1), b = cell(3, 7, 2), c = cell(12, 7, 3);
+		store.add(a);
+		store.add(b);
+		store.add(c);
+		a.setRowNumber(12);
+		b.setRowNumber(12);
+		store.moveRow(3, 12);
+		assertNull(store.get(3, 0));
+		assertSame(a, store.get(12, 0));
+		assertSame(b, store.get(12, 7));
+		assertEquals(2, store.size());
+		assertEquals(12, store.nextRow(0));
+	}
+
+	@Test
+	public void testAddressChangedInPlaceIsNotFound() {
+		NumberRec a = cell(3, 0, 1);
+		store.add(a);
+		// cells must be removed before their address changes
+		a.setRowNumber(4);
+		assertFalse(store.remove(a));
+		a.setRowNumber(3);
+		assertTrue(store.remove(a));
+	}
+
+	@Test
+	public void testTrimMulblank() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		Boundsheet bs = sheet.getMysheet();
+		Mulblank m = mulblank(2, 1, 5);
+		m.setSheet(bs);
+		m.setWorkBook(bs.getWorkBook());
+		bs.addCell(m);
+		sheet.add(Double.valueOf(7), "A3");
+
+		// trimming the first blank must not leave it indexed under column B
+		sheet.removeCell("B3");
+		assertMissing(sheet, "B3");
+		assertEquals(7.0, sheet.getCell("A3").getDoubleVal(), 0);
+		int n = bs.getCells().length;
+		sheet.removeCell("A3");
+		assertEquals(n - 1, bs.getCells().length);
+		assertMissing(sheet, "A3");
+	}
+
+	@Test
+	public void testMoveThenRead() throws Exception {
+		WorkSheetHandle sheet = new WorkBookHandle().getWorkSheet(0);
+		sheet.add(Double.valueOf(5), "B1");
+		sheet.add("=B1*2", "C1");
+		sheet.getCell("B1").moveTo("E7");
+		sheet.getCell("C1").moveTo("F7");
+
+		assertEquals(5.0, sheet.getCell("E7").getDoubleVal(), 0);
+		CellHandle moved = sheet.getCell("F7");
+		assertEquals("=B1*2", moved.getFormulaHandle().getFormulaString());
+		assertMissing(sheet, "B1");
+		assertMissing(sheet, "C1");
+
+		// the old address is free for a new cell
+		sheet.add(Double.valueOf(9), "B1");
+		assertEquals(18.0, sheet.getCell("F7").getDoubleVal(), 0);
+	}
+
+	private static NumberRec cell(int row, int col, double val) {
+		NumberRec rec = new NumberRec(val);
+		rec.setRowNumber(row);
+		rec.setCol((short) col);
+		return rec;
+	}
+
+	/** creates a MULBLANK record covering the given columns of a row */
+	private static Mulblank mulblank(int row, int firstCol, int lastCol) {
+		int n = lastCol - firstCol + 1;
+		byte[] data = new byte[6 + n * 2];
+		System.arraycopy(ByteTools.shortToLEBytes((short) row), 0, data, 0, 2);
+		System.arraycopy(ByteTools.shortToLEBytes((short) firstCol), 0, data, 2, 2);
+		System.arraycopy(ByteTools.shortToLEBytes((short) lastCol), 0, data, data.length - 2, 2);
+		Mulblank m = new Mulblank();
+		m.setOpcode(XLSConstants.MULBLANK);
+		m.setData(data);
+		m.setLength(data.length);
+		m.init();
+		return m;
+	}
+
+	private static void assertMissing(WorkSheetHandle sheet, String addr) {
+		try {
+			sheet.getCell(addr);
+			fail(addr + " should be empty");
+		} catch (CellNotFoundException e) {
+			// expected
+		}
+	}
+}
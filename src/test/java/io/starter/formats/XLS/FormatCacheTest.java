@@ -0,0 +1,85 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import io.starter.OpenXLS.CellHandle;
+import io.starter.OpenXLS.WorkBookHandle;
+import io.starter.OpenXLS.WorkSheetHandle;
+
+/**
+ * Tests the reuse of XF records with the same formatting and the
+ * deprecated string keyed format cache.
+ */
+public class FormatCacheTest {
+
+	@Test
+	public void testEqualFormatsShareXf() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		CellHandle a = sheet.add(Double.valueOf(1), "A1");
+		CellHandle b = sheet.add(Double.valueOf(2), "B1");
+		a.setFormatPattern("0.000");
+		b.setFormatPattern("0.000");
+		assertEquals(a.getFormatId(), b.getFormatId());
+
+		int xfs = book.getWorkBook().getNumXfs();
+		b.setBold(true);
+		assertNotEquals(a.getFormatId(), b.getFormatId());
+		a.setBold(true);
+		assertEquals(b.getFormatId(), a.getFormatId());
+		assertEquals(xfs + 1, book.getWorkBook().getNumXfs());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testFormatCacheView() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		WorkBook wb = book.getWorkBook();
+		CellHandle a = book.getWorkSheet(0).add(Double.valueOf(1), "A1");
+		a.setFormatPattern("0.0000");
+		Xf xf = wb.getXf(a.getFormatId());
+
+		HashMap cache = wb.getFormatCache();
+		assertSame(wb.formatCache, cache);
+		assertSame(xf, cache.get(xf.toString()));
+		assertTrue(cache.containsValue(xf));
+		assertSame(xf, wb.getMatchingXf(xf));
+
+		// the view is live, and writes reach the registry
+		assertSame(xf, cache.remove(xf.toString()));
+		assertNull(wb.getMatchingXf(xf));
+		cache.put(xf.toString(), xf);
+		assertSame(xf, wb.getMatchingXf(xf));
+		assertEquals(cache.size(), cache.keySet().size());
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import io.starter.OpenXLS.CellRange;
+import io.starter.OpenXLS.WorkBookHandle;
+import io.starter.OpenXLS.WorkSheetHandle;
+
+/**
+ * Tests the R-tree of ranges against a linear scan, and the index a sheet
+ * keeps of its merged ranges.
+ */
+public class RangeIndexTest {
+
+	@Test
+	public void testQueryOrder() {
+		RangeIndex idx = new RangeIndex();
+		String a = "a", b = "b", c = "c";
+		idx.put(a, new int[][] { { 0, 0, 9, 9 } });
+		idx.put(b, new int[][] { { 5, 5, 5, 5 }, { 20, 0, 20, 0 } });
+		idx.put(c, new int[][] { { 4, 4, 6, 6 } });
+
+		assertEquals(Arrays.asList(a, b, c), idx.query(5, 5));
+		assertEquals(Arrays.asList(b), idx.query(20, 0));
+		assertEquals(Arrays.asList(a), idx.query(0, 0));
+		assertTrue(idx.query(10, 10).isEmpty());
+		// an owner with several matching ranges is returned once
+		assertEquals(Arrays.asList(a, b, c), idx.query(0, 0, 30, 30));
+
+		// replacing the ranges of an owner keeps its place in the order
+		idx.put(a, new int[][] { { 20, 0, 20, 0 } });
+		assertEquals(Arrays.asList(b, c), idx.query(5, 5));
+		assertEquals(Arrays.asList(a, b), idx.query(20, 0));
+		assertEquals(3, idx.count(String.class));
+	}
+
+	@Test
+	public void testInsertDelete() {
+		Random rnd = new Random(7);
+		RangeIndex idx = new RangeIndex();
+		List<Object> owners = new ArrayList<Object>();
+		List<int[]> rects = new ArrayList<int[]>();
+		for (int i = 0; i < 500; i++) {
+			int r = rnd.nextInt(1000), c = rnd.nextInt(100);
+			int[] rect = { r, c, r + rnd.nextInt(20), c + rnd.nextInt(5) };
+			Object owner = Integer.valueOf(i);
+			idx.put(owner, new int[][] { rect });
+			owners.add(owner);
+			rects.add(rect);
+		}
+		assertEquals(500, idx.count(Integer.class));
+		check(idx, owners, rects, rnd);
+
+		// remove every other owner, forcing nodes to be condensed
+		for (int i = owners.size() - 1; i >= 0; i -= 2) {
+			assertTrue(idx.remove(owners.get(i)));
+			assertFalse(idx.containsOwner(owners.get(i)));
+			owners.remove(i);
+			rects.remove(i);
+		}
+		assertFalse(idx.remove(Integer.valueOf(1)));
+		assertEquals(250, idx.count(Integer.class));
+		check(idx, owners, rects, rnd);
+
+		for (int i = 0; i < owners.size(); i++)
+			idx.remove(owners.get(i));
+		assertTrue(idx.query(0, 0, 2000, 200).isEmpty());
+		assertEquals(0, idx.count(Integer.class));
+	}
+
+	/** compares random cell and area queries with a scan of the ranges */
+	private static void check(RangeIndex idx, List<Object> owners,
+			List<int[]> rects, Random rnd) {
+		for (int q = 0; q < 300; q++) {
+			int r0 = rnd.nextInt(1020), c0 = rnd.nextInt(105);
+			int r1 = r0 + (q % 2 == 0 ? 0 : rnd.nextInt(30));
+			int c1 = c0 + (q % 2 == 0 ? 0 : rnd.nextInt(10));
+			List<Object> expected = new ArrayList<Object>();
+			for (int i = 0; i < rects.size(); i++) {
+				int[] b = rects.get(i);
+				if (b[0] <= r1 && r0 <= b[2] && b[1] <= c1 && c0 <= b[3])
+					expected.add(owners.get(i));
+			}
+			assertEquals(r0 + "," + c0 + ":" + r1 + "," + c1, expected,
+					idx.query(r0, c0, r1, c1));
+		}
+	}
+
+	@Test
+	public void testSheetIndexFollowsMerges() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		Boundsheet bs = sheet.getMysheet();
+		RangeIndex idx = bs.getRangeIndex();
+
+		CellRange merge = new CellRange("Sheet1!B2:C3", book, true);
+		merge.mergeCells(false);
+		assertSame(idx, bs.getRangeIndex());
+		assertSame(merge, bs.getMergedRange(2, 2));
+		assertNull(bs.getMergedRange(3, 2));
+
+		merge.unMergeCells();
+		assertSame(idx, bs.getRangeIndex());
+		assertNull(bs.getMergedRange(2, 2));
+	}
+
+	@Test
+	public void testNewCellJoinsMerge() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		new CellRange("Sheet1!B2:C3", book, true).mergeCells(false);
+		sheet.removeCell("C3");
+
+		// a cell added back into the merge is part of it again
+		sheet.add("x", "C3");
+		assertNotNull(sheet.getCell("C3").getMergedCellRange());
+		sheet.add("y", "D3");
+		assertNull(sheet.getCell("D3").getMergedCellRange());
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import io.starter.OpenXLS.WorkBookHandle;
+import io.starter.OpenXLS.WorkSheetHandle;
+
+/**
+ * Tests the packed string storage of the shared string table.
+ */
+public class SstStringListTest {
+
+	@Test
+	public void testLazyDecode() {
+		SstStringList list = new SstStringList();
+		list.add(bytes("hello"), 8);
+		list.add(bytes("\u65e5\u672c\u8a9e"), 16);
+
+		// the text is available without decoding a string object
+		assertEquals("hello", list.getString(0));
+		assertEquals("\u65e5\u672c\u8a9e", list.getString(1));
+		assertNull(list.peek(0));
+		assertNull(list.peek(1));
+		assertEquals(8, list.getPosition(0));
+
+		Unicodestring str = list.get(0);
+		assertEquals("hello", str.toString());
+		assertEquals(8, str.getSSTPos());
+		// once decoded the same object is handed out and retained
+		assertSame(str, list.get(0));
+		assertSame(str, list.peek(0));
+		assertNull(list.peek(1));
+
+		// decode does not retain its result
+		Unicodestring copy = list.decode(1);
+		assertEquals("\u65e5\u672c\u8a9e", copy.toString());
+		assertNotSame(copy, list.decode(1));
+		assertNull(list.peek(1));
+	}
+
+	@Test
+	public void testLookup() {
+		SstStringList list = new SstStringList();
+		list.add(bytes("apple"), 8);
+		list.add(bytes("pear"), 16);
+		list.add(bytes("apple"), 24);
+		assertEquals(3, list.size());
+
+		// find returns the first equal entry, indexOf the most recent
+		assertEquals(0, list.find(Sst.createUnicodeString("apple", null,
+				WorkBook.STRING_ENCODING_AUTO)));
+		assertEquals(2, list.indexOf("apple"));
+		assertEquals(1, list.indexOf("pear"));
+		assertEquals(-1, list.indexOf("plum"));
+
+		list.remove(0);
+		assertEquals(1, list.indexOf("apple"));
+		assertEquals("pear", list.getString(0));
+	}
+
+	@Test
+	public void testInternDedupe() throws Exception {
+		WorkBookHandle book = new WorkBookHandle();
+		book.getWorkBook().setSharedupes(true);
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		Sst sst = book.getWorkBook().getSharedStringTable();
+		int unique = sst.getStringVector().size();
+
+		for (int r = 1; r <= 50; r++)
+			sheet.add("repeated", "A" + r);
+		sheet.add("other", "B1");
+		assertEquals(unique + 2, sst.getStringVector().size());
+
+		int isst = ((Labelsst) sheet.getCell("A1").getCell()).isst;
+		for (int r = 2; r <= 50; r++)
+			assertEquals(isst, ((Labelsst) sheet.getCell("A" + r).getCell()).isst);
+		assertEquals("repeated", sheet.getCell("A50").getStringVal());
+		assertNotNull(sst.getStringVector().get(isst));
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		StringBuilder longText = new StringBuilder();
+		while (longText.length() < 12000)
+			longText.append("spans a CONTINUE record ").append(longText.length());
+		WorkBookHandle book = new WorkBookHandle();
+		WorkSheetHandle sheet = book.getWorkSheet(0);
+		for (int r = 1; r <= 3000; r++)
+			sheet.add("s" + (r % 1000), "A" + r);
+		sheet.add(longText.toString(), "B1");
+		sheet.add("\u65e5\u672c\u8a9e \u00e9t\u00e9", "B2");
+		sheet.add("", "B3");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		book.write(out, WorkBookHandle.FORMAT_XLS);
+		WorkBookHandle read = new WorkBookHandle(new ByteArrayInputStream(out.toByteArray()));
+		WorkSheetHandle rs = read.getWorkSheet(0);
+		assertEquals("s999", rs.getCell("A2999").getStringVal());
+		assertEquals("s0", rs.getCell("A3000").getStringVal());
+		assertEquals(longText.toString(), rs.getCell("B1").getStringVal());
+		assertEquals("\u65e5\u672c\u8a9e \u00e9t\u00e9", rs.getCell("B2").getStringVal());
+
+		// the strings read back are looked up from the packed table
+		Sst sst = read.getWorkBook().getSharedStringTable();
+		SstStringList list = (SstStringList) sst.getStringVector();
+		assertEquals("s500", list.getString(list.indexOf("s500")));
+
+		// and written out again unchanged
+		out.reset();
+		read.write(out, WorkBookHandle.FORMAT_XLS);
+		rs = new WorkBookHandle(new ByteArrayInputStream(out.toByteArray())).getWorkSheet(0);
+		assertEquals(longText.toString(), rs.getCell("B1").getStringVal());
+		assertEquals("", rs.getCell("B3").getStringVal());
+		assertEquals("s1", rs.getCell("A1").getStringVal());
+	}
+
+	private static byte[] bytes(String s) {
+		return Sst.createUnicodeString(s, null, WorkBook.STRING_ENCODING_AUTO)
+				.read();
+	}
+}
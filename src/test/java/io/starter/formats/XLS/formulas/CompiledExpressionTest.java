@@ -0,0 +1,100 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS.formulas;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Stack;
+
+import org.junit.Test;
+
+import io.starter.OpenXLS.WorkBookHandle;
+import io.starter.OpenXLS.WorkSheetHandle;
+import io.starter.formats.XLS.Formula;
+
+/**
+ * Tests that a formula calculated from its compiled expression gives the
+ * interpreter's result after its tokens are edited in place.
+ */
+public class CompiledExpressionTest {
+
+	private final WorkSheetHandle sheet;
+
+	public CompiledExpressionTest() throws Exception {
+		sheet = new WorkBookHandle().getWorkSheet(0);
+		sheet.add(Double.valueOf(2), "A1");
+		sheet.add(Double.valueOf(3), "B1");
+		sheet.add(Double.valueOf(7), "A2");
+		sheet.add(Double.valueOf(1), "B2");
+	}
+
+	@Test
+	public void testLocationChanged() throws Exception {
+		Formula f = formula("=A1*10+SUM(A1:B1)", "D1");
+		assertEquals(25.0, calculate(f), 0);
+
+		((PtgRef) f.getExpression().get(0)).setLocation("A2");
+		assertEquals(75.0, calculate(f), 0);
+
+		for (Object p : f.getExpression())
+			if (p instanceof PtgArea)
+				((PtgArea) p).setLocation("A2:B2");
+		assertEquals(78.0, calculate(f), 0);
+	}
+
+	@Test
+	public void testTokenReplaced() throws Exception {
+		Formula f = formula("=A1*10+B1", "D1");
+		assertEquals(23.0, calculate(f), 0);
+
+		// moves the references down a row by replacing them in the stack
+		Formula.incrementSharedFormula(f.getExpression(), 1, 0, null);
+		assertEquals(71.0, calculate(f), 0);
+
+		Stack expr = f.getExpression();
+		PtgInt ten = null;
+		for (int i = 0; i < expr.size(); i++)
+			if (expr.get(i) instanceof PtgInt)
+				ten = (PtgInt) expr.get(i);
+		PtgInt hundred = new PtgInt(100);
+		f.replacePtg(ten, hundred);
+		assertEquals(701.0, calculate(f), 0);
+
+		expr.set(expr.indexOf(hundred), new PtgInt(1000));
+		assertEquals(7001.0, calculate(f), 0);
+	}
+
+	private Formula formula(String text, String addr) throws Exception {
+		sheet.add(text, addr);
+		return sheet.getCell(addr).getFormulaHandle().getFormulaRec();
+	}
+
+	/** calculates a formula, checking it against the interpreter */
+	private static double calculate(Formula f) throws Exception {
+		f.clearCachedValue();
+		Object compiled = f.calculateFormula();
+		Object interpreted = FormulaCalculator.calculateFormula(f.getExpression());
+		assertEquals(interpreted, compiled);
+		return ((Number) compiled).doubleValue();
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XLS.formulas;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import io.starter.OpenXLS.WorkBookHandle;
+import io.starter.OpenXLS.WorkSheetHandle;
+
+/**
+ * Tests that a {@link RangeValues} classifies the cells of an area and
+ * reports the same values as the area's components.
+ */
+public class RangeValuesTest {
+
+	private final WorkSheetHandle sheet;
+
+	/* B2:C4, by column: 5, (none), "t"; =NA(), (blank), =B2*2 */
+	public RangeValuesTest() throws Exception {
+		sheet = new WorkBookHandle().getWorkSheet(0);
+		sheet.add(Double.valueOf(5), "B2");
+		sheet.add("t", "B4");
+		sheet.add("=NA()", "C2");
+		sheet.add(null, "C3");
+		sheet.add("=B2*2", "C4");
+	}
+
+	private PtgArea area(String text) throws Exception {
+		sheet.add(text, "E1");
+		for (Object p : sheet.getCell("E1").getFormulaHandle().getFormulaRec().getExpression())
+			if (p instanceof PtgArea)
+				return (PtgArea) p;
+		throw new AssertionError("no area in " + text);
+	}
+
+	@Test
+	public void testKinds() throws Exception {
+		RangeValues rv = RangeValues.of(area("=SUM(B2:C4)"));
+		assertNotNull(rv);
+		assertEquals(6, rv.size());
+
+		assertTrue(rv.isNumber(0));
+		assertEquals(5.0, rv.getNumber(0), 0);
+		assertTrue(rv.isBlank(1));
+		assertFalse(rv.isNumber(2));
+		assertEquals("t", rv.getValue(2));
+
+		assertTrue(rv.isError(3));
+		assertFalse(rv.isNumber(3));
+		assertTrue(rv.isBlank(4));
+		assertFalse(rv.isError(4));
+		assertTrue(rv.isNumber(5));
+		assertEquals(10.0, rv.getNumber(5), 0);
+	}
+
+	@Test
+	public void testAgreesWithComponents() throws Exception {
+		PtgArea a = area("=SUM(B2:C4)");
+		RangeValues rv = a.getRangeValues();
+		Ptg[] refs = a.getComponents();
+		assertEquals(refs.length, rv.size());
+		for (int i = 0; i < refs.length; i++)
+			assertEquals(refs[i].toString(), String.valueOf(refs[i].getValue()),
+					String.valueOf(rv.getValue(i)));
+	}
+
+	@Test
+	public void testReadsCurrentValues() throws Exception {
+		PtgArea a = area("=SUM(B2:C4)");
+		sheet.getCell("B2").setVal(8);
+		RangeValues rv = a.getRangeValues();
+		assertEquals(8.0, rv.getNumber(0), 0);
+		assertEquals(16.0, rv.getNumber(5), 0);
+
+		sheet.add(Double.valueOf(1), "B3");
+		assertTrue(a.getRangeValues().isNumber(1));
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.XML;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * Tests that a RecordedPullParser replays the events a live parser reports
+ * for the same document.
+ */
+public class RecordedPullParserTest {
+
+	private static final String SHEET = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\""
+			+ " xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">\n"
+			+ "  <dimension ref=\"A1:C3\"/>\n"
+			+ "  <sheetData>\n"
+			+ "    <row r=\"1\" spans=\"1:3\"><c r=\"A1\" t=\"s\"><v>0</v></c><c r=\"B1\"><v>1.5</v></c></row>\n"
+			+ "    <row r=\"3\"><c r=\"C3\"><f>A1&amp;\"&lt;x&gt;\"</f><v></v></c>"
+			+ "<c r=\"A3\" t=\"inlineStr\"><is><t xml:space=\"preserve\"> a  b </t></is></c></row>\n"
+			+ "  </sheetData>\n"
+			+ "  <hyperlinks><hyperlink ref=\"A1\" r:id=\"rId1\"/></hyperlinks>\n"
+			+ "</worksheet>";
+
+	private static RecordedPullParser record(String xml) throws Exception {
+		return RecordedPullParser.record(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+	}
+
+	@Test
+	public void testReplaysLiveEvents() throws Exception {
+		XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		XmlPullParser live = factory.newPullParser();
+		live.setInput(new ByteArrayInputStream(SHEET.getBytes("UTF-8")), null);
+		RecordedPullParser rec = record(SHEET);
+
+		assertEquals(XmlPullParser.START_DOCUMENT, rec.getEventType());
+		int events = 0;
+		for (;;) {
+			int t = live.next();
+			assertEquals(live.getPositionDescription(), t, rec.next());
+			if (t == XmlPullParser.END_DOCUMENT)
+				break;
+			events++;
+			assertEquals(live.getDepth(), rec.getDepth());
+			if (t == XmlPullParser.TEXT) {
+				assertEquals(live.getText(), rec.getText());
+				assertEquals(live.isWhitespace(), rec.isWhitespace());
+				continue;
+			}
+			assertEquals(live.getName(), rec.getName());
+			assertEquals(live.getPrefix(), rec.getPrefix());
+			assertEquals(live.getNamespace(), rec.getNamespace());
+			if (t == XmlPullParser.START_TAG) {
+				assertEquals(live.getAttributeCount(), rec.getAttributeCount());
+				for (int i = 0; i < live.getAttributeCount(); i++) {
+					assertEquals(live.getAttributeName(i), rec.getAttributeName(i));
+					assertEquals(live.getAttributePrefix(i), rec.getAttributePrefix(i));
+					assertEquals(live.getAttributeNamespace(i), rec.getAttributeNamespace(i));
+					assertEquals(live.getAttributeValue(i), rec.getAttributeValue(i));
+				}
+			}
+		}
+		assertEquals(events, rec.size());
+		assertEquals(XmlPullParser.END_DOCUMENT, rec.next());
+	}
+
+	@Test
+	public void testNavigation() throws Exception {
+		RecordedPullParser rec = record(SHEET);
+		assertEquals(XmlPullParser.START_TAG, rec.nextTag());
+		assertEquals("worksheet", rec.getName());
+		assertEquals(XmlPullParser.START_TAG, rec.nextTag());
+		assertEquals("dimension", rec.getName());
+		assertEquals("A1:C3", rec.getAttributeValue(null, "ref"));
+		assertTrue(rec.isEmptyElementTag());
+
+		while (!"f".equals(rec.getName()) || rec.getEventType() != XmlPullParser.START_TAG)
+			rec.next();
+		assertEquals("A1&\"<x>\"", rec.nextText());
+		assertEquals(XmlPullParser.END_TAG, rec.getEventType());
+		assertEquals(XmlPullParser.START_TAG, rec.nextTag());
+		assertEquals("v", rec.getName());
+		assertEquals("", rec.nextText());
+
+		while (!"t".equals(rec.getName()))
+			rec.next();
+		assertFalse(rec.isEmptyElementTag());
+		assertEquals(" a  b ", rec.nextText());
+
+		while (!"hyperlink".equals(rec.getName()))
+			rec.next();
+		assertEquals("rId1", rec.getAttributeValue(
+				"http://schemas.openxmlformats.org/officeDocument/2006/relationships", "id"));
+	}
+
+	@Test
+	public void testRewind() throws Exception {
+		RecordedPullParser rec = record(SHEET);
+		int n = 0;
+		while (rec.next() != XmlPullParser.END_DOCUMENT)
+			n++;
+		rec.setInput(null);
+		assertEquals(XmlPullParser.START_DOCUMENT, rec.getEventType());
+		assertEquals(XmlPullParser.START_TAG, rec.nextTag());
+		assertEquals("worksheet", rec.getName());
+		assertEquals(n, rec.size());
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.formats.cellformat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import org.junit.Test;
+
+import io.starter.OpenXLS.CellHandle;
+import io.starter.OpenXLS.WorkBookHandle;
+import io.starter.OpenXLS.WorkSheetHandle;
+
+/**
+ * Tests compiled number and date formats and the per-workbook renderer
+ * cache.
+ */
+public class CellFormatRendererTest {
+
+	private static String render(String pattern, Object value) {
+		String compiled = CellFormatFactory.compile( pattern ).format( value );
+		// compiled renderers must not change what the interpreted format shows
+		assertEquals( pattern + " " + value,
+				CellFormatFactory.fromPatternString( pattern ).format( value ), compiled );
+		return compiled;
+	}
+
+	@Test
+	public void testFixedPoint() {
+		assertEquals( "0.13", render( "0.00", 0.125 ) );
+		assertEquals( "2.68", render( "0.00", 2.675 ) );
+		assertEquals( "-0.50", render( "0.00", -0.5 ) );
+		assertEquals( "1,234.50", render( "#,##0.00", 1234.5 ) );
+		assertEquals( "100,000,000,000,000,000,000.00", render( "#,##0.00", 1e20 ) );
+		assertEquals( "0.000", render( "0.000", 0 ) );
+	}
+
+	@Test
+	public void testSections() {
+		assertEquals( "1,235", render( "#,##0;(#,##0)", 1234.5 ) );
+		assertEquals( "(1,235)", render( "#,##0;(#,##0)", -1234.5 ) );
+		assertEquals( "($0.50)", render( "$#,##0.00_);($#,##0.00)", -0.5 ) );
+		assertEquals( "12.5%", render( "0.0%", 0.125 ) );
+		assertEquals( "1.23E+03", render( "0.00E+00", 1234.5 ) );
+		assertEquals( "Total: 2.7", render( "\"Total: \"0.0", 2.675 ) );
+	}
+
+	@Test
+	public void testTextAndGeneral() {
+		assertEquals( "text", render( "0.00", "text" ) );
+		assertEquals( "0.005", render( "@", 0.005 ) );
+		assertEquals( "1E+20", render( "General", 1e20 ) );
+		assertEquals( "-1234.5", render( null, -1234.5 ) );
+	}
+
+	@Test
+	public void testDates() {
+		Calendar c = new GregorianCalendar( 2021, Calendar.MARCH, 7, 15, 4, 9 );
+		assertEquals( "3/7/2021", render( "m/d/yyyy", c.getTime() ) );
+		assertEquals( "2021-03-07 15:04:09", render( "yyyy-mm-dd hh:mm:ss", c.getTime() ) );
+		assertEquals( "3:04 PM", render( "h:mm AM/PM", c.getTime() ) );
+		assertEquals( "Mar 7, 2021", render( "mmm d, yyyy", c.getTime() ) );
+	}
+
+	@Test
+	public void testAppendsToBuffer() {
+		StringBuilder sb = new StringBuilder( "x=" );
+		assertSame( sb, CellFormatFactory.compile( "0.0" ).format( 1.25, sb ) );
+		CellFormatFactory.compile( "0%" ).format( 0.5, sb.append( ' ' ) );
+		assertEquals( "x=1.3 50%", sb.toString() );
+	}
+
+	@Test
+	public void testCacheRecompilesChangedPattern() {
+		CellFormatCache cache = new CellFormatCache();
+		CellFormatRenderer r = cache.get( 164, "0.00" );
+		assertSame( r, cache.get( 164, new String( "0.00" ) ) );
+
+		CellFormatRenderer changed = cache.get( 164, "0.0" );
+		assertNotSame( r, changed );
+		assertEquals( "1.3", changed.format( 1.25 ) );
+		assertSame( changed, cache.get( 164, "0.0" ) );
+
+		cache.clear();
+		assertNotSame( changed, cache.get( 164, "0.0" ) );
+	}
+
+	@Test
+	public void testCellFollowsFormatChange() throws Exception {
+		WorkSheetHandle sheet = new WorkBookHandle().getWorkSheet( 0 );
+		sheet.add( Double.valueOf( 1234.567 ), "A1" );
+		CellHandle cell = sheet.getCell( "A1" );
+
+		cell.setFormatPattern( "#,##0.00" );
+		assertEquals( "1,234.57", cell.getFormattedStringVal() );
+		cell.setFormatPattern( "0.0%" );
+		assertEquals( "123456.7%", cell.getFormattedStringVal() );
+
+		StringBuilder sb = new StringBuilder();
+		cell.appendFormattedStringVal( sb ).append( ';' );
+		assertEquals( "123456.7%;", sb.toString() );
+	}
+}
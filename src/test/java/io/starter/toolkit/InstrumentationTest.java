@@ -0,0 +1,67 @@
+/*
+ * --------- BEGIN COPYRIGHT NOTICE ---------
+ * Copyright 2002-2012 Extentech Inc.
+ * Copyright 2013 Infoteria America Corp.
+ * 
+ * This file is part of OpenXLS.
+ * 
+ * OpenXLS is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ * 
+ * OpenXLS is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with OpenXLS.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ * ---------- END COPYRIGHT NOTICE ----------
+ */
+package io.starter.toolkit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import io.starter.OpenXLS.WorkBookHandle;
+
+/**
+ * Tests the phases reported to an installed {@link Metrics} collector.
+ */
+public class InstrumentationTest {
+
+	@Test
+	public void testWritePhases() throws Exception {
+		InMemoryMetrics m = new InMemoryMetrics();
+		Instrumentation.setMetrics(m);
+		try {
+			WorkBookHandle book = new WorkBookHandle();
+			book.getWorkSheet(0).add("x", "A1");
+			book.write(new ByteArrayOutputStream(), WorkBookHandle.FORMAT_XLS);
+			book.write(new ByteArrayOutputStream(), WorkBookHandle.FORMAT_XLS);
+		} finally {
+			Instrumentation.setMetrics(null);
+		}
+		assertEquals(2, m.getPhaseCount("xls.write"));
+		assertEquals(2, m.getPhaseCount("xls.write.prepare"));
+		assertTrue(m.getCount("xls.bytesWritten") > 0);
+	}
+
+	@Test
+	public void testDisabledPhase() {
+		Instrumentation.setMetrics(null);
+		assertSame(Instrumentation.NONE, Instrumentation.getMetrics());
+		// the shared phase reports nowhere and can be ended any number of times
+		Instrumentation.Phase p = Instrumentation.start("test");
+		assertSame(p, Instrumentation.start("other"));
+		p.end();
+		p.end();
+	}
+}